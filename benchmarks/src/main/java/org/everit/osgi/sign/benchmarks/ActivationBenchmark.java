@@ -0,0 +1,91 @@
+package org.everit.osgi.sign.benchmarks;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.Provider;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.everit.osgi.sign.SignerComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cold path of a signer: loading the keystore file, activating the component and creating the first
+ * signature. Every invocation starts from the keystore file, so nothing is reused between the measurements except
+ * the provider.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(3)
+@State(Scope.Benchmark)
+public class ActivationBenchmark {
+
+    private static final byte[] PAYLOAD = new byte[16];
+
+    @Param({ "SHA256withRSA", "SHA256withECDSA", "Ed25519" })
+    private String signatureAlgorithm;
+
+    private Provider provider;
+
+    private Path keyStoreFile;
+
+    @Benchmark
+    public byte[] activateAndSign() {
+        KeyStore keyStore = BenchmarkKeyStores.loadKeyStore(provider, keyStoreFile);
+        SignerComponent signer = BenchmarkSigners.createSigner(keyStore, provider,
+                BenchmarkKeyStores.getAlias(signatureAlgorithm), null);
+        try {
+            return signer.sign(PAYLOAD, signatureAlgorithm, null, null);
+        } finally {
+            signer.deactivate();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        provider = new BouncyCastleProvider();
+        keyStoreFile = BenchmarkKeyStores.createKeyStore(provider);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.delete(keyStoreFile);
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.everit.osgi.sign.benchmarks;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Generates the keystore of the benchmarks locally, the same way as the integration tests do. The keystore
+ * contains an RSA, an EC and an Ed25519 key pair with self-signed certificates.
+ */
+public final class BenchmarkKeyStores {
+
+    public static final String EC_ALIAS = "ec";
+
+    public static final String ED25519_ALIAS = "ed25519";
+
+    public static final String HMAC_ALIAS = "hmac";
+
+    public static final String KEY_STORE_PASSWORD = "changeit";
+
+    public static final String KEY_STORE_TYPE = "PKCS12";
+
+    public static final String PRIVATE_KEY_PASSWORD = "changeit";
+
+    public static final String RSA_ALIAS = "rsa";
+
+    private static void addKeyEntry(final KeyStore keyStore, final Provider provider, final String alias,
+            final KeyPair keyPair, final String certificateSignatureAlgorithm) throws Exception {
+        Certificate[] certificateChain = {
+                generateCertificate(provider, keyPair, certificateSignatureAlgorithm)
+        };
+        keyStore.setKeyEntry(alias, keyPair.getPrivate(), PRIVATE_KEY_PASSWORD.toCharArray(), certificateChain);
+    }
+
+    /**
+     * Creates a keystore file in the temporary directory.
+     *
+     * @param provider
+     *            the provider that generates the keys and stores the keystore.
+     * @return the path of the keystore file.
+     */
+    public static Path createKeyStore(final Provider provider) {
+        try {
+            SecureRandom secureRandom = new SecureRandom();
+            KeyStore keyStore = KeyStore.getInstance(KEY_STORE_TYPE, provider);
+            keyStore.load(null, null);
+
+            KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA", provider);
+            rsaGenerator.initialize(2048, secureRandom);
+            addKeyEntry(keyStore, provider, RSA_ALIAS, rsaGenerator.generateKeyPair(), "SHA256withRSA");
+
+            KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC", provider);
+            ecGenerator.initialize(new ECGenParameterSpec("secp256r1"), secureRandom);
+            addKeyEntry(keyStore, provider, EC_ALIAS, ecGenerator.generateKeyPair(), "SHA256withECDSA");
+
+            KeyPairGenerator ed25519Generator = KeyPairGenerator.getInstance("Ed25519", provider);
+            addKeyEntry(keyStore, provider, ED25519_ALIAS, ed25519Generator.generateKeyPair(), "Ed25519");
+
+            Path keyStoreFile = Files.createTempFile("sign-benchmark", ".p12");
+            try (OutputStream out = Files.newOutputStream(keyStoreFile)) {
+                keyStore.store(out, KEY_STORE_PASSWORD.toCharArray());
+            }
+            return keyStoreFile;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Certificate generateCertificate(final Provider provider, final KeyPair keyPair,
+            final String signatureAlgorithm) throws Exception {
+        Calendar calendar = Calendar.getInstance();
+        Date notBefore = calendar.getTime();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        Date notAfter = calendar.getTime();
+
+        X500Name name = new X500Name("CN=cn, O=o, L=L, ST=il, C=c");
+        JcaX509v3CertificateBuilder certificateBuilder = new JcaX509v3CertificateBuilder(name,
+                BigInteger.valueOf(System.currentTimeMillis()), notBefore, notAfter, name, keyPair.getPublic());
+        ContentSigner contentSigner = new JcaContentSignerBuilder(signatureAlgorithm).setProvider(provider)
+                .build(keyPair.getPrivate());
+        return new JcaX509CertificateConverter().setProvider(provider)
+                .getCertificate(certificateBuilder.build(contentSigner));
+    }
+
+    /**
+     * Returns the alias of the key that can be used with a signature algorithm.
+     */
+    public static String getAlias(final String signatureAlgorithm) {
+        String upperCaseAlgorithm = signatureAlgorithm.toUpperCase();
+        if (upperCaseAlgorithm.contains("WITHRSA")) {
+            return RSA_ALIAS;
+        }
+        if (upperCaseAlgorithm.contains("WITHECDSA")) {
+            return EC_ALIAS;
+        }
+        if (upperCaseAlgorithm.equals("ED25519")) {
+            return ED25519_ALIAS;
+        }
+        throw new IllegalArgumentException("no key for signature algorithm [" + signatureAlgorithm + "]");
+    }
+
+    /**
+     * Loads a keystore file that was created by {@link #createKeyStore(Provider)}.
+     */
+    public static KeyStore loadKeyStore(final Provider provider, final Path keyStoreFile) {
+        try (InputStream in = Files.newInputStream(keyStoreFile)) {
+            KeyStore keyStore = KeyStore.getInstance(KEY_STORE_TYPE, provider);
+            keyStore.load(in, KEY_STORE_PASSWORD.toCharArray());
+            return keyStore;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private BenchmarkKeyStores() {
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.everit.osgi.sign.benchmarks;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.KeyStore;
+import java.security.Provider;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.everit.osgi.sign.HmacSignerComponent;
+import org.everit.osgi.sign.PropertyName;
+import org.everit.osgi.sign.SignerComponent;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * Creates {@link SignerComponent}s and {@link HmacSignerComponent}s outside of an OSGi container by calling the
+ * bind and activate methods the same way as the Service Component Runtime does.
+ */
+public final class BenchmarkSigners {
+
+    /**
+     * Creates an active HMAC signer that works with the secret key of the given alias.
+     *
+     * @param keyStore
+     *            the keystore that contains the secret key.
+     * @param provider
+     *            the provider of the MACs.
+     * @param alias
+     *            the alias of the secret key.
+     * @param macAlgorithm
+     *            the default MAC algorithm.
+     * @return the active signer.
+     */
+    public static HmacSignerComponent createHmacSigner(final KeyStore keyStore, final Provider provider,
+            final String alias, final String macAlgorithm) {
+        Map<String, Object> componentProperties = new HashMap<>();
+        componentProperties.put(PropertyName.SECRET_KEY_ALIAS, alias);
+        componentProperties.put(PropertyName.SECRET_KEY_PASSWORD, BenchmarkKeyStores.PRIVATE_KEY_PASSWORD);
+        componentProperties.put(PropertyName.DEFAULT_SIGNATURE_ALGORITHM, macAlgorithm);
+        HmacSignerComponent signer = new HmacSignerComponent();
+        signer.bindKeyStore(keyStore);
+        signer.bindProvider(provider);
+        try {
+            signer.activate(componentProperties);
+        } catch (ConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+        return signer;
+    }
+
+    /**
+     * Creates an active signer that signs and verifies with the key of the given alias.
+     *
+     * @param keyStore
+     *            the keystore that contains the key.
+     * @param provider
+     *            the provider of the signatures.
+     * @param alias
+     *            the alias of the key.
+     * @param additionalProperties
+     *            further configuration of the component or <code>null</code>.
+     * @return the active signer.
+     */
+    public static SignerComponent createSigner(final KeyStore keyStore, final Provider provider, final String alias,
+            final Map<String, Object> additionalProperties) {
+        Map<String, Object> componentProperties = new HashMap<>();
+        componentProperties.put(PropertyName.PRIVATE_KEY_ALIAS, alias);
+        componentProperties.put(PropertyName.PRIVATE_KEY_PASSWORD, BenchmarkKeyStores.PRIVATE_KEY_PASSWORD);
+        componentProperties.put(PropertyName.PUBLIC_KEY_ALIAS, alias);
+        if (additionalProperties != null) {
+            componentProperties.putAll(additionalProperties);
+        }
+        SignerComponent signer = new SignerComponent();
+        signer.bindKeyStore(keyStore);
+        signer.bindProvider(provider);
+        try {
+            signer.activate(null, componentProperties);
+        } catch (ConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+        return signer;
+    }
+
+    private BenchmarkSigners() {
+    }
+
+}
@@ -0,0 +1,128 @@
+package org.everit.osgi.sign.benchmarks;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Provider;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.everit.osgi.sign.ChunkedSignature;
+import org.everit.osgi.sign.MerkleTree;
+import org.everit.osgi.sign.PropertyName;
+import org.everit.osgi.sign.SignerComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time of signing and verifying large files, from one megabyte to hundreds of megabytes. The file is
+ * signed as a whole with a memory-mapped stream, as a byte array that is read into the heap first for comparison,
+ * and as a Merkle tree of chunks that are hashed in parallel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@State(Scope.Benchmark)
+public class FileSignBenchmark {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @Param({ "SHA256withRSA", "SHA256withECDSA" })
+    private String signatureAlgorithm;
+
+    @Param({ "1048576", "67108864", "268435456" })
+    private long fileSize;
+
+    private Path keyStoreFile;
+
+    private Path file;
+
+    private SignerComponent signer;
+
+    private byte[] signature;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Provider provider = new BouncyCastleProvider();
+        keyStoreFile = BenchmarkKeyStores.createKeyStore(provider);
+        signer = BenchmarkSigners.createSigner(BenchmarkKeyStores.loadKeyStore(provider, keyStoreFile), provider,
+                BenchmarkKeyStores.getAlias(signatureAlgorithm), Collections.<String, Object> singletonMap(
+                        PropertyName.BATCH_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+
+        file = Files.createTempFile("sign-benchmark", ".bin");
+        byte[] buffer = new byte[CHUNK_SIZE];
+        new Random(0).nextBytes(buffer);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < fileSize; written += buffer.length) {
+                out.write(buffer, 0, (int) Math.min(buffer.length, fileSize - written));
+            }
+        }
+        signature = signer.sign(file, signatureAlgorithm, null, null);
+    }
+
+    @Benchmark
+    public byte[] signByteArray() throws IOException {
+        return signer.sign(Files.readAllBytes(file), signatureAlgorithm, null, null);
+    }
+
+    @Benchmark
+    public ChunkedSignature signChunked() throws IOException {
+        MerkleTree merkleTree = signer.createMerkleTree(file, CHUNK_SIZE, "SHA-256");
+        return signer.signMerkleTree(merkleTree, signatureAlgorithm, null, null);
+    }
+
+    @Benchmark
+    public byte[] signFile() throws IOException {
+        return signer.sign(file, signatureAlgorithm, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        signer.deactivate();
+        Files.delete(file);
+        Files.delete(keyStoreFile);
+    }
+
+    @Benchmark
+    public boolean verifyFile() throws IOException {
+        return signer.verify(file, signature, signatureAlgorithm, null);
+    }
+
+}
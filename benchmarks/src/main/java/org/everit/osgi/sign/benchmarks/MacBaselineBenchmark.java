@@ -0,0 +1,109 @@
+package org.everit.osgi.sign.benchmarks;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.KeyStore;
+import java.security.KeyStore.PasswordProtection;
+import java.security.KeyStore.SecretKeyEntry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.everit.osgi.sign.HmacSignerComponent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link HmacSignerComponent} over the same payloads as {@link SignBenchmark}, together with a plain
+ * {@link Mac} as the baseline of the pooling overhead of the component.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MacBaselineBenchmark {
+
+    @Param({ "HmacSHA256", "HmacSHA512" })
+    private String macAlgorithm;
+
+    @Param({ "16", "1024", "65536", "1048576" })
+    private int payloadSize;
+
+    private Mac mac;
+
+    private HmacSignerComponent hmacSigner;
+
+    private byte[] payload;
+
+    private byte[] signatureBytes;
+
+    @Benchmark
+    public byte[] mac() {
+        return mac.doFinal(payload);
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] key = new byte[32];
+        Random random = new Random(0);
+        random.nextBytes(key);
+        SecretKey secretKey = new SecretKeySpec(key, macAlgorithm);
+        mac = Mac.getInstance(macAlgorithm);
+        mac.init(secretKey);
+        payload = new byte[payloadSize];
+        random.nextBytes(payload);
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setEntry(BenchmarkKeyStores.HMAC_ALIAS, new SecretKeyEntry(secretKey),
+                new PasswordProtection(BenchmarkKeyStores.PRIVATE_KEY_PASSWORD.toCharArray()));
+        hmacSigner = BenchmarkSigners.createHmacSigner(keyStore, mac.getProvider(), BenchmarkKeyStores.HMAC_ALIAS,
+                macAlgorithm);
+        signatureBytes = hmacSigner.sign(payload);
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return hmacSigner.sign(payload);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return hmacSigner.verify(payload, signatureBytes);
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.everit.osgi.sign.benchmarks;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.everit.osgi.sign.PropertyName;
+import org.everit.osgi.sign.SignerComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures probabilistic signing when all threads share one {@link SecureRandom} passed by the caller, compared to
+ * one generator per thread and to the random generators managed by the signer. Run it with several threads, e.g.
+ * <code>-t 8</code>, to see the contention on the shared generator.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecureRandomBenchmark {
+
+    /**
+     * The {@link SecureRandom} of one benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadSecureRandom {
+
+        private SecureRandom secureRandom;
+
+        @Setup(Level.Trial)
+        public void setup() throws NoSuchAlgorithmException {
+            secureRandom = SecureRandom.getInstance(SECURE_RANDOM_ALGORITHM);
+        }
+
+    }
+
+    private static final String SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
+    /**
+     * <code>shared</code>: the caller passes the same {@link SecureRandom} on every call. <code>perThread</code>:
+     * each thread passes its own {@link SecureRandom}. The signer initializes the signature with the passed
+     * generator on every call in both cases, so they differ only in the contention on the generator.
+     * <code>managed</code>: the caller does not pass a {@link SecureRandom} and the signer uses its own generators
+     * with signatures that are initialized once.
+     */
+    @Param({ "shared", "perThread", "managed" })
+    private String randomSource;
+
+    private Path keyStoreFile;
+
+    private SignerComponent signer;
+
+    private SecureRandom sharedSecureRandom;
+
+    private final byte[] payload = new byte[1024];
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchAlgorithmException {
+        Provider provider = new BouncyCastleProvider();
+        keyStoreFile = BenchmarkKeyStores.createKeyStore(provider);
+        Map<String, Object> additionalProperties = null;
+        if ("managed".equals(randomSource)) {
+            additionalProperties = Collections.<String, Object> singletonMap(PropertyName.SECURE_RANDOM_ALGORITHM,
+                    SECURE_RANDOM_ALGORITHM);
+        } else if ("shared".equals(randomSource)) {
+            sharedSecureRandom = SecureRandom.getInstance(SECURE_RANDOM_ALGORITHM);
+        }
+        signer = BenchmarkSigners.createSigner(BenchmarkKeyStores.loadKeyStore(provider, keyStoreFile), provider,
+                BenchmarkKeyStores.getAlias(SIGNATURE_ALGORITHM), additionalProperties);
+    }
+
+    @Benchmark
+    public byte[] sign(final ThreadSecureRandom threadSecureRandom) {
+        SecureRandom secureRandom = sharedSecureRandom;
+        if ("perThread".equals(randomSource)) {
+            secureRandom = threadSecureRandom.secureRandom;
+        }
+        return signer.sign(payload, SIGNATURE_ALGORITHM, null, secureRandom);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        signer.deactivate();
+        Files.delete(keyStoreFile);
+    }
+
+}
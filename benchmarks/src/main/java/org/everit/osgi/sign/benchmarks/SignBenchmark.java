@@ -0,0 +1,100 @@
+package org.everit.osgi.sign.benchmarks;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Provider;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.everit.osgi.sign.SignerComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of signing and verifying in-memory payloads. All threads share one signer, so running
+ * the benchmark with <code>-t 1</code>, <code>-t 4</code>, ... shows how the signer scales with the number of
+ * threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignBenchmark {
+
+    @Param({ "SHA256withRSA", "SHA256withECDSA", "Ed25519" })
+    private String signatureAlgorithm;
+
+    @Param({ "16", "1024", "65536", "1048576" })
+    private int payloadSize;
+
+    private Path keyStoreFile;
+
+    private SignerComponent signer;
+
+    private byte[] payload;
+
+    private byte[] signature;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Provider provider = new BouncyCastleProvider();
+        keyStoreFile = BenchmarkKeyStores.createKeyStore(provider);
+        signer = BenchmarkSigners.createSigner(BenchmarkKeyStores.loadKeyStore(provider, keyStoreFile), provider,
+                BenchmarkKeyStores.getAlias(signatureAlgorithm), null);
+        payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        signature = signer.sign(payload, signatureAlgorithm, null, null);
+    }
+
+    @Benchmark
+    public byte[] sign() {
+        return signer.sign(payload, signatureAlgorithm, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        signer.deactivate();
+        Files.delete(keyStoreFile);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return signer.verify(payload, signature, signatureAlgorithm, null);
+    }
+
+}
@@ -0,0 +1,450 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * {@link PrioritySigner} that executes the operations of a {@link ExtendedSigner} service with admission control. The
+ * operations of the {@link ExtendedSigner} interface are executed in the lane of the
+ * {@link PropertyName#DEFAULT_PRIORITY} property. A part of the concurrency can be reserved for the interactive lane,
+ * so bulk operations never occupy all of it.
+ *
+ * <p>
+ * The streams of {@link #createSigningOutputStream(OutputStream, String, AlgorithmParameterSpec, SecureRandom)}
+ * are passed through without admission control, as the work is done while the caller writes the stream.
+ */
+@Component(metatype = true, configurationFactory = true, policy = ConfigurationPolicy.REQUIRE)
+@Properties({
+        @Property(name = PropertyName.SIGNER_TARGET),
+        @Property(name = PropertyName.MAX_CONCURRENCY,
+                intValue = AdmissionControlSignerComponent.DEFAULT_MAX_CONCURRENCY),
+        @Property(name = PropertyName.INTERACTIVE_RESERVED_CONCURRENCY,
+                intValue = AdmissionControlSignerComponent.DEFAULT_INTERACTIVE_RESERVED_CONCURRENCY),
+        @Property(name = PropertyName.INTERACTIVE_QUEUE_SIZE,
+                intValue = AdmissionControlSignerComponent.DEFAULT_INTERACTIVE_QUEUE_SIZE),
+        @Property(name = PropertyName.INTERACTIVE_QUEUE_TIMEOUT,
+                intValue = AdmissionControlSignerComponent.DEFAULT_INTERACTIVE_QUEUE_TIMEOUT),
+        @Property(name = PropertyName.BULK_QUEUE_SIZE,
+                intValue = AdmissionControlSignerComponent.DEFAULT_BULK_QUEUE_SIZE),
+        @Property(name = PropertyName.BULK_QUEUE_TIMEOUT,
+                intValue = AdmissionControlSignerComponent.DEFAULT_BULK_QUEUE_TIMEOUT),
+        @Property(name = PropertyName.DEFAULT_PRIORITY, value = AdmissionControlSignerComponent.PRIORITY_INTERACTIVE,
+                options = {
+                        @PropertyOption(name = AdmissionControlSignerComponent.PRIORITY_INTERACTIVE,
+                                value = AdmissionControlSignerComponent.PRIORITY_INTERACTIVE),
+                        @PropertyOption(name = AdmissionControlSignerComponent.PRIORITY_BULK,
+                                value = AdmissionControlSignerComponent.PRIORITY_BULK) })
+})
+@Service
+public class AdmissionControlSignerComponent implements Signer, ExtendedSigner, PrioritySigner {
+
+    /**
+     * An operation that is executed after admission.
+     */
+    private interface Operation<T> {
+
+        T execute() throws IOException;
+
+    }
+
+    public static final int DEFAULT_BULK_QUEUE_SIZE = 1000;
+
+    /**
+     * The default queue timeout of the bulk lane in milliseconds.
+     */
+    public static final int DEFAULT_BULK_QUEUE_TIMEOUT = 10000;
+
+    public static final int DEFAULT_INTERACTIVE_QUEUE_SIZE = 100;
+
+    /**
+     * The default queue timeout of the interactive lane in milliseconds.
+     */
+    public static final int DEFAULT_INTERACTIVE_QUEUE_TIMEOUT = 100;
+
+    public static final int DEFAULT_INTERACTIVE_RESERVED_CONCURRENCY = 1;
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    /**
+     * The value of the {@link PropertyName#DEFAULT_PRIORITY} property for {@link SignerPriority#BULK}.
+     */
+    public static final String PRIORITY_BULK = "bulk";
+
+    /**
+     * The value of the {@link PropertyName#DEFAULT_PRIORITY} property for {@link SignerPriority#INTERACTIVE}.
+     */
+    public static final String PRIORITY_INTERACTIVE = "interactive";
+
+    private static int getNonNegativeIntProperty(final Map<String, Object> componentProperties,
+            final String propertyName, final int defaultValue) throws ConfigurationException {
+        int value = ComponentPropertyUtil.getIntProperty(componentProperties, propertyName, defaultValue);
+        if (value < 0) {
+            throw new ConfigurationException(propertyName, "must not be negative");
+        }
+        return value;
+    }
+
+    @Reference(bind = "bindSigner")
+    private ExtendedSigner signer;
+
+    private AdmissionController admissionController;
+
+    private SignerPriority defaultPriority;
+
+    @Activate
+    public void activate(final Map<String, Object> componentProperties) throws ConfigurationException {
+        int maxConcurrency = ComponentPropertyUtil.getIntProperty(componentProperties, PropertyName.MAX_CONCURRENCY,
+                DEFAULT_MAX_CONCURRENCY);
+        if (maxConcurrency < 1) {
+            throw new ConfigurationException(PropertyName.MAX_CONCURRENCY, "must be positive");
+        }
+        int interactiveReservedConcurrency = getNonNegativeIntProperty(componentProperties,
+                PropertyName.INTERACTIVE_RESERVED_CONCURRENCY, DEFAULT_INTERACTIVE_RESERVED_CONCURRENCY);
+        if (interactiveReservedConcurrency >= maxConcurrency) {
+            throw new ConfigurationException(PropertyName.INTERACTIVE_RESERVED_CONCURRENCY,
+                    "must be less than the maximum concurrency [" + maxConcurrency + "]");
+        }
+        int interactiveQueueSize = getNonNegativeIntProperty(componentProperties,
+                PropertyName.INTERACTIVE_QUEUE_SIZE, DEFAULT_INTERACTIVE_QUEUE_SIZE);
+        int interactiveQueueTimeout = getNonNegativeIntProperty(componentProperties,
+                PropertyName.INTERACTIVE_QUEUE_TIMEOUT, DEFAULT_INTERACTIVE_QUEUE_TIMEOUT);
+        int bulkQueueSize = getNonNegativeIntProperty(componentProperties, PropertyName.BULK_QUEUE_SIZE,
+                DEFAULT_BULK_QUEUE_SIZE);
+        int bulkQueueTimeout = getNonNegativeIntProperty(componentProperties, PropertyName.BULK_QUEUE_TIMEOUT,
+                DEFAULT_BULK_QUEUE_TIMEOUT);
+
+        Object defaultPriorityValue = componentProperties.get(PropertyName.DEFAULT_PRIORITY);
+        if ((defaultPriorityValue == null) || PRIORITY_INTERACTIVE.equals(defaultPriorityValue)) {
+            defaultPriority = SignerPriority.INTERACTIVE;
+        } else if (PRIORITY_BULK.equals(defaultPriorityValue)) {
+            defaultPriority = SignerPriority.BULK;
+        } else {
+            throw new ConfigurationException(PropertyName.DEFAULT_PRIORITY, "unknown priority ["
+                    + defaultPriorityValue + "]");
+        }
+
+        admissionController = new AdmissionController(maxConcurrency,
+                new AdmissionController.Lane(SignerPriority.INTERACTIVE, maxConcurrency, interactiveQueueSize,
+                        TimeUnit.MILLISECONDS.toNanos(interactiveQueueTimeout)),
+                new AdmissionController.Lane(SignerPriority.BULK, maxConcurrency - interactiveReservedConcurrency,
+                        bulkQueueSize, TimeUnit.MILLISECONDS.toNanos(bulkQueueTimeout)));
+    }
+
+    public void bindSigner(final ExtendedSigner signer) {
+        this.signer = signer;
+    }
+
+    @Override
+    public SigningOutputStream createSigningOutputStream(final OutputStream out, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return signer.createSigningOutputStream(out, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    private <T> T execute(final SignerPriority priority, final Operation<T> operation) throws IOException {
+        admissionController.acquire(priority);
+        try {
+            return operation.execute();
+        } finally {
+            admissionController.release(priority);
+        }
+    }
+
+    /**
+     * Executes an operation on data that is in memory, so it cannot fail with an {@link IOException}.
+     */
+    private <T> T executeInMemory(final SignerPriority priority, final Operation<T> operation) {
+        try {
+            return execute(priority, operation);
+        } catch (IOException e) {
+            throw new SignerException("unexpected I/O failure of an in-memory operation", e);
+        }
+    }
+
+    @Override
+    public List<LaneStatistics> getLaneStatistics() {
+        return admissionController.getLaneStatistics();
+    }
+
+    @Override
+    public byte[] sign(final byte[] data) {
+        return executeInMemory(defaultPriority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() {
+                return signer.sign(data);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final byte[] data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return sign(defaultPriority, data, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    @Override
+    public byte[] sign(final byte[] data, final int offset, final int length, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(defaultPriority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() {
+                return signer.sign(data, offset, length, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(defaultPriority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() {
+                return signer.sign(data, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer[] segments, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(defaultPriority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() {
+                return signer.sign(segments, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final InputStream inputStream, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return execute(defaultPriority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() throws IOException {
+                return signer.sign(inputStream, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final Path file, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return execute(defaultPriority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() throws IOException {
+                return signer.sign(file, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final ReadableByteChannel channel, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return execute(defaultPriority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() throws IOException {
+                return signer.sign(channel, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final SignerPriority priority, final byte[] data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(priority, new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute() {
+                return signer.sign(data, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public List<byte[]> signBatch(final List<byte[]> payloads, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return signBatch(defaultPriority, payloads, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    @Override
+    public List<byte[]> signBatch(final SignerPriority priority, final List<byte[]> payloads,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final SecureRandom secureRandom) {
+        return executeInMemory(priority, new Operation<List<byte[]>>() {
+
+            @Override
+            public List<byte[]> execute() {
+                return signer.signBatch(payloads, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes) {
+        return executeInMemory(defaultPriority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() {
+                return signer.verify(data, signatureBytes);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verify(defaultPriority, data, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final int offset, final int length, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(defaultPriority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() {
+                return signer.verify(data, offset, length, signatureBytes, signatureAlgorithm,
+                        algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(defaultPriority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() {
+                return signer.verify(data, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer[] segments, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(defaultPriority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() {
+                return signer.verify(segments, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final InputStream inputStream, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return execute(defaultPriority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() throws IOException {
+                return signer.verify(inputStream, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final Path file, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) throws IOException {
+        return execute(defaultPriority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() throws IOException {
+                return signer.verify(file, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final ReadableByteChannel channel, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return execute(defaultPriority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() throws IOException {
+                return signer.verify(channel, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final SignerPriority priority, final byte[] data, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(priority, new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute() {
+                return signer.verify(data, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public BitSet verifyBatch(final List<byte[]> data, final List<byte[]> signatures,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final boolean allOrNothing) {
+        return executeInMemory(defaultPriority, new Operation<BitSet>() {
+
+            @Override
+            public BitSet execute() {
+                return signer.verifyBatch(data, signatures, signatureAlgorithm, algorithmParameterSpec,
+                        allOrNothing);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,278 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent operations and queues the further ones in priority lanes. A released permit is
+ * handed over directly to the oldest waiting operation of the highest lane, so a new operation cannot overtake the
+ * waiting ones. Waiting operations of a higher lane block the admission of all lower lanes.
+ */
+final class AdmissionController {
+
+    /**
+     * The limits and the queue of one priority lane. The mutable fields are guarded by the lock of the controller.
+     */
+    static final class Lane {
+
+        private final SignerPriority priority;
+
+        private final int maxConcurrency;
+
+        private final int maxQueueSize;
+
+        private final long queueTimeoutNanos;
+
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+        private int inFlightCount;
+
+        private long admittedCount;
+
+        private long rejectedCount;
+
+        private long expiredCount;
+
+        private final StripedCounter totalWaitTime = new StripedCounter();
+
+        private final LatencyHistogram waitTimeHistogram = new LatencyHistogram();
+
+        /**
+         * Constructor.
+         *
+         * @param maxConcurrency
+         *            the maximum number of concurrent operations of the lane.
+         * @param maxQueueSize
+         *            the maximum number of waiting operations of the lane, zero to shed the operations that cannot
+         *            be admitted immediately.
+         * @param queueTimeoutNanos
+         *            the maximum time an operation of the lane waits for admission.
+         */
+        Lane(final SignerPriority priority, final int maxConcurrency, final int maxQueueSize,
+                final long queueTimeoutNanos) {
+            this.priority = priority;
+            this.maxConcurrency = maxConcurrency;
+            this.maxQueueSize = maxQueueSize;
+            this.queueTimeoutNanos = queueTimeoutNanos;
+        }
+
+    }
+
+    /**
+     * An operation that waits for admission.
+     */
+    private static final class Waiter {
+
+        private final Condition condition;
+
+        private boolean admitted;
+
+        Waiter(final Condition condition) {
+            this.condition = condition;
+        }
+
+    }
+
+    private static long getWaitTime(final long[] counts, final long histogramCount, final double fraction,
+            final long maxWaitTime) {
+        return Math.min(maxWaitTime, LatencyHistogram.getValueAtFraction(counts, histogramCount, fraction));
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final int maxConcurrency;
+
+    private final Lane[] lanes;
+
+    private int inFlightCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxConcurrency
+     *            the maximum number of concurrent operations of all lanes.
+     * @param lanes
+     *            the lanes of all {@link SignerPriority} constants in the order of the constants.
+     */
+    AdmissionController(final int maxConcurrency, final Lane... lanes) {
+        this.maxConcurrency = maxConcurrency;
+        this.lanes = lanes.clone();
+    }
+
+    /**
+     * Waits until an operation of the lane is admitted. The operation must call {@link #release(SignerPriority)}
+     * when it completes.
+     *
+     * @throws SignerRejectedException
+     *             if the queue of the lane is full, the operation waited longer than the queue timeout of the lane
+     *             or the thread was interrupted.
+     */
+    void acquire(final SignerPriority priority) {
+        Lane lane = lanes[priority.ordinal()];
+        long startTime = System.nanoTime();
+        lock.lock();
+        try {
+            if (isAdmissible(lane) && !hasWaiters(priority)) {
+                admit(lane);
+            } else {
+                await(lane);
+            }
+        } finally {
+            lock.unlock();
+        }
+        long waitTime = System.nanoTime() - startTime;
+        lane.totalWaitTime.add(waitTime);
+        lane.waitTimeHistogram.record(waitTime);
+    }
+
+    private void admit(final Lane lane) {
+        inFlightCount++;
+        lane.inFlightCount++;
+        lane.admittedCount++;
+    }
+
+    private void await(final Lane lane) {
+        if (lane.waiters.size() >= lane.maxQueueSize) {
+            lane.rejectedCount++;
+            throw new SignerRejectedException("operation rejected, the queue of the " + lane.priority
+                    + " lane of the signer is full");
+        }
+        Waiter waiter = new Waiter(lock.newCondition());
+        lane.waiters.addLast(waiter);
+        long remainingNanos = lane.queueTimeoutNanos;
+        try {
+            while (!waiter.admitted) {
+                if (remainingNanos <= 0) {
+                    lane.waiters.remove(waiter);
+                    lane.expiredCount++;
+                    dispatch();
+                    throw new SignerRejectedException("operation rejected, it waited longer than the queue timeout of"
+                            + " the " + lane.priority + " lane of the signer");
+                }
+                remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+            }
+        } catch (InterruptedException e) {
+            if (waiter.admitted) {
+                release(lane);
+            } else {
+                lane.waiters.remove(waiter);
+                dispatch();
+            }
+            Thread.currentThread().interrupt();
+            throw new SignerRejectedException("operation rejected, interrupted while waiting for admission", e);
+        }
+    }
+
+    /**
+     * Admits the waiting operations while there is free capacity, in the order of the lanes.
+     */
+    private void dispatch() {
+        for (Lane lane : lanes) {
+            Waiter waiter = lane.waiters.peekFirst();
+            while (waiter != null) {
+                if (!isAdmissible(lane)) {
+                    return;
+                }
+                lane.waiters.pollFirst();
+                waiter.admitted = true;
+                admit(lane);
+                waiter.condition.signal();
+                waiter = lane.waiters.peekFirst();
+            }
+        }
+    }
+
+    List<LaneStatistics> getLaneStatistics() {
+        List<LaneStatistics> result = new ArrayList<>(lanes.length);
+        for (Lane lane : lanes) {
+            int laneInFlightCount;
+            int queueDepth;
+            long admittedCount;
+            long rejectedCount;
+            long expiredCount;
+            lock.lock();
+            try {
+                laneInFlightCount = lane.inFlightCount;
+                queueDepth = lane.waiters.size();
+                admittedCount = lane.admittedCount;
+                rejectedCount = lane.rejectedCount;
+                expiredCount = lane.expiredCount;
+            } finally {
+                lock.unlock();
+            }
+            long[] counts = lane.waitTimeHistogram.getCounts();
+            long histogramCount = 0;
+            for (long bucketCount : counts) {
+                histogramCount += bucketCount;
+            }
+            long meanWaitTime = (histogramCount > 0) ? (lane.totalWaitTime.sum() / histogramCount) : 0;
+            long maxWaitTime = lane.waitTimeHistogram.getMaxValue();
+            result.add(new LaneStatistics(lane.priority, laneInFlightCount, queueDepth, admittedCount,
+                    rejectedCount, expiredCount, meanWaitTime, maxWaitTime,
+                    getWaitTime(counts, histogramCount, 0.5, maxWaitTime),
+                    getWaitTime(counts, histogramCount, 0.9, maxWaitTime),
+                    getWaitTime(counts, histogramCount, 0.99, maxWaitTime),
+                    getWaitTime(counts, histogramCount, 0.999, maxWaitTime)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether an operation of the lane or of a higher lane waits for admission.
+     */
+    private boolean hasWaiters(final SignerPriority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!lanes[i].waiters.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAdmissible(final Lane lane) {
+        return (inFlightCount < maxConcurrency) && (lane.inFlightCount < lane.maxConcurrency);
+    }
+
+    private void release(final Lane lane) {
+        inFlightCount--;
+        lane.inFlightCount--;
+        dispatch();
+    }
+
+    /**
+     * Releases the permit of a completed operation of the lane and admits the next waiting operation.
+     */
+    void release(final SignerPriority priority) {
+        lock.lock();
+        try {
+            release(lanes[priority.ordinal()]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * Signs and verifies with one of many keys of a keystore, e.g. with the key of a tenant. The key is selected by
+ * its alias on every call, so one service serves any number of keys.
+ */
+public interface AliasSigner {
+
+    /**
+     * Drops the cached keys of the alias, so they are loaded from the keystore again on the next use, e.g. after
+     * the key of a tenant is replaced.
+     */
+    void invalidate(String keyAlias);
+
+    /**
+     * Signs the data with the private key of the alias.
+     *
+     * @throws SignerException
+     *             if the keystore does not have a private key with the alias or the key cannot be loaded.
+     */
+    byte[] sign(String keyAlias, byte[] data,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Verifies the signature with the public key of the certificate of the alias.
+     *
+     * @return <code>true</code> if the signature is valid, <code>false</code> if it is invalid or the keystore
+     *         does not have a certificate with the alias.
+     */
+    boolean verify(String keyAlias, byte[] data, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec);
+
+}
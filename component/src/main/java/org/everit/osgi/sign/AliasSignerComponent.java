@@ -0,0 +1,262 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * {@link AliasSigner} that works with the keys of a {@link KeyStore} service. The keys are loaded on their first
+ * use and kept in a bounded {@link KeyCache}, so one component serves any number of tenants with a constant number
+ * of services. The cache is dropped when the keystore, the provider or the configuration changes.
+ */
+@Component(metatype = true, configurationFactory = true, policy = ConfigurationPolicy.REQUIRE)
+@Properties({
+        @Property(name = PropertyName.KEY_STORE_TARGET),
+        @Property(name = PropertyName.PROVIDER_TARGET),
+        @Property(name = PropertyName.DEFAULT_PRIVATE_KEY_PASSWORD, passwordValue = ""),
+        @Property(name = PropertyName.PRIVATE_KEY_PASSWORDS, unbounded = PropertyUnbounded.ARRAY),
+        @Property(name = PropertyName.KEY_CACHE_SIZE, intValue = AliasSignerComponent.DEFAULT_KEY_CACHE_SIZE),
+        @Property(name = PropertyName.SIGNATURE_POOL_SIZE,
+                intValue = AliasSignerComponent.DEFAULT_SIGNATURE_POOL_SIZE)
+})
+@Service
+public class AliasSignerComponent implements AliasSigner {
+
+    public static final int DEFAULT_KEY_CACHE_SIZE = 1000;
+
+    /**
+     * The default number of idle signatures per alias and algorithm. It is smaller than the one of
+     * {@link SignerComponent}, as the load is spread over many keys.
+     */
+    public static final int DEFAULT_SIGNATURE_POOL_SIZE = 2;
+
+    @Reference(bind = "bindKeyStore", unbind = "unbindKeyStore", updated = "updatedKeyStore",
+            policy = ReferencePolicy.DYNAMIC)
+    private volatile KeyStore keyStore;
+
+    @Reference(bind = "bindProvider", unbind = "unbindProvider", policy = ReferencePolicy.DYNAMIC)
+    private volatile Provider provider;
+
+    /**
+     * The configuration of the active component or <code>null</code> if the component is not active. Guarded by
+     * <code>this</code>.
+     */
+    private Map<String, Object> componentProperties;
+
+    private volatile KeyCache keyCache;
+
+    @Activate
+    public void activate(final Map<String, Object> componentProperties) throws ConfigurationException {
+        synchronized (this) {
+            keyCache = createKeyCache(keyStore, provider, componentProperties);
+            this.componentProperties = componentProperties;
+        }
+    }
+
+    public void bindKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    public void bindProvider(final Provider provider) {
+        synchronized (this) {
+            this.provider = provider;
+            reload();
+        }
+    }
+
+    private KeyCache createKeyCache(final KeyStore keyStore, final Provider provider,
+            final Map<String, Object> componentProperties) throws ConfigurationException {
+        if ((keyStore == null) || (provider == null)) {
+            throw new ConfigurationException(null, "the keystore or the provider is not bound");
+        }
+        int keyCacheSize = ComponentPropertyUtil.getIntProperty(componentProperties, PropertyName.KEY_CACHE_SIZE,
+                DEFAULT_KEY_CACHE_SIZE);
+        if (keyCacheSize < 1) {
+            throw new ConfigurationException(PropertyName.KEY_CACHE_SIZE, "must be positive");
+        }
+        int signaturePoolSize = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.SIGNATURE_POOL_SIZE, DEFAULT_SIGNATURE_POOL_SIZE);
+
+        Object defaultPasswordValue = componentProperties.get(PropertyName.DEFAULT_PRIVATE_KEY_PASSWORD);
+        char[] defaultPrivateKeyPassword = (defaultPasswordValue != null)
+                ? String.valueOf(defaultPasswordValue).toCharArray() : new char[0];
+
+        List<String> passwordEntries = ComponentPropertyUtil.getStringListProperty(componentProperties,
+                PropertyName.PRIVATE_KEY_PASSWORDS);
+        Map<String, char[]> privateKeyPasswords = new HashMap<>();
+        for (String passwordEntry : passwordEntries) {
+            int separatorIndex = passwordEntry.indexOf('=');
+            if (separatorIndex <= 0) {
+                throw new ConfigurationException(PropertyName.PRIVATE_KEY_PASSWORDS,
+                        "invalid entry, the expected format is alias=password");
+            }
+            privateKeyPasswords.put(passwordEntry.substring(0, separatorIndex),
+                    passwordEntry.substring(separatorIndex + 1).toCharArray());
+        }
+        return new KeyCache(keyStore, ProviderRouting.fixed(provider), privateKeyPasswords,
+                defaultPrivateKeyPassword, keyCacheSize, signaturePoolSize);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        synchronized (this) {
+            componentProperties = null;
+            keyCache = null;
+        }
+    }
+
+    private KeyCache getKeyCache() {
+        KeyCache result = keyCache;
+        if (result == null) {
+            throw new SignerException("signer not available, the component is not active");
+        }
+        return result;
+    }
+
+    @Override
+    public void invalidate(final String keyAlias) {
+        KeyCache currentKeyCache = keyCache;
+        if (currentKeyCache != null) {
+            currentKeyCache.invalidate(keyAlias);
+        }
+    }
+
+    @Modified
+    public void modified(final Map<String, Object> componentProperties) throws ConfigurationException {
+        synchronized (this) {
+            keyCache = createKeyCache(keyStore, provider, componentProperties);
+            this.componentProperties = componentProperties;
+        }
+    }
+
+    /**
+     * Drops the cached keys if the component is active, so they are loaded with the currently bound services.
+     */
+    private void reload() {
+        if ((componentProperties == null) || (keyStore == null) || (provider == null)) {
+            return;
+        }
+        try {
+            keyCache = createKeyCache(keyStore, provider, componentProperties);
+        } catch (ConfigurationException e) {
+            throw new SignerException("failed to reload the key material, the previous one is still used", e);
+        }
+    }
+
+    @Override
+    public byte[] sign(final String keyAlias, final byte[] data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        KeyCache.Entry entry = getKeyCache().get(keyAlias);
+        if ((entry == null) || (entry.getPrivateKey() == null)) {
+            throw new SignerException("sign not available, private key [" + keyAlias + "] not found");
+        }
+        SignaturePool pool = entry.getSignaturePool();
+        SignatureKey signatureKey = SignatureKey.forSign(signatureAlgorithm, algorithmParameterSpec,
+                secureRandom != null);
+        try {
+            Signature signature = pool.borrowSign(signatureKey, secureRandom);
+            signature.update(data);
+            byte[] result = signature.sign();
+            pool.release(signatureKey, signature);
+            return result;
+        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException
+                | SignatureException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    public void unbindKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            if (this.keyStore == keyStore) {
+                this.keyStore = null;
+            }
+        }
+    }
+
+    public void unbindProvider(final Provider provider) {
+        synchronized (this) {
+            if (this.provider == provider) {
+                this.provider = null;
+            }
+        }
+    }
+
+    /**
+     * Drops the cached keys when the properties of the keystore service change, for example after the keystore
+     * file is modified.
+     */
+    public void updatedKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    @Override
+    public boolean verify(final String keyAlias, final byte[] data, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        KeyCache.Entry entry = getKeyCache().get(keyAlias);
+        if ((entry == null) || (entry.getPublicKey() == null)) {
+            return false;
+        }
+        SignaturePool pool = entry.getSignaturePool();
+        SignatureKey signatureKey = SignatureKey.forVerify(signatureAlgorithm, algorithmParameterSpec);
+        try {
+            Signature signature = pool.borrowVerify(signatureKey);
+            signature.update(data);
+            boolean result = signature.verify(signatureBytes);
+            pool.release(signatureKey, signature);
+            return result;
+        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException
+                | SignatureException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * {@link AsyncSigner} that executes the operations of a {@link Signer} service on a dedicated thread pool with a
+ * bounded queue.
+ */
+@Component(metatype = true, configurationFactory = true, policy = ConfigurationPolicy.REQUIRE)
+@Properties({
+        @Property(name = PropertyName.SIGNER_TARGET),
+        @Property(name = PropertyName.THREAD_COUNT, intValue = AsyncSignerComponent.DEFAULT_THREAD_COUNT),
+        @Property(name = PropertyName.QUEUE_SIZE, intValue = AsyncSignerComponent.DEFAULT_QUEUE_SIZE),
+        @Property(name = PropertyName.REJECTION_POLICY, value = AsyncSignerComponent.REJECTION_POLICY_ABORT,
+                options = {
+                        @PropertyOption(name = AsyncSignerComponent.REJECTION_POLICY_ABORT,
+                                value = AsyncSignerComponent.REJECTION_POLICY_ABORT),
+                        @PropertyOption(name = AsyncSignerComponent.REJECTION_POLICY_CALLER_RUNS,
+                                value = AsyncSignerComponent.REJECTION_POLICY_CALLER_RUNS) })
+})
+@Service
+public class AsyncSignerComponent implements AsyncSigner {
+
+    /**
+     * Executes the rejected operations on the calling thread while the executor is running. Unlike
+     * {@link ThreadPoolExecutor.CallerRunsPolicy}, it does not discard the operations silently after the executor is
+     * shut down, because the futures of discarded operations would never complete.
+     */
+    private static final class CallerRunsRejectionHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new SignerRejectedException("operation rejected, the signer is shut down");
+            }
+            r.run();
+        }
+
+    }
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    public static final int DEFAULT_THREAD_COUNT = 4;
+
+    /**
+     * Operations that do not fit into the queue are rejected with {@link SignerRejectedException}.
+     */
+    public static final String REJECTION_POLICY_ABORT = "abort";
+
+    /**
+     * Operations that do not fit into the queue are executed on the calling thread, slowing down the caller.
+     */
+    public static final String REJECTION_POLICY_CALLER_RUNS = "callerRuns";
+
+    @Reference(bind = "bindSigner")
+    private Signer signer;
+
+    private ThreadPoolExecutor executor;
+
+    @Activate
+    public void activate(final Map<String, Object> componentProperties) throws ConfigurationException {
+        int threadCount = ComponentPropertyUtil.getIntProperty(componentProperties, PropertyName.THREAD_COUNT,
+                DEFAULT_THREAD_COUNT);
+        int queueSize = ComponentPropertyUtil.getIntProperty(componentProperties, PropertyName.QUEUE_SIZE,
+                DEFAULT_QUEUE_SIZE);
+        if (threadCount < 1) {
+            throw new ConfigurationException(PropertyName.THREAD_COUNT, "must be positive");
+        }
+        if (queueSize < 1) {
+            throw new ConfigurationException(PropertyName.QUEUE_SIZE, "must be positive");
+        }
+        Object rejectionPolicy = componentProperties.get(PropertyName.REJECTION_POLICY);
+        RejectedExecutionHandler rejectedExecutionHandler;
+        if ((rejectionPolicy == null) || REJECTION_POLICY_ABORT.equals(rejectionPolicy)) {
+            rejectedExecutionHandler = new ThreadPoolExecutor.AbortPolicy();
+        } else if (REJECTION_POLICY_CALLER_RUNS.equals(rejectionPolicy)) {
+            rejectedExecutionHandler = new CallerRunsRejectionHandler();
+        } else {
+            throw new ConfigurationException(PropertyName.REJECTION_POLICY, "unknown rejection policy ["
+                    + rejectionPolicy + "]");
+        }
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread thread = new Thread(r, "AsyncSigner-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), threadFactory, rejectedExecutionHandler);
+    }
+
+    public void bindSigner(final Signer signer) {
+        this.signer = signer;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        executor.shutdown();
+    }
+
+    private <T> Future<T> execute(final Callable<T> callable, final SignerCallback<T> callback) {
+        CallbackFutureTask<T> futureTask = new CallbackFutureTask<>(callable, callback);
+        try {
+            executor.execute(futureTask);
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw new SignerRejectedException("operation rejected, the signer is shut down", e);
+            }
+            throw new SignerRejectedException("operation rejected, the queue of the signer is full", e);
+        }
+        return futureTask;
+    }
+
+    @Override
+    public Future<byte[]> sign(final byte[] data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom,
+            final SignerCallback<byte[]> callback) {
+        return execute(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() {
+                return signer.sign(data, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        }, callback);
+    }
+
+    @Override
+    public Future<Boolean> verify(final byte[] data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SignerCallback<Boolean> callback) {
+        return execute(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                return signer.verify(data, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        }, callback);
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the leaf hashes of a range of chunks of a {@link MerkleTree}. Ranges that are larger than the threshold
+ * are split in two and hashed in parallel, smaller ranges are hashed with one {@link MessageDigest}.
+ */
+final class ChunkHashTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 4164212870368557201L;
+
+    private final ChunkSource chunkSource;
+
+    private final int chunkSize;
+
+    private final String digestAlgorithm;
+
+    private final byte[][] leafHashes;
+
+    private final int from;
+
+    private final int to;
+
+    private final int threshold;
+
+    ChunkHashTask(final ChunkSource chunkSource, final int chunkSize, final String digestAlgorithm,
+            final byte[][] leafHashes, final int from, final int to, final int threshold) {
+        this.chunkSource = chunkSource;
+        this.chunkSize = chunkSize;
+        this.digestAlgorithm = digestAlgorithm;
+        this.leafHashes = leafHashes;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected void compute() {
+        if ((to - from) > threshold) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkHashTask(chunkSource, chunkSize, digestAlgorithm, leafHashes, from, middle,
+                    threshold),
+                    new ChunkHashTask(chunkSource, chunkSize, digestAlgorithm, leafHashes, middle, to, threshold));
+            return;
+        }
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(digestAlgorithm);
+            long length = chunkSource.getLength();
+            for (int i = from; i < to; i++) {
+                long offset = (long) i * chunkSize;
+                int chunkLength = (int) Math.min(chunkSize, length - offset);
+                ByteBuffer chunk = chunkSource.getChunk(offset, chunkLength);
+                leafHashes[i] = MerkleTree.hashLeaf(messageDigest, chunk);
+            }
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new SignerException("failed to hash chunks", e);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * The data of a chunked signature that is read chunk by chunk. The chunks can be read concurrently, so the chunk
+ * hashes can be computed in parallel.
+ */
+abstract class ChunkSource {
+
+    /**
+     * Source that holds the data in a byte array.
+     */
+    private static final class ByteArraySource extends ChunkSource {
+
+        private final byte[] data;
+
+        ByteArraySource(final byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        ByteBuffer getChunk(final long offset, final int length) {
+            return ByteBuffer.wrap(data, (int) offset, length);
+        }
+
+        @Override
+        long getLength() {
+            return data.length;
+        }
+
+    }
+
+    /**
+     * Source that maps the chunks of a file into memory one by one.
+     */
+    private static final class FileChannelSource extends ChunkSource {
+
+        private final FileChannel fileChannel;
+
+        private final long length;
+
+        FileChannelSource(final FileChannel fileChannel) throws IOException {
+            this.fileChannel = fileChannel;
+            length = fileChannel.size();
+        }
+
+        @Override
+        ByteBuffer getChunk(final long offset, final int length) throws IOException {
+            return fileChannel.map(MapMode.READ_ONLY, offset, length);
+        }
+
+        @Override
+        long getLength() {
+            return length;
+        }
+
+    }
+
+    static ChunkSource of(final byte[] data) {
+        return new ByteArraySource(data);
+    }
+
+    static ChunkSource of(final FileChannel fileChannel) throws IOException {
+        return new FileChannelSource(fileChannel);
+    }
+
+    /**
+     * Returns a region of the data.
+     */
+    abstract ByteBuffer getChunk(long offset, int length) throws IOException;
+
+    abstract long getLength();
+
+}
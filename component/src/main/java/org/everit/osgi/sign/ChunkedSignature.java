@@ -0,0 +1,207 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The signature of the root of a {@link MerkleTree}. The signed content is the digest algorithm, the chunk size,
+ * the length of the payload and the root hash, so a verified chunked signature fixes the exact layout of the
+ * payload. After the root signature is verified once with {@link ChunkedSigner#verifyRoot}, the chunks can be
+ * verified independently and in parallel with {@link #verifyChunk(int, ByteBuffer, MerkleProof)} without any key
+ * operation.
+ */
+public final class ChunkedSignature {
+
+    private static final int MAGIC = 0x4D4B4C31;
+
+    /**
+     * Parses a chunked signature that was encoded with {@link #getEncoded()}.
+     *
+     * @throws IllegalArgumentException
+     *             if the encoded form is malformed.
+     */
+    public static ChunkedSignature decode(final byte[] encoded) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException("malformed chunked signature");
+            }
+            String digestAlgorithm = in.readUTF();
+            int chunkSize = in.readInt();
+            long length = in.readLong();
+            byte[] root = new byte[in.readUnsignedByte()];
+            in.readFully(root);
+            byte[] signatureBytes = new byte[in.readUnsignedShort()];
+            in.readFully(signatureBytes);
+            if ((chunkSize <= 0) || (length < 0) || (in.read() >= 0)) {
+                throw new IllegalArgumentException("malformed chunked signature");
+            }
+            MerkleTree.getChunkCount(length, chunkSize);
+            return new ChunkedSignature(digestAlgorithm, chunkSize, length, root, signatureBytes);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed chunked signature", e);
+        }
+    }
+
+    /**
+     * Encodes the content that is signed by the signature bytes.
+     */
+    static byte[] encodeSignedContent(final String digestAlgorithm, final int chunkSize, final long length,
+            final byte[] root) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(digestAlgorithm);
+            out.writeInt(chunkSize);
+            out.writeLong(length);
+            out.writeByte(root.length);
+            out.write(root);
+        } catch (IOException e) {
+            throw new SignerException("failed to encode chunked signature", e);
+        }
+        return bout.toByteArray();
+    }
+
+    private final String digestAlgorithm;
+
+    private final int chunkSize;
+
+    private final long length;
+
+    private final byte[] root;
+
+    private final byte[] signatureBytes;
+
+    ChunkedSignature(final String digestAlgorithm, final int chunkSize, final long length, final byte[] root,
+            final byte[] signatureBytes) {
+        this.digestAlgorithm = digestAlgorithm;
+        this.chunkSize = chunkSize;
+        this.length = length;
+        this.root = root;
+        this.signatureBytes = signatureBytes;
+    }
+
+    public int getChunkCount() {
+        return MerkleTree.getChunkCount(length, chunkSize);
+    }
+
+    /**
+     * Returns the length of a chunk in bytes. Only the last chunk can be shorter than the chunk size.
+     */
+    public int getChunkLength(final int chunkIndex) {
+        return (int) Math.min(chunkSize, length - getChunkOffset(chunkIndex));
+    }
+
+    /**
+     * Returns the position of the first byte of a chunk in the payload.
+     */
+    public long getChunkOffset(final int chunkIndex) {
+        if ((chunkIndex < 0) || (chunkIndex >= getChunkCount())) {
+            throw new IndexOutOfBoundsException("chunk index [" + chunkIndex + "] is out of range [0, "
+                    + getChunkCount() + ")");
+        }
+        return (long) chunkIndex * chunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * Returns the compact binary form of the chunked signature including the signature bytes.
+     */
+    public byte[] getEncoded() {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        try {
+            out.write(getSignedContent());
+            out.writeShort(signatureBytes.length);
+            out.write(signatureBytes);
+        } catch (IOException e) {
+            throw new SignerException("failed to encode chunked signature", e);
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Returns the length of the payload in bytes.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public byte[] getRoot() {
+        return root.clone();
+    }
+
+    public byte[] getSignatureBytes() {
+        return signatureBytes.clone();
+    }
+
+    /**
+     * Returns the content that is signed by the signature bytes.
+     */
+    byte[] getSignedContent() {
+        return encodeSignedContent(digestAlgorithm, chunkSize, length, root);
+    }
+
+    /**
+     * Checks whether a chunk belongs to the payload. The method does not check the signature of the root, so it
+     * must be verified before with {@link ChunkedSigner#verifyRoot}.
+     *
+     * @param chunkIndex
+     *            the index of the chunk.
+     * @param chunk
+     *            the content of the chunk. The remaining bytes of the buffer are consumed.
+     * @param proof
+     *            the proof of the chunk created by {@link MerkleTree#getProof(int)}.
+     * @return <code>true</code> if the chunk is part of the signed payload at the given index.
+     */
+    public boolean verifyChunk(final int chunkIndex, final ByteBuffer chunk, final MerkleProof proof) {
+        if ((proof.getChunkIndex() != chunkIndex) || (chunk.remaining() != getChunkLength(chunkIndex))) {
+            return false;
+        }
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignerException("failed to verifiy chunk", e);
+        }
+        byte[] leafHash = MerkleTree.hashLeaf(messageDigest, chunk);
+        byte[] computedRoot = proof.computeRoot(messageDigest, leafHash, getChunkCount());
+        return (computedRoot != null) && MessageDigest.isEqual(root, computedRoot);
+    }
+
+}
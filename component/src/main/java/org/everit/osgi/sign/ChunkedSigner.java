@@ -0,0 +1,113 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * Signs large payloads as a {@link MerkleTree} of fixed size chunks. The chunks are hashed in parallel and only
+ * the root of the tree is signed, so the hashing is not limited to one core and the chunks can be verified
+ * independently with the {@link MerkleProof} of the chunk, e.g. during a resumable download.
+ */
+public interface ChunkedSigner {
+
+    /**
+     * Hashes the chunks of a payload and builds the Merkle tree.
+     *
+     * @param data
+     *            the payload.
+     * @param chunkSize
+     *            the size of the chunks in bytes.
+     * @param digestAlgorithm
+     *            the algorithm that hashes the chunks and the nodes, e.g. <code>SHA-256</code>.
+     * @return the tree of the chunk hashes.
+     */
+    MerkleTree createMerkleTree(byte[] data, int chunkSize, String digestAlgorithm);
+
+    /**
+     * Hashes the chunks of a file and builds the Merkle tree. The chunks are mapped into memory one by one.
+     *
+     * @param file
+     *            the file that contains the payload.
+     * @param chunkSize
+     *            the size of the chunks in bytes.
+     * @param digestAlgorithm
+     *            the algorithm that hashes the chunks and the nodes, e.g. <code>SHA-256</code>.
+     * @return the tree of the chunk hashes.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    MerkleTree createMerkleTree(Path file, int chunkSize, String digestAlgorithm) throws IOException;
+
+    /**
+     * Signs the root of a Merkle tree.
+     *
+     * @param merkleTree
+     *            the tree of the payload.
+     * @param signatureAlgorithm
+     *            the algorithm of the signature.
+     * @param algorithmParameterSpec
+     *            the parameters of the signature algorithm or <code>null</code>.
+     * @param secureRandom
+     *            the source of randomness or <code>null</code> to use the default.
+     * @return the chunked signature.
+     */
+    ChunkedSignature signMerkleTree(MerkleTree merkleTree, String signatureAlgorithm,
+            AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Verifies a whole file against a chunked signature. The chunks are hashed in parallel.
+     *
+     * @param file
+     *            the file that contains the payload.
+     * @param chunkedSignature
+     *            the signature to verify.
+     * @param signatureAlgorithm
+     *            the algorithm of the signature.
+     * @param algorithmParameterSpec
+     *            the parameters of the signature algorithm or <code>null</code>.
+     * @return <code>true</code> if the signature of the root is valid and the file has the signed content.
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    boolean verifyChunked(Path file, ChunkedSignature chunkedSignature, String signatureAlgorithm,
+            AlgorithmParameterSpec algorithmParameterSpec) throws IOException;
+
+    /**
+     * Verifies the signature of the root of a chunked signature. The chunks can be verified with
+     * {@link ChunkedSignature#verifyChunk(int, java.nio.ByteBuffer, MerkleProof)} afterwards.
+     *
+     * @param chunkedSignature
+     *            the signature to verify.
+     * @param signatureAlgorithm
+     *            the algorithm of the signature.
+     * @param algorithmParameterSpec
+     *            the parameters of the signature algorithm or <code>null</code>.
+     * @return <code>true</code> if the signature is valid.
+     */
+    boolean verifyRoot(ChunkedSignature chunkedSignature, String signatureAlgorithm,
+            AlgorithmParameterSpec algorithmParameterSpec);
+
+}
@@ -0,0 +1,102 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * Helper methods to read the configuration properties of the components.
+ */
+final class ComponentPropertyUtil {
+
+    static boolean getBooleanProperty(final Map<String, Object> componentProperties, final String propertyName,
+            final boolean defaultValue) throws ConfigurationException {
+        Object value = componentProperties.get(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean) value).booleanValue();
+        }
+        String stringValue = String.valueOf(value).trim();
+        if ("true".equalsIgnoreCase(stringValue)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(stringValue)) {
+            return false;
+        }
+        throw new ConfigurationException(propertyName, "not a valid boolean [" + value + "]");
+    }
+
+    static int getIntProperty(final Map<String, Object> componentProperties, final String propertyName,
+            final int defaultValue) throws ConfigurationException {
+        Object value = componentProperties.get(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(String.valueOf(value).trim());
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException(propertyName, "not a valid integer [" + value + "]", e);
+        }
+    }
+
+    /**
+     * Returns the values of a multi-value property. Single string values are split at commas. Empty values are
+     * skipped.
+     */
+    static List<String> getStringListProperty(final Map<String, Object> componentProperties,
+            final String propertyName) {
+        Object value = componentProperties.get(propertyName);
+        List<String> result = new ArrayList<>();
+        if (value == null) {
+            return result;
+        }
+        Object[] values;
+        if (value instanceof Object[]) {
+            values = (Object[]) value;
+        } else if (value instanceof Collection) {
+            values = ((Collection<?>) value).toArray();
+        } else {
+            values = String.valueOf(value).split(",");
+        }
+        for (Object element : values) {
+            String stringValue = String.valueOf(element).trim();
+            if ((element != null) && !stringValue.isEmpty()) {
+                result.add(stringValue);
+            }
+        }
+        return result;
+    }
+
+    private ComponentPropertyUtil() {
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Helper methods to wrap precomputed digests for the raw (<code>NONEwith...</code>) signature algorithms.
+ */
+final class DigestInfoUtil {
+
+    /**
+     * The DER encoded DigestInfo prefixes of PKCS#1 v1.5 signatures by normalized digest algorithm names. The
+     * prefix is followed by the digest itself.
+     */
+    private static final Map<String, byte[]> DIGEST_INFO_PREFIXES = new HashMap<>();
+
+    static {
+        DIGEST_INFO_PREFIXES.put("SHA1", toBytes(0x30, 0x21, 0x30, 0x09, 0x06, 0x05, 0x2b, 0x0e, 0x03, 0x02, 0x1a,
+                0x05, 0x00, 0x04, 0x14));
+        DIGEST_INFO_PREFIXES.put("SHA224", toBytes(0x30, 0x2d, 0x30, 0x0d, 0x06, 0x09, 0x60, 0x86, 0x48, 0x01, 0x65,
+                0x03, 0x04, 0x02, 0x04, 0x05, 0x00, 0x04, 0x1c));
+        DIGEST_INFO_PREFIXES.put("SHA256", toBytes(0x30, 0x31, 0x30, 0x0d, 0x06, 0x09, 0x60, 0x86, 0x48, 0x01, 0x65,
+                0x03, 0x04, 0x02, 0x01, 0x05, 0x00, 0x04, 0x20));
+        DIGEST_INFO_PREFIXES.put("SHA384", toBytes(0x30, 0x41, 0x30, 0x0d, 0x06, 0x09, 0x60, 0x86, 0x48, 0x01, 0x65,
+                0x03, 0x04, 0x02, 0x02, 0x05, 0x00, 0x04, 0x30));
+        DIGEST_INFO_PREFIXES.put("SHA512", toBytes(0x30, 0x51, 0x30, 0x0d, 0x06, 0x09, 0x60, 0x86, 0x48, 0x01, 0x65,
+                0x03, 0x04, 0x02, 0x03, 0x05, 0x00, 0x04, 0x40));
+    }
+
+    /**
+     * Returns the name of the raw signature algorithm that can be used with the given key algorithm.
+     *
+     * @throws SignerException
+     *             if the key algorithm is not supported.
+     */
+    static String getRawSignatureAlgorithm(final String keyAlgorithm) {
+        if ("RSA".equalsIgnoreCase(keyAlgorithm)) {
+            return "NONEwithRSA";
+        }
+        if ("EC".equalsIgnoreCase(keyAlgorithm) || "ECDSA".equalsIgnoreCase(keyAlgorithm)) {
+            return "NONEwithECDSA";
+        }
+        throw new SignerException("signing precomputed digests is not supported with " + keyAlgorithm + " keys");
+    }
+
+    private static byte[] getPrefix(final String digestAlgorithm, final byte[] digest) {
+        String normalizedName = digestAlgorithm.replace("-", "").toUpperCase(Locale.ENGLISH);
+        byte[] prefix = DIGEST_INFO_PREFIXES.get(normalizedName);
+        if (prefix == null) {
+            throw new SignerException("unsupported digest algorithm [" + digestAlgorithm + "]");
+        }
+        if ((prefix[prefix.length - 1]) != digest.length) {
+            throw new SignerException("the length of the digest [" + digest.length
+                    + "] does not match the digest algorithm [" + digestAlgorithm + "]");
+        }
+        return prefix;
+    }
+
+    private static byte[] toBytes(final int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the data that has to be passed to the raw signature algorithm of the key.
+     *
+     * @throws SignerException
+     *             if the digest algorithm is not supported or the length of the digest does not match it.
+     */
+    static byte[] wrapDigest(final String keyAlgorithm, final String digestAlgorithm, final byte[] digest) {
+        byte[] prefix = getPrefix(digestAlgorithm, digest);
+        if (!"RSA".equalsIgnoreCase(keyAlgorithm)) {
+            return digest;
+        }
+        byte[] result = new byte[prefix.length + digest.length];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(digest, 0, result, prefix.length, digest.length);
+        return result;
+    }
+
+    private DigestInfoUtil() {
+    }
+
+}
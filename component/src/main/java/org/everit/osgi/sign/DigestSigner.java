@@ -0,0 +1,65 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.SecureRandom;
+
+/**
+ * Signs and verifies digests that are computed by the caller, so only the private or public key operation is
+ * executed by the signer. The signatures are the same as the ones created by the corresponding
+ * <code>&lt;digest&gt;with&lt;key algorithm&gt;</code> signature algorithm from the original data, e.g. a SHA-256
+ * digest signed with an RSA key can be verified with <code>SHA256withRSA</code>.
+ *
+ * <p>
+ * RSA keys use the PKCS#1 v1.5 encoding (<code>NONEwithRSA</code> with a DigestInfo structure) and EC keys use
+ * <code>NONEwithECDSA</code>. The supported digest algorithms are SHA-1, SHA-224, SHA-256, SHA-384 and SHA-512.
+ * </p>
+ */
+public interface DigestSigner {
+
+    /**
+     * Signs a precomputed digest.
+     *
+     * @param digest
+     *            the digest of the data.
+     * @param digestAlgorithm
+     *            the algorithm that computed the digest, e.g. <code>SHA-256</code>.
+     * @param secureRandom
+     *            the source of randomness or <code>null</code> to use the default.
+     * @return the signature bytes.
+     */
+    byte[] signDigest(byte[] digest, String digestAlgorithm, SecureRandom secureRandom);
+
+    /**
+     * Verifies the signature of a precomputed digest.
+     *
+     * @param digest
+     *            the digest of the data.
+     * @param signatureBytes
+     *            the signature to verify.
+     * @param digestAlgorithm
+     *            the algorithm that computed the digest, e.g. <code>SHA-256</code>.
+     * @return <code>true</code> if the signature is valid.
+     */
+    boolean verifyDigest(byte[] digest, byte[] signatureBytes, String digestAlgorithm);
+
+}
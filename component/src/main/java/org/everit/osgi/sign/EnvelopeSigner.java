@@ -0,0 +1,84 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * Signs into and verifies a self-describing {@link SignatureEnvelope}. The envelope identifies the algorithm, the
+ * parameters and the public key, so the verifier does not need to know them in advance.
+ */
+public interface EnvelopeSigner {
+
+    /**
+     * Signs the data and wraps the signature into an envelope.
+     *
+     * @param data
+     *            the data to sign.
+     * @param signatureAlgorithm
+     *            the algorithm of the signature, it must have an id in the envelope format.
+     * @param algorithmParameterSpec
+     *            the parameters of the signature algorithm or <code>null</code>. Only RSASSA-PSS parameters are
+     *            supported.
+     * @param secureRandom
+     *            the source of randomness or <code>null</code> to use the default.
+     * @return the encoded envelope.
+     * @throws SignerException
+     *             if the signature cannot be created or represented in an envelope.
+     */
+    byte[] signToEnvelope(byte[] data, String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec,
+            SecureRandom secureRandom);
+
+    /**
+     * Verifies the data with the envelope that starts at the position of the buffer. The envelope is read in
+     * place, the position of the buffer is not changed.
+     *
+     * @return <code>true</code> if the signature is valid, <code>false</code> if it is invalid or the signer does
+     *         not know the key id of the envelope.
+     * @throws SignerException
+     *             if the envelope is malformed.
+     */
+    boolean verifyEnvelope(byte[] data, ByteBuffer envelope);
+
+    /**
+     * Verifies the data with an envelope that is already wrapped by a view. Callers that verify many envelopes
+     * can reuse one view per thread.
+     *
+     * @return <code>true</code> if the signature is valid, <code>false</code> if it is invalid or the signer does
+     *         not know the key id of the envelope.
+     */
+    boolean verifyEnvelope(byte[] data, SignatureEnvelope envelope);
+
+    /**
+     * Verifies the data with the envelope that starts at the position of the buffer like
+     * {@link #verifyEnvelope(byte[], ByteBuffer)}, but reports a malformed envelope or signature with a result
+     * instead of an exception. An envelope of a key that the signer does not know is
+     * {@link VerificationResult#UNSUPPORTED}.
+     *
+     * @throws SignerException
+     *             only if the signer is not active or not configured for verification.
+     */
+    VerificationResult verifyEnvelopeWithResult(byte[] data, ByteBuffer envelope);
+
+}
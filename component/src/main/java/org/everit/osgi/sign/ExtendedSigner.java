@@ -0,0 +1,175 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * {@link Signer} with streaming, file, buffer, batch and default algorithm operations. The operations are kept out
+ * of {@link Signer}, so the implementations of that interface remain compatible.
+ */
+public interface ExtendedSigner extends Signer {
+
+    /**
+     * Creates an {@link OutputStream} decorator that signs the data while it is written to the given stream.
+     */
+    SigningOutputStream createSigningOutputStream(OutputStream out,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Signs the data with the default algorithm and parameters of the signer. The algorithm is resolved and
+     * checked against the key when the signer is configured, not on every call.
+     *
+     * @throws SignerException
+     *             if no default algorithm is configured.
+     */
+    byte[] sign(byte[] data);
+
+    /**
+     * Signs a range of the array without copying it.
+     */
+    byte[] sign(byte[] data, int offset, int length,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Signs the remaining bytes of the buffer without copying them. Direct buffers are passed to the provider as
+     * they are. The position and the limit of the buffer are not changed.
+     */
+    byte[] sign(ByteBuffer data,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Signs the remaining bytes of the segments as one message, as if the segments were concatenated in their
+     * order, e.g. the header and the body of a network message. The segments are not copied and their positions
+     * and limits are not changed.
+     */
+    byte[] sign(ByteBuffer[] segments,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Signs the content of the stream. The stream is read in fixed size chunks until its end, but it is not closed.
+     */
+    byte[] sign(InputStream inputStream,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom)
+            throws IOException;
+
+    /**
+     * Signs the content of the file. The file is mapped into memory in windows, so its content is not copied to
+     * the heap.
+     */
+    byte[] sign(Path file,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom)
+            throws IOException;
+
+    /**
+     * Signs the content of the channel. The channel is read in fixed size chunks until its end, but it is not
+     * closed.
+     */
+    byte[] sign(ReadableByteChannel channel,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom)
+            throws IOException;
+
+    /**
+     * Signs many payloads with the same algorithm. One initialized signature is reused for all payloads that are
+     * processed by the same worker and the batch may be split between several workers depending on the
+     * configuration of the signer.
+     *
+     * @return the signatures in the order of the payloads.
+     */
+    List<byte[]> signBatch(List<byte[]> payloads,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Verifies the signature of the data with the default algorithm and parameters of the signer.
+     *
+     * @throws SignerException
+     *             if no default algorithm is configured.
+     */
+    boolean verify(byte[] data, byte[] signatureBytes);
+
+    /**
+     * Verifies the signature of a range of the array without copying it.
+     */
+    boolean verify(byte[] data, int offset, int length, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec);
+
+    /**
+     * Verifies the signature of the remaining bytes of the buffer without copying them. The position and the limit
+     * of the buffer are not changed.
+     */
+    boolean verify(ByteBuffer data, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec);
+
+    /**
+     * Verifies the signature of the remaining bytes of the segments as one message, as if the segments were
+     * concatenated in their order. The segments are not copied and their positions and limits are not changed.
+     */
+    boolean verify(ByteBuffer[] segments, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec);
+
+    /**
+     * Verifies the signature of the content of the stream. The stream is read in fixed size chunks until its end,
+     * but it is not closed.
+     */
+    boolean verify(InputStream inputStream, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec) throws IOException;
+
+    /**
+     * Verifies the signature of the content of the file. The file is mapped into memory in windows, so its content
+     * is not copied to the heap.
+     */
+    boolean verify(Path file, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec) throws IOException;
+
+    /**
+     * Verifies the signature of the content of the channel. The channel is read in fixed size chunks until its
+     * end, but it is not closed.
+     */
+    boolean verify(ReadableByteChannel channel, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec) throws IOException;
+
+    /**
+     * Verifies many signatures with the same algorithm. The batch may be split between several workers depending
+     * on the configuration of the signer. Malformed signatures are reported as invalid ones.
+     *
+     * @param data
+     *            the signed data.
+     * @param signatures
+     *            the signatures in the order of the data.
+     * @param allOrNothing
+     *            if <code>true</code>, the verification of the remaining items is cancelled as soon as one invalid
+     *            signature is found. In that case the bits of the cancelled items are not set either.
+     * @return a bit set that has the bit of each item with a valid signature set.
+     */
+    BitSet verifyBatch(List<byte[]> data, List<byte[]> signatures,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec, boolean allOrNothing);
+
+}
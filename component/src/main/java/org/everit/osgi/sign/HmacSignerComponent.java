@@ -0,0 +1,475 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.security.UnrecoverableKeyException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * {@link ExtendedSigner} that computes and verifies message authentication codes with a secret key of a
+ * {@link KeyStore} service. It is meant for services that trust each other and share the key, where an HMAC is orders
+ * of magnitude cheaper than an asymmetric signature. The signature algorithm of the methods is a MAC algorithm, e.g.
+ * <code>HmacSHA256</code> or <code>HmacSHA512</code>. MACs are deterministic, so the passed {@link SecureRandom} is
+ * ignored, and they do not take parameters. Verification compares the codes in constant time.
+ */
+@Component(metatype = true, configurationFactory = true, policy = ConfigurationPolicy.REQUIRE)
+@Properties({
+        @Property(name = PropertyName.KEY_STORE_TARGET),
+        @Property(name = PropertyName.PROVIDER_TARGET),
+        @Property(name = PropertyName.SECRET_KEY_ALIAS),
+        @Property(name = PropertyName.SECRET_KEY_PASSWORD, passwordValue = ""),
+        @Property(name = PropertyName.DEFAULT_SIGNATURE_ALGORITHM,
+                value = HmacSignerComponent.DEFAULT_MAC_ALGORITHM),
+        @Property(name = PropertyName.SIGNATURE_POOL_SIZE, intValue = SignerComponent.DEFAULT_SIGNATURE_POOL_SIZE)
+})
+@Service
+public class HmacSignerComponent implements Signer, ExtendedSigner, ResultVerifier {
+
+    /**
+     * The MAC pool and the default algorithm of the current configuration.
+     */
+    private static final class State {
+
+        private final MacPool macPool;
+
+        private final String defaultAlgorithm;
+
+        State(final MacPool macPool, final String defaultAlgorithm) {
+            this.macPool = macPool;
+            this.defaultAlgorithm = defaultAlgorithm;
+        }
+
+    }
+
+    public static final String DEFAULT_MAC_ALGORITHM = "HmacSHA256";
+
+    @Reference(bind = "bindKeyStore", unbind = "unbindKeyStore", updated = "updatedKeyStore",
+            policy = ReferencePolicy.DYNAMIC)
+    private volatile KeyStore keyStore;
+
+    @Reference(bind = "bindProvider", unbind = "unbindProvider", policy = ReferencePolicy.DYNAMIC)
+    private volatile Provider provider;
+
+    /**
+     * The configuration of the active component or <code>null</code> if the component is not active. Guarded by
+     * <code>this</code>.
+     */
+    private Map<String, Object> componentProperties;
+
+    private volatile State state;
+
+    @Activate
+    public void activate(final Map<String, Object> componentProperties) throws ConfigurationException {
+        synchronized (this) {
+            state = createState(keyStore, provider, componentProperties);
+            this.componentProperties = componentProperties;
+        }
+    }
+
+    public void bindKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    public void bindProvider(final Provider provider) {
+        synchronized (this) {
+            this.provider = provider;
+            reload();
+        }
+    }
+
+    private Mac borrow(final MacPool macPool, final String algorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        if (algorithmParameterSpec != null) {
+            throw new SignerException("MAC algorithms do not take parameters");
+        }
+        try {
+            return macPool.borrow(algorithm);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new SignerException("failed to initialize MAC [" + algorithm + "]", e);
+        }
+    }
+
+    private State createState(final KeyStore keyStore, final Provider provider,
+            final Map<String, Object> componentProperties) throws ConfigurationException {
+        if ((keyStore == null) || (provider == null)) {
+            throw new ConfigurationException(null, "the keystore or the provider is not bound");
+        }
+        Object aliasValue = componentProperties.get(PropertyName.SECRET_KEY_ALIAS);
+        if (aliasValue == null) {
+            throw new ConfigurationException(PropertyName.SECRET_KEY_ALIAS, "not defined");
+        }
+        String secretKeyAlias = String.valueOf(aliasValue);
+        Object passwordValue = componentProperties.get(PropertyName.SECRET_KEY_PASSWORD);
+        char[] secretKeyPassword = (passwordValue != null) ? String.valueOf(passwordValue).toCharArray()
+                : new char[0];
+        Key key;
+        try {
+            key = keyStore.getKey(secretKeyAlias, secretKeyPassword);
+        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+            throw new ConfigurationException(PropertyName.SECRET_KEY_ALIAS,
+                    "failed to load secret key [" + secretKeyAlias + "]", e);
+        }
+        if (!(key instanceof SecretKey)) {
+            throw new ConfigurationException(PropertyName.SECRET_KEY_ALIAS,
+                    "secret key [" + secretKeyAlias + "] not found in the keystore");
+        }
+        int poolSize = ComponentPropertyUtil.getIntProperty(componentProperties, PropertyName.SIGNATURE_POOL_SIZE,
+                SignerComponent.DEFAULT_SIGNATURE_POOL_SIZE);
+        Object algorithmValue = componentProperties.get(PropertyName.DEFAULT_SIGNATURE_ALGORITHM);
+        String defaultAlgorithm = ((algorithmValue != null) && !String.valueOf(algorithmValue).trim().isEmpty())
+                ? String.valueOf(algorithmValue).trim() : DEFAULT_MAC_ALGORITHM;
+
+        MacPool macPool = new MacPool(provider, (SecretKey) key, poolSize);
+        try {
+            macPool.release(defaultAlgorithm, macPool.borrow(defaultAlgorithm));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new ConfigurationException(PropertyName.DEFAULT_SIGNATURE_ALGORITHM,
+                    "MAC [" + defaultAlgorithm + "] is not available with the secret key", e);
+        }
+        return new State(macPool, defaultAlgorithm);
+    }
+
+    @Override
+    public SigningOutputStream createSigningOutputStream(final OutputStream out, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        MacPool macPool = getState().macPool;
+        Mac mac = borrow(macPool, signatureAlgorithm, algorithmParameterSpec);
+        return new SigningOutputStream(out, SignatureSink.of(mac, macPool, signatureAlgorithm));
+    }
+
+    @Deactivate
+    public void deactivate() {
+        synchronized (this) {
+            componentProperties = null;
+            state = null;
+        }
+    }
+
+    private State getState() {
+        State result = state;
+        if (result == null) {
+            throw new SignerException("signer not available, the component is not active");
+        }
+        return result;
+    }
+
+    private byte[] mac(final State currentState, final SignatureInput signatureInput, final String algorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) throws IOException {
+        MacPool macPool = currentState.macPool;
+        Mac mac = borrow(macPool, algorithm, algorithmParameterSpec);
+        SignatureSink sink = SignatureSink.of(mac, macPool, algorithm);
+        try {
+            signatureInput.update(sink);
+            return sink.finish();
+        } catch (SignatureException e) {
+            // A MAC does not throw it
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    private byte[] macInMemory(final SignatureInput signatureInput, final String algorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        try {
+            return mac(getState(), signatureInput, algorithm, algorithmParameterSpec);
+        } catch (IOException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    @Modified
+    public void modified(final Map<String, Object> componentProperties) throws ConfigurationException {
+        synchronized (this) {
+            state = createState(keyStore, provider, componentProperties);
+            this.componentProperties = componentProperties;
+        }
+    }
+
+    /**
+     * Loads the secret key again if the component is active, so it is used with the currently bound services.
+     */
+    private void reload() {
+        if ((componentProperties == null) || (keyStore == null) || (provider == null)) {
+            return;
+        }
+        try {
+            state = createState(keyStore, provider, componentProperties);
+        } catch (ConfigurationException e) {
+            throw new SignerException("failed to reload the key material, the previous one is still used", e);
+        }
+    }
+
+    @Override
+    public byte[] sign(final byte[] data) {
+        State currentState = getState();
+        try {
+            return mac(currentState, SignatureInput.of(data), currentState.defaultAlgorithm, null);
+        } catch (IOException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    @Override
+    public byte[] sign(final byte[] data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return macInMemory(SignatureInput.of(data), signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public byte[] sign(final byte[] data, final int offset, final int length, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return macInMemory(SignatureInput.of(data, offset, length), signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return macInMemory(SignatureInput.of(data), signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer[] segments, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return macInMemory(SignatureInput.of(segments), signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public byte[] sign(final InputStream inputStream, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return mac(getState(), SignatureInput.of(inputStream), signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public byte[] sign(final Path file, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return mac(getState(), SignatureInput.of(file), signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public byte[] sign(final ReadableByteChannel channel, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return mac(getState(), SignatureInput.of(channel), signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public List<byte[]> signBatch(final List<byte[]> payloads, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        MacPool macPool = getState().macPool;
+        Mac mac = borrow(macPool, signatureAlgorithm, algorithmParameterSpec);
+        List<byte[]> results = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            results.add(mac.doFinal(payload));
+        }
+        macPool.release(signatureAlgorithm, mac);
+        return results;
+    }
+
+    public void unbindKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            if (this.keyStore == keyStore) {
+                this.keyStore = null;
+            }
+        }
+    }
+
+    public void unbindProvider(final Provider provider) {
+        synchronized (this) {
+            if (this.provider == provider) {
+                this.provider = null;
+            }
+        }
+    }
+
+    /**
+     * Loads the secret key again when the properties of the keystore service change, for example after the
+     * keystore file is modified.
+     */
+    public void updatedKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes) {
+        State currentState = getState();
+        try {
+            return MessageDigest.isEqual(
+                    mac(currentState, SignatureInput.of(data), currentState.defaultAlgorithm, null), signatureBytes);
+        } catch (IOException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verifyInMemory(SignatureInput.of(data), signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final int offset, final int length, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verifyInMemory(SignatureInput.of(data, offset, length), signatureBytes, signatureAlgorithm,
+                algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verifyInMemory(SignatureInput.of(data), signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer[] segments, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verifyInMemory(SignatureInput.of(segments), signatureBytes, signatureAlgorithm,
+                algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final InputStream inputStream, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return MessageDigest.isEqual(
+                mac(getState(), SignatureInput.of(inputStream), signatureAlgorithm, algorithmParameterSpec),
+                signatureBytes);
+    }
+
+    @Override
+    public boolean verify(final Path file, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) throws IOException {
+        return MessageDigest.isEqual(
+                mac(getState(), SignatureInput.of(file), signatureAlgorithm, algorithmParameterSpec),
+                signatureBytes);
+    }
+
+    @Override
+    public boolean verify(final ReadableByteChannel channel, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return MessageDigest.isEqual(
+                mac(getState(), SignatureInput.of(channel), signatureAlgorithm, algorithmParameterSpec),
+                signatureBytes);
+    }
+
+    @Override
+    public BitSet verifyBatch(final List<byte[]> data, final List<byte[]> signatures,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final boolean allOrNothing) {
+        if (data.size() != signatures.size()) {
+            throw new IllegalArgumentException("the number of data [" + data.size()
+                    + "] and signatures [" + signatures.size() + "] differ");
+        }
+        MacPool macPool = getState().macPool;
+        Mac mac = borrow(macPool, signatureAlgorithm, algorithmParameterSpec);
+        BitSet results = new BitSet(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            if (MessageDigest.isEqual(mac.doFinal(data.get(i)), signatures.get(i))) {
+                results.set(i);
+            } else if (allOrNothing) {
+                break;
+            }
+        }
+        macPool.release(signatureAlgorithm, mac);
+        return results;
+    }
+
+    @Override
+    public VerificationResult verifyWithResult(final byte[] data, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        MacPool macPool = getState().macPool;
+        if (signatureBytes == null) {
+            return VerificationResult.MALFORMED;
+        }
+        if (algorithmParameterSpec != null) {
+            return VerificationResult.UNSUPPORTED;
+        }
+        Mac mac;
+        try {
+            mac = macPool.borrow(signatureAlgorithm);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            return VerificationResult.UNSUPPORTED;
+        }
+        if (signatureBytes.length != mac.getMacLength()) {
+            macPool.release(signatureAlgorithm, mac);
+            return VerificationResult.MALFORMED;
+        }
+        boolean valid = MessageDigest.isEqual(mac.doFinal(data), signatureBytes);
+        macPool.release(signatureAlgorithm, mac);
+        return valid ? VerificationResult.VALID : VerificationResult.INVALID;
+    }
+
+    /**
+     * Verifies the code of data that is in memory, so reading it cannot fail with an {@link IOException}.
+     */
+    private boolean verifyInMemory(final SignatureInput signatureInput, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        try {
+            return MessageDigest.isEqual(
+                    mac(getState(), signatureInput, signatureAlgorithm, algorithmParameterSpec), signatureBytes);
+        } catch (IOException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Checks the digests of a range of the entries of a JAR file. Ranges that are larger than the threshold are split
+ * in two and checked in parallel, smaller ranges are checked with a {@link ZipFile} of their own, so the workers
+ * do not share the inflater of one file. The first mismatch stops the processing of all ranges.
+ */
+final class JarEntryDigestTask extends RecursiveAction {
+
+    /**
+     * The digest of an entry as it is recorded in the manifest.
+     */
+    static final class EntryDigest {
+
+        private final String name;
+
+        private final String digestAlgorithm;
+
+        private final byte[] digest;
+
+        EntryDigest(final String name, final String digestAlgorithm, final byte[] digest) {
+            this.name = name;
+            this.digestAlgorithm = digestAlgorithm;
+            this.digest = digest;
+        }
+
+    }
+
+    private static final long serialVersionUID = 2747352826196396548L;
+
+    private final File jarFile;
+
+    private final List<EntryDigest> entryDigests;
+
+    private final int from;
+
+    private final int to;
+
+    private final int threshold;
+
+    private final AtomicReference<String> failureReason;
+
+    private final AtomicReference<IOException> ioException;
+
+    JarEntryDigestTask(final File jarFile, final List<EntryDigest> entryDigests, final int from, final int to,
+            final int threshold, final AtomicReference<String> failureReason,
+            final AtomicReference<IOException> ioException) {
+        this.jarFile = jarFile;
+        this.entryDigests = entryDigests;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+        this.failureReason = failureReason;
+        this.ioException = ioException;
+    }
+
+    private void check(final ZipFile zipFile, final EntryDigest entryDigest, final MessageDigest messageDigest,
+            final byte[] buffer) throws IOException {
+        ZipEntry zipEntry = zipFile.getEntry(entryDigest.name);
+        if (zipEntry == null) {
+            failureReason.compareAndSet(null, "entry [" + entryDigest.name + "] not found");
+            return;
+        }
+        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            int read = inputStream.read(buffer);
+            while (read >= 0) {
+                messageDigest.update(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+        }
+        if (!MessageDigest.isEqual(entryDigest.digest, messageDigest.digest())) {
+            failureReason.compareAndSet(null, "the digest of entry [" + entryDigest.name
+                    + "] does not match the manifest");
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (isFailed()) {
+            return;
+        }
+        if ((to - from) > threshold) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new JarEntryDigestTask(jarFile, entryDigests, from, middle, threshold, failureReason,
+                    ioException),
+                    new JarEntryDigestTask(jarFile, entryDigests, middle, to, threshold, failureReason,
+                            ioException));
+            return;
+        }
+        Map<String, MessageDigest> messageDigests = new HashMap<>();
+        byte[] buffer = new byte[SignatureInput.BUFFER_SIZE];
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            for (int i = from; (i < to) && !isFailed(); i++) {
+                EntryDigest entryDigest = entryDigests.get(i);
+                MessageDigest messageDigest = messageDigests.get(entryDigest.digestAlgorithm);
+                if (messageDigest == null) {
+                    messageDigest = MessageDigest.getInstance(entryDigest.digestAlgorithm);
+                    messageDigests.put(entryDigest.digestAlgorithm, messageDigest);
+                }
+                check(zipFile, entryDigest, messageDigest, buffer);
+            }
+        } catch (IOException e) {
+            ioException.compareAndSet(null, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignerException("digest algorithm is not available", e);
+        }
+    }
+
+    private boolean isFailed() {
+        return (failureReason.get() != null) || (ioException.get() != null);
+    }
+
+}
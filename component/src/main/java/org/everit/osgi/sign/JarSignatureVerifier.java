@@ -0,0 +1,584 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Signature;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.CertStore;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Verifies the signatures of JAR files against a set of trusted certificates. The verification follows the rules of
+ * the JAR specification and it is strict: every entry except the directories and the signature related files of
+ * the <code>META-INF</code> directory must be covered by a trusted signer. The signature blocks are verified with
+ * the provider of the verifier or, if it does not support the algorithm, with the installed providers.
+ *
+ * <p>
+ * A signer is trusted if its certificate is one of the trusted certificates or if a PKIX certification path leads
+ * from it through the other certificates of the signature block to a trusted certificate. The path is validated
+ * without revocation checks, so every issuer in it must be a CA that may sign certificates and every certificate
+ * must be valid at the time of the verification.
+ */
+final class JarSignatureVerifier {
+
+    /**
+     * A digest of a manifest or signature file attribute.
+     */
+    private static final class Digest {
+
+        private final String algorithm;
+
+        private final byte[] value;
+
+        Digest(final String algorithm, final byte[] value) {
+            this.algorithm = algorithm;
+            this.value = value;
+        }
+
+    }
+
+    private static final String BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * The supported digest algorithms from the strongest to the weakest. Digests of further algorithms, e.g. MD5,
+     * are ignored.
+     */
+    private static final String[] DIGEST_ALGORITHMS = { "SHA-512", "SHA-384", "SHA-256", "SHA-224", "SHA-1" };
+
+    private static final String META_INF = "META-INF/";
+
+    /**
+     * The minimum number of entries that a worker checks, as every worker opens the file.
+     */
+    private static final int MIN_ENTRIES_PER_TASK = 16;
+
+    private static final String SUFFIX_DIGEST = "-Digest";
+
+    private static final String SUFFIX_DIGEST_MANIFEST = "-Digest-Manifest";
+
+    private static final String SUFFIX_DIGEST_MAIN_ATTRIBUTES = "-Digest-Manifest-Main-Attributes";
+
+    private static final String[] SIGNATURE_BLOCK_EXTENSIONS = { ".RSA", ".DSA", ".EC" };
+
+    static byte[] computeTrustFingerprint(final List<X509Certificate> trustedCertificates) {
+        try {
+            List<ByteBuffer> fingerprints = new ArrayList<>(trustedCertificates.size());
+            for (X509Certificate certificate : trustedCertificates) {
+                fingerprints.add(ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(
+                        certificate.getEncoded())));
+            }
+            Collections.sort(fingerprints);
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            for (ByteBuffer fingerprint : fingerprints) {
+                messageDigest.update(fingerprint);
+            }
+            return messageDigest.digest();
+        } catch (GeneralSecurityException e) {
+            throw new SignerException("failed to compute the fingerprint of the trusted certificates", e);
+        }
+    }
+
+    private static MessageDigest createMessageDigest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignerException("digest algorithm [" + algorithm + "] is not available", e);
+        }
+    }
+
+    /**
+     * Decodes a base64 value of a manifest attribute.
+     *
+     * @return the bytes or <code>null</code> if the value is not valid base64.
+     */
+    private static byte[] decodeBase64(final String value) {
+        String trimmed = value.trim();
+        if ((trimmed.length() % 4) != 0) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((trimmed.length() / 4) * 3);
+        for (int i = 0; i < trimmed.length(); i += 4) {
+            int bits = 0;
+            int padding = 0;
+            for (int j = 0; j < 4; j++) {
+                char c = trimmed.charAt(i + j);
+                int sextet = BASE64_ALPHABET.indexOf(c);
+                if ((c == '=') && ((i + 4) == trimmed.length()) && (j >= 2)) {
+                    padding++;
+                    sextet = 0;
+                } else if ((sextet < 0) || (padding > 0)) {
+                    return null;
+                }
+                bits = (bits << 6) | sextet;
+            }
+            out.write(bits >> 16);
+            if (padding < 2) {
+                out.write(bits >> 8);
+            }
+            if (padding < 1) {
+                out.write(bits);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the digest of the strongest supported algorithm from the attributes with a suffix, e.g.
+     * <code>SHA-256-Digest</code>.
+     *
+     * @return the digest or <code>null</code> if there is no digest of a supported algorithm.
+     */
+    private static Digest findDigest(final Attributes attributes, final String suffix) {
+        int bestRank = DIGEST_ALGORITHMS.length;
+        Object bestValue = null;
+        for (Map.Entry<Object, Object> attribute : attributes.entrySet()) {
+            String name = attribute.getKey().toString();
+            if ((name.length() <= suffix.length())
+                    || !name.regionMatches(true, name.length() - suffix.length(), suffix, 0, suffix.length())) {
+                continue;
+            }
+            String algorithm = name.substring(0, name.length() - suffix.length()).toUpperCase(Locale.ENGLISH);
+            if ("SHA1".equals(algorithm)) {
+                algorithm = "SHA-1";
+            }
+            for (int rank = 0; rank < bestRank; rank++) {
+                if (DIGEST_ALGORITHMS[rank].equals(algorithm)) {
+                    bestRank = rank;
+                    bestValue = attribute.getValue();
+                }
+            }
+        }
+        if (bestValue == null) {
+            return null;
+        }
+        return new Digest(DIGEST_ALGORITHMS[bestRank], decodeBase64(String.valueOf(bestValue)));
+    }
+
+    private static String getDigestAlgorithm(final String oid) {
+        switch (oid) {
+        case "1.3.14.3.2.26":
+            return "SHA-1";
+        case "2.16.840.1.101.3.4.2.4":
+            return "SHA-224";
+        case "2.16.840.1.101.3.4.2.1":
+            return "SHA-256";
+        case "2.16.840.1.101.3.4.2.2":
+            return "SHA-384";
+        case "2.16.840.1.101.3.4.2.3":
+            return "SHA-512";
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the name of the signature algorithm of a signer. The signature algorithm identifier is either a key
+     * algorithm, which is combined with the digest algorithm, or a complete signature algorithm.
+     */
+    private static String getSignatureAlgorithm(final String digestAlgorithm, final String oid) {
+        String digestName = digestAlgorithm.replace("-", "");
+        switch (oid) {
+        case "1.2.840.113549.1.1.1":
+            return digestName + "withRSA";
+        case "1.2.840.10040.4.1":
+            return digestName + "withDSA";
+        case "1.2.840.10045.2.1":
+            return digestName + "withECDSA";
+        case "1.2.840.113549.1.1.5":
+            return "SHA1withRSA";
+        case "1.2.840.113549.1.1.14":
+            return "SHA224withRSA";
+        case "1.2.840.113549.1.1.11":
+            return "SHA256withRSA";
+        case "1.2.840.113549.1.1.12":
+            return "SHA384withRSA";
+        case "1.2.840.113549.1.1.13":
+            return "SHA512withRSA";
+        case "1.2.840.10040.4.3":
+            return "SHA1withDSA";
+        case "2.16.840.1.101.3.4.3.1":
+            return "SHA224withDSA";
+        case "2.16.840.1.101.3.4.3.2":
+            return "SHA256withDSA";
+        case "1.2.840.10045.4.1":
+            return "SHA1withECDSA";
+        case "1.2.840.10045.4.3.1":
+            return "SHA224withECDSA";
+        case "1.2.840.10045.4.3.2":
+            return "SHA256withECDSA";
+        case "1.2.840.10045.4.3.3":
+            return "SHA384withECDSA";
+        case "1.2.840.10045.4.3.4":
+            return "SHA512withECDSA";
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether an entry is a directory or a file of the <code>META-INF</code> directory that belongs to the
+     * signatures, so it is not covered by them.
+     */
+    private static boolean isUnsignable(final String name) {
+        if (name.endsWith("/")) {
+            return true;
+        }
+        if (!name.startsWith(META_INF) || (name.indexOf('/', META_INF.length()) >= 0)) {
+            return false;
+        }
+        String fileName = name.substring(META_INF.length()).toUpperCase(Locale.ENGLISH);
+        if ("MANIFEST.MF".equals(fileName) || "INDEX.LIST".equals(fileName) || fileName.startsWith("SIG-")
+                || fileName.endsWith(".SF")) {
+            return true;
+        }
+        for (String extension : SIGNATURE_BLOCK_EXTENSIONS) {
+            if (fileName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(final Digest digest, final byte[] actualValue) {
+        return (digest.value != null) && (actualValue != null) && MessageDigest.isEqual(digest.value, actualValue);
+    }
+
+    private static byte[] read(final ZipFile zipFile, final ZipEntry zipEntry) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                (zipEntry.getSize() > 0) ? (int) Math.min(zipEntry.getSize(), Integer.MAX_VALUE) : 1024);
+        byte[] buffer = new byte[SignatureInput.BUFFER_SIZE];
+        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            int read = inputStream.read(buffer);
+            while (read >= 0) {
+                out.write(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Checks the digests of a signature file against the manifest. If the digest of the whole manifest matches, all
+     * sections of the manifest are signed, otherwise the sections with a matching digest in the signature file.
+     *
+     * @param signedSections
+     *            the names of the signed sections, the method adds the sections that are signed by the signature
+     *            file.
+     * @return the failure reason or <code>null</code> if the signature file matches the manifest.
+     */
+    private static String verifySignatureFile(final Manifest signatureFile, final Manifest manifest,
+            final byte[] manifestBytes, final ManifestSections manifestSections, final Set<String> signedSections) {
+        Attributes mainAttributes = signatureFile.getMainAttributes();
+        Digest manifestDigest = findDigest(mainAttributes, SUFFIX_DIGEST_MANIFEST);
+        if ((manifestDigest != null)
+                && matches(manifestDigest, createMessageDigest(manifestDigest.algorithm).digest(manifestBytes))) {
+            signedSections.addAll(manifest.getEntries().keySet());
+            return null;
+        }
+        Digest mainAttributesDigest = findDigest(mainAttributes, SUFFIX_DIGEST_MAIN_ATTRIBUTES);
+        if ((mainAttributesDigest != null) && !matches(mainAttributesDigest,
+                manifestSections.digestMainSection(createMessageDigest(mainAttributesDigest.algorithm)))) {
+            return "does not match the main attributes of the manifest";
+        }
+        for (Map.Entry<String, Attributes> section : signatureFile.getEntries().entrySet()) {
+            Digest sectionDigest = findDigest(section.getValue(), SUFFIX_DIGEST);
+            if (sectionDigest == null) {
+                continue;
+            }
+            String name = section.getKey();
+            if (!matches(sectionDigest, manifestSections.digestSection(name,
+                    createMessageDigest(sectionDigest.algorithm)))) {
+                return "does not match the manifest section of entry [" + name + "]";
+            }
+            signedSections.add(name);
+        }
+        return null;
+    }
+
+    private final List<X509Certificate> trustedCertificates;
+
+    private final Set<TrustAnchor> trustAnchors;
+
+    private final byte[] trustFingerprint;
+
+    private final Provider provider;
+
+    JarSignatureVerifier(final List<X509Certificate> trustedCertificates, final Provider provider) {
+        this.trustedCertificates = trustedCertificates;
+        this.provider = provider;
+        Set<TrustAnchor> anchors = new HashSet<>();
+        for (X509Certificate trustedCertificate : trustedCertificates) {
+            anchors.add(new TrustAnchor(trustedCertificate, null));
+        }
+        trustAnchors = Collections.unmodifiableSet(anchors);
+        trustFingerprint = computeTrustFingerprint(trustedCertificates);
+    }
+
+    /**
+     * Checks the digests of the entries, in parallel if the pool is available. The digests are checked on the calling
+     * thread if the pool is shut down.
+     *
+     * @return the failure reason or <code>null</code> if all digests match.
+     */
+    private String checkEntryDigests(final File jarFile, final List<JarEntryDigestTask.EntryDigest> entryDigests,
+            final ForkJoinPool pool, final int parallelism) throws IOException {
+        int size = entryDigests.size();
+        int threshold = size;
+        if ((pool != null) && (parallelism > 1)) {
+            threshold = Math.max(MIN_ENTRIES_PER_TASK, (size + parallelism - 1) / parallelism);
+        }
+        AtomicReference<String> failureReason = new AtomicReference<>();
+        AtomicReference<IOException> ioException = new AtomicReference<>();
+        JarEntryDigestTask task = new JarEntryDigestTask(jarFile, entryDigests, 0, size, threshold, failureReason,
+                ioException);
+        if (threshold < size) {
+            try {
+                pool.invoke(task);
+            } catch (RejectedExecutionException e) {
+                // The pool is shut down by the deactivation of the component
+                new JarEntryDigestTask(jarFile, entryDigests, 0, size, size, failureReason, ioException).invoke();
+            }
+        } else {
+            task.invoke();
+        }
+        if (ioException.get() != null) {
+            throw ioException.get();
+        }
+        return failureReason.get();
+    }
+
+    private Signature createSignature(final String algorithm) throws NoSuchAlgorithmException {
+        try {
+            return Signature.getInstance(algorithm, provider);
+        } catch (NoSuchAlgorithmException e) {
+            return Signature.getInstance(algorithm);
+        }
+    }
+
+    byte[] getTrustFingerprint() {
+        return trustFingerprint;
+    }
+
+    /**
+     * Returns whether a certificate is trusted, i.e. it is one of the trusted certificates or a valid PKIX
+     * certification path leads from it to one of them through the other certificates of the signature block.
+     */
+    private boolean isTrusted(final X509Certificate signerCertificate, final List<X509Certificate> certificates) {
+        try {
+            if (trustedCertificates.contains(signerCertificate)) {
+                signerCertificate.checkValidity();
+                return true;
+            }
+            X509CertSelector targetSelector = new X509CertSelector();
+            targetSelector.setCertificate(signerCertificate);
+            PKIXBuilderParameters parameters = new PKIXBuilderParameters(trustAnchors, targetSelector);
+            parameters.setRevocationEnabled(false);
+            parameters.addCertStore(CertStore.getInstance("Collection",
+                    new CollectionCertStoreParameters(certificates)));
+            CertPathBuilder.getInstance("PKIX").build(parameters);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Verifies the signature block of a signature file.
+     *
+     * @return the certificate of the signer.
+     * @throws GeneralSecurityException
+     *             if the signature block does not verify.
+     */
+    private X509Certificate verifyBlock(final byte[] block, final byte[] signatureFile)
+            throws GeneralSecurityException {
+        Pkcs7SignedData signedData;
+        try {
+            signedData = Pkcs7SignedData.parse(block);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException(e.getMessage(), e);
+        }
+        X509Certificate signerCertificate = null;
+        for (Pkcs7SignedData.SignerInfo signerInfo : signedData.getSignerInfos()) {
+            X509Certificate certificate = signedData.findCertificate(signerInfo);
+            if (certificate == null) {
+                throw new GeneralSecurityException("the certificate of the signer is not in the signature block");
+            }
+            String digestAlgorithm = getDigestAlgorithm(signerInfo.getDigestAlgorithmOid());
+            String signatureAlgorithm = (digestAlgorithm != null)
+                    ? getSignatureAlgorithm(digestAlgorithm, signerInfo.getSignatureAlgorithmOid()) : null;
+            if (signatureAlgorithm == null) {
+                throw new NoSuchAlgorithmException("unsupported signature algorithm ["
+                        + signerInfo.getDigestAlgorithmOid() + ", " + signerInfo.getSignatureAlgorithmOid() + "]");
+            }
+            byte[] signedBytes = signatureFile;
+            if (signerInfo.getAuthenticatedAttributes() != null) {
+                byte[] digest = createMessageDigest(digestAlgorithm).digest(signatureFile);
+                if ((signerInfo.getMessageDigest() == null)
+                        || !MessageDigest.isEqual(digest, signerInfo.getMessageDigest())) {
+                    throw new GeneralSecurityException("the message digest of the signer does not match");
+                }
+                signedBytes = signerInfo.getAuthenticatedAttributes();
+            }
+            Signature signature = createSignature(signatureAlgorithm);
+            signature.initVerify(certificate.getPublicKey());
+            signature.update(signedBytes);
+            if (!signature.verify(signerInfo.getSignature())) {
+                throw new GeneralSecurityException("the signature does not match");
+            }
+            if (signerCertificate == null) {
+                signerCertificate = isTrusted(certificate, signedData.getCertificates()) ? certificate : null;
+            }
+        }
+        return signerCertificate;
+    }
+
+    /**
+     * Verifies a JAR file.
+     *
+     * @param fileHash
+     *            the hash of the file that is passed to the result.
+     * @param pool
+     *            the pool that checks the entry digests in parallel or <code>null</code> to check them on the
+     *            calling thread.
+     */
+    JarVerificationResult verify(final File jarFile, final byte[] fileHash, final ForkJoinPool pool,
+            final int parallelism) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            ZipEntry manifestEntry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+            if (manifestEntry == null) {
+                return JarVerificationResult.failed(fileHash, "the JAR file has no manifest");
+            }
+            byte[] manifestBytes = read(zipFile, manifestEntry);
+            Manifest manifest = new Manifest(new ByteArrayInputStream(manifestBytes));
+            ManifestSections manifestSections = ManifestSections.parse(manifestBytes);
+
+            Map<String, ZipEntry> entries = new HashMap<>();
+            List<String> signatureFileNames = new ArrayList<>();
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry zipEntry = zipEntries.nextElement();
+                String name = zipEntry.getName();
+                if (entries.put(name, zipEntry) != null) {
+                    return JarVerificationResult.failed(fileHash, "duplicate entry [" + name + "]");
+                }
+                if (isUnsignable(name) && name.toUpperCase(Locale.ENGLISH).endsWith(".SF")) {
+                    signatureFileNames.add(name);
+                }
+            }
+            if (signatureFileNames.isEmpty()) {
+                return JarVerificationResult.failed(fileHash, "the JAR file is not signed");
+            }
+
+            List<X509Certificate> signerCertificates = new ArrayList<>();
+            Set<String> signedSections = new HashSet<>();
+            for (String signatureFileName : signatureFileNames) {
+                String baseName = signatureFileName.substring(0, signatureFileName.length() - 3);
+                ZipEntry blockEntry = null;
+                for (int i = 0; (i < SIGNATURE_BLOCK_EXTENSIONS.length) && (blockEntry == null); i++) {
+                    blockEntry = entries.get(baseName + SIGNATURE_BLOCK_EXTENSIONS[i]);
+                }
+                if (blockEntry == null) {
+                    return JarVerificationResult.failed(fileHash, "signature file [" + signatureFileName
+                            + "] has no signature block");
+                }
+                byte[] signatureFileBytes = read(zipFile, entries.get(signatureFileName));
+                X509Certificate signerCertificate;
+                try {
+                    signerCertificate = verifyBlock(read(zipFile, blockEntry), signatureFileBytes);
+                } catch (GeneralSecurityException e) {
+                    return JarVerificationResult.failed(fileHash, "signature block [" + blockEntry.getName()
+                            + "] does not verify: " + e.getMessage());
+                }
+                if (signerCertificate == null) {
+                    continue;
+                }
+                Manifest signatureFile = new Manifest(new ByteArrayInputStream(signatureFileBytes));
+                String failureReason = verifySignatureFile(signatureFile, manifest, manifestBytes,
+                        manifestSections, signedSections);
+                if (failureReason != null) {
+                    return JarVerificationResult.failed(fileHash, "signature file [" + signatureFileName + "] "
+                            + failureReason);
+                }
+                signerCertificates.add(signerCertificate);
+            }
+            if (signerCertificates.isEmpty()) {
+                return JarVerificationResult.failed(fileHash, "the JAR file is not signed by a trusted certificate");
+            }
+
+            List<JarEntryDigestTask.EntryDigest> entryDigests = new ArrayList<>();
+            for (String name : entries.keySet()) {
+                if (isUnsignable(name)) {
+                    continue;
+                }
+                Attributes attributes = manifest.getAttributes(name);
+                Digest digest = (attributes != null) ? findDigest(attributes, SUFFIX_DIGEST) : null;
+                if ((digest == null) || !signedSections.contains(name)) {
+                    return JarVerificationResult.failed(fileHash, "entry [" + name + "] is not signed");
+                }
+                if (digest.value == null) {
+                    return JarVerificationResult.failed(fileHash, "the digest of entry [" + name
+                            + "] is malformed");
+                }
+                entryDigests.add(new JarEntryDigestTask.EntryDigest(name, digest.algorithm, digest.value));
+            }
+            String failureReason = checkEntryDigests(jarFile, entryDigests, pool, parallelism);
+            if (failureReason != null) {
+                return JarVerificationResult.failed(fileHash, failureReason);
+            }
+            byte[] manifestDigest = createMessageDigest("SHA-256").digest(manifestBytes);
+            return JarVerificationResult.verified(fileHash, manifestDigest, signerCertificates, false);
+        }
+    }
+
+}
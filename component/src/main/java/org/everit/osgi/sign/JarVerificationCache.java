@@ -0,0 +1,362 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The results of successful JAR verifications by the SHA-256 hash of the files. The least recently used results
+ * are evicted when the cache is full. If the cache has a file, the results are appended to the file as they are
+ * added, so they survive restarts. The file is compacted when it is loaded or when it holds twice as many records
+ * as the cache. A damaged file is truncated to the records that can be read.
+ *
+ * <p>
+ * Every record of the file is authenticated with an HMAC. Its key is generated for the installation and is kept in a
+ * key file next to the cache file that only the owner of the process can read, so a record that is altered or added
+ * by anyone else is treated as damage. The cache is kept only in memory if the key file cannot be created.
+ */
+final class JarVerificationCache {
+
+    /**
+     * The cached result of a file.
+     */
+    static final class CachedResult {
+
+        private final byte[] trustFingerprint;
+
+        private final byte[] manifestDigest;
+
+        private final List<X509Certificate> signerCertificates;
+
+        CachedResult(final byte[] trustFingerprint, final byte[] manifestDigest,
+                final List<X509Certificate> signerCertificates) {
+            this.trustFingerprint = trustFingerprint;
+            this.manifestDigest = manifestDigest;
+            this.signerCertificates = signerCertificates;
+        }
+
+        byte[] getManifestDigest() {
+            return manifestDigest;
+        }
+
+        List<X509Certificate> getSignerCertificates() {
+            return signerCertificates;
+        }
+
+        byte[] getTrustFingerprint() {
+            return trustFingerprint;
+        }
+
+    }
+
+    private static final int MAGIC = 0x4a564332;
+
+    private static final int HASH_LENGTH = 32;
+
+    private static final String KEY_FILE_SUFFIX = ".key";
+
+    private static final int KEY_LENGTH = 32;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final int MAC_LENGTH = 32;
+
+    private static final int MAX_CERTIFICATE_COUNT = 64;
+
+    private static final int MAX_CERTIFICATE_LENGTH = 65536;
+
+    private static final int MAX_RECORD_LENGTH = (3 * HASH_LENGTH) + 4
+            + (MAX_CERTIFICATE_COUNT * (4 + MAX_CERTIFICATE_LENGTH));
+
+    /**
+     * Creates the MAC of the records with the key of the key file.
+     *
+     * @return the MAC or <code>null</code> if the key file cannot be read or created.
+     */
+    private static Mac createMac(final File keyFile) {
+        try {
+            byte[] key = loadKey(keyFile.toPath());
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+            return mac;
+        } catch (IOException | GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the key of the key file. A new key is generated if the file does not exist or it is damaged, which
+     * invalidates the records of the cache file.
+     */
+    private static byte[] loadKey(final Path keyFile) throws IOException {
+        if (Files.exists(keyFile)) {
+            byte[] key = Files.readAllBytes(keyFile);
+            if (key.length == KEY_LENGTH) {
+                return key;
+            }
+        }
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        Path tempFile = keyFile.resolveSibling(keyFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tempFile);
+        try {
+            Files.createFile(tempFile, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(tempFile);
+        }
+        Files.write(tempFile, key);
+        Files.move(tempFile, keyFile, StandardCopyOption.REPLACE_EXISTING);
+        return key;
+    }
+
+    private final Map<ByteBuffer, CachedResult> entries;
+
+    private final File file;
+
+    /**
+     * The MAC of the records of the file or <code>null</code> if the cache has no file. Guarded by
+     * <code>this</code>.
+     */
+    private final Mac mac;
+
+    /**
+     * The number of records in the file. Guarded by <code>this</code>.
+     */
+    private int recordCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize
+     *            the maximum number of cached results.
+     * @param file
+     *            the file of the cache or <code>null</code> if the results are kept only in memory.
+     */
+    JarVerificationCache(final int maxSize, final File file) {
+        entries = new LinkedHashMap<ByteBuffer, CachedResult>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -1791627617457958318L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, CachedResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+        mac = (file != null) ? createMac(new File(file.getPath() + KEY_FILE_SUFFIX)) : null;
+        this.file = (mac != null) ? file : null;
+        if (this.file != null) {
+            load();
+        }
+    }
+
+    private void append(final byte[] fileHash, final CachedResult result) {
+        if (recordCount >= (2 * Math.max(1, entries.size()))) {
+            rewrite();
+            return;
+        }
+        boolean newFile = !file.exists();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file, true)))) {
+            if (newFile) {
+                out.writeInt(MAGIC);
+            }
+            writeRecord(out, fileHash, result);
+            recordCount++;
+        } catch (IOException | CertificateEncodingException e) {
+            // The cache is an optimization, the result stays in memory
+            return;
+        }
+    }
+
+    /**
+     * Returns the cached result of a file.
+     *
+     * @return the result or <code>null</code> if the file is not in the cache.
+     */
+    synchronized CachedResult get(final byte[] fileHash) {
+        return entries.get(ByteBuffer.wrap(fileHash));
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        int loadedRecords = 0;
+        boolean damaged = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                damaged = true;
+            }
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            while (!damaged) {
+                int recordLength;
+                try {
+                    recordLength = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if ((recordLength < (3 * HASH_LENGTH)) || (recordLength > MAX_RECORD_LENGTH)) {
+                    damaged = true;
+                    break;
+                }
+                byte[] record = new byte[recordLength];
+                byte[] recordMac = new byte[MAC_LENGTH];
+                in.readFully(record);
+                in.readFully(recordMac);
+                if (!MessageDigest.isEqual(mac.doFinal(record), recordMac)) {
+                    damaged = true;
+                    break;
+                }
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                byte[] fileHash = new byte[HASH_LENGTH];
+                recordIn.readFully(fileHash);
+                CachedResult result = readResult(recordIn, certificateFactory);
+                if ((result == null) || (recordIn.available() > 0)) {
+                    damaged = true;
+                } else {
+                    entries.put(ByteBuffer.wrap(fileHash), result);
+                    loadedRecords++;
+                }
+            }
+        } catch (IOException | CertificateException e) {
+            damaged = true;
+        }
+        recordCount = loadedRecords;
+        if (damaged || (loadedRecords > entries.size())) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Adds the result of a file.
+     */
+    synchronized void put(final byte[] fileHash, final CachedResult result) {
+        entries.put(ByteBuffer.wrap(fileHash), result);
+        if (file != null) {
+            append(fileHash, result);
+        }
+    }
+
+    /**
+     * Reads the part of a record after the file hash.
+     *
+     * @return the result or <code>null</code> if the record is damaged.
+     */
+    private CachedResult readResult(final DataInputStream in, final CertificateFactory certificateFactory)
+            throws IOException, CertificateException {
+        byte[] trustFingerprint = new byte[HASH_LENGTH];
+        byte[] manifestDigest = new byte[HASH_LENGTH];
+        in.readFully(trustFingerprint);
+        in.readFully(manifestDigest);
+        int certificateCount = in.readInt();
+        if ((certificateCount < 1) || (certificateCount > MAX_CERTIFICATE_COUNT)) {
+            return null;
+        }
+        List<X509Certificate> signerCertificates = new ArrayList<>(certificateCount);
+        for (int i = 0; i < certificateCount; i++) {
+            int length = in.readInt();
+            if ((length < 1) || (length > MAX_CERTIFICATE_LENGTH)) {
+                return null;
+            }
+            byte[] encoded = new byte[length];
+            in.readFully(encoded);
+            signerCertificates.add((X509Certificate) certificateFactory.generateCertificate(
+                    new ByteArrayInputStream(encoded)));
+        }
+        return new CachedResult(trustFingerprint, manifestDigest, Collections.unmodifiableList(signerCertificates));
+    }
+
+    /**
+     * Replaces the file with the records of the current entries.
+     */
+    private void rewrite() {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                for (Map.Entry<ByteBuffer, CachedResult> entry : entries.entrySet()) {
+                    writeRecord(out, entry.getKey().array(), entry.getValue());
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            recordCount = entries.size();
+        } catch (IOException | CertificateEncodingException e) {
+            // The cache is an optimization, the results stay in memory
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Writes a record, which consists of its length, the file hash with the result and the MAC of them.
+     */
+    private void writeRecord(final DataOutputStream out, final byte[] fileHash, final CachedResult result)
+            throws IOException, CertificateEncodingException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(recordBytes);
+        recordOut.write(fileHash);
+        recordOut.write(result.trustFingerprint);
+        recordOut.write(result.manifestDigest);
+        recordOut.writeInt(result.signerCertificates.size());
+        for (X509Certificate certificate : result.signerCertificates) {
+            byte[] encoded = certificate.getEncoded();
+            recordOut.writeInt(encoded.length);
+            recordOut.write(encoded);
+        }
+        byte[] record = recordBytes.toByteArray();
+        out.writeInt(record.length);
+        out.write(record);
+        out.write(mac.doFinal(record));
+    }
+
+}
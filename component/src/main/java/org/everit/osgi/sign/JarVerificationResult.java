@@ -0,0 +1,109 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of the verification of a JAR file by a {@link JarVerifier}.
+ */
+public final class JarVerificationResult {
+
+    static JarVerificationResult failed(final byte[] fileHash, final String failureReason) {
+        return new JarVerificationResult(fileHash, failureReason, null, Collections.<X509Certificate> emptyList(),
+                false);
+    }
+
+    static JarVerificationResult verified(final byte[] fileHash, final byte[] manifestDigest,
+            final List<X509Certificate> signerCertificates, final boolean cached) {
+        return new JarVerificationResult(fileHash, null, manifestDigest,
+                Collections.unmodifiableList(signerCertificates), cached);
+    }
+
+    private final byte[] fileHash;
+
+    private final String failureReason;
+
+    private final byte[] manifestDigest;
+
+    private final List<X509Certificate> signerCertificates;
+
+    private final boolean cached;
+
+    private JarVerificationResult(final byte[] fileHash, final String failureReason, final byte[] manifestDigest,
+            final List<X509Certificate> signerCertificates, final boolean cached) {
+        this.fileHash = fileHash;
+        this.failureReason = failureReason;
+        this.manifestDigest = manifestDigest;
+        this.signerCertificates = signerCertificates;
+        this.cached = cached;
+    }
+
+    /**
+     * Returns why the verification failed or <code>null</code> if the file is verified.
+     */
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    /**
+     * Returns the SHA-256 hash of the content of the file.
+     */
+    public byte[] getFileHash() {
+        return fileHash.clone();
+    }
+
+    /**
+     * Returns the SHA-256 digest of the manifest of the file or <code>null</code> if the file is not verified.
+     */
+    public byte[] getManifestDigest() {
+        return (manifestDigest != null) ? manifestDigest.clone() : null;
+    }
+
+    /**
+     * Returns the certificates of the trusted signers of the file. The list is empty if the file is not verified.
+     */
+    public List<X509Certificate> getSignerCertificates() {
+        return signerCertificates;
+    }
+
+    /**
+     * Returns whether the result comes from the cache of the verifier, i.e. the file was verified earlier with the
+     * same trusted certificates.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    public boolean isVerified() {
+        return failureReason == null;
+    }
+
+    @Override
+    public String toString() {
+        return "JarVerificationResult [verified=" + isVerified() + ", failureReason=" + failureReason
+                + ", signerCount=" + signerCertificates.size() + ", cached=" + cached + "]";
+    }
+
+}
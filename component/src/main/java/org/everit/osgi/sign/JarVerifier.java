@@ -0,0 +1,48 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Verifies the signatures of JAR files, e.g. OSGi bundles before they are installed. A JAR file is verified if it
+ * is signed by a trusted certificate and all of its entries are covered by the signature and match their digests.
+ * The digests of the entries are checked in parallel. The results of successful verifications are cached by the
+ * hash of the file, so an unchanged file is verified again by hashing it.
+ */
+public interface JarVerifier {
+
+    /**
+     * Verifies the signature of a JAR file. The file must not be modified during the verification.
+     *
+     * @param jarFile
+     *            the JAR file.
+     * @return the result, which tells why the verification failed if the file is not verified.
+     * @throws IOException
+     *             if the file cannot be read or it is not a ZIP file.
+     * @throws SignerException
+     *             if the verifier is not available.
+     */
+    JarVerificationResult verify(Path jarFile) throws IOException;
+
+}
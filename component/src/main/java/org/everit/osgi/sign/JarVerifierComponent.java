@@ -0,0 +1,325 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * {@link JarVerifier} that trusts the certificates of a {@link KeyStore} service and verifies the signature blocks
+ * with a {@link Provider} service. The digests of the entries are checked on a dedicated pool. The results of the
+ * successful verifications are cached by the hash of the files in the data area of the bundle, so they survive
+ * restarts. The records of the cache file are authenticated with a key of the installation. Cached results are used
+ * only while the same certificates are trusted.
+ */
+@Component(metatype = true, configurationFactory = true, policy = ConfigurationPolicy.REQUIRE)
+@Properties({
+        @Property(name = PropertyName.KEY_STORE_TARGET),
+        @Property(name = PropertyName.PROVIDER_TARGET),
+        @Property(name = PropertyName.TRUSTED_CERTIFICATE_ALIASES, value = SignerComponent.ALL_ALIASES,
+                unbounded = PropertyUnbounded.ARRAY),
+        @Property(name = PropertyName.VERIFICATION_PARALLELISM,
+                intValue = JarVerifierComponent.DEFAULT_VERIFICATION_PARALLELISM),
+        @Property(name = PropertyName.JAR_VERIFICATION_CACHE_SIZE,
+                intValue = JarVerifierComponent.DEFAULT_JAR_VERIFICATION_CACHE_SIZE)
+})
+@Service
+public class JarVerifierComponent implements JarVerifier {
+
+    /**
+     * The objects that the verifications of the active component use. They are published together, so a
+     * verification sees all of them initialized.
+     */
+    private static final class VerifierState {
+
+        private final JarSignatureVerifier signatureVerifier;
+
+        private final int parallelism;
+
+        private final ForkJoinPool pool;
+
+        private final JarVerificationCache cache;
+
+        VerifierState(final JarSignatureVerifier signatureVerifier, final int parallelism, final ForkJoinPool pool,
+                final JarVerificationCache cache) {
+            this.signatureVerifier = signatureVerifier;
+            this.parallelism = parallelism;
+            this.pool = pool;
+            this.cache = cache;
+        }
+
+    }
+
+    /**
+     * The prefix of the name of the cache file in the data area of the bundle.
+     */
+    static final String CACHE_FILE_PREFIX = "jarVerificationCache";
+
+    public static final int DEFAULT_JAR_VERIFICATION_CACHE_SIZE = 1000;
+
+    /**
+     * The default parallelism, zero means the number of available processors.
+     */
+    public static final int DEFAULT_VERIFICATION_PARALLELISM = 0;
+
+    private static File getCacheFile(final BundleContext context, final Map<String, Object> componentProperties) {
+        if (context == null) {
+            return null;
+        }
+        Object pid = componentProperties.get(Constants.SERVICE_PID);
+        return context.getDataFile((pid != null) ? (CACHE_FILE_PREFIX + "-" + pid) : CACHE_FILE_PREFIX);
+    }
+
+    private static byte[] hashFile(final Path file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignerException("SHA-256 is not available to hash files", e);
+        }
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            long position = 0;
+            while (position < size) {
+                long windowSize = Math.min(SignatureInput.MAPPING_WINDOW_SIZE, size - position);
+                messageDigest.update(fileChannel.map(MapMode.READ_ONLY, position, windowSize));
+                position += windowSize;
+            }
+        }
+        return messageDigest.digest();
+    }
+
+    @Reference(bind = "bindKeyStore", unbind = "unbindKeyStore", updated = "updatedKeyStore",
+            policy = ReferencePolicy.DYNAMIC)
+    private volatile KeyStore keyStore;
+
+    @Reference(bind = "bindProvider", unbind = "unbindProvider", policy = ReferencePolicy.DYNAMIC)
+    private volatile Provider provider;
+
+    /**
+     * The configuration of the active component or <code>null</code> if the component is not active. Guarded by
+     * <code>this</code>.
+     */
+    private Map<String, Object> componentProperties;
+
+    /**
+     * The state of the active component or <code>null</code> if the component is not active. It is replaced under
+     * the lock of <code>this</code>.
+     */
+    private volatile VerifierState state;
+
+    @Activate
+    public void activate(final BundleContext context, final Map<String, Object> componentProperties)
+            throws ConfigurationException {
+        int configuredParallelism = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.VERIFICATION_PARALLELISM, DEFAULT_VERIFICATION_PARALLELISM);
+        if (configuredParallelism < 0) {
+            throw new ConfigurationException(PropertyName.VERIFICATION_PARALLELISM, "must not be negative");
+        }
+        int cacheSize = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.JAR_VERIFICATION_CACHE_SIZE, DEFAULT_JAR_VERIFICATION_CACHE_SIZE);
+        if (cacheSize < 0) {
+            throw new ConfigurationException(PropertyName.JAR_VERIFICATION_CACHE_SIZE, "must not be negative");
+        }
+        int parallelism = (configuredParallelism > 0) ? configuredParallelism
+                : Runtime.getRuntime().availableProcessors();
+        synchronized (this) {
+            JarSignatureVerifier signatureVerifier = createSignatureVerifier(keyStore, provider,
+                    componentProperties);
+            ForkJoinPool pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+            JarVerificationCache cache = (cacheSize > 0)
+                    ? new JarVerificationCache(cacheSize, getCacheFile(context, componentProperties)) : null;
+            state = new VerifierState(signatureVerifier, parallelism, pool, cache);
+            this.componentProperties = componentProperties;
+        }
+    }
+
+    public void bindKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    public void bindProvider(final Provider provider) {
+        synchronized (this) {
+            this.provider = provider;
+            reload();
+        }
+    }
+
+    private JarSignatureVerifier createSignatureVerifier(final KeyStore keyStore, final Provider provider,
+            final Map<String, Object> componentProperties) throws ConfigurationException {
+        if ((keyStore == null) || (provider == null)) {
+            throw new ConfigurationException(null, "the keystore or the provider is not bound");
+        }
+        List<String> aliases = ComponentPropertyUtil.getStringListProperty(componentProperties,
+                PropertyName.TRUSTED_CERTIFICATE_ALIASES);
+        boolean allAliases = aliases.isEmpty() || aliases.contains(SignerComponent.ALL_ALIASES);
+        List<X509Certificate> trustedCertificates = new ArrayList<>();
+        try {
+            List<String> aliasesToLoad = allAliases ? Collections.list(keyStore.aliases()) : aliases;
+            for (String alias : aliasesToLoad) {
+                Certificate certificate = keyStore.getCertificate(alias);
+                if (certificate instanceof X509Certificate) {
+                    trustedCertificates.add((X509Certificate) certificate);
+                } else if (!allAliases) {
+                    throw new ConfigurationException(PropertyName.TRUSTED_CERTIFICATE_ALIASES,
+                            "X.509 certificate [" + alias + "] not found in the keystore");
+                }
+            }
+        } catch (KeyStoreException e) {
+            throw new ConfigurationException(PropertyName.TRUSTED_CERTIFICATE_ALIASES,
+                    "failed to load the trusted certificates from the keystore", e);
+        }
+        if (trustedCertificates.isEmpty()) {
+            throw new ConfigurationException(PropertyName.TRUSTED_CERTIFICATE_ALIASES,
+                    "no trusted certificate found in the keystore");
+        }
+        return new JarSignatureVerifier(trustedCertificates, provider);
+    }
+
+    /**
+     * Deactivates the component. The verifications that are still running complete on their own threads if the
+     * pool rejects their tasks.
+     */
+    @Deactivate
+    public void deactivate() {
+        VerifierState currentState;
+        synchronized (this) {
+            componentProperties = null;
+            currentState = state;
+            state = null;
+        }
+        if ((currentState != null) && (currentState.pool != null)) {
+            currentState.pool.shutdown();
+        }
+    }
+
+    /**
+     * Loads the trusted certificates again if the component is active, so they are used with the currently bound
+     * services.
+     */
+    private void reload() {
+        if ((componentProperties == null) || (keyStore == null) || (provider == null)) {
+            return;
+        }
+        try {
+            VerifierState currentState = state;
+            state = new VerifierState(createSignatureVerifier(keyStore, provider, componentProperties),
+                    currentState.parallelism, currentState.pool, currentState.cache);
+        } catch (ConfigurationException e) {
+            throw new SignerException("failed to reload the trusted certificates, the previous ones are still used",
+                    e);
+        }
+    }
+
+    public void unbindKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            if (this.keyStore == keyStore) {
+                this.keyStore = null;
+            }
+        }
+    }
+
+    public void unbindProvider(final Provider provider) {
+        synchronized (this) {
+            if (this.provider == provider) {
+                this.provider = null;
+            }
+        }
+    }
+
+    /**
+     * Loads the trusted certificates again when the properties of the keystore service change, for example after
+     * the keystore file is modified.
+     */
+    public void updatedKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    @Override
+    public JarVerificationResult verify(final Path jarFile) throws IOException {
+        VerifierState currentState = state;
+        if (currentState == null) {
+            throw new SignerException("verifier not available, the component is not active");
+        }
+        JarSignatureVerifier currentVerifier = currentState.signatureVerifier;
+        JarVerificationCache cache = currentState.cache;
+        File file = jarFile.toFile();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        byte[] fileHash = hashFile(jarFile);
+        byte[] trustFingerprint = currentVerifier.getTrustFingerprint();
+        if (cache != null) {
+            JarVerificationCache.CachedResult cachedResult = cache.get(fileHash);
+            if ((cachedResult != null) && Arrays.equals(cachedResult.getTrustFingerprint(), trustFingerprint)) {
+                return JarVerificationResult.verified(fileHash, cachedResult.getManifestDigest(),
+                        cachedResult.getSignerCertificates(), true);
+            }
+        }
+        JarVerificationResult result = currentVerifier.verify(file, fileHash, currentState.pool,
+                currentState.parallelism);
+        // A file that changed during the verification is not cached, as the hash may belong to other content
+        if (result.isVerified() && (cache != null) && (file.lastModified() == lastModified)
+                && (file.length() == length)) {
+            cache.put(fileHash, new JarVerificationCache.CachedResult(trustFingerprint,
+                    result.getManifestDigest(), result.getSignerCertificates()));
+        }
+        return result;
+    }
+
+}
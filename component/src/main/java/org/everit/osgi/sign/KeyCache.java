@@ -0,0 +1,205 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded cache of the keys of a keystore by alias. The keys are loaded on the first use and each alias gets
+ * its own small {@link SignaturePool}. When the cache is full, an entry that was not used since the clock hand
+ * passed it last is evicted, which approximates least recently used eviction without locking on reads. The cache
+ * belongs to one keystore and provider and is dropped when they change.
+ */
+final class KeyCache {
+
+    /**
+     * The keys of an alias.
+     */
+    static final class Entry {
+
+        private final PrivateKey privateKey;
+
+        private final PublicKey publicKey;
+
+        private final SignaturePool signaturePool;
+
+        /**
+         * Set on every use and cleared by the clock hand.
+         */
+        private volatile boolean referenced;
+
+        Entry(final PrivateKey privateKey, final PublicKey publicKey, final SignaturePool signaturePool) {
+            this.privateKey = privateKey;
+            this.publicKey = publicKey;
+            this.signaturePool = signaturePool;
+        }
+
+        PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        SignaturePool getSignaturePool() {
+            return signaturePool;
+        }
+
+    }
+
+    private final KeyStore keyStore;
+
+    private final ProviderRouting providerRouting;
+
+    private final Map<String, char[]> privateKeyPasswords;
+
+    private final char[] defaultPrivateKeyPassword;
+
+    private final int maxSize;
+
+    private final int signaturePoolSize;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Queue<String> clock = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor.
+     *
+     * @param keyStore
+     *            the keystore the keys are loaded from.
+     * @param providerRouting
+     *            the providers of the signatures.
+     * @param privateKeyPasswords
+     *            the passwords of the private keys by alias.
+     * @param defaultPrivateKeyPassword
+     *            the password of the private keys that do not have an own password.
+     * @param maxSize
+     *            the maximum number of cached aliases.
+     * @param signaturePoolSize
+     *            the maximum number of idle signatures per alias and algorithm.
+     */
+    KeyCache(final KeyStore keyStore, final ProviderRouting providerRouting,
+            final Map<String, char[]> privateKeyPasswords, final char[] defaultPrivateKeyPassword,
+            final int maxSize, final int signaturePoolSize) {
+        this.keyStore = keyStore;
+        this.providerRouting = providerRouting;
+        this.privateKeyPasswords = privateKeyPasswords;
+        this.defaultPrivateKeyPassword = defaultPrivateKeyPassword;
+        this.maxSize = maxSize;
+        this.signaturePoolSize = signaturePoolSize;
+    }
+
+    private void evict() {
+        int maxSteps = 2 * maxSize;
+        while ((entries.size() >= maxSize) && (maxSteps-- > 0)) {
+            String candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            Entry entry = entries.get(candidate);
+            if ((entry != null) && entry.referenced) {
+                entry.referenced = false;
+                clock.offer(candidate);
+            } else {
+                entries.remove(candidate);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys of the alias and loads them from the keystore if they are not cached.
+     *
+     * @return the keys or <code>null</code> if the keystore does not have an entry with the alias.
+     * @throws SignerException
+     *             if the keys cannot be loaded.
+     */
+    Entry get(final String alias) {
+        Entry entry = entries.get(alias);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            return entry;
+        }
+        Entry newEntry = load(alias);
+        if (newEntry == null) {
+            return null;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        // If another thread loaded the same alias meanwhile, its keys are used
+        entry = entries.putIfAbsent(alias, newEntry);
+        if (entry != null) {
+            return entry;
+        }
+        clock.offer(alias);
+        return newEntry;
+    }
+
+    int getSize() {
+        return entries.size();
+    }
+
+    void invalidate(final String alias) {
+        if (entries.remove(alias) != null) {
+            clock.remove(alias);
+        }
+    }
+
+    private Entry load(final String alias) {
+        try {
+            PrivateKey privateKey = null;
+            if (keyStore.isKeyEntry(alias)) {
+                char[] password = privateKeyPasswords.get(alias);
+                Key key = keyStore.getKey(alias, (password != null) ? password : defaultPrivateKeyPassword);
+                if (key instanceof PrivateKey) {
+                    privateKey = (PrivateKey) key;
+                }
+            }
+            Certificate certificate = keyStore.getCertificate(alias);
+            PublicKey publicKey = (certificate != null) ? certificate.getPublicKey() : null;
+            if ((privateKey == null) && (publicKey == null)) {
+                return null;
+            }
+            return new Entry(privateKey, publicKey,
+                    new SignaturePool(providerRouting, privateKey, publicKey, null, signaturePoolSize));
+        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+            throw new SignerException("failed to load key [" + alias + "] from the given keystore", e);
+        }
+    }
+
+}
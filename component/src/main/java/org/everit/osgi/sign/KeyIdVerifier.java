@@ -0,0 +1,61 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.List;
+
+/**
+ * Verification with a signer that knows several public keys, e.g. during a key rotation. The keys are identified
+ * by their key id, the SHA-256 digest of the encoded SubjectPublicKeyInfo of the public key.
+ *
+ * <p>
+ * The verification methods of the signer that do not take a key id, including the batch and the streaming ones,
+ * accept a signature of any of the keys. They try the key that verified a signature most recently first. Streams
+ * and channels are read only once, their content is passed to a signature of every key at the same time.
+ */
+public interface KeyIdVerifier {
+
+    /**
+     * Returns the key ids of the public keys the signer verifies with. The first one is the primary key.
+     */
+    List<byte[]> getPublicKeyIds();
+
+    /**
+     * Returns the key id of the public key that belongs to the private key of the signer, so the producers of
+     * signatures can pass it to the verifiers.
+     *
+     * @return the key id or <code>null</code> if the private key is not configured or its certificate is not
+     *         available.
+     */
+    byte[] getSigningKeyId();
+
+    /**
+     * Verifies the signature with the public key that has the given key id.
+     *
+     * @return <code>true</code> if the signature is valid, <code>false</code> if it is invalid or the signer does
+     *         not know the key id.
+     */
+    boolean verify(byte[] keyId, byte[] data, byte[] signatureBytes,
+            String signatureAlgorithm, AlgorithmParameterSpec algorithmParameterSpec);
+
+}
@@ -0,0 +1,157 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * A snapshot of the state and the statistics of one lane of a {@link PrioritySigner}. The wait times are measured
+ * in nanoseconds from the call until the admission of the operations, shed operations are not included.
+ */
+public final class LaneStatistics {
+
+    private final SignerPriority priority;
+
+    private final int inFlightCount;
+
+    private final int queueDepth;
+
+    private final long admittedCount;
+
+    private final long rejectedCount;
+
+    private final long expiredCount;
+
+    private final long meanWaitTime;
+
+    private final long maxWaitTime;
+
+    private final long waitTime50;
+
+    private final long waitTime90;
+
+    private final long waitTime99;
+
+    private final long waitTime999;
+
+    LaneStatistics(final SignerPriority priority, final int inFlightCount, final int queueDepth,
+            final long admittedCount, final long rejectedCount, final long expiredCount, final long meanWaitTime,
+            final long maxWaitTime, final long waitTime50, final long waitTime90, final long waitTime99,
+            final long waitTime999) {
+        this.priority = priority;
+        this.inFlightCount = inFlightCount;
+        this.queueDepth = queueDepth;
+        this.admittedCount = admittedCount;
+        this.rejectedCount = rejectedCount;
+        this.expiredCount = expiredCount;
+        this.meanWaitTime = meanWaitTime;
+        this.maxWaitTime = maxWaitTime;
+        this.waitTime50 = waitTime50;
+        this.waitTime90 = waitTime90;
+        this.waitTime99 = waitTime99;
+        this.waitTime999 = waitTime999;
+    }
+
+    /**
+     * Returns the number of operations that were admitted.
+     */
+    public long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    /**
+     * Returns the number of operations that were shed because they waited longer than the queue timeout of the
+     * lane.
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Returns the number of operations of the lane that are executed at the moment of the snapshot.
+     */
+    public int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public long getMeanWaitTime() {
+        return meanWaitTime;
+    }
+
+    public SignerPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the number of operations that wait for admission at the moment of the snapshot.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the number of operations that were shed because the queue of the lane was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Returns the median wait time.
+     */
+    public long getWaitTime50() {
+        return waitTime50;
+    }
+
+    /**
+     * Returns the 90th percentile of the wait times.
+     */
+    public long getWaitTime90() {
+        return waitTime90;
+    }
+
+    /**
+     * Returns the 99th percentile of the wait times.
+     */
+    public long getWaitTime99() {
+        return waitTime99;
+    }
+
+    /**
+     * Returns the 99.9th percentile of the wait times.
+     */
+    public long getWaitTime999() {
+        return waitTime999;
+    }
+
+    @Override
+    public String toString() {
+        return "LaneStatistics [priority=" + priority + ", inFlightCount=" + inFlightCount + ", queueDepth="
+                + queueDepth + ", admittedCount=" + admittedCount + ", rejectedCount=" + rejectedCount
+                + ", expiredCount=" + expiredCount + ", meanWaitTime=" + meanWaitTime + ", maxWaitTime="
+                + maxWaitTime + ", waitTime50=" + waitTime50 + ", waitTime90=" + waitTime90 + ", waitTime99="
+                + waitTime99 + ", waitTime999=" + waitTime999 + "]";
+    }
+
+}
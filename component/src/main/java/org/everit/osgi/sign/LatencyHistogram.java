@@ -0,0 +1,123 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with log-linear buckets in the style of HdrHistogram. Every
+ * power of two is divided into {@link #SUB_BUCKET_COUNT} buckets, so the recorded values are kept with a relative
+ * error of about 6% from one nanosecond up to {@link #MAX_TRACKABLE_VALUE}. Larger values are recorded in the last
+ * bucket. Recording a value is one atomic increment.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * About 36.6 minutes.
+     */
+    static final long MAX_TRACKABLE_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKET_COUNT = getBucketIndex(MAX_TRACKABLE_VALUE) + 1;
+
+    static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) Math.max(0, value);
+        }
+        long trackedValue = Math.min(value, MAX_TRACKABLE_VALUE);
+        int exponent = 63 - Long.numberOfLeadingZeros(trackedValue);
+        int subBucket = (int) (trackedValue >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket;
+    }
+
+    /**
+     * Returns the highest value that is recorded in a bucket.
+     */
+    static long getHighestValue(final int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        int exponent = ((bucketIndex / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS) - 1;
+        int subBucket = bucketIndex % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (((long) (SUB_BUCKET_COUNT + subBucket + 1)) << shift) - 1;
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values fall.
+     *
+     * @param counts
+     *            the bucket counts returned by {@link #getCounts()}.
+     * @param totalCount
+     *            the sum of the bucket counts.
+     * @param fraction
+     *            the fraction between 0 and 1.
+     */
+    static long getValueAtFraction(final long[] counts, final long totalCount, final double fraction) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long targetCount = Math.max(1, (long) Math.ceil(fraction * totalCount));
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= targetCount) {
+                return getHighestValue(i);
+            }
+        }
+        return getHighestValue(counts.length - 1);
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Returns a copy of the bucket counts.
+     */
+    long[] getCounts() {
+        long[] result = new long[counts.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    long getMaxValue() {
+        return maxValue.get();
+    }
+
+    void record(final long value) {
+        counts.incrementAndGet(getBucketIndex(value));
+        long currentMax = maxValue.get();
+        while ((value > currentMax) && !maxValue.compareAndSet(currentMax, value)) {
+            currentMax = maxValue.get();
+        }
+    }
+
+}
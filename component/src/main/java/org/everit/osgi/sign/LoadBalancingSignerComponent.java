@@ -0,0 +1,538 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * {@link ExtendedSigner} that spreads the operations over several backend signer services, e.g. signers of the same key
+ * replicated across the slots of an HSM or across provider instances. Each operation is routed to the backend with the
+ * fewest operations in flight; a signing stream is in flight until it is signed or closed. If a backend fails with a
+ * {@link SignerException}, the operation is repeated on the other backends, except for streams and channels that can
+ * be read only once. A backend is suspended for a while only if another backend completes the failed operation, so an
+ * operation that fails everywhere because of its input does not suspend healthy backends.
+ *
+ * <p>
+ * The backends are selected by the {@link PropertyName#BACKENDS_TARGET} filter and can be added or removed at
+ * runtime by changing the filter or by registering further signers that match it. The filter must not match the
+ * service of this component.
+ */
+@Component(metatype = true, configurationFactory = true, policy = ConfigurationPolicy.REQUIRE)
+@Properties({
+        @Property(name = PropertyName.BACKENDS_TARGET),
+        @Property(name = PropertyName.BACKEND_SUSPENSION_TIME,
+                intValue = LoadBalancingSignerComponent.DEFAULT_BACKEND_SUSPENSION_TIME)
+})
+@Service
+public class LoadBalancingSignerComponent implements Signer, ExtendedSigner {
+
+    /**
+     * A backend signer with the number of operations that it currently executes.
+     */
+    private static final class Backend {
+
+        private final ExtendedSigner signer;
+
+        private final AtomicInteger inFlightCount = new AtomicInteger();
+
+        private volatile long suspendedUntil = System.nanoTime();
+
+        Backend(final ExtendedSigner signer) {
+            this.signer = signer;
+        }
+
+        boolean isSuspended(final long now) {
+            return (suspendedUntil - now) > 0;
+        }
+
+    }
+
+    /**
+     * A stream of a backend that counts as an operation in flight of the backend until it is signed or closed.
+     */
+    private static final class BackendSigningOutputStream extends SigningOutputStream {
+
+        private final Backend backend;
+
+        private final SigningOutputStream backendStream;
+
+        private boolean released;
+
+        BackendSigningOutputStream(final SigningOutputStream backendStream, final Backend backend) {
+            super(backendStream, (SignatureSink) null);
+            this.backendStream = backendStream;
+            this.backend = backend;
+            backend.inFlightCount.incrementAndGet();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            if (!released) {
+                released = true;
+                backend.inFlightCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public byte[] sign() throws IOException {
+            try {
+                return backendStream.sign();
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            backendStream.write(b, off, len);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            backendStream.write(b);
+        }
+
+    }
+
+    /**
+     * An operation that is executed with one of the backends.
+     */
+    private interface Operation<T> {
+
+        T execute(Backend backend) throws IOException;
+
+    }
+
+    /**
+     * The default time in milliseconds while a failed backend does not receive operations.
+     */
+    public static final int DEFAULT_BACKEND_SUSPENSION_TIME = 5000;
+
+    @Reference(name = "backends", referenceInterface = ExtendedSigner.class,
+            cardinality = ReferenceCardinality.MANDATORY_MULTIPLE, policy = ReferencePolicy.DYNAMIC,
+            bind = "bindBackend", unbind = "unbindBackend")
+    private final List<Backend> backends = new CopyOnWriteArrayList<>();
+
+    /**
+     * The position where the search for the least loaded backend starts, so backends with the same load get
+     * operations in turn.
+     */
+    private final AtomicInteger nextBackendIndex = new AtomicInteger();
+
+    private volatile long suspensionTimeNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BACKEND_SUSPENSION_TIME);
+
+    @Activate
+    public void activate(final Map<String, Object> componentProperties) throws ConfigurationException {
+        modified(componentProperties);
+    }
+
+    public void bindBackend(final ExtendedSigner signer) {
+        if (signer != this) {
+            backends.add(new Backend(signer));
+        }
+    }
+
+    @Override
+    public SigningOutputStream createSigningOutputStream(final OutputStream out, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(new Operation<SigningOutputStream>() {
+
+            @Override
+            public SigningOutputStream execute(final Backend backend) {
+                SigningOutputStream stream = backend.signer.createSigningOutputStream(out, signatureAlgorithm,
+                        algorithmParameterSpec, secureRandom);
+                return new BackendSigningOutputStream(stream, backend);
+            }
+        });
+    }
+
+    /**
+     * Executes an operation with the least loaded backend and fails over to the other backends.
+     *
+     * @param repeatable
+     *            whether the input of the operation can be passed to more than one backend.
+     */
+    private <T> T execute(final Operation<T> operation, final boolean repeatable) throws IOException {
+        List<Backend> failedBackends = null;
+        SignerException lastException = null;
+        int maxAttempts = repeatable ? backends.size() : 1;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            Backend backend = selectBackend(failedBackends);
+            if (backend == null) {
+                break;
+            }
+            backend.inFlightCount.incrementAndGet();
+            try {
+                T result = operation.execute(backend);
+                if (failedBackends != null) {
+                    long suspendedUntil = System.nanoTime() + suspensionTimeNanos;
+                    for (Backend failedBackend : failedBackends) {
+                        failedBackend.suspendedUntil = suspendedUntil;
+                    }
+                }
+                return result;
+            } catch (SignerException e) {
+                lastException = e;
+                if (failedBackends == null) {
+                    failedBackends = new ArrayList<>();
+                }
+                failedBackends.add(backend);
+            } finally {
+                backend.inFlightCount.decrementAndGet();
+            }
+        }
+        if (lastException == null) {
+            throw new SignerException("signer not available, no backend is bound");
+        }
+        throw lastException;
+    }
+
+    /**
+     * Executes an operation on data that is in memory, so it cannot fail with an {@link IOException}.
+     */
+    private <T> T executeInMemory(final Operation<T> operation) {
+        try {
+            return execute(operation, true);
+        } catch (IOException e) {
+            throw new SignerException("unexpected I/O failure of an in-memory operation", e);
+        }
+    }
+
+    /**
+     * Returns the number of bound backends.
+     */
+    public int getBackendCount() {
+        return backends.size();
+    }
+
+    @Modified
+    public void modified(final Map<String, Object> componentProperties) throws ConfigurationException {
+        int suspensionTime = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.BACKEND_SUSPENSION_TIME, DEFAULT_BACKEND_SUSPENSION_TIME);
+        if (suspensionTime < 0) {
+            throw new ConfigurationException(PropertyName.BACKEND_SUSPENSION_TIME, "must not be negative");
+        }
+        suspensionTimeNanos = TimeUnit.MILLISECONDS.toNanos(suspensionTime);
+    }
+
+    /**
+     * Selects the backend with the fewest operations in flight. Suspended backends are selected only if all
+     * backends are suspended.
+     *
+     * @param excludedBackends
+     *            the backends that already failed the operation or <code>null</code>.
+     * @return the backend or <code>null</code> if there is no backend to try.
+     */
+    private Backend selectBackend(final List<Backend> excludedBackends) {
+        Object[] currentBackends = backends.toArray();
+        int backendCount = currentBackends.length;
+        if (backendCount == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        int start = (nextBackendIndex.getAndIncrement() & Integer.MAX_VALUE) % backendCount;
+        Backend selected = null;
+        Backend selectedSuspended = null;
+        for (int i = 0; i < backendCount; i++) {
+            Backend backend = (Backend) currentBackends[(start + i) % backendCount];
+            if ((excludedBackends != null) && excludedBackends.contains(backend)) {
+                continue;
+            }
+            if (backend.isSuspended(now)) {
+                if ((selectedSuspended == null)
+                        || (backend.inFlightCount.get() < selectedSuspended.inFlightCount.get())) {
+                    selectedSuspended = backend;
+                }
+            } else if ((selected == null) || (backend.inFlightCount.get() < selected.inFlightCount.get())) {
+                selected = backend;
+            }
+        }
+        return (selected != null) ? selected : selectedSuspended;
+    }
+
+    @Override
+    public byte[] sign(final byte[] data) {
+        return executeInMemory(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) {
+                return backend.signer.sign(data);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final byte[] data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) {
+                return backend.signer.sign(data, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final byte[] data, final int offset, final int length, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) {
+                return backend.signer.sign(data, offset, length, signatureAlgorithm, algorithmParameterSpec,
+                        secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) {
+                return backend.signer.sign(data, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer[] segments, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) {
+                return backend.signer.sign(segments, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    @Override
+    public byte[] sign(final InputStream inputStream, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return execute(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) throws IOException {
+                return backend.signer.sign(inputStream, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        }, false);
+    }
+
+    @Override
+    public byte[] sign(final Path file, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return execute(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) throws IOException {
+                return backend.signer.sign(file, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        }, true);
+    }
+
+    @Override
+    public byte[] sign(final ReadableByteChannel channel, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return execute(new Operation<byte[]>() {
+
+            @Override
+            public byte[] execute(final Backend backend) throws IOException {
+                return backend.signer.sign(channel, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        }, false);
+    }
+
+    @Override
+    public List<byte[]> signBatch(final List<byte[]> payloads, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return executeInMemory(new Operation<List<byte[]>>() {
+
+            @Override
+            public List<byte[]> execute(final Backend backend) {
+                return backend.signer.signBatch(payloads, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+            }
+        });
+    }
+
+    public void unbindBackend(final ExtendedSigner signer) {
+        for (Backend backend : backends) {
+            if (backend.signer == signer) {
+                backends.remove(backend);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes) {
+        return executeInMemory(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) {
+                return backend.signer.verify(data, signatureBytes);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) {
+                return backend.signer.verify(data, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final int offset, final int length, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) {
+                return backend.signer.verify(data, offset, length, signatureBytes, signatureAlgorithm,
+                        algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) {
+                return backend.signer.verify(data, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer[] segments, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return executeInMemory(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) {
+                return backend.signer.verify(segments, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        });
+    }
+
+    @Override
+    public boolean verify(final InputStream inputStream, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return execute(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) throws IOException {
+                return backend.signer.verify(inputStream, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        }, false);
+    }
+
+    @Override
+    public boolean verify(final Path file, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) throws IOException {
+        return execute(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) throws IOException {
+                return backend.signer.verify(file, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        }, true);
+    }
+
+    @Override
+    public boolean verify(final ReadableByteChannel channel, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return execute(new Operation<Boolean>() {
+
+            @Override
+            public Boolean execute(final Backend backend) throws IOException {
+                return backend.signer.verify(channel, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+            }
+        }, false);
+    }
+
+    @Override
+    public BitSet verifyBatch(final List<byte[]> data, final List<byte[]> signatures,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final boolean allOrNothing) {
+        return executeInMemory(new Operation<BitSet>() {
+
+            @Override
+            public BitSet execute(final Backend backend) {
+                return backend.signer.verifyBatch(data, signatures, signatureAlgorithm, algorithmParameterSpec,
+                        allOrNothing);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,107 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * A bounded pool of {@link Mac} instances initialized with one secret key. A MAC is reset by
+ * {@link Mac#doFinal()}, so it can be reused without initializing it again. Like the {@link SignaturePool}, the
+ * pool is never modified when the key or the provider changes, a new pool has to be created instead.
+ */
+final class MacPool {
+
+    /**
+     * The maximum number of distinct algorithms that are pooled. MACs of further algorithms are created and dropped
+     * on every call.
+     */
+    static final int MAX_ALGORITHMS = 16;
+
+    private final Provider provider;
+
+    private final SecretKey secretKey;
+
+    private final int maxIdlePerAlgorithm;
+
+    private final ConcurrentMap<String, Queue<Mac>> idleMacs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param provider
+     *            the provider of the MACs.
+     * @param secretKey
+     *            the key of the MACs.
+     * @param maxIdlePerAlgorithm
+     *            the maximum number of idle MACs per algorithm.
+     */
+    MacPool(final Provider provider, final SecretKey secretKey, final int maxIdlePerAlgorithm) {
+        this.provider = provider;
+        this.secretKey = secretKey;
+        this.maxIdlePerAlgorithm = maxIdlePerAlgorithm;
+    }
+
+    /**
+     * Returns a {@link Mac} of the given algorithm initialized with the secret key of the pool.
+     */
+    Mac borrow(final String algorithm) throws NoSuchAlgorithmException, InvalidKeyException {
+        Queue<Mac> queue = idleMacs.get(algorithm);
+        Mac mac = (queue != null) ? queue.poll() : null;
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm, provider);
+            mac.init(secretKey);
+        }
+        return mac;
+    }
+
+    /**
+     * Gives back a MAC to the pool. The MAC must be in the state that {@link Mac#doFinal()} leaves it in. MACs that
+     * are involved in a failed operation must not be released.
+     */
+    void release(final String algorithm, final Mac mac) {
+        if (maxIdlePerAlgorithm <= 0) {
+            return;
+        }
+        Queue<Mac> queue = idleMacs.get(algorithm);
+        if (queue == null) {
+            if (idleMacs.size() >= MAX_ALGORITHMS) {
+                return;
+            }
+            Queue<Mac> newQueue = new ArrayBlockingQueue<>(maxIdlePerAlgorithm);
+            queue = idleMacs.putIfAbsent(algorithm, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        queue.offer(mac);
+    }
+
+}
@@ -0,0 +1,159 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The raw bytes of the sections of a JAR manifest. The signature files of a signed JAR contain the digests of the
+ * sections exactly as they are encoded in the manifest, including the empty line that terminates them, so they
+ * cannot be computed from the parsed {@link java.util.jar.Manifest}.
+ */
+final class ManifestSections {
+
+    private static final byte[] NAME_HEADER = "Name: ".getBytes(StandardCharsets.US_ASCII);
+
+    private static int findLineEnd(final byte[] manifest, final int offset) {
+        int position = offset;
+        while ((position < manifest.length) && (manifest[position] != '\r') && (manifest[position] != '\n')) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Splits a manifest into sections.
+     */
+    static ManifestSections parse(final byte[] manifest) {
+        ManifestSections result = new ManifestSections(manifest);
+        int sectionStart = 0;
+        int position = 0;
+        while (position < manifest.length) {
+            int lineEnd = findLineEnd(manifest, position);
+            int nextLine = skipLineBreak(manifest, lineEnd);
+            if ((lineEnd == position) || (nextLine == manifest.length)) {
+                // An empty line or the end of the manifest terminates the section
+                int sectionEnd = (lineEnd == position) ? nextLine : manifest.length;
+                if (sectionEnd > sectionStart) {
+                    result.addSection(sectionStart, sectionEnd);
+                }
+                sectionStart = sectionEnd;
+            }
+            position = nextLine;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset after the end of line at an offset.
+     *
+     * @return the offset after the line break or the offset itself if there is no line break.
+     */
+    private static int skipLineBreak(final byte[] manifest, final int offset) {
+        if ((offset < manifest.length) && (manifest[offset] == '\r')) {
+            if (((offset + 1) < manifest.length) && (manifest[offset + 1] == '\n')) {
+                return offset + 2;
+            }
+            return offset + 1;
+        }
+        if ((offset < manifest.length) && (manifest[offset] == '\n')) {
+            return offset + 1;
+        }
+        return offset;
+    }
+
+    private final byte[] manifest;
+
+    private int mainSectionLength = -1;
+
+    private final Map<String, int[]> sections = new HashMap<>();
+
+    private ManifestSections(final byte[] manifest) {
+        this.manifest = manifest;
+    }
+
+    private void addSection(final int start, final int end) {
+        if (mainSectionLength < 0) {
+            mainSectionLength = end;
+            return;
+        }
+        String name = readName(start, end);
+        if (name != null) {
+            sections.put(name, new int[] { start, end - start });
+        }
+    }
+
+    /**
+     * Computes the digest of the main section.
+     */
+    byte[] digestMainSection(final MessageDigest messageDigest) {
+        messageDigest.update(manifest, 0, Math.max(0, mainSectionLength));
+        return messageDigest.digest();
+    }
+
+    /**
+     * Computes the digest of the section of an entry.
+     *
+     * @return the digest or <code>null</code> if the manifest has no section for the entry.
+     */
+    byte[] digestSection(final String name, final MessageDigest messageDigest) {
+        int[] section = sections.get(name);
+        if (section == null) {
+            return null;
+        }
+        messageDigest.update(manifest, section[0], section[1]);
+        return messageDigest.digest();
+    }
+
+    /**
+     * Reads the value of the name header that starts a section, joining the continuation lines.
+     *
+     * @return the name or <code>null</code> if the section does not start with a name header.
+     */
+    private String readName(final int start, final int end) {
+        if ((end - start) < NAME_HEADER.length) {
+            return null;
+        }
+        for (int i = 0; i < NAME_HEADER.length; i++) {
+            if (Character.toLowerCase(manifest[start + i]) != Character.toLowerCase(NAME_HEADER[i])) {
+                return null;
+            }
+        }
+        // Continuation lines can split multi-byte characters, so the bytes are joined before decoding
+        ByteArrayOutputStream name = new ByteArrayOutputStream();
+        int position = start + NAME_HEADER.length;
+        int lineEnd = findLineEnd(manifest, position);
+        name.write(manifest, position, lineEnd - position);
+        position = skipLineBreak(manifest, lineEnd);
+        while ((position < end) && (manifest[position] == ' ')) {
+            lineEnd = findLineEnd(manifest, position);
+            name.write(manifest, position + 1, lineEnd - position - 1);
+            position = skipLineBreak(manifest, lineEnd);
+        }
+        return new String(name.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
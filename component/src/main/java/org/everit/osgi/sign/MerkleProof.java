@@ -0,0 +1,121 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+
+/**
+ * The siblings of the nodes on the path from a chunk to the root of a {@link MerkleTree}. Together with the chunk
+ * and a verified {@link ChunkedSignature} it proves that the chunk is part of the signed payload.
+ */
+public final class MerkleProof {
+
+    /**
+     * Parses a proof that was encoded with {@link #getEncoded()}.
+     *
+     * @throws IllegalArgumentException
+     *             if the encoded form is malformed.
+     */
+    public static MerkleProof decode(final byte[] encoded) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        try {
+            int chunkIndex = in.readInt();
+            int siblingCount = in.readUnsignedByte();
+            byte[][] siblings = new byte[siblingCount][];
+            for (int i = 0; i < siblingCount; i++) {
+                siblings[i] = new byte[in.readUnsignedByte()];
+                in.readFully(siblings[i]);
+            }
+            if ((chunkIndex < 0) || (in.read() >= 0)) {
+                throw new IllegalArgumentException("malformed Merkle proof");
+            }
+            return new MerkleProof(chunkIndex, siblings);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed Merkle proof", e);
+        }
+    }
+
+    private final int chunkIndex;
+
+    private final byte[][] siblings;
+
+    MerkleProof(final int chunkIndex, final byte[][] siblings) {
+        this.chunkIndex = chunkIndex;
+        this.siblings = siblings;
+    }
+
+    /**
+     * Computes the root of the tree from the hash of the chunk. Returns <code>null</code> if the number of
+     * siblings does not match the shape of the tree.
+     */
+    byte[] computeRoot(final MessageDigest messageDigest, final byte[] leafHash, final int chunkCount) {
+        byte[] hash = leafHash;
+        int index = chunkIndex;
+        int levelSize = chunkCount;
+        int siblingIndex = 0;
+        while (levelSize > 1) {
+            if ((index & 1) == 1) {
+                if (siblingIndex == siblings.length) {
+                    return null;
+                }
+                hash = MerkleTree.hashNode(messageDigest, siblings[siblingIndex++], hash);
+            } else if ((index + 1) < levelSize) {
+                if (siblingIndex == siblings.length) {
+                    return null;
+                }
+                hash = MerkleTree.hashNode(messageDigest, hash, siblings[siblingIndex++]);
+            }
+            index >>>= 1;
+            levelSize = (levelSize + 1) >>> 1;
+        }
+        return (siblingIndex == siblings.length) ? hash : null;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    /**
+     * Returns the compact binary form of the proof.
+     */
+    public byte[] getEncoded() {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        try {
+            out.writeInt(chunkIndex);
+            out.writeByte(siblings.length);
+            for (byte[] sibling : siblings) {
+                out.writeByte(sibling.length);
+                out.write(sibling);
+            }
+        } catch (IOException e) {
+            throw new SignerException("failed to encode Merkle proof", e);
+        }
+        return bout.toByteArray();
+    }
+
+}
@@ -0,0 +1,158 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * A binary hash tree over the fixed size chunks of a payload. A leaf is the digest of <code>0x00</code> followed
+ * by the chunk and an inner node is the digest of <code>0x01</code> followed by its two children. The last node of
+ * a level that has an odd number of nodes is promoted to the next level unchanged. The tree is kept in memory to
+ * create the {@link MerkleProof}s of the chunks.
+ */
+public final class MerkleTree {
+
+    private static final byte LEAF_PREFIX = 0;
+
+    private static final byte NODE_PREFIX = 1;
+
+    /**
+     * Returns the number of chunks of a payload. An empty payload has one empty chunk.
+     */
+    static int getChunkCount(final long length, final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("the chunk size must be positive: " + chunkSize);
+        }
+        long chunkCount = Math.max(1, ((length + chunkSize) - 1) / chunkSize);
+        if (chunkCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many chunks, the chunk size [" + chunkSize
+                    + "] is too small for [" + length + "] bytes");
+        }
+        return (int) chunkCount;
+    }
+
+    static MerkleTree fromLeafHashes(final String digestAlgorithm, final int chunkSize, final long length,
+            final MessageDigest messageDigest, final byte[][] leafHashes) {
+        int levelCount = 1;
+        for (int size = leafHashes.length; size > 1; size = (size + 1) >>> 1) {
+            levelCount++;
+        }
+        byte[][][] levels = new byte[levelCount][][];
+        levels[0] = leafHashes;
+        for (int level = 1; level < levelCount; level++) {
+            byte[][] children = levels[level - 1];
+            byte[][] nodes = new byte[(children.length + 1) >>> 1][];
+            for (int i = 0; i < nodes.length; i++) {
+                int left = 2 * i;
+                nodes[i] = ((left + 1) < children.length)
+                        ? hashNode(messageDigest, children[left], children[left + 1])
+                        : children[left];
+            }
+            levels[level] = nodes;
+        }
+        return new MerkleTree(digestAlgorithm, chunkSize, length, levels);
+    }
+
+    static byte[] hashLeaf(final MessageDigest messageDigest, final ByteBuffer chunk) {
+        messageDigest.update(LEAF_PREFIX);
+        messageDigest.update(chunk);
+        return messageDigest.digest();
+    }
+
+    static byte[] hashNode(final MessageDigest messageDigest, final byte[] left, final byte[] right) {
+        messageDigest.update(NODE_PREFIX);
+        messageDigest.update(left);
+        messageDigest.update(right);
+        return messageDigest.digest();
+    }
+
+    private final String digestAlgorithm;
+
+    private final int chunkSize;
+
+    private final long length;
+
+    /**
+     * The nodes of the tree level by level, starting with the leaves.
+     */
+    private final byte[][][] levels;
+
+    private MerkleTree(final String digestAlgorithm, final int chunkSize, final long length,
+            final byte[][][] levels) {
+        this.digestAlgorithm = digestAlgorithm;
+        this.chunkSize = chunkSize;
+        this.length = length;
+        this.levels = levels;
+    }
+
+    public int getChunkCount() {
+        return levels[0].length;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * Returns the length of the payload in bytes.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the proof that connects a chunk to the root of the tree.
+     *
+     * @param chunkIndex
+     *            the index of the chunk.
+     * @return the siblings of the nodes on the path from the chunk to the root.
+     */
+    public MerkleProof getProof(final int chunkIndex) {
+        if ((chunkIndex < 0) || (chunkIndex >= getChunkCount())) {
+            throw new IndexOutOfBoundsException("chunk index [" + chunkIndex + "] is out of range [0, "
+                    + getChunkCount() + ")");
+        }
+        byte[][] siblings = new byte[levels.length - 1][];
+        int siblingCount = 0;
+        int index = chunkIndex;
+        for (int level = 0; level < (levels.length - 1); level++) {
+            int sibling = index ^ 1;
+            if (sibling < levels[level].length) {
+                siblings[siblingCount++] = levels[level][sibling];
+            }
+            index >>>= 1;
+        }
+        byte[][] result = new byte[siblingCount][];
+        System.arraycopy(siblings, 0, result, 0, siblingCount);
+        return new MerkleProof(chunkIndex, result);
+    }
+
+    public byte[] getRoot() {
+        return levels[levels.length - 1][0].clone();
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link OperationMetrics} of a signer by operation, signature algorithm and key alias. The signature
+ * algorithms come from the callers, so the number of entries is limited. Calls with further algorithms are
+ * recorded with the {@link #OTHER_ALGORITHMS} algorithm.
+ */
+final class MetricsRegistry {
+
+    /**
+     * The key of the metrics of an operation.
+     */
+    private static final class MetricsKey {
+
+        private final String operation;
+
+        private final String signatureAlgorithm;
+
+        private final String keyAlias;
+
+        private final int hashCode;
+
+        MetricsKey(final String operation, final String signatureAlgorithm, final String keyAlias) {
+            this.operation = operation;
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.keyAlias = keyAlias;
+            int result = operation.hashCode();
+            result = (31 * result) + String.valueOf(signatureAlgorithm).hashCode();
+            result = (31 * result) + String.valueOf(keyAlias).hashCode();
+            hashCode = result;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MetricsKey)) {
+                return false;
+            }
+            MetricsKey other = (MetricsKey) obj;
+            return (hashCode == other.hashCode) && operation.equals(other.operation)
+                    && String.valueOf(signatureAlgorithm).equals(String.valueOf(other.signatureAlgorithm))
+                    && String.valueOf(keyAlias).equals(String.valueOf(other.keyAlias));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+    static final int MAX_ENTRIES = 256;
+
+    static final String OTHER_ALGORITHMS = "*";
+
+    private final ConcurrentMap<MetricsKey, OperationMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the metrics of an operation, creating them on the first call.
+     */
+    OperationMetrics get(final String operation, final String signatureAlgorithm, final String keyAlias) {
+        MetricsKey key = new MetricsKey(operation, signatureAlgorithm, keyAlias);
+        OperationMetrics operationMetrics = metrics.get(key);
+        if (operationMetrics != null) {
+            return operationMetrics;
+        }
+        String trackedAlgorithm = signatureAlgorithm;
+        if (metrics.size() >= MAX_ENTRIES) {
+            trackedAlgorithm = OTHER_ALGORITHMS;
+            key = new MetricsKey(operation, trackedAlgorithm, keyAlias);
+            operationMetrics = metrics.get(key);
+            if (operationMetrics != null) {
+                return operationMetrics;
+            }
+        }
+        operationMetrics = new OperationMetrics(operation, trackedAlgorithm, keyAlias);
+        OperationMetrics existing = metrics.putIfAbsent(key, operationMetrics);
+        return (existing != null) ? existing : operationMetrics;
+    }
+
+    List<OperationStatistics> getOperationStatistics() {
+        List<OperationStatistics> result = new ArrayList<>(metrics.size());
+        for (OperationMetrics operationMetrics : metrics.values()) {
+            result.add(operationMetrics.snapshot());
+        }
+        Collections.sort(result, new Comparator<OperationStatistics>() {
+
+            @Override
+            public int compare(final OperationStatistics o1, final OperationStatistics o2) {
+                int result = o1.getOperation().compareTo(o2.getOperation());
+                if (result == 0) {
+                    result = String.valueOf(o1.getSignatureAlgorithm()).compareTo(
+                            String.valueOf(o2.getSignatureAlgorithm()));
+                }
+                if (result == 0) {
+                    result = String.valueOf(o1.getKeyAlias()).compareTo(String.valueOf(o2.getKeyAlias()));
+                }
+                return result;
+            }
+        });
+        return result;
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * The counters and the latency histogram of one operation with one signature algorithm and key alias.
+ */
+final class OperationMetrics {
+
+    private final String operation;
+
+    private final String signatureAlgorithm;
+
+    private final String keyAlias;
+
+    private final StripedCounter count = new StripedCounter();
+
+    private final StripedCounter failureCount = new StripedCounter();
+
+    private final StripedCounter invalidCount = new StripedCounter();
+
+    private final StripedCounter totalLatency = new StripedCounter();
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    OperationMetrics(final String operation, final String signatureAlgorithm, final String keyAlias) {
+        this.operation = operation;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.keyAlias = keyAlias;
+    }
+
+    /**
+     * Returns a percentile of the latencies. The bucket of the histogram is reported by its highest value, which is
+     * limited to the highest latency that was actually recorded.
+     */
+    private long getLatency(final long[] counts, final long histogramCount, final double fraction,
+            final long maxLatency) {
+        return Math.min(maxLatency, LatencyHistogram.getValueAtFraction(counts, histogramCount, fraction));
+    }
+
+    /**
+     * Records a call.
+     *
+     * @param latency
+     *            the duration of the call in nanoseconds.
+     * @param failed
+     *            whether the call ended with an exception.
+     * @param invalid
+     *            whether a verification found an invalid signature.
+     */
+    void record(final long latency, final boolean failed, final boolean invalid) {
+        count.increment();
+        totalLatency.add(latency);
+        latencyHistogram.record(latency);
+        if (failed) {
+            failureCount.increment();
+        }
+        if (invalid) {
+            invalidCount.increment();
+        }
+    }
+
+    OperationStatistics snapshot() {
+        long[] counts = latencyHistogram.getCounts();
+        long histogramCount = 0;
+        for (long bucketCount : counts) {
+            histogramCount += bucketCount;
+        }
+        long currentCount = count.sum();
+        long meanLatency = (currentCount > 0) ? (totalLatency.sum() / currentCount) : 0;
+        long maxLatency = latencyHistogram.getMaxValue();
+        return new OperationStatistics(operation, signatureAlgorithm, keyAlias, currentCount, failureCount.sum(),
+                invalidCount.sum(), meanLatency, maxLatency,
+                getLatency(counts, histogramCount, 0.5, maxLatency),
+                getLatency(counts, histogramCount, 0.9, maxLatency),
+                getLatency(counts, histogramCount, 0.99, maxLatency),
+                getLatency(counts, histogramCount, 0.999, maxLatency));
+    }
+
+}
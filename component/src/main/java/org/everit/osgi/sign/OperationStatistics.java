@@ -0,0 +1,157 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * A snapshot of the statistics of one operation with one signature algorithm and key alias. The latencies are
+ * measured in nanoseconds. Verifications served from the verification cache are not included.
+ */
+public final class OperationStatistics {
+
+    private final String operation;
+
+    private final String signatureAlgorithm;
+
+    private final String keyAlias;
+
+    private final long count;
+
+    private final long failureCount;
+
+    private final long invalidCount;
+
+    private final long meanLatency;
+
+    private final long maxLatency;
+
+    private final long latency50;
+
+    private final long latency90;
+
+    private final long latency99;
+
+    private final long latency999;
+
+    OperationStatistics(final String operation, final String signatureAlgorithm, final String keyAlias,
+            final long count, final long failureCount, final long invalidCount, final long meanLatency,
+            final long maxLatency, final long latency50, final long latency90, final long latency99,
+            final long latency999) {
+        this.operation = operation;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.keyAlias = keyAlias;
+        this.count = count;
+        this.failureCount = failureCount;
+        this.invalidCount = invalidCount;
+        this.meanLatency = meanLatency;
+        this.maxLatency = maxLatency;
+        this.latency50 = latency50;
+        this.latency90 = latency90;
+        this.latency99 = latency99;
+        this.latency999 = latency999;
+    }
+
+    /**
+     * Returns the number of calls including the failed ones.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of calls that ended with an exception.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the number of verifications that found an invalid signature. In case of batches, the number of
+     * batches with at least one invalid signature.
+     */
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * Returns the alias of the key or <code>null</code> if the key has no alias.
+     */
+    public String getKeyAlias() {
+        return keyAlias;
+    }
+
+    /**
+     * Returns the median latency.
+     */
+    public long getLatency50() {
+        return latency50;
+    }
+
+    /**
+     * Returns the 90th percentile of the latencies.
+     */
+    public long getLatency90() {
+        return latency90;
+    }
+
+    /**
+     * Returns the 99th percentile of the latencies.
+     */
+    public long getLatency99() {
+        return latency99;
+    }
+
+    /**
+     * Returns the 99.9th percentile of the latencies.
+     */
+    public long getLatency999() {
+        return latency999;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public long getMeanLatency() {
+        return meanLatency;
+    }
+
+    /**
+     * Returns the name of the operation, one of the <code>OPERATION_*</code> constants of {@link SignerMetrics}.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStatistics [operation=" + operation + ", signatureAlgorithm=" + signatureAlgorithm
+                + ", keyAlias=" + keyAlias + ", count=" + count + ", failureCount=" + failureCount
+                + ", invalidCount=" + invalidCount + ", meanLatency=" + meanLatency + ", maxLatency=" + maxLatency
+                + ", latency50=" + latency50 + ", latency90=" + latency90 + ", latency99=" + latency99
+                + ", latency999=" + latency999 + "]";
+    }
+
+}
@@ -0,0 +1,384 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * The parts of a PKCS#7 <code>SignedData</code> structure that are needed to verify the signature block of a
+ * signed JAR file, as created by <code>jarsigner</code>. The content of the structure is detached, it is the
+ * signature file of the JAR. Only definite-length DER encoding is supported and signers must be identified by
+ * issuer and serial number.
+ */
+final class Pkcs7SignedData {
+
+    /**
+     * A reader of DER encoded elements within a range of a byte array.
+     */
+    private static final class DerReader {
+
+        private final byte[] data;
+
+        private int position;
+
+        private final int limit;
+
+        private int tag;
+
+        private int elementOffset;
+
+        private int contentOffset;
+
+        private int contentLength;
+
+        DerReader(final byte[] data, final int offset, final int length) {
+            this.data = data;
+            position = offset;
+            limit = offset + length;
+        }
+
+        /**
+         * Returns a reader of the content of the current element.
+         */
+        DerReader content() {
+            return new DerReader(data, contentOffset, contentLength);
+        }
+
+        byte[] contentBytes() {
+            return Arrays.copyOfRange(data, contentOffset, contentOffset + contentLength);
+        }
+
+        /**
+         * Returns the encoding of the current element including the tag and the length.
+         */
+        byte[] elementBytes() {
+            return Arrays.copyOfRange(data, elementOffset, contentOffset + contentLength);
+        }
+
+        boolean hasNext() {
+            return position < limit;
+        }
+
+        /**
+         * Reads the next element and checks its tag.
+         */
+        DerReader next(final int expectedTag) {
+            next();
+            if (tag != expectedTag) {
+                throw new IllegalArgumentException("malformed signature block, expected tag [" + expectedTag
+                        + "] but found [" + tag + "]");
+            }
+            return this;
+        }
+
+        /**
+         * Reads the next element.
+         */
+        DerReader next() {
+            if ((limit - position) < 2) {
+                throw new IllegalArgumentException("malformed signature block, truncated element");
+            }
+            elementOffset = position;
+            tag = data[position++] & 0xff;
+            int length = data[position++] & 0xff;
+            if (length > 0x7f) {
+                int lengthBytes = length & 0x7f;
+                if ((lengthBytes == 0) || (lengthBytes > 3) || ((limit - position) < lengthBytes)) {
+                    throw new IllegalArgumentException("malformed signature block, unsupported length encoding");
+                }
+                length = 0;
+                for (int i = 0; i < lengthBytes; i++) {
+                    length = (length << 8) | (data[position++] & 0xff);
+                }
+            }
+            if (length > (limit - position)) {
+                throw new IllegalArgumentException("malformed signature block, element exceeds its container");
+            }
+            contentOffset = position;
+            contentLength = length;
+            position += length;
+            return this;
+        }
+
+        String oid() {
+            if (tag != TAG_OID) {
+                throw new IllegalArgumentException("malformed signature block, expected an object identifier");
+            }
+            return decodeOid(data, contentOffset, contentLength);
+        }
+
+        int tag() {
+            return tag;
+        }
+
+    }
+
+    /**
+     * A signer of the signed data.
+     */
+    static final class SignerInfo {
+
+        private final X500Principal issuer;
+
+        private final BigInteger serialNumber;
+
+        private final String digestAlgorithmOid;
+
+        private final byte[] authenticatedAttributes;
+
+        private final byte[] messageDigest;
+
+        private final String signatureAlgorithmOid;
+
+        private final byte[] signature;
+
+        SignerInfo(final X500Principal issuer, final BigInteger serialNumber, final String digestAlgorithmOid,
+                final byte[] authenticatedAttributes, final byte[] messageDigest, final String signatureAlgorithmOid,
+                final byte[] signature) {
+            this.issuer = issuer;
+            this.serialNumber = serialNumber;
+            this.digestAlgorithmOid = digestAlgorithmOid;
+            this.authenticatedAttributes = authenticatedAttributes;
+            this.messageDigest = messageDigest;
+            this.signatureAlgorithmOid = signatureAlgorithmOid;
+            this.signature = signature;
+        }
+
+        /**
+         * Returns the DER encoding of the authenticated attributes as a <code>SET OF</code>, which is the data that
+         * is signed if the signer has authenticated attributes.
+         *
+         * @return the encoding or <code>null</code> if the signer has no authenticated attributes.
+         */
+        byte[] getAuthenticatedAttributes() {
+            return authenticatedAttributes;
+        }
+
+        String getDigestAlgorithmOid() {
+            return digestAlgorithmOid;
+        }
+
+        X500Principal getIssuer() {
+            return issuer;
+        }
+
+        /**
+         * Returns the value of the <code>messageDigest</code> authenticated attribute or <code>null</code> if the
+         * signer has no such attribute.
+         */
+        byte[] getMessageDigest() {
+            return messageDigest;
+        }
+
+        BigInteger getSerialNumber() {
+            return serialNumber;
+        }
+
+        byte[] getSignature() {
+            return signature;
+        }
+
+        String getSignatureAlgorithmOid() {
+            return signatureAlgorithmOid;
+        }
+
+    }
+
+    static final String OID_SIGNED_DATA = "1.2.840.113549.1.7.2";
+
+    static final String OID_MESSAGE_DIGEST = "1.2.840.113549.1.9.4";
+
+    private static final int TAG_INTEGER = 0x02;
+
+    private static final int TAG_OCTET_STRING = 0x04;
+
+    private static final int TAG_OID = 0x06;
+
+    private static final int TAG_SEQUENCE = 0x30;
+
+    private static final int TAG_SET = 0x31;
+
+    private static final int TAG_CONTEXT_0 = 0xa0;
+
+    private static final int TAG_CONTEXT_1 = 0xa1;
+
+    private static String decodeOid(final byte[] data, final int offset, final int length) {
+        if (length == 0) {
+            throw new IllegalArgumentException("malformed signature block, empty object identifier");
+        }
+        StringBuilder sb = new StringBuilder();
+        long value = 0;
+        boolean first = true;
+        for (int i = offset; i < (offset + length); i++) {
+            value = (value << 7) | (data[i] & 0x7f);
+            if ((data[i] & 0x80) != 0) {
+                if (value > (Long.MAX_VALUE >> 7)) {
+                    throw new IllegalArgumentException("malformed signature block, object identifier too long");
+                }
+                continue;
+            }
+            if (first) {
+                int firstArc = (int) Math.min(2, value / 40);
+                sb.append(firstArc).append('.').append(value - (firstArc * 40));
+                first = false;
+            } else {
+                sb.append('.').append(value);
+            }
+            value = 0;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a signature block.
+     *
+     * @throws IllegalArgumentException
+     *             if the block is not a supported PKCS#7 <code>SignedData</code> structure.
+     */
+    static Pkcs7SignedData parse(final byte[] block) {
+        DerReader contentInfo = new DerReader(block, 0, block.length).next(TAG_SEQUENCE).content();
+        if (!OID_SIGNED_DATA.equals(contentInfo.next().oid())) {
+            throw new IllegalArgumentException("malformed signature block, the content is not signed data");
+        }
+        DerReader signedData = contentInfo.next(TAG_CONTEXT_0).content().next(TAG_SEQUENCE).content();
+        signedData.next(TAG_INTEGER);
+        signedData.next(TAG_SET);
+        signedData.next(TAG_SEQUENCE);
+
+        List<X509Certificate> certificates = new ArrayList<>();
+        signedData.next();
+        if (signedData.tag() == TAG_CONTEXT_0) {
+            CertificateFactory certificateFactory;
+            try {
+                certificateFactory = CertificateFactory.getInstance("X.509");
+            } catch (CertificateException e) {
+                throw new SignerException("X.509 certificates are not supported", e);
+            }
+            DerReader certificateReader = signedData.content();
+            while (certificateReader.hasNext()) {
+                byte[] encoded = certificateReader.next(TAG_SEQUENCE).elementBytes();
+                try {
+                    certificates.add((X509Certificate) certificateFactory.generateCertificate(
+                            new ByteArrayInputStream(encoded)));
+                } catch (CertificateException e) {
+                    throw new IllegalArgumentException("malformed signature block, invalid certificate", e);
+                }
+            }
+            signedData.next();
+        }
+        if (signedData.tag() == TAG_CONTEXT_1) {
+            signedData.next();
+        }
+        if (signedData.tag() != TAG_SET) {
+            throw new IllegalArgumentException("malformed signature block, signer infos not found");
+        }
+        List<SignerInfo> signerInfos = new ArrayList<>();
+        DerReader signerInfoReader = signedData.content();
+        while (signerInfoReader.hasNext()) {
+            signerInfos.add(parseSignerInfo(signerInfoReader.next(TAG_SEQUENCE).content()));
+        }
+        if (signerInfos.isEmpty()) {
+            throw new IllegalArgumentException("malformed signature block, no signer");
+        }
+        return new Pkcs7SignedData(certificates, signerInfos);
+    }
+
+    private static SignerInfo parseSignerInfo(final DerReader signerInfo) {
+        signerInfo.next(TAG_INTEGER);
+        DerReader issuerAndSerialNumber = signerInfo.next(TAG_SEQUENCE).content();
+        X500Principal issuer;
+        try {
+            issuer = new X500Principal(issuerAndSerialNumber.next(TAG_SEQUENCE).elementBytes());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("malformed signature block, invalid issuer", e);
+        }
+        BigInteger serialNumber = new BigInteger(issuerAndSerialNumber.next(TAG_INTEGER).contentBytes());
+        String digestAlgorithmOid = signerInfo.next(TAG_SEQUENCE).content().next().oid();
+
+        byte[] authenticatedAttributes = null;
+        byte[] messageDigest = null;
+        signerInfo.next();
+        if (signerInfo.tag() == TAG_CONTEXT_0) {
+            authenticatedAttributes = signerInfo.elementBytes();
+            // The signature covers the attributes with the universal SET tag instead of the implicit tag
+            authenticatedAttributes[0] = (byte) TAG_SET;
+            DerReader attributes = signerInfo.content();
+            while (attributes.hasNext()) {
+                DerReader attribute = attributes.next(TAG_SEQUENCE).content();
+                if (OID_MESSAGE_DIGEST.equals(attribute.next().oid())) {
+                    messageDigest = attribute.next(TAG_SET).content().next(TAG_OCTET_STRING).contentBytes();
+                }
+            }
+            signerInfo.next();
+        }
+        if (signerInfo.tag() != TAG_SEQUENCE) {
+            throw new IllegalArgumentException("malformed signature block, signature algorithm not found");
+        }
+        String signatureAlgorithmOid = signerInfo.content().next().oid();
+        byte[] signature = signerInfo.next(TAG_OCTET_STRING).contentBytes();
+        return new SignerInfo(issuer, serialNumber, digestAlgorithmOid, authenticatedAttributes, messageDigest,
+                signatureAlgorithmOid, signature);
+    }
+
+    private final List<X509Certificate> certificates;
+
+    private final List<SignerInfo> signerInfos;
+
+    private Pkcs7SignedData(final List<X509Certificate> certificates, final List<SignerInfo> signerInfos) {
+        this.certificates = Collections.unmodifiableList(certificates);
+        this.signerInfos = Collections.unmodifiableList(signerInfos);
+    }
+
+    /**
+     * Returns the certificate of a signer from the certificates of the structure.
+     *
+     * @return the certificate or <code>null</code> if the structure does not contain it.
+     */
+    X509Certificate findCertificate(final SignerInfo signerInfo) {
+        for (X509Certificate certificate : certificates) {
+            if (certificate.getSerialNumber().equals(signerInfo.getSerialNumber())
+                    && certificate.getIssuerX500Principal().equals(signerInfo.getIssuer())) {
+                return certificate;
+            }
+        }
+        return null;
+    }
+
+    List<X509Certificate> getCertificates() {
+        return certificates;
+    }
+
+    List<SignerInfo> getSignerInfos() {
+        return signerInfos;
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.List;
+
+/**
+ * Signer with admission control. At most a configured number of operations are executed concurrently, further
+ * operations wait in the queue of their {@link SignerPriority} lane. Waiting operations of higher lanes are
+ * admitted first. Operations that do not fit into the queue of their lane or that wait longer than the queue
+ * timeout of their lane are shed with a {@link SignerRejectedException}, so the latency of the admitted operations
+ * stays predictable under overload.
+ */
+public interface PrioritySigner {
+
+    /**
+     * Returns a snapshot of the state and the statistics of the lanes.
+     *
+     * @return the statistics ordered by priority, from the highest to the lowest.
+     */
+    List<LaneStatistics> getLaneStatistics();
+
+    /**
+     * Signs the data in a lane.
+     *
+     * @throws SignerRejectedException
+     *             if the operation is shed because the queue of the lane is full or the operation waited too long.
+     * @see Signer#sign(byte[], String, AlgorithmParameterSpec, SecureRandom)
+     */
+    byte[] sign(SignerPriority priority, byte[] data, String signatureAlgorithm,
+            AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Signs a batch of payloads in a lane. The batch is admitted as one operation.
+     *
+     * @throws SignerRejectedException
+     *             if the operation is shed because the queue of the lane is full or the operation waited too long.
+     * @see ExtendedSigner#signBatch(List, String, AlgorithmParameterSpec, SecureRandom)
+     */
+    List<byte[]> signBatch(SignerPriority priority, List<byte[]> payloads, String signatureAlgorithm,
+            AlgorithmParameterSpec algorithmParameterSpec, SecureRandom secureRandom);
+
+    /**
+     * Verifies the signature in a lane.
+     *
+     * @throws SignerRejectedException
+     *             if the operation is shed because the queue of the lane is full or the operation waited too long.
+     * @see Signer#verify(byte[], byte[], String, AlgorithmParameterSpec)
+     */
+    boolean verify(SignerPriority priority, byte[] data, byte[] signatureBytes, String signatureAlgorithm,
+            AlgorithmParameterSpec algorithmParameterSpec);
+
+}
@@ -22,7 +22,7 @@ package org.everit.osgi.sign;
  */
 
 /**
- * Property names of {@link SignerComponent}.
+ * Property names of the components of the bundle.
  */
 public final class PropertyName {
 
@@ -31,6 +31,50 @@ public final class PropertyName {
     public static final String PRIVATE_KEY_ALIAS = "privateKeyAlias";
     public static final String PRIVATE_KEY_PASSWORD = "privateKeyPassword";
     public static final String PUBLIC_KEY_ALIAS = "publicKeyAlias";
+    public static final String SIGNATURE_POOL_SIZE = "signaturePoolSize";
+    public static final String BATCH_PARALLELISM = "batchParallelism";
+    public static final String VERIFICATION_CACHE_SIZE = "verificationCacheSize";
+    public static final String VERIFICATION_CACHE_TIME_TO_LIVE = "verificationCacheTimeToLive";
+    public static final String PUBLIC_KEY_ALIASES = "publicKeyAliases";
+    public static final String JMX_ENABLED = "jmxEnabled";
+    public static final String PROVIDER_SELECTION = "providerSelection";
+    public static final String PROVIDER_SELECTION_ALGORITHMS = "providerSelectionAlgorithms";
+    public static final String PROVIDER_OVERRIDES = "providerOverrides";
+    public static final String AVAILABLE_PROVIDERS_TARGET = "availableProviders.target";
+    public static final String DEFAULT_SIGNATURE_ALGORITHM = "defaultSignatureAlgorithm";
+    public static final String DEFAULT_PSS_DIGEST_ALGORITHM = "defaultPssDigestAlgorithm";
+    public static final String DEFAULT_PSS_SALT_LENGTH = "defaultPssSaltLength";
+    public static final String SECURE_RANDOM_ALGORITHM = "secureRandomAlgorithm";
+    public static final String SECURE_RANDOM_RESEED_INTERVAL = "secureRandomReseedInterval";
+    public static final String LAZY_KEY_LOADING = "lazyKeyLoading";
+    public static final String WARM_UP_ALGORITHMS = "warmUpAlgorithms";
+
+    public static final String SIGNER_TARGET = "signer.target";
+    public static final String THREAD_COUNT = "threadCount";
+    public static final String QUEUE_SIZE = "queueSize";
+    public static final String REJECTION_POLICY = "rejectionPolicy";
+
+    public static final String DEFAULT_PRIVATE_KEY_PASSWORD = "defaultPrivateKeyPassword";
+    public static final String PRIVATE_KEY_PASSWORDS = "privateKeyPasswords";
+    public static final String KEY_CACHE_SIZE = "keyCacheSize";
+
+    public static final String SECRET_KEY_ALIAS = "secretKeyAlias";
+    public static final String SECRET_KEY_PASSWORD = "secretKeyPassword";
+
+    public static final String BACKENDS_TARGET = "backends.target";
+    public static final String BACKEND_SUSPENSION_TIME = "backendSuspensionTime";
+
+    public static final String MAX_CONCURRENCY = "maxConcurrency";
+    public static final String INTERACTIVE_RESERVED_CONCURRENCY = "interactiveReservedConcurrency";
+    public static final String INTERACTIVE_QUEUE_SIZE = "interactiveQueueSize";
+    public static final String INTERACTIVE_QUEUE_TIMEOUT = "interactiveQueueTimeout";
+    public static final String BULK_QUEUE_SIZE = "bulkQueueSize";
+    public static final String BULK_QUEUE_TIMEOUT = "bulkQueueTimeout";
+    public static final String DEFAULT_PRIORITY = "defaultPriority";
+
+    public static final String TRUSTED_CERTIFICATE_ALIASES = "trustedCertificateAliases";
+    public static final String VERIFICATION_PARALLELISM = "verificationParallelism";
+    public static final String JAR_VERIFICATION_CACHE_SIZE = "jarVerificationCacheSize";
 
     private PropertyName() {
     }
@@ -0,0 +1,86 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.Provider;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps signature algorithms to the {@link Provider} that creates their {@link java.security.Signature}s. The
+ * algorithms that are not routed explicitly use the default provider. Instances are immutable.
+ */
+final class ProviderRouting {
+
+    static ProviderRouting fixed(final Provider provider) {
+        return new ProviderRouting(provider, Collections.<String, Provider> emptyMap());
+    }
+
+    static String normalizeAlgorithm(final String algorithm) {
+        return algorithm.toUpperCase(Locale.ENGLISH);
+    }
+
+    private final Provider defaultProvider;
+
+    /**
+     * The providers by the normalized name of the algorithm.
+     */
+    private final Map<String, Provider> providers;
+
+    /**
+     * Constructor.
+     *
+     * @param defaultProvider
+     *            the provider of the algorithms that are not routed.
+     * @param providers
+     *            the providers by the algorithm names normalized with {@link #normalizeAlgorithm(String)}. The map
+     *            is not copied, it must not be modified later.
+     */
+    ProviderRouting(final Provider defaultProvider, final Map<String, Provider> providers) {
+        this.defaultProvider = defaultProvider;
+        this.providers = providers;
+    }
+
+    Provider getDefaultProvider() {
+        return defaultProvider;
+    }
+
+    /**
+     * Returns the provider that creates the signatures of the given algorithm.
+     */
+    Provider getProvider(final String algorithm) {
+        if (providers.isEmpty()) {
+            return defaultProvider;
+        }
+        Provider provider = providers.get(normalizeAlgorithm(algorithm));
+        return (provider != null) ? provider : defaultProvider;
+    }
+
+    /**
+     * Returns the explicitly routed algorithms with their providers.
+     */
+    Map<String, Provider> getProviders() {
+        return Collections.unmodifiableMap(providers);
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Selects the fastest {@link Provider} for a signature algorithm by signing and verifying a small payload with
+ * each candidate. A candidate is only selected if it supports the algorithm and the keys, and the signature it
+ * creates is verified successfully. The choices are cached, so the candidates are measured again only if the key
+ * or the set of candidates changes.
+ */
+final class ProviderSelector {
+
+    /**
+     * The maximum number of cached choices. The cache is cleared when it becomes full.
+     */
+    static final int MAX_CACHED_SELECTIONS = 64;
+
+    /**
+     * The number of sign and verify rounds that are measured per candidate.
+     */
+    static final int MEASUREMENT_ITERATIONS = 50;
+
+    /**
+     * The size of the payload that is signed during the measurement. It is the size of a SHA-256 digest, so the
+     * NONEwith algorithms that sign a digest directly accept it as well.
+     */
+    static final int PAYLOAD_SIZE = 32;
+
+    /**
+     * The number of sign and verify rounds that are executed before the measurement to let the JIT compile the
+     * code of the candidate.
+     */
+    static final int WARM_UP_ITERATIONS = 20;
+
+    private static final long UNSUPPORTED = -1;
+
+    /**
+     * The selected provider by the algorithm, the key and the names and versions of the candidates. A selection is
+     * used only if the provider instance is still one of the candidates.
+     */
+    private final ConcurrentMap<String, Provider> selections = new ConcurrentHashMap<>();
+
+    private String createSelectionKey(final String algorithm, final List<Provider> candidates,
+            final byte[] keyId) {
+        StringBuilder sb = new StringBuilder(ProviderRouting.normalizeAlgorithm(algorithm));
+        sb.append('|').append(Arrays.toString(keyId));
+        for (Provider candidate : candidates) {
+            sb.append('|').append(candidate.getName()).append(' ').append(candidate.getVersion());
+        }
+        return sb.toString();
+    }
+
+    private boolean containsInstance(final List<Provider> candidates, final Provider provider) {
+        for (Provider candidate : candidates) {
+            if (candidate == provider) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the time in nanoseconds that the provider needs for {@link #MEASUREMENT_ITERATIONS} rounds of sign
+     * and verify or {@link #UNSUPPORTED} if the provider cannot be used with the algorithm and the keys.
+     */
+    private long measure(final Provider provider, final String algorithm, final PrivateKey privateKey,
+            final PublicKey publicKey, final byte[] payload) {
+        try {
+            Signature signer = Signature.getInstance(algorithm, provider);
+            Signature verifier = Signature.getInstance(algorithm, provider);
+            signer.initSign(privateKey);
+            verifier.initVerify(publicKey);
+            for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                if (!signAndVerify(signer, verifier, payload)) {
+                    return UNSUPPORTED;
+                }
+            }
+            long startTime = System.nanoTime();
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+                signAndVerify(signer, verifier, payload);
+            }
+            return System.nanoTime() - startTime;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Returns the fastest candidate for the algorithm.
+     *
+     * @param algorithm
+     *            the name of the signature algorithm.
+     * @param candidates
+     *            the providers to choose from. On equal speed the earlier candidate is selected.
+     * @param privateKey
+     *            the private key that is used to sign.
+     * @param publicKey
+     *            the public key that belongs to the private key.
+     * @param keyId
+     *            the identifier of the key pair that is part of the cache key.
+     * @return the fastest candidate or <code>null</code> if none of the candidates supports the algorithm and
+     *         the keys.
+     */
+    Provider select(final String algorithm, final List<Provider> candidates, final PrivateKey privateKey,
+            final PublicKey publicKey, final byte[] keyId) {
+        String selectionKey = createSelectionKey(algorithm, candidates, keyId);
+        Provider cachedProvider = selections.get(selectionKey);
+        if ((cachedProvider != null) && containsInstance(candidates, cachedProvider)) {
+            return cachedProvider;
+        }
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        Arrays.fill(payload, (byte) 0x5A);
+        Provider fastest = null;
+        long fastestTime = Long.MAX_VALUE;
+        for (Provider candidate : candidates) {
+            long time = measure(candidate, algorithm, privateKey, publicKey, payload);
+            if ((time != UNSUPPORTED) && (time < fastestTime)) {
+                fastest = candidate;
+                fastestTime = time;
+            }
+        }
+        if (fastest != null) {
+            if (selections.size() >= MAX_CACHED_SELECTIONS) {
+                selections.clear();
+            }
+            selections.put(selectionKey, fastest);
+        }
+        return fastest;
+    }
+
+    private boolean signAndVerify(final Signature signer, final Signature verifier, final byte[] payload)
+            throws GeneralSecurityException {
+        signer.update(payload);
+        byte[] signature = signer.sign();
+        verifier.update(payload);
+        return verifier.verify(signature);
+    }
+
+}
@@ -0,0 +1,177 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The public keys that a signer verifies with, indexed by their key id. The key id is the SHA-256 digest of the
+ * encoded SubjectPublicKeyInfo of the key. The index remembers the key that verified a signature most recently, so
+ * during a key rotation the key that is currently in use is tried first.
+ */
+final class PublicKeyIndex {
+
+    /**
+     * A public key with the pool of signatures initialized for verification with it.
+     */
+    static final class Entry {
+
+        private final byte[] keyId;
+
+        private final PublicKey publicKey;
+
+        private final SignaturePool signaturePool;
+
+        private final SignatureShape signatureShape;
+
+        Entry(final byte[] keyId, final PublicKey publicKey, final SignaturePool signaturePool) {
+            this.keyId = keyId;
+            this.publicKey = publicKey;
+            this.signaturePool = signaturePool;
+            signatureShape = SignatureShape.of(publicKey);
+        }
+
+        byte[] getKeyId() {
+            return keyId.clone();
+        }
+
+        PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        SignaturePool getSignaturePool() {
+            return signaturePool;
+        }
+
+        SignatureShape getSignatureShape() {
+            return signatureShape;
+        }
+
+    }
+
+    /**
+     * Computes the key id of a public key.
+     */
+    static byte[] computeKeyId(final PublicKey publicKey) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded());
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignerException("SHA-256 is not available to compute key ids", e);
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private final Map<ByteBuffer, Entry> entriesByKeyId;
+
+    private volatile Entry mostRecentlySuccessful;
+
+    /**
+     * Constructor.
+     *
+     * @param entries
+     *            the keys, the first one is the primary key that is tried first until another key verifies a
+     *            signature.
+     */
+    PublicKeyIndex(final List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        entriesByKeyId = new HashMap<>();
+        for (Entry entry : entries) {
+            entriesByKeyId.put(ByteBuffer.wrap(entry.keyId), entry);
+        }
+        mostRecentlySuccessful = entries.get(0);
+    }
+
+    /**
+     * Returns the entry of the key with the given id or <code>null</code> if there is no such key.
+     */
+    Entry get(final byte[] keyId) {
+        return entriesByKeyId.get(ByteBuffer.wrap(keyId));
+    }
+
+    /**
+     * Returns the entry of the key that has the key id of the envelope or <code>null</code> if there is no such
+     * key. The key ids are compared in place, starting with the key that verified a signature most recently.
+     */
+    Entry get(final SignatureEnvelope envelope) {
+        Entry first = mostRecentlySuccessful;
+        if (envelope.hasKeyId(first.keyId)) {
+            return first;
+        }
+        for (Entry entry : entries) {
+            if ((entry != first) && envelope.hasKeyId(entry.keyId)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all entries in the configured order.
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns all entries in the order they are tried: the key that verified a signature most recently first and
+     * the others in the configured order.
+     */
+    List<Entry> getEntriesInTrialOrder() {
+        Entry first = mostRecentlySuccessful;
+        List<Entry> result = new ArrayList<>(entries.size());
+        result.add(first);
+        for (Entry entry : entries) {
+            if (entry != first) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    Entry getMostRecentlySuccessful() {
+        return mostRecentlySuccessful;
+    }
+
+    Entry getPrimary() {
+        return entries.get(0);
+    }
+
+    void markSuccessful(final Entry entry) {
+        if (mostRecentlySuccessful != entry) {
+            mostRecentlySuccessful = entry;
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+}
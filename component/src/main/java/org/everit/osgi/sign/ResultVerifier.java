@@ -0,0 +1,53 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * Verification that never throws an exception because of the signature or the algorithm passed by the caller.
+ * Under hostile traffic most signatures are garbage, so obviously malformed signatures are rejected before any
+ * public key operation and the outcome is reported with a {@link VerificationResult} instead of an exception.
+ */
+public interface ResultVerifier {
+
+    /**
+     * Verifies the signature of the data.
+     *
+     * @param data
+     *            the signed data.
+     * @param signatureBytes
+     *            the signature to verify.
+     * @param signatureAlgorithm
+     *            the algorithm of the signature.
+     * @param algorithmParameterSpec
+     *            the parameters of the signature algorithm or <code>null</code>.
+     * @return the outcome of the verification. It is {@link VerificationResult#MALFORMED} if the data or the
+     *         signature is <code>null</code> and {@link VerificationResult#UNSUPPORTED} if the algorithm is
+     *         <code>null</code>.
+     * @throws SignerException
+     *             only if the signer is not active or not configured for verification.
+     */
+    VerificationResult verifyWithResult(byte[] data, byte[] signatureBytes, String signatureAlgorithm,
+            AlgorithmParameterSpec algorithmParameterSpec);
+
+}
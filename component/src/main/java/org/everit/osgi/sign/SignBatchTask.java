@@ -0,0 +1,93 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Signs a range of a batch of payloads. Ranges that are larger than the threshold are split in two and signed in
+ * parallel, smaller ranges are signed with one {@link Signature} borrowed from the pool.
+ */
+final class SignBatchTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 5323616939468727434L;
+
+    private final SignaturePool signaturePool;
+
+    private final SignatureKey signatureKey;
+
+    private final SecureRandom secureRandom;
+
+    private final List<byte[]> payloads;
+
+    private final byte[][] results;
+
+    private final int from;
+
+    private final int to;
+
+    private final int threshold;
+
+    SignBatchTask(final SignaturePool signaturePool, final SignatureKey signatureKey,
+            final SecureRandom secureRandom, final List<byte[]> payloads, final byte[][] results, final int from,
+            final int to, final int threshold) {
+        this.signaturePool = signaturePool;
+        this.signatureKey = signatureKey;
+        this.secureRandom = secureRandom;
+        this.payloads = payloads;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+    }
+
+    @Override
+    protected void compute() {
+        if ((to - from) > threshold) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new SignBatchTask(signaturePool, signatureKey, secureRandom, payloads, results, from, middle,
+                    threshold),
+                    new SignBatchTask(signaturePool, signatureKey, secureRandom, payloads, results, middle, to,
+                            threshold));
+            return;
+        }
+        try {
+            Signature signature = signaturePool.borrowSign(signatureKey, secureRandom);
+            for (int i = from; i < to; i++) {
+                signature.update(payloads.get(i));
+                results[i] = signature.sign();
+            }
+            signaturePool.release(signatureKey, signature);
+        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException
+                | SignatureException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+}
@@ -0,0 +1,397 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.ByteBuffer;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A flyweight view of a compact binary signature envelope. The envelope carries everything a verifier needs
+ * besides the data and the public key: the algorithm, the parameters and the key id of the public key. The layout
+ * is (all numbers are unsigned and big-endian):
+ *
+ * <pre>
+ * version            1 byte, {@link #VERSION}
+ * algorithm id       1 byte, see {@link #getAlgorithmId(String)}
+ * key id             32 bytes, the SHA-256 digest of the SubjectPublicKeyInfo
+ * parameters length  1 byte, 0 or {@link #PSS_PARAMETERS_LENGTH}
+ * parameters         digest id, MGF1 digest id (1 byte each), salt length (2 bytes), trailer field (1 byte)
+ * signature length   2 bytes
+ * signature
+ * </pre>
+ *
+ * <p>
+ * {@link #wrap(ByteBuffer)} validates the layout and remembers the offsets of the fields. The fields are read in
+ * place from the buffer without copying, so one instance can be reused for any number of envelopes by one thread.
+ * The parameters of RSASSA-PSS with the usual salt length are decoded to shared instances, so the parameterized
+ * signatures are pooled by the signer as well.
+ */
+public final class SignatureEnvelope {
+
+    /**
+     * The version of the envelope layout.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The length of the key id in bytes.
+     */
+    public static final int KEY_ID_LENGTH = 32;
+
+    /**
+     * The length of the encoded RSASSA-PSS parameters.
+     */
+    public static final int PSS_PARAMETERS_LENGTH = 5;
+
+    private static final int HEADER_LENGTH = 2 + KEY_ID_LENGTH + 1;
+
+    private static final int MAX_SIGNATURE_LENGTH = 0xFFFF;
+
+    /**
+     * The trailer field of RSASSA-PSS that is defined by PKCS #1.
+     */
+    private static final int TRAILER_FIELD_BC = 1;
+
+    /**
+     * The signature algorithms by their id. The ids are part of the envelope format, they must never be changed or
+     * reused.
+     */
+    private static final String[] ALGORITHMS = { null, "SHA256withRSA", "SHA384withRSA", "SHA512withRSA",
+            "RSASSA-PSS", "SHA256withECDSA", "SHA384withECDSA", "SHA512withECDSA", "Ed25519", "Ed448",
+            "SHA256withDSA", "SHA1withRSA", "SHA1withECDSA" };
+
+    /**
+     * The digest algorithms of the RSASSA-PSS parameters by their id.
+     */
+    private static final String[] DIGESTS = { null, "SHA-1", "SHA-224", "SHA-256", "SHA-384", "SHA-512" };
+
+    private static final int[] DIGEST_LENGTHS = { 0, 20, 28, 32, 48, 64 };
+
+    private static final Map<String, Integer> ALGORITHM_IDS = createIds(ALGORITHMS);
+
+    private static final Map<String, Integer> DIGEST_IDS = createIds(DIGESTS);
+
+    /**
+     * The parameters that use the same digest for the message and MGF1 and a salt as long as the digest by digest
+     * id.
+     */
+    private static final PSSParameterSpec[] DEFAULT_PSS_PARAMETERS = createDefaultPssParameters();
+
+    private static PSSParameterSpec[] createDefaultPssParameters() {
+        PSSParameterSpec[] result = new PSSParameterSpec[DIGESTS.length];
+        for (int i = 1; i < DIGESTS.length; i++) {
+            result[i] = new PSSParameterSpec(DIGESTS[i], "MGF1", new MGF1ParameterSpec(DIGESTS[i]),
+                    DIGEST_LENGTHS[i], TRAILER_FIELD_BC);
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> createIds(final String[] names) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 1; i < names.length; i++) {
+            result.put(names[i].toUpperCase(Locale.ENGLISH), i);
+        }
+        return result;
+    }
+
+    /**
+     * Encodes an envelope.
+     *
+     * @throws SignerException
+     *             if the algorithm or the parameters cannot be represented in an envelope.
+     */
+    static byte[] encode(final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final byte[] keyId, final byte[] signatureBytes) {
+        int algorithmId = getAlgorithmId(signatureAlgorithm);
+        if (algorithmId < 0) {
+            throw new SignerException("signature algorithm [" + signatureAlgorithm
+                    + "] cannot be represented in a signature envelope");
+        }
+        if ((keyId == null) || (keyId.length != KEY_ID_LENGTH)) {
+            throw new SignerException("key id of the signing key not available");
+        }
+        if (signatureBytes.length > MAX_SIGNATURE_LENGTH) {
+            throw new SignerException("signature is too long for a signature envelope");
+        }
+        int parametersLength = (algorithmParameterSpec == null) ? 0 : PSS_PARAMETERS_LENGTH;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + parametersLength + 2 + signatureBytes.length);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) algorithmId);
+        buffer.put(keyId);
+        buffer.put((byte) parametersLength);
+        if (algorithmParameterSpec != null) {
+            encodeParameters(buffer, algorithmParameterSpec);
+        }
+        buffer.putShort((short) signatureBytes.length);
+        buffer.put(signatureBytes);
+        return buffer.array();
+    }
+
+    private static void encodeParameters(final ByteBuffer buffer,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        if (!(algorithmParameterSpec instanceof PSSParameterSpec)) {
+            throw new SignerException("only RSASSA-PSS parameters can be represented in a signature envelope");
+        }
+        PSSParameterSpec pssParameterSpec = (PSSParameterSpec) algorithmParameterSpec;
+        AlgorithmParameterSpec mgfParameters = pssParameterSpec.getMGFParameters();
+        Integer digestId = DIGEST_IDS.get(pssParameterSpec.getDigestAlgorithm().toUpperCase(Locale.ENGLISH));
+        if (!"MGF1".equalsIgnoreCase(pssParameterSpec.getMGFAlgorithm())
+                || !(mgfParameters instanceof MGF1ParameterSpec) || (digestId == null)
+                || (pssParameterSpec.getSaltLength() > 0xFFFF) || (pssParameterSpec.getTrailerField() > 0xFF)) {
+            throw new SignerException("RSASSA-PSS parameters cannot be represented in a signature envelope");
+        }
+        Integer mgfDigestId = DIGEST_IDS.get(((MGF1ParameterSpec) mgfParameters).getDigestAlgorithm()
+                .toUpperCase(Locale.ENGLISH));
+        if (mgfDigestId == null) {
+            throw new SignerException("RSASSA-PSS parameters cannot be represented in a signature envelope");
+        }
+        buffer.put(digestId.byteValue());
+        buffer.put(mgfDigestId.byteValue());
+        buffer.putShort((short) pssParameterSpec.getSaltLength());
+        buffer.put((byte) pssParameterSpec.getTrailerField());
+    }
+
+    /**
+     * Reads an unsigned big-endian 16-bit number independently of the byte order of the buffer.
+     */
+    private static int getUnsignedShort(final ByteBuffer buffer, final int index) {
+        return ((buffer.get(index) & 0xFF) << 8) | (buffer.get(index + 1) & 0xFF);
+    }
+
+    /**
+     * Returns the id of a signature algorithm in the envelope format.
+     *
+     * @return the id or <code>-1</code> if the algorithm has no id.
+     */
+    public static int getAlgorithmId(final String signatureAlgorithm) {
+        Integer algorithmId = ALGORITHM_IDS.get(signatureAlgorithm.toUpperCase(Locale.ENGLISH));
+        return (algorithmId == null) ? -1 : algorithmId.intValue();
+    }
+
+    /**
+     * Validates the envelope that starts at the position of the buffer.
+     *
+     * @return <code>null</code> if the envelope is well-formed or the reason why it is malformed.
+     */
+    private static String validate(final ByteBuffer envelope) {
+        int start = envelope.position();
+        int remaining = envelope.remaining();
+        if (remaining < (HEADER_LENGTH + 2)) {
+            return "too short";
+        }
+        if ((envelope.get(start) & 0xFF) != VERSION) {
+            return "unsupported version";
+        }
+        int algorithmId = envelope.get(start + 1) & 0xFF;
+        if ((algorithmId == 0) || (algorithmId >= ALGORITHMS.length)) {
+            return "unknown algorithm id";
+        }
+        int parametersLength = envelope.get(start + HEADER_LENGTH - 1) & 0xFF;
+        if ((parametersLength != 0) && (parametersLength != PSS_PARAMETERS_LENGTH)) {
+            return "unsupported parameters length";
+        }
+        if (remaining < (HEADER_LENGTH + parametersLength + 2)) {
+            return "too short";
+        }
+        if (parametersLength > 0) {
+            int parametersOffset = start + HEADER_LENGTH;
+            int digestId = envelope.get(parametersOffset) & 0xFF;
+            int mgfDigestId = envelope.get(parametersOffset + 1) & 0xFF;
+            if ((digestId == 0) || (digestId >= DIGESTS.length) || (mgfDigestId == 0)
+                    || (mgfDigestId >= DIGESTS.length)) {
+                return "unknown digest id";
+            }
+        }
+        int signatureLength = getUnsignedShort(envelope, start + HEADER_LENGTH + parametersLength);
+        if (remaining != (HEADER_LENGTH + parametersLength + 2 + signatureLength)) {
+            return "length mismatch";
+        }
+        return null;
+    }
+
+    private ByteBuffer buffer;
+
+    private int offset;
+
+    private int parametersLength;
+
+    private int signatureLength;
+
+    /**
+     * Releases the buffer of the envelope, so a reused view does not keep it reachable.
+     */
+    void clear() {
+        buffer = null;
+    }
+
+    /**
+     * Returns the id of the signature algorithm.
+     */
+    public int getAlgorithmId() {
+        return buffer.get(offset + 1) & 0xFF;
+    }
+
+    /**
+     * Returns the parameters of the signature algorithm.
+     *
+     * @return the parameters or <code>null</code> if the envelope has no parameters.
+     */
+    public AlgorithmParameterSpec getAlgorithmParameterSpec() {
+        if (parametersLength == 0) {
+            return null;
+        }
+        int parametersOffset = offset + HEADER_LENGTH;
+        int digestId = buffer.get(parametersOffset) & 0xFF;
+        int mgfDigestId = buffer.get(parametersOffset + 1) & 0xFF;
+        int saltLength = getUnsignedShort(buffer, parametersOffset + 2);
+        int trailerField = buffer.get(parametersOffset + 4) & 0xFF;
+        if ((digestId == mgfDigestId) && (saltLength == DIGEST_LENGTHS[digestId])
+                && (trailerField == TRAILER_FIELD_BC)) {
+            return DEFAULT_PSS_PARAMETERS[digestId];
+        }
+        return new PSSParameterSpec(DIGESTS[digestId], "MGF1", new MGF1ParameterSpec(DIGESTS[mgfDigestId]),
+                saltLength, trailerField);
+    }
+
+    /**
+     * Returns a copy of the key id of the public key that verifies the signature.
+     */
+    public byte[] getKeyId() {
+        byte[] keyId = new byte[KEY_ID_LENGTH];
+        for (int i = 0; i < KEY_ID_LENGTH; i++) {
+            keyId[i] = buffer.get(offset + 2 + i);
+        }
+        return keyId;
+    }
+
+    /**
+     * Returns the length of the envelope in bytes.
+     */
+    public int getLength() {
+        return HEADER_LENGTH + parametersLength + 2 + signatureLength;
+    }
+
+    /**
+     * Returns the standard name of the signature algorithm.
+     */
+    public String getSignatureAlgorithm() {
+        return ALGORITHMS[getAlgorithmId()];
+    }
+
+    /**
+     * Returns a copy of the signature bytes.
+     */
+    public byte[] getSignatureBytes() {
+        byte[] signatureBytes = new byte[signatureLength];
+        int signatureOffset = getSignatureOffset();
+        for (int i = 0; i < signatureLength; i++) {
+            signatureBytes[i] = buffer.get(signatureOffset + i);
+        }
+        return signatureBytes;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the index of the first signature byte in the buffer.
+     */
+    int getSignatureOffset() {
+        return offset + HEADER_LENGTH + parametersLength + 2;
+    }
+
+    int getSignatureLength() {
+        return signatureLength;
+    }
+
+    public int getVersion() {
+        return buffer.get(offset) & 0xFF;
+    }
+
+    /**
+     * Checks whether the envelope carries the given key id. The key ids are compared in place.
+     */
+    public boolean hasKeyId(final byte[] keyId) {
+        if (keyId.length != KEY_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < KEY_ID_LENGTH; i++) {
+            if (buffer.get(offset + 2 + i) != keyId[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Points the view to the envelope like {@link #wrap(ByteBuffer)}, but reports a malformed envelope without
+     * creating an exception.
+     *
+     * @return whether the envelope is well-formed.
+     */
+    boolean tryWrap(final ByteBuffer envelope) {
+        buffer = null;
+        if (validate(envelope) != null) {
+            return false;
+        }
+        buffer = envelope;
+        offset = envelope.position();
+        parametersLength = envelope.get(offset + HEADER_LENGTH - 1) & 0xFF;
+        signatureLength = getUnsignedShort(envelope, offset + HEADER_LENGTH + parametersLength);
+        return true;
+    }
+
+    /**
+     * Verifies the signature bytes of the envelope with a signature that has already been updated with the data.
+     * The bytes are passed to the signature directly if the buffer is backed by an array.
+     */
+    boolean verify(final Signature signature) throws SignatureException {
+        if (buffer.hasArray()) {
+            return signature.verify(buffer.array(), buffer.arrayOffset() + getSignatureOffset(), signatureLength);
+        }
+        return signature.verify(getSignatureBytes());
+    }
+
+    /**
+     * Points the view to the envelope that starts at the position of the buffer. The buffer must not be modified
+     * while the view is used. The position and the limit of the buffer are not changed.
+     *
+     * @return this view.
+     * @throws IllegalArgumentException
+     *             if the remaining bytes of the buffer do not hold exactly one well-formed envelope.
+     */
+    public SignatureEnvelope wrap(final ByteBuffer envelope) {
+        if (!tryWrap(envelope)) {
+            throw new IllegalArgumentException("malformed signature envelope, " + validate(envelope));
+        }
+        return this;
+    }
+
+}
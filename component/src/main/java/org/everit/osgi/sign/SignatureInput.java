@@ -0,0 +1,261 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * The data that is passed to a {@link Signature} or a {@link SignatureSink} during signing or verification.
+ * Streaming sources are read in chunks of {@link #BUFFER_SIZE} bytes and files are mapped into memory in windows
+ * of {@link #MAPPING_WINDOW_SIZE} bytes, so the heap used does not depend on the size of the data.
+ */
+abstract class SignatureInput {
+
+    /**
+     * Input that holds the data in a byte array.
+     */
+    private static final class ByteArrayInput extends SignatureInput {
+
+        private final byte[] data;
+
+        ByteArrayInput(final byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        void update(final SignatureSink sink) throws SignatureException {
+            sink.update(data, 0, data.length);
+        }
+
+    }
+
+    /**
+     * Input that holds the data in a range of a byte array.
+     */
+    private static final class ByteArrayRangeInput extends SignatureInput {
+
+        private final byte[] data;
+
+        private final int offset;
+
+        private final int length;
+
+        ByteArrayRangeInput(final byte[] data, final int offset, final int length) {
+            if ((offset < 0) || (length < 0) || (offset > (data.length - length))) {
+                throw new IndexOutOfBoundsException("offset [" + offset + "] and length [" + length
+                        + "] do not fit into an array of length [" + data.length + "]");
+            }
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        void update(final SignatureSink sink) throws SignatureException {
+            sink.update(data, offset, length);
+        }
+
+    }
+
+    /**
+     * Input that holds the data in the remaining bytes of one or more buffers. The position of the buffers is
+     * restored after each update, so the buffers are not modified.
+     */
+    private static final class ByteBufferInput extends SignatureInput {
+
+        private final ByteBuffer[] buffers;
+
+        ByteBufferInput(final ByteBuffer[] buffers) {
+            this.buffers = buffers;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        void update(final SignatureSink sink) throws SignatureException {
+            for (ByteBuffer buffer : buffers) {
+                int position = buffer.position();
+                try {
+                    sink.update(buffer);
+                } finally {
+                    buffer.position(position);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Input that reads the data from a {@link ReadableByteChannel}.
+     */
+    private static final class ChannelInput extends SignatureInput {
+
+        private final ReadableByteChannel channel;
+
+        ChannelInput(final ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void update(final SignatureSink sink) throws SignatureException, IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                sink.update(buffer);
+                buffer.clear();
+            }
+        }
+
+    }
+
+    /**
+     * Input that maps the content of a file into memory window by window.
+     */
+    private static final class PathInput extends SignatureInput {
+
+        private final Path path;
+
+        PathInput(final Path path) {
+            this.path = path;
+        }
+
+        @Override
+        boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        void update(final SignatureSink sink) throws SignatureException, IOException {
+            try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = fileChannel.size();
+                long position = 0;
+                while (position < size) {
+                    long windowSize = Math.min(MAPPING_WINDOW_SIZE, size - position);
+                    MappedByteBuffer window = fileChannel.map(MapMode.READ_ONLY, position, windowSize);
+                    sink.update(window);
+                    position += windowSize;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Input that reads the data from an {@link InputStream}.
+     */
+    private static final class StreamInput extends SignatureInput {
+
+        private final InputStream inputStream;
+
+        StreamInput(final InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        void update(final SignatureSink sink) throws SignatureException, IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read = inputStream.read(buffer);
+            while (read >= 0) {
+                sink.update(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+        }
+
+    }
+
+    /**
+     * The size of the chunks in which streaming sources are read.
+     */
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The maximum size of the file regions that are mapped into memory at once.
+     */
+    static final long MAPPING_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    static SignatureInput of(final byte[] data) {
+        return new ByteArrayInput(data);
+    }
+
+    static SignatureInput of(final byte[] data, final int offset, final int length) {
+        return new ByteArrayRangeInput(data, offset, length);
+    }
+
+    static SignatureInput of(final ByteBuffer... buffers) {
+        return new ByteBufferInput(buffers);
+    }
+
+    static SignatureInput of(final InputStream inputStream) {
+        return new StreamInput(inputStream);
+    }
+
+    static SignatureInput of(final Path path) {
+        return new PathInput(path);
+    }
+
+    static SignatureInput of(final ReadableByteChannel channel) {
+        return new ChannelInput(channel);
+    }
+
+    /**
+     * Returns whether the data can be passed to more than one signature.
+     */
+    boolean isRepeatable() {
+        return false;
+    }
+
+    /**
+     * Passes all of the data to the signature.
+     */
+    void update(final Signature signature) throws SignatureException, IOException {
+        update(SignatureSink.of(signature));
+    }
+
+    /**
+     * Passes all of the data to the sink.
+     */
+    abstract void update(SignatureSink sink) throws SignatureException, IOException;
+
+}
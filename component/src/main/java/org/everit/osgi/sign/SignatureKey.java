@@ -0,0 +1,131 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+
+/**
+ * The key of the pooled {@link java.security.Signature} instances in a {@link SignaturePool}. Most
+ * {@link AlgorithmParameterSpec} implementations do not override {@link Object#equals(Object)}, so
+ * {@link PSSParameterSpec}s are compared by their digest, mask generation function, salt length and trailer field.
+ * Other parameter specs are compared by identity.
+ */
+final class SignatureKey {
+
+    private enum Mode {
+        SIGN, SIGN_WITH_RANDOM, VERIFY
+    }
+
+    public static SignatureKey forSign(final String algorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final boolean withSecureRandom) {
+        return new SignatureKey(algorithm, algorithmParameterSpec,
+                withSecureRandom ? Mode.SIGN_WITH_RANDOM : Mode.SIGN);
+    }
+
+    public static SignatureKey forVerify(final String algorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return new SignatureKey(algorithm, algorithmParameterSpec, Mode.VERIFY);
+    }
+
+    private static boolean parameterSpecEquals(final AlgorithmParameterSpec spec,
+            final AlgorithmParameterSpec otherSpec) {
+        if (spec == otherSpec) {
+            return true;
+        }
+        if ((spec instanceof PSSParameterSpec) && (otherSpec instanceof PSSParameterSpec)) {
+            PSSParameterSpec pssSpec = (PSSParameterSpec) spec;
+            PSSParameterSpec otherPssSpec = (PSSParameterSpec) otherSpec;
+            return pssSpec.getDigestAlgorithm().equals(otherPssSpec.getDigestAlgorithm())
+                    && pssSpec.getMGFAlgorithm().equals(otherPssSpec.getMGFAlgorithm())
+                    && parameterSpecEquals(pssSpec.getMGFParameters(), otherPssSpec.getMGFParameters())
+                    && (pssSpec.getSaltLength() == otherPssSpec.getSaltLength())
+                    && (pssSpec.getTrailerField() == otherPssSpec.getTrailerField());
+        }
+        if ((spec instanceof MGF1ParameterSpec) && (otherSpec instanceof MGF1ParameterSpec)) {
+            return ((MGF1ParameterSpec) spec).getDigestAlgorithm()
+                    .equals(((MGF1ParameterSpec) otherSpec).getDigestAlgorithm());
+        }
+        return false;
+    }
+
+    private static int parameterSpecHashCode(final AlgorithmParameterSpec spec) {
+        if (spec instanceof PSSParameterSpec) {
+            PSSParameterSpec pssSpec = (PSSParameterSpec) spec;
+            return (((pssSpec.getDigestAlgorithm().hashCode() * 31) + pssSpec.getMGFAlgorithm().hashCode()) * 31)
+                    + pssSpec.getSaltLength();
+        }
+        if (spec instanceof MGF1ParameterSpec) {
+            return ((MGF1ParameterSpec) spec).getDigestAlgorithm().hashCode();
+        }
+        return System.identityHashCode(spec);
+    }
+
+    private final String algorithm;
+
+    private final AlgorithmParameterSpec algorithmParameterSpec;
+
+    private final Mode mode;
+
+    private final int hashCode;
+
+    private SignatureKey(final String algorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final Mode mode) {
+        this.algorithm = algorithm;
+        this.algorithmParameterSpec = algorithmParameterSpec;
+        this.mode = mode;
+        hashCode = (((algorithm.hashCode() * 31) + parameterSpecHashCode(algorithmParameterSpec)) * 31)
+                + mode.ordinal();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SignatureKey)) {
+            return false;
+        }
+        SignatureKey other = (SignatureKey) obj;
+        return (mode == other.mode) && parameterSpecEquals(algorithmParameterSpec, other.algorithmParameterSpec)
+                && algorithm.equals(other.algorithm);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public AlgorithmParameterSpec getAlgorithmParameterSpec() {
+        return algorithmParameterSpec;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    public boolean isSign() {
+        return mode != Mode.VERIFY;
+    }
+
+}
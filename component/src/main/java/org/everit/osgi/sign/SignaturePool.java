@@ -0,0 +1,224 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded pool of initialized {@link Signature} instances that belong to one set of key material. The pool is
+ * never modified when the key material or the providers change, a new pool has to be created instead. Instances
+ * that are borrowed from a discarded pool are released back to the discarded pool, so they never leak into the
+ * new one. When more than {@link #MAX_KEYS} distinct {@link SignatureKey}s are used, the idle signatures of the least
+ * recently used key are evicted.
+ */
+final class SignaturePool {
+
+    /**
+     * The idle signatures of one {@link SignatureKey}.
+     */
+    private static final class IdleSignatures {
+
+        private final Queue<Signature> queue;
+
+        /**
+         * The value of {@link System#nanoTime()} when a signature of the key was last borrowed or released.
+         */
+        private volatile long lastUsed = System.nanoTime();
+
+        IdleSignatures(final int maxIdle) {
+            queue = new ArrayBlockingQueue<>(maxIdle);
+        }
+
+    }
+
+    /**
+     * The maximum number of distinct {@link SignatureKey}s that are pooled. The least recently used key is evicted
+     * when the signatures of a further key are released.
+     */
+    static final int MAX_KEYS = 64;
+
+    private final ProviderRouting providerRouting;
+
+    private final PrivateKey privateKey;
+
+    private final PublicKey publicKey;
+
+    private final SecureRandom defaultSecureRandom;
+
+    private final int maxIdlePerKey;
+
+    private final ConcurrentMap<SignatureKey, IdleSignatures> idleSignatures = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes the addition of new keys, so concurrent additions do not evict more keys than necessary.
+     */
+    private final Object evictionLock = new Object();
+
+    /**
+     * Constructor.
+     *
+     * @param providerRouting
+     *            the providers of the signatures.
+     * @param privateKey
+     *            the key of the signatures that sign or <code>null</code> if the pool is used only to verify.
+     * @param publicKey
+     *            the key of the signatures that verify or <code>null</code> if the pool is used only to sign.
+     * @param defaultSecureRandom
+     *            the source of randomness of the signatures that sign if the caller does not pass one or
+     *            <code>null</code> to use the default of the provider.
+     * @param maxIdlePerKey
+     *            the maximum number of idle signatures per {@link SignatureKey}.
+     */
+    SignaturePool(final ProviderRouting providerRouting, final PrivateKey privateKey, final PublicKey publicKey,
+            final SecureRandom defaultSecureRandom, final int maxIdlePerKey) {
+        this.providerRouting = providerRouting;
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+        this.defaultSecureRandom = defaultSecureRandom;
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    /**
+     * Returns a {@link Signature} initialized for signing with the private key of the pool.
+     *
+     * @param signatureKey
+     *            the key of the signature, must be created with {@link SignatureKey#forSign(String,
+     *            AlgorithmParameterSpec, boolean)}.
+     * @param secureRandom
+     *            the source of randomness or <code>null</code> to use the default of the pool.
+     */
+    Signature borrowSign(final SignatureKey signatureKey, final SecureRandom secureRandom)
+            throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+        Signature signature = poll(signatureKey);
+        if (signature == null) {
+            signature = newSignature(signatureKey);
+            if ((secureRandom == null) && (defaultSecureRandom != null)) {
+                signature.initSign(privateKey, defaultSecureRandom);
+            } else if (secureRandom == null) {
+                signature.initSign(privateKey);
+            }
+        }
+        if (secureRandom != null) {
+            signature.initSign(privateKey, secureRandom);
+        }
+        return signature;
+    }
+
+    /**
+     * Returns a {@link Signature} initialized for verification with the public key of the pool.
+     *
+     * @param signatureKey
+     *            the key of the signature, must be created with {@link SignatureKey#forVerify(String,
+     *            AlgorithmParameterSpec)}.
+     */
+    Signature borrowVerify(final SignatureKey signatureKey)
+            throws NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+        Signature signature = poll(signatureKey);
+        if (signature == null) {
+            signature = newSignature(signatureKey);
+            signature.initVerify(publicKey);
+        }
+        return signature;
+    }
+
+    /**
+     * Removes the idle signatures of the least recently used key.
+     */
+    private void evictLeastRecentlyUsed() {
+        Map.Entry<SignatureKey, IdleSignatures> leastRecentlyUsed = null;
+        for (Map.Entry<SignatureKey, IdleSignatures> entry : idleSignatures.entrySet()) {
+            if ((leastRecentlyUsed == null)
+                    || ((entry.getValue().lastUsed - leastRecentlyUsed.getValue().lastUsed) < 0)) {
+                leastRecentlyUsed = entry;
+            }
+        }
+        if (leastRecentlyUsed != null) {
+            idleSignatures.remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of keys that have idle signatures in the pool.
+     */
+    int getKeyCount() {
+        return idleSignatures.size();
+    }
+
+    private Signature newSignature(final SignatureKey signatureKey)
+            throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+        Signature signature = Signature.getInstance(signatureKey.getAlgorithm(),
+                providerRouting.getProvider(signatureKey.getAlgorithm()));
+        AlgorithmParameterSpec algorithmParameterSpec = signatureKey.getAlgorithmParameterSpec();
+        if (algorithmParameterSpec != null) {
+            signature.setParameter(algorithmParameterSpec);
+        }
+        return signature;
+    }
+
+    private Signature poll(final SignatureKey signatureKey) {
+        IdleSignatures idle = idleSignatures.get(signatureKey);
+        if (idle == null) {
+            return null;
+        }
+        idle.lastUsed = System.nanoTime();
+        return idle.queue.poll();
+    }
+
+    /**
+     * Gives back a signature to the pool. The signature must be in the state that {@link Signature#sign()} or
+     * {@link Signature#verify(byte[])} leaves it in after a successful call. Signatures that are involved in a
+     * failed operation must not be released.
+     */
+    void release(final SignatureKey signatureKey, final Signature signature) {
+        if (maxIdlePerKey <= 0) {
+            return;
+        }
+        IdleSignatures idle = idleSignatures.get(signatureKey);
+        if (idle == null) {
+            synchronized (evictionLock) {
+                idle = idleSignatures.get(signatureKey);
+                if (idle == null) {
+                    while (idleSignatures.size() >= MAX_KEYS) {
+                        evictLeastRecentlyUsed();
+                    }
+                    idle = new IdleSignatures(maxIdlePerKey);
+                    idleSignatures.put(signatureKey, idle);
+                }
+            }
+        }
+        idle.lastUsed = System.nanoTime();
+        idle.queue.offer(signature);
+    }
+
+}
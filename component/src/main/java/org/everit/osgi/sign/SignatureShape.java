@@ -0,0 +1,245 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.security.interfaces.DSAPublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+
+/**
+ * The structural constraints of the signatures that a public key can verify. The checks only look at the length
+ * and the encoding of a signature, so they are much cheaper than the public key operation and reject garbage
+ * without involving the provider:
+ * <ul>
+ * <li>RSA signatures are exactly as long as the modulus.</li>
+ * <li>ECDSA and DSA signatures are a DER sequence of two minimally encoded positive integers that are not longer
+ * than the order of the group, or in P1363 format the concatenation of two integers of that length.</li>
+ * <li>Ed25519 and Ed448 signatures have a fixed length.</li>
+ * </ul>
+ * Signatures of algorithms that are not recognized are passed to the provider unchecked.
+ */
+final class SignatureShape {
+
+    private enum KeyFamily {
+        DSA, EC, EDDSA, OTHER, RSA
+    }
+
+    private static final int ED25519_SIGNATURE_LENGTH = 64;
+
+    private static final int ED448_SIGNATURE_LENGTH = 114;
+
+    private static final int DER_INTEGER = 0x02;
+
+    private static final int DER_SEQUENCE = 0x30;
+
+    /**
+     * Checks whether the two integers are encoded in DER.
+     */
+    private static boolean checkDerSequence(final ByteBuffer signature, final int offset, final int length,
+            final int maxIntegerLength) {
+        int end = offset + length;
+        if ((length < 2) || ((signature.get(offset) & 0xFF) != DER_SEQUENCE)) {
+            return false;
+        }
+        int sequenceLength = signature.get(offset + 1) & 0xFF;
+        int position = offset + 2;
+        if (sequenceLength == 0x81) {
+            if (length < 3) {
+                return false;
+            }
+            sequenceLength = signature.get(offset + 2) & 0xFF;
+            if (sequenceLength < 0x80) {
+                return false;
+            }
+            position++;
+        } else if (sequenceLength >= 0x80) {
+            return false;
+        }
+        if ((position + sequenceLength) != end) {
+            return false;
+        }
+        position = skipDerInteger(signature, position, end, maxIntegerLength);
+        if (position < 0) {
+            return false;
+        }
+        return skipDerInteger(signature, position, end, maxIntegerLength) == end;
+    }
+
+    private static boolean containsIgnoreCase(final String string, final String part) {
+        int lastIndex = string.length() - part.length();
+        for (int i = 0; i <= lastIndex; i++) {
+            if (string.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static KeyFamily getAlgorithmFamily(final String signatureAlgorithm) {
+        if (containsIgnoreCase(signatureAlgorithm, "ECDSA")) {
+            return KeyFamily.EC;
+        }
+        if (containsIgnoreCase(signatureAlgorithm, "RSA")) {
+            return KeyFamily.RSA;
+        }
+        if (containsIgnoreCase(signatureAlgorithm, "WITHDSA")) {
+            return KeyFamily.DSA;
+        }
+        if (signatureAlgorithm.equalsIgnoreCase("Ed25519") || signatureAlgorithm.equalsIgnoreCase("Ed448")
+                || signatureAlgorithm.equalsIgnoreCase("EdDSA")) {
+            return KeyFamily.EDDSA;
+        }
+        return KeyFamily.OTHER;
+    }
+
+    private static KeyFamily getKeyFamily(final PublicKey publicKey) {
+        if (publicKey instanceof RSAPublicKey) {
+            return KeyFamily.RSA;
+        }
+        if (publicKey instanceof ECPublicKey) {
+            return KeyFamily.EC;
+        }
+        if (publicKey instanceof DSAPublicKey) {
+            return KeyFamily.DSA;
+        }
+        String keyAlgorithm = publicKey.getAlgorithm();
+        if ("EdDSA".equalsIgnoreCase(keyAlgorithm) || "Ed25519".equalsIgnoreCase(keyAlgorithm)
+                || "Ed448".equalsIgnoreCase(keyAlgorithm)) {
+            return KeyFamily.EDDSA;
+        }
+        return KeyFamily.OTHER;
+    }
+
+    private static int getSizeInBytes(final PublicKey publicKey) {
+        if (publicKey instanceof RSAPublicKey) {
+            return (((RSAPublicKey) publicKey).getModulus().bitLength() + 7) / 8;
+        }
+        if (publicKey instanceof ECPublicKey) {
+            return (((ECPublicKey) publicKey).getParams().getOrder().bitLength() + 7) / 8;
+        }
+        if ((publicKey instanceof DSAPublicKey) && (((DSAPublicKey) publicKey).getParams() != null)) {
+            return (((DSAPublicKey) publicKey).getParams().getQ().bitLength() + 7) / 8;
+        }
+        return 0;
+    }
+
+    private static boolean isP1363Format(final String signatureAlgorithm) {
+        return containsIgnoreCase(signatureAlgorithm, "P1363") || containsIgnoreCase(signatureAlgorithm, "PLAIN")
+                || containsIgnoreCase(signatureAlgorithm, "CVC");
+    }
+
+    static SignatureShape of(final PublicKey publicKey) {
+        return new SignatureShape(getKeyFamily(publicKey), getSizeInBytes(publicKey));
+    }
+
+    /**
+     * Skips a DER integer.
+     *
+     * @return the position after the integer or <code>-1</code> if it is not a positive, minimally encoded integer
+     *         of at most the given length.
+     */
+    private static int skipDerInteger(final ByteBuffer signature, final int position, final int end,
+            final int maxIntegerLength) {
+        if (((position + 2) > end) || ((signature.get(position) & 0xFF) != DER_INTEGER)) {
+            return -1;
+        }
+        int integerLength = signature.get(position + 1) & 0xFF;
+        int start = position + 2;
+        if ((integerLength == 0) || (integerLength > (maxIntegerLength + 1)) || ((start + integerLength) > end)) {
+            return -1;
+        }
+        byte first = signature.get(start);
+        if ((first < 0) || ((first == 0) && (integerLength > 1) && (signature.get(start + 1) >= 0))) {
+            return -1;
+        }
+        return start + integerLength;
+    }
+
+    private final KeyFamily keyFamily;
+
+    /**
+     * The length of the modulus of RSA keys or of the order of the group of EC and DSA keys in bytes.
+     */
+    private final int sizeInBytes;
+
+    private SignatureShape(final KeyFamily keyFamily, final int sizeInBytes) {
+        this.keyFamily = keyFamily;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    /**
+     * Checks whether a signature can be a signature of the algorithm with the key.
+     *
+     * @param signatureAlgorithm
+     *            the algorithm of the signature.
+     * @param signature
+     *            the buffer that holds the signature.
+     * @param offset
+     *            the index of the first signature byte in the buffer.
+     * @param length
+     *            the length of the signature.
+     * @return <code>null</code> if the signature has to be verified by the provider,
+     *         {@link VerificationResult#MALFORMED} or {@link VerificationResult#UNSUPPORTED} if it does not.
+     */
+    VerificationResult check(final String signatureAlgorithm, final ByteBuffer signature, final int offset,
+            final int length) {
+        if (length == 0) {
+            return VerificationResult.MALFORMED;
+        }
+        KeyFamily algorithmFamily = getAlgorithmFamily(signatureAlgorithm);
+        if ((algorithmFamily == KeyFamily.OTHER) || (keyFamily == KeyFamily.OTHER)) {
+            return null;
+        }
+        if (algorithmFamily != keyFamily) {
+            return VerificationResult.UNSUPPORTED;
+        }
+        boolean wellFormed;
+        switch (keyFamily) {
+        case RSA:
+            wellFormed = (sizeInBytes == 0) || (length == sizeInBytes);
+            break;
+        case EC:
+        case DSA:
+            if (sizeInBytes == 0) {
+                wellFormed = true;
+            } else if (isP1363Format(signatureAlgorithm)) {
+                wellFormed = length == (2 * sizeInBytes);
+            } else {
+                wellFormed = checkDerSequence(signature, offset, length, sizeInBytes);
+            }
+            break;
+        default:
+            if (signatureAlgorithm.equalsIgnoreCase("Ed25519")) {
+                wellFormed = length == ED25519_SIGNATURE_LENGTH;
+            } else if (signatureAlgorithm.equalsIgnoreCase("Ed448")) {
+                wellFormed = length == ED448_SIGNATURE_LENGTH;
+            } else {
+                wellFormed = (length == ED25519_SIGNATURE_LENGTH) || (length == ED448_SIGNATURE_LENGTH);
+            }
+            break;
+        }
+        return wellFormed ? null : VerificationResult.MALFORMED;
+    }
+
+}
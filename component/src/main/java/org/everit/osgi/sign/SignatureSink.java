@@ -0,0 +1,210 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.ByteBuffer;
+import java.security.Signature;
+import java.security.SignatureException;
+
+import javax.crypto.Mac;
+
+/**
+ * The receiver of the data that is signed, either a {@link Signature} or a {@link Mac}. The code that passes the
+ * data to the receiver is written once for both of them.
+ */
+abstract class SignatureSink {
+
+    /**
+     * Sink that computes a MAC.
+     */
+    private static final class MacSink extends SignatureSink {
+
+        private final Mac mac;
+
+        private final MacPool macPool;
+
+        private final String macAlgorithm;
+
+        MacSink(final Mac mac, final MacPool macPool, final String macAlgorithm) {
+            this.mac = mac;
+            this.macPool = macPool;
+            this.macAlgorithm = macAlgorithm;
+        }
+
+        @Override
+        byte[] finish() {
+            byte[] result = mac.doFinal();
+            if (macPool != null) {
+                macPool.release(macAlgorithm, mac);
+            }
+            return result;
+        }
+
+        @Override
+        void update(final byte input) {
+            mac.update(input);
+        }
+
+        @Override
+        void update(final byte[] input, final int offset, final int length) {
+            mac.update(input, offset, length);
+        }
+
+        @Override
+        void update(final ByteBuffer input) {
+            mac.update(input);
+        }
+
+    }
+
+    /**
+     * Sink that computes a signature.
+     */
+    private static final class SignatureAdapterSink extends SignatureSink {
+
+        private final Signature signature;
+
+        private final SignaturePool signaturePool;
+
+        private final SignatureKey signatureKey;
+
+        SignatureAdapterSink(final Signature signature, final SignaturePool signaturePool,
+                final SignatureKey signatureKey) {
+            this.signature = signature;
+            this.signaturePool = signaturePool;
+            this.signatureKey = signatureKey;
+        }
+
+        @Override
+        byte[] finish() throws SignatureException {
+            byte[] result = signature.sign();
+            if (signaturePool != null) {
+                signaturePool.release(signatureKey, signature);
+            }
+            return result;
+        }
+
+        @Override
+        void update(final byte input) throws SignatureException {
+            signature.update(input);
+        }
+
+        @Override
+        void update(final byte[] input, final int offset, final int length) throws SignatureException {
+            signature.update(input, offset, length);
+        }
+
+        @Override
+        void update(final ByteBuffer input) throws SignatureException {
+            signature.update(input);
+        }
+
+    }
+
+    /**
+     * Sink that passes the data to several sinks, e.g. to verify a stream with more than one key.
+     */
+    private static final class TeeSink extends SignatureSink {
+
+        private final SignatureSink[] sinks;
+
+        TeeSink(final SignatureSink[] sinks) {
+            this.sinks = sinks;
+        }
+
+        @Override
+        byte[] finish() {
+            // The sinks have to be finished one by one, as each of them has its own result
+            throw new UnsupportedOperationException("a tee has no result of its own");
+        }
+
+        @Override
+        void update(final byte input) throws SignatureException {
+            for (SignatureSink sink : sinks) {
+                sink.update(input);
+            }
+        }
+
+        @Override
+        void update(final byte[] input, final int offset, final int length) throws SignatureException {
+            for (SignatureSink sink : sinks) {
+                sink.update(input, offset, length);
+            }
+        }
+
+        @Override
+        void update(final ByteBuffer input) throws SignatureException {
+            int position = input.position();
+            for (SignatureSink sink : sinks) {
+                input.position(position);
+                sink.update(input);
+            }
+        }
+
+    }
+
+    static SignatureSink of(final Mac mac) {
+        return new MacSink(mac, null, null);
+    }
+
+    /**
+     * Returns a sink that returns the MAC to the pool when the MAC of the data is computed.
+     */
+    static SignatureSink of(final Mac mac, final MacPool macPool, final String macAlgorithm) {
+        return new MacSink(mac, macPool, macAlgorithm);
+    }
+
+    /**
+     * Returns a sink that passes the data to all of the sinks.
+     */
+    static SignatureSink of(final SignatureSink... sinks) {
+        return new TeeSink(sinks);
+    }
+
+    static SignatureSink of(final Signature signature) {
+        return new SignatureAdapterSink(signature, null, null);
+    }
+
+    /**
+     * Returns a sink that returns the signature to the pool when the signature of the data is created.
+     */
+    static SignatureSink of(final Signature signature, final SignaturePool signaturePool,
+            final SignatureKey signatureKey) {
+        return new SignatureAdapterSink(signature, signaturePool, signatureKey);
+    }
+
+    /**
+     * Returns the signature or the MAC of the data passed to the sink and releases the receiver to its pool. The
+     * sink cannot be used afterwards.
+     */
+    abstract byte[] finish() throws SignatureException;
+
+    abstract void update(byte input) throws SignatureException;
+
+    abstract void update(byte[] input, int offset, int length) throws SignatureException;
+
+    /**
+     * Passes the remaining bytes of the buffer. The position of the buffer is moved to its limit.
+     */
+    abstract void update(ByteBuffer input) throws SignatureException;
+
+}
@@ -21,77 +21,728 @@ package org.everit.osgi.sign;
  * MA 02110-1301  USA
  */
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.security.KeyStore.PasswordProtection;
 import java.security.KeyStore.PrivateKeyEntry;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Provider;
 import java.security.PublicKey;
 import java.security.SecureRandom;
+import java.security.Security;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.UnrecoverableEntryException;
 import java.security.cert.Certificate;
 import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanRegistrationException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Properties;
 import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.service.cm.ConfigurationException;
 
+/**
+ * {@link Signer} that works with the keys of a {@link KeyStore} service. The keys, the provider and everything
+ * that is derived from them are held in an immutable {@link SignerState}. When the keystore, the provider or the
+ * configuration changes, a new state is built and swapped in atomically, so the component is not reactivated
+ * and the running operations complete with the keys they started with.
+ */
 @Component(metatype = true, configurationFactory = true, policy = ConfigurationPolicy.REQUIRE)
 @Properties({
         @Property(name = PropertyName.KEY_STORE_TARGET),
         @Property(name = PropertyName.PROVIDER_TARGET),
         @Property(name = PropertyName.PRIVATE_KEY_ALIAS),
         @Property(name = PropertyName.PRIVATE_KEY_PASSWORD, passwordValue = ""),
-        @Property(name = PropertyName.PUBLIC_KEY_ALIAS)
+        @Property(name = PropertyName.PUBLIC_KEY_ALIAS),
+        @Property(name = PropertyName.PUBLIC_KEY_ALIASES, unbounded = PropertyUnbounded.ARRAY),
+        @Property(name = PropertyName.SIGNATURE_POOL_SIZE, intValue = SignerComponent.DEFAULT_SIGNATURE_POOL_SIZE),
+        @Property(name = PropertyName.BATCH_PARALLELISM, intValue = SignerComponent.DEFAULT_BATCH_PARALLELISM),
+        @Property(name = PropertyName.VERIFICATION_CACHE_SIZE, intValue = 0),
+        @Property(name = PropertyName.VERIFICATION_CACHE_TIME_TO_LIVE,
+                intValue = SignerComponent.DEFAULT_VERIFICATION_CACHE_TIME_TO_LIVE),
+        @Property(name = PropertyName.JMX_ENABLED, boolValue = false),
+        @Property(name = PropertyName.PROVIDER_SELECTION, value = SignerComponent.PROVIDER_SELECTION_FIXED,
+                options = {
+                        @PropertyOption(name = SignerComponent.PROVIDER_SELECTION_FIXED,
+                                value = SignerComponent.PROVIDER_SELECTION_FIXED),
+                        @PropertyOption(name = SignerComponent.PROVIDER_SELECTION_FASTEST,
+                                value = SignerComponent.PROVIDER_SELECTION_FASTEST) }),
+        @Property(name = PropertyName.PROVIDER_SELECTION_ALGORITHMS, unbounded = PropertyUnbounded.ARRAY),
+        @Property(name = PropertyName.PROVIDER_OVERRIDES, unbounded = PropertyUnbounded.ARRAY),
+        @Property(name = PropertyName.AVAILABLE_PROVIDERS_TARGET),
+        @Property(name = PropertyName.DEFAULT_SIGNATURE_ALGORITHM),
+        @Property(name = PropertyName.DEFAULT_PSS_DIGEST_ALGORITHM),
+        @Property(name = PropertyName.DEFAULT_PSS_SALT_LENGTH, intValue = SignerComponent.DEFAULT_PSS_SALT_LENGTH),
+        @Property(name = PropertyName.SECURE_RANDOM_ALGORITHM),
+        @Property(name = PropertyName.SECURE_RANDOM_RESEED_INTERVAL,
+                intValue = SignerComponent.DEFAULT_SECURE_RANDOM_RESEED_INTERVAL),
+        @Property(name = PropertyName.LAZY_KEY_LOADING, boolValue = false),
+        @Property(name = PropertyName.WARM_UP_ALGORITHMS, unbounded = PropertyUnbounded.ARRAY)
 })
 @Service
-public class SignerComponent implements Signer {
+public class SignerComponent implements Signer, ExtendedSigner, ChunkedSigner, DigestSigner, EnvelopeSigner,
+        KeyIdVerifier, ResultVerifier, SignerMetrics, VerificationCacheStatistics {
+
+    /**
+     * The value of the {@link PropertyName#PUBLIC_KEY_ALIASES} property that selects all certificates of the
+     * keystore.
+     */
+    public static final String ALL_ALIASES = "*";
+
+    public static final int DEFAULT_BATCH_PARALLELISM = 1;
+
+    /**
+     * The value of the {@link PropertyName#DEFAULT_PSS_SALT_LENGTH} property that selects the length of the
+     * digest as salt length.
+     */
+    public static final int DEFAULT_PSS_SALT_LENGTH = -1;
+
+    public static final int DEFAULT_SECURE_RANDOM_RESEED_INTERVAL = 3600000;
+
+    public static final int DEFAULT_SIGNATURE_POOL_SIZE = 16;
+
+    public static final int DEFAULT_VERIFICATION_CACHE_TIME_TO_LIVE = 600000;
+
+    /**
+     * The prefix of the name of the metrics MXBean, followed by the quoted service PID of the component.
+     */
+    public static final String METRICS_OBJECT_NAME_PREFIX = "org.everit.osgi.sign:type=SignerMetrics,pid=";
+
+    /**
+     * Each algorithm of {@link PropertyName#PROVIDER_SELECTION_ALGORITHMS} is routed to the fastest provider that
+     * supports it. The candidates are the bound provider, the registered provider services and the providers
+     * installed in the JVM.
+     */
+    public static final String PROVIDER_SELECTION_FASTEST = "fastest";
+
+    /**
+     * All algorithms use the bound provider unless they are overridden.
+     */
+    public static final String PROVIDER_SELECTION_FIXED = "fixed";
+
+    /**
+     * The envelope views of the threads that verify envelopes passed as buffers.
+     */
+    private static final ThreadLocal<SignatureEnvelope> ENVELOPE = new ThreadLocal<SignatureEnvelope>() {
+
+        @Override
+        protected SignatureEnvelope initialValue() {
+            return new SignatureEnvelope();
+        }
+    };
+
+    /**
+     * The longest time in milliseconds that a failed lazy load of the key material is not retried.
+     */
+    private static final long LAZY_LOAD_MAX_RETRY_DELAY = 60000;
 
-    @Reference(bind = "bindKeyStore", unbind = "unbindKeyStore")
-    private KeyStore keyStore;
+    /**
+     * The time in milliseconds that the first failed lazy load of the key material is not retried. The delay is
+     * doubled on each consecutive failure up to {@link #LAZY_LOAD_MAX_RETRY_DELAY}.
+     */
+    private static final long LAZY_LOAD_MIN_RETRY_DELAY = 1000;
 
-    @Reference(bind = "bindProvider", unbind = "unbindProvider")
-    private Provider provider;
+    /**
+     * The prefix of the secure random algorithms that read the random generator of the operating system. These
+     * algorithms are not striped.
+     */
+    private static final String NATIVE_PRNG_ALGORITHM_PREFIX = "NativePRNG";
 
-    private PrivateKey privateKey;
+    /**
+     * The size of the message that is signed and verified during the warm-up. It is the size of a SHA-256 digest,
+     * so the NONEwith algorithms accept it as well.
+     */
+    private static final int WARM_UP_DATA_SIZE = 32;
 
-    private PublicKey publicKey;
+    @Reference(bind = "bindKeyStore", unbind = "unbindKeyStore", updated = "updatedKeyStore",
+            policy = ReferencePolicy.DYNAMIC)
+    private volatile KeyStore keyStore;
 
-    private String aliases;
+    @Reference(bind = "bindProvider", unbind = "unbindProvider", policy = ReferencePolicy.DYNAMIC)
+    private volatile Provider provider;
+
+    @Reference(name = "availableProviders", referenceInterface = Provider.class,
+            cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC,
+            bind = "bindAvailableProvider", unbind = "unbindAvailableProvider")
+    private final List<Provider> availableProviders = new CopyOnWriteArrayList<>();
+
+    private final ProviderSelector providerSelector = new ProviderSelector();
+
+    /**
+     * The configuration of the active component or <code>null</code> if the component is not active. Guarded by
+     * <code>this</code>.
+     */
+    private Map<String, Object> componentProperties;
+
+    private volatile SignerState state;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    /**
+     * The duration of the last load of the key material in nanoseconds or -1 if it was not loaded yet.
+     */
+    private volatile long loadTime = -1;
+
+    /**
+     * The duration of the last activation or modification in nanoseconds or -1 if the component was not
+     * activated yet.
+     */
+    private volatile long activationTime = -1;
+
+    /**
+     * The failure of the last lazy load of the key material or <code>null</code> if the last lazy load succeeded.
+     * Guarded by <code>this</code>.
+     */
+    private ConfigurationException lazyLoadFailure;
+
+    /**
+     * The delay of the next lazy load after {@link #lazyLoadFailure} in milliseconds. Guarded by <code>this</code>.
+     */
+    private long lazyLoadRetryDelay;
+
+    /**
+     * The value of {@link System#nanoTime()} before that the failed lazy load is not retried. Guarded by
+     * <code>this</code>.
+     */
+    private long lazyLoadRetryTime;
+
+    /**
+     * The name of the MXBean of the metrics or <code>null</code> if the MXBean is not registered. Guarded by
+     * <code>this</code>.
+     */
+    private ObjectName metricsObjectName;
 
     @Activate
     public void activate(final BundleContext context, final Map<String, Object> componentProperties)
             throws ConfigurationException {
-        initAliases();
+        long startTime = System.nanoTime();
+        synchronized (this) {
+            lazyLoadFailure = null;
+            if (isLazyKeyLoading(componentProperties)) {
+                state = null;
+            } else {
+                state = loadState(componentProperties);
+            }
+            this.componentProperties = componentProperties;
+            updateMetricsMBean(componentProperties);
+        }
+        activationTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Adds a provider to the candidates unless the same instance is already a candidate.
+     */
+    private void addCandidateProvider(final List<Provider> candidates, final Provider candidate) {
+        for (Provider existing : candidates) {
+            if (existing == candidate) {
+                return;
+            }
+        }
+        candidates.add(candidate);
+    }
+
+    /**
+     * Adds a provider to the candidates of the provider selection. The state is reloaded only if the routing of
+     * the algorithms depends on the candidates.
+     */
+    public void bindAvailableProvider(final Provider availableProvider) {
+        synchronized (this) {
+            availableProviders.add(availableProvider);
+            if (isRoutingDependentOnAvailableProviders()) {
+                reload();
+            }
+        }
+    }
+
+    public void bindKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    public void bindProvider(final Provider provider) {
+        synchronized (this) {
+            this.provider = provider;
+            reload();
+        }
+    }
+
+    private Signature borrowSignSignature(final SignaturePool pool, final SignatureKey signatureKey,
+            final SecureRandom secureRandom) {
+        try {
+            return pool.borrowSign(signatureKey, secureRandom);
+        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    @Override
+    public SigningOutputStream createSigningOutputStream(final OutputStream out, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        SignerState currentState = getState();
+        currentState.getPrivateKey();
+        SignaturePool pool = currentState.getSignaturePool();
+        SignatureKey signatureKey = SignatureKey.forSign(signatureAlgorithm, algorithmParameterSpec,
+                secureRandom != null);
+        Signature signature = borrowSignSignature(pool, signatureKey, secureRandom);
+        return new SigningOutputStream(out, SignatureSink.of(signature, pool, signatureKey));
+    }
+
+    @Override
+    public MerkleTree createMerkleTree(final byte[] data, final int chunkSize, final String digestAlgorithm) {
+        try {
+            return createMerkleTree(ChunkSource.of(data), chunkSize, digestAlgorithm);
+        } catch (IOException e) {
+            throw new SignerException("failed to hash chunks", e);
+        }
+    }
 
+    private MerkleTree createMerkleTree(final ChunkSource chunkSource, final int chunkSize,
+            final String digestAlgorithm) throws IOException {
+        SignerState currentState = getState();
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignerException("failed to hash chunks", e);
+        }
+        long length = chunkSource.getLength();
+        int chunkCount = MerkleTree.getChunkCount(length, chunkSize);
+        byte[][] leafHashes = new byte[chunkCount][];
+        ChunkHashTask task = new ChunkHashTask(chunkSource, chunkSize, digestAlgorithm, leafHashes, 0, chunkCount,
+                currentState.getBatchThreshold(chunkCount));
+        try {
+            invokeBatchTask(currentState, task, chunkCount);
+        } catch (SignerException e) {
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+        return MerkleTree.fromLeafHashes(digestAlgorithm, chunkSize, length, messageDigest, leafHashes);
+    }
+
+    @Override
+    public MerkleTree createMerkleTree(final Path file, final int chunkSize, final String digestAlgorithm)
+            throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return createMerkleTree(ChunkSource.of(fileChannel), chunkSize, digestAlgorithm);
+        }
+    }
+
+    /**
+     * Returns the parameters of the default signature algorithm or <code>null</code> if the algorithm does not
+     * have parameters.
+     */
+    private AlgorithmParameterSpec createDefaultParameterSpec(final Map<String, Object> componentProperties)
+            throws ConfigurationException {
+        String digestAlgorithm = getOptionalStringProperty(componentProperties,
+                PropertyName.DEFAULT_PSS_DIGEST_ALGORITHM);
+        if (digestAlgorithm == null) {
+            return null;
+        }
+        int saltLength = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.DEFAULT_PSS_SALT_LENGTH, DEFAULT_PSS_SALT_LENGTH);
+        if (saltLength < 0) {
+            try {
+                saltLength = MessageDigest.getInstance(digestAlgorithm).getDigestLength();
+            } catch (NoSuchAlgorithmException e) {
+                throw new ConfigurationException(PropertyName.DEFAULT_PSS_DIGEST_ALGORITHM,
+                        "unknown digest algorithm [" + digestAlgorithm + "]", e);
+            }
+        }
+        return new PSSParameterSpec(digestAlgorithm, "MGF1", new MGF1ParameterSpec(digestAlgorithm), saltLength, 1);
+    }
+
+    private String createLoadFailureMessage(final KeyStore keyStore, final String keyDescription,
+            final String alias) {
+        return "failed to load " + keyDescription + " [" + alias
+                + "] from the given keystore, available aliases are [" + readAliases(keyStore) + "]";
+    }
+
+    private PublicKeyIndex createPublicKeyIndex(final KeyStore keyStore, final ProviderRouting providerRouting,
+            final PublicKey publicKey, final SignaturePool signaturePool, final List<String> publicKeyAliases,
+            final int signaturePoolSize) throws ConfigurationException {
+        if (publicKey == null) {
+            return null;
+        }
+        List<PublicKeyIndex.Entry> entries = new ArrayList<>();
+        Set<ByteBuffer> keyIds = new HashSet<>();
+        byte[] primaryKeyId = PublicKeyIndex.computeKeyId(publicKey);
+        entries.add(new PublicKeyIndex.Entry(primaryKeyId, publicKey, signaturePool));
+        keyIds.add(ByteBuffer.wrap(primaryKeyId));
+
+        boolean allAliases = publicKeyAliases.contains(ALL_ALIASES);
+        List<String> aliasesToLoad = publicKeyAliases;
+        if (allAliases) {
+            try {
+                aliasesToLoad = Collections.list(keyStore.aliases());
+            } catch (KeyStoreException e) {
+                throw new ConfigurationException(PropertyName.PUBLIC_KEY_ALIASES,
+                        "Failed to get the available aliases from the keystore", e);
+            }
+        }
+        for (String alias : aliasesToLoad) {
+            Certificate certificate;
+            try {
+                certificate = keyStore.getCertificate(alias);
+            } catch (KeyStoreException e) {
+                throw new ConfigurationException(PropertyName.PUBLIC_KEY_ALIASES,
+                        createLoadFailureMessage(keyStore, "public key", alias), e);
+            }
+            if (certificate == null) {
+                if (allAliases) {
+                    continue;
+                }
+                throw new ConfigurationException(PropertyName.PUBLIC_KEY_ALIASES,
+                        createLoadFailureMessage(keyStore, "public key", alias));
+            }
+            PublicKey additionalPublicKey = certificate.getPublicKey();
+            byte[] keyId = PublicKeyIndex.computeKeyId(additionalPublicKey);
+            if (keyIds.add(ByteBuffer.wrap(keyId))) {
+                entries.add(new PublicKeyIndex.Entry(keyId, additionalPublicKey,
+                        new SignaturePool(providerRouting, null, additionalPublicKey, null, signaturePoolSize)));
+            }
+        }
+        return new PublicKeyIndex(entries);
+    }
+
+    /**
+     * Returns the providers that can be selected for an algorithm. The bound provider is the first, so it wins
+     * when another candidate is not faster.
+     */
+    private List<Provider> collectCandidateProviders(final Provider provider) {
+        List<Provider> result = new ArrayList<>();
+        result.add(provider);
+        for (Provider availableProvider : availableProviders) {
+            addCandidateProvider(result, availableProvider);
+        }
+        for (Provider installedProvider : Security.getProviders()) {
+            addCandidateProvider(result, installedProvider);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the routing of the algorithms to the providers.
+     *
+     * @param strictOverrides
+     *            whether an override that names a provider that is not available is a configuration error. If
+     *            <code>false</code>, the algorithm of the override falls back to the bound provider.
+     */
+    private ProviderRouting createProviderRouting(final Provider provider,
+            final Map<String, Object> componentProperties, final PrivateKey privateKey,
+            final PublicKey signingPublicKey, final byte[] signingKeyId, final boolean strictOverrides)
+            throws ConfigurationException {
+        Object providerSelection = componentProperties.get(PropertyName.PROVIDER_SELECTION);
+        boolean fastest;
+        if ((providerSelection == null) || PROVIDER_SELECTION_FIXED.equals(providerSelection)) {
+            fastest = false;
+        } else if (PROVIDER_SELECTION_FASTEST.equals(providerSelection)) {
+            fastest = true;
+        } else {
+            throw new ConfigurationException(PropertyName.PROVIDER_SELECTION, "unknown provider selection ["
+                    + providerSelection + "]");
+        }
+        List<String> algorithms = ComponentPropertyUtil.getStringListProperty(componentProperties,
+                PropertyName.PROVIDER_SELECTION_ALGORITHMS);
+        if (fastest && algorithms.isEmpty()) {
+            throw new ConfigurationException(PropertyName.PROVIDER_SELECTION_ALGORITHMS,
+                    "required property not defined");
+        }
+        List<String> overrides = ComponentPropertyUtil.getStringListProperty(componentProperties,
+                PropertyName.PROVIDER_OVERRIDES);
+        if (!fastest && overrides.isEmpty()) {
+            return ProviderRouting.fixed(provider);
+        }
+
+        List<Provider> candidates = collectCandidateProviders(provider);
+        Map<String, Provider> providers = new HashMap<>();
+        if (fastest && (privateKey != null) && (signingPublicKey != null)) {
+            for (String algorithm : algorithms) {
+                Provider fastestProvider = providerSelector.select(algorithm, candidates, privateKey,
+                        signingPublicKey, signingKeyId);
+                if (fastestProvider != null) {
+                    providers.put(ProviderRouting.normalizeAlgorithm(algorithm), fastestProvider);
+                }
+            }
+        }
+        for (String override : overrides) {
+            int separatorIndex = override.indexOf('=');
+            if ((separatorIndex <= 0) || (separatorIndex == (override.length() - 1))) {
+                throw new ConfigurationException(PropertyName.PROVIDER_OVERRIDES, "invalid override [" + override
+                        + "], the expected format is algorithm=providerName");
+            }
+            String algorithm = override.substring(0, separatorIndex).trim();
+            String providerName = override.substring(separatorIndex + 1).trim();
+            Provider overrideProvider = null;
+            for (Provider candidate : candidates) {
+                if (candidate.getName().equals(providerName)) {
+                    overrideProvider = candidate;
+                    break;
+                }
+            }
+            if ((overrideProvider == null) && !strictOverrides) {
+                continue;
+            }
+            if (overrideProvider == null) {
+                throw new ConfigurationException(PropertyName.PROVIDER_OVERRIDES, "provider [" + providerName
+                        + "] of algorithm [" + algorithm + "] is not available");
+            }
+            if (overrideProvider.getService("Signature", algorithm) == null) {
+                throw new ConfigurationException(PropertyName.PROVIDER_OVERRIDES, "provider [" + providerName
+                        + "] does not support algorithm [" + algorithm + "]");
+            }
+            providers.put(ProviderRouting.normalizeAlgorithm(algorithm), overrideProvider);
+        }
+        return new ProviderRouting(provider, providers);
+    }
+
+    /**
+     * Returns the source of randomness of the signatures that sign if the caller does not pass one or
+     * <code>null</code> if the default of the provider is used.
+     */
+    private SecureRandom createSecureRandom(final Map<String, Object> componentProperties)
+            throws ConfigurationException {
+        String secureRandomAlgorithm = getOptionalStringProperty(componentProperties,
+                PropertyName.SECURE_RANDOM_ALGORITHM);
+        if (secureRandomAlgorithm == null) {
+            return null;
+        }
+        int reseedInterval = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.SECURE_RANDOM_RESEED_INTERVAL, DEFAULT_SECURE_RANDOM_RESEED_INTERVAL);
+        if (reseedInterval < 0) {
+            throw new ConfigurationException(PropertyName.SECURE_RANDOM_RESEED_INTERVAL, "must not be negative");
+        }
+        try {
+            if (secureRandomAlgorithm.startsWith(NATIVE_PRNG_ALGORITHM_PREFIX)) {
+                // The instances share one native generator and one lock, so striping does not help
+                return SecureRandom.getInstance(secureRandomAlgorithm);
+            }
+            return new StripedSecureRandom(secureRandomAlgorithm, reseedInterval);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigurationException(PropertyName.SECURE_RANDOM_ALGORITHM,
+                    "unknown secure random algorithm [" + secureRandomAlgorithm + "]", e);
+        }
+    }
+
+    /**
+     * Builds a new state from the keystore, the provider and the configuration. The method does not modify the
+     * component, so it can run while the operations use the current state.
+     *
+     * @param strictOverrides
+     *            see {@link #createProviderRouting(Provider, Map, PrivateKey, PublicKey, byte[], boolean)}.
+     */
+    private SignerState createState(final KeyStore keyStore, final Provider provider,
+            final Map<String, Object> componentProperties, final boolean strictOverrides)
+            throws ConfigurationException {
+        if ((keyStore == null) || (provider == null)) {
+            throw new ConfigurationException(null, "the keystore or the provider is not bound");
+        }
         String privateKeyAlias = getStringProperty(componentProperties, PropertyName.PRIVATE_KEY_ALIAS, false);
         String privateKeyPassword = getStringProperty(componentProperties, PropertyName.PRIVATE_KEY_PASSWORD, false);
         String publicKeyAlias = getStringProperty(componentProperties, PropertyName.PUBLIC_KEY_ALIAS, false);
 
-        initPrivateKey(privateKeyAlias, privateKeyPassword);
-        initPublicKey(publicKeyAlias);
+        PrivateKeyEntry privateKeyEntry = loadPrivateKeyEntry(keyStore, privateKeyAlias, privateKeyPassword);
+        PrivateKey privateKey = null;
+        PublicKey signingPublicKey = null;
+        byte[] signingKeyId = null;
+        if (privateKeyEntry != null) {
+            privateKey = privateKeyEntry.getPrivateKey();
+            Certificate certificate = privateKeyEntry.getCertificate();
+            if (certificate != null) {
+                signingPublicKey = certificate.getPublicKey();
+                signingKeyId = PublicKeyIndex.computeKeyId(signingPublicKey);
+            }
+        }
+        PublicKey publicKey = loadPublicKey(keyStore, publicKeyAlias);
+
+        int signaturePoolSize = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.SIGNATURE_POOL_SIZE, DEFAULT_SIGNATURE_POOL_SIZE);
+        ProviderRouting providerRouting = createProviderRouting(provider, componentProperties, privateKey,
+                signingPublicKey, signingKeyId, strictOverrides);
+        SecureRandom secureRandom = createSecureRandom(componentProperties);
+        SignaturePool signaturePool = new SignaturePool(providerRouting, privateKey, publicKey, secureRandom,
+                signaturePoolSize);
+
+        List<String> publicKeyAliases = ComponentPropertyUtil.getStringListProperty(componentProperties,
+                PropertyName.PUBLIC_KEY_ALIASES);
+        PublicKeyIndex publicKeyIndex = createPublicKeyIndex(keyStore, providerRouting, publicKey, signaturePool,
+                publicKeyAliases, signaturePoolSize);
+
+        int batchParallelism = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.BATCH_PARALLELISM, DEFAULT_BATCH_PARALLELISM);
+
+        int verificationCacheSize = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.VERIFICATION_CACHE_SIZE, 0);
+        int verificationCacheTimeToLive = ComponentPropertyUtil.getIntProperty(componentProperties,
+                PropertyName.VERIFICATION_CACHE_TIME_TO_LIVE, DEFAULT_VERIFICATION_CACHE_TIME_TO_LIVE);
+        VerificationCache verificationCache = null;
+        if (verificationCacheSize > 0) {
+            verificationCache = new VerificationCache(verificationCacheSize, verificationCacheTimeToLive);
+        }
+
+        String defaultSignatureAlgorithm = getOptionalStringProperty(componentProperties,
+                PropertyName.DEFAULT_SIGNATURE_ALGORITHM);
+        SignatureKey defaultSignKey = null;
+        SignatureKey defaultVerifyKey = null;
+        if (defaultSignatureAlgorithm != null) {
+            AlgorithmParameterSpec defaultParameterSpec = createDefaultParameterSpec(componentProperties);
+            if (privateKey != null) {
+                defaultSignKey = SignatureKey.forSign(defaultSignatureAlgorithm, defaultParameterSpec, false);
+                prepareDefaultSignature(signaturePool, defaultSignKey, privateKeyAlias);
+            }
+            if (publicKey != null) {
+                defaultVerifyKey = SignatureKey.forVerify(defaultSignatureAlgorithm, defaultParameterSpec);
+                prepareDefaultSignature(signaturePool, defaultVerifyKey, publicKeyAlias);
+            }
+        }
+
+        warmUp(signaturePool, ComponentPropertyUtil.getStringListProperty(componentProperties,
+                PropertyName.WARM_UP_ALGORITHMS), privateKey != null, publicKey != null);
+
+        return new SignerState(provider, privateKeyAlias, privateKey, signingKeyId, publicKeyAlias, publicKey,
+                signaturePool, publicKeyIndex, verificationCache, defaultSignKey, defaultVerifyKey,
+                batchParallelism);
     }
 
-    public void bindKeyStore(final KeyStore keyStore) {
-        this.keyStore = keyStore;
+    @Deactivate
+    public void deactivate() {
+        synchronized (this) {
+            unregisterMetricsMBean();
+            componentProperties = null;
+            SignerState oldState = state;
+            state = null;
+            if (oldState != null) {
+                oldState.close();
+            }
+        }
     }
 
-    public void bindProvider(final Provider provider) {
-        this.provider = provider;
+    @Override
+    public long getHitCount() {
+        VerificationCache cache = getVerificationCache();
+        return (cache != null) ? cache.getHitCount() : 0;
+    }
+
+    @Override
+    public int getMaxSize() {
+        VerificationCache cache = getVerificationCache();
+        return (cache != null) ? cache.getMaxSize() : 0;
+    }
+
+    @Override
+    public long getMissCount() {
+        VerificationCache cache = getVerificationCache();
+        return (cache != null) ? cache.getMissCount() : 0;
+    }
+
+    @Override
+    public long getActivationTime() {
+        return activationTime;
+    }
+
+    @Override
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    @Override
+    public List<OperationStatistics> getOperationStatistics() {
+        return metricsRegistry.getOperationStatistics();
+    }
+
+    @Override
+    public List<byte[]> getPublicKeyIds() {
+        PublicKeyIndex index = getState().getPublicKeyIndex();
+        List<byte[]> result = new ArrayList<>(index.size());
+        for (PublicKeyIndex.Entry entry : index.getEntries()) {
+            result.add(entry.getKeyId());
+        }
+        return result;
+    }
+
+    @Override
+    public byte[] getSigningKeyId() {
+        byte[] signingKeyId = getState().getSigningKeyId();
+        return (signingKeyId != null) ? signingKeyId.clone() : null;
+    }
+
+    @Override
+    public int getSize() {
+        VerificationCache cache = getVerificationCache();
+        return (cache != null) ? cache.getSize() : 0;
+    }
+
+    private SignerState getState() {
+        SignerState result = state;
+        if (result == null) {
+            result = resolveState();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the trimmed value of a property or <code>null</code> if the property is not defined or empty.
+     */
+    private String getOptionalStringProperty(final Map<String, Object> componentProperties,
+            final String propertyName) {
+        Object value = componentProperties.get(propertyName);
+        if (value == null) {
+            return null;
+        }
+        String stringValue = String.valueOf(value).trim();
+        return stringValue.isEmpty() ? null : stringValue;
     }
 
     private String getStringProperty(final Map<String, Object> componentProperties, final String propertyName,
@@ -107,14 +758,159 @@ public class SignerComponent implements Signer {
         return stringValue;
     }
 
-    private void initAliases() throws ConfigurationException {
+    private VerificationCache getVerificationCache() {
+        SignerState currentState = state;
+        return (currentState != null) ? currentState.getVerificationCache() : null;
+    }
+
+    /**
+     * Runs a batch task in the pool of the state. If a newer state is published meanwhile, the task runs in the
+     * calling thread.
+     */
+    private void invokeBatchTask(final SignerState currentState, final ForkJoinTask<?> task, final int batchSize) {
+        ForkJoinPool batchPool = (batchSize > 1) ? currentState.acquireBatchPool() : null;
+        if (batchPool == null) {
+            task.invoke();
+            return;
+        }
+        try {
+            batchPool.invoke(task);
+        } finally {
+            currentState.releaseBatchPool();
+        }
+    }
+
+    private PrivateKeyEntry loadPrivateKeyEntry(final KeyStore keyStore, final String privateKeyAlias,
+            final String privateKeyPassword) throws ConfigurationException {
+        if (privateKeyAlias == null) {
+            return null;
+        }
+        PasswordProtection passwordProtection = new PasswordProtection(privateKeyPassword.toCharArray());
+        PrivateKeyEntry privateKeyEntry;
+        try {
+            privateKeyEntry = (PrivateKeyEntry) keyStore.getEntry(privateKeyAlias, passwordProtection);
+        } catch (NoSuchAlgorithmException | UnrecoverableEntryException | KeyStoreException e) {
+            throw new ConfigurationException(null,
+                    createLoadFailureMessage(keyStore, "private key", privateKeyAlias), e);
+        }
+        if (privateKeyEntry == null) {
+            throw new ConfigurationException(null, createLoadFailureMessage(keyStore, "private key", privateKeyAlias));
+        }
+        return privateKeyEntry;
+    }
+
+    private PublicKey loadPublicKey(final KeyStore keyStore, final String publicKeyAlias)
+            throws ConfigurationException {
+        if (publicKeyAlias == null) {
+            return null;
+        }
+        try {
+            Certificate certificate = keyStore.getCertificate(publicKeyAlias);
+            if (certificate == null) {
+                throw new ConfigurationException(null,
+                        createLoadFailureMessage(keyStore, "public key", publicKeyAlias));
+            }
+            return certificate.getPublicKey();
+        } catch (KeyStoreException e) {
+            throw new ConfigurationException(null, createLoadFailureMessage(keyStore, "public key", publicKeyAlias));
+        }
+    }
+
+    @Modified
+    public void modified(final Map<String, Object> componentProperties) throws ConfigurationException {
+        long startTime = System.nanoTime();
+        synchronized (this) {
+            lazyLoadFailure = null;
+            if (isLazyKeyLoading(componentProperties)) {
+                publishState(null);
+            } else {
+                publishState(loadState(componentProperties));
+            }
+            this.componentProperties = componentProperties;
+            updateMetricsMBean(componentProperties);
+        }
+        activationTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Creates a signature for the default algorithm and puts it into the pool, so the algorithm, the parameters
+     * and the key are checked when the signer is configured and the first call finds a ready signature. The
+     * signing side creates a signature of an empty message as some providers check the parameters only then.
+     */
+    private void prepareDefaultSignature(final SignaturePool signaturePool, final SignatureKey signatureKey,
+            final String keyAlias) throws ConfigurationException {
+        Signature signature;
+        try {
+            if (signatureKey.isSign()) {
+                signature = signaturePool.borrowSign(signatureKey, null);
+                signature.sign();
+            } else {
+                signature = signaturePool.borrowVerify(signatureKey);
+            }
+        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException | InvalidKeyException
+                | SignatureException e) {
+            throw new ConfigurationException(PropertyName.DEFAULT_SIGNATURE_ALGORITHM, "algorithm ["
+                    + signatureKey.getAlgorithm() + "] cannot be used with the key [" + keyAlias + "]", e);
+        }
+        signaturePool.release(signatureKey, signature);
+    }
+
+    /**
+     * Returns whether the routing of the algorithms changes when a provider is bound or unbound to the
+     * <code>availableProviders</code> reference, so the state has to be reloaded.
+     */
+    private boolean isRoutingDependentOnAvailableProviders() {
+        if (componentProperties == null) {
+            return false;
+        }
+        Object providerSelection = componentProperties.get(PropertyName.PROVIDER_SELECTION);
+        if ((providerSelection != null) && !PROVIDER_SELECTION_FIXED.equals(providerSelection)) {
+            return true;
+        }
+        return !ComponentPropertyUtil.getStringListProperty(componentProperties, PropertyName.PROVIDER_OVERRIDES)
+                .isEmpty();
+    }
+
+    private boolean isLazyKeyLoading(final Map<String, Object> componentProperties)
+            throws ConfigurationException {
+        return ComponentPropertyUtil.getBooleanProperty(componentProperties, PropertyName.LAZY_KEY_LOADING, false);
+    }
+
+    /**
+     * Builds a new state with the currently bound services and records the time it took.
+     */
+    private SignerState loadState(final Map<String, Object> componentProperties) throws ConfigurationException {
+        return loadState(componentProperties, true);
+    }
+
+    private SignerState loadState(final Map<String, Object> componentProperties, final boolean strictOverrides)
+            throws ConfigurationException {
+        long startTime = System.nanoTime();
+        SignerState newState = createState(keyStore, provider, componentProperties, strictOverrides);
+        loadTime = System.nanoTime() - startTime;
+        return newState;
+    }
+
+    private void publishState(final SignerState newState) {
+        SignerState oldState = state;
+        state = newState;
+        if (oldState != null) {
+            oldState.close();
+        }
+    }
+
+    /**
+     * Returns the aliases of the keystore for an error message. The aliases are enumerated only when an error is
+     * reported, as the enumeration is slow with large keystores and hardware tokens.
+     */
+    private String readAliases(final KeyStore keyStore) {
         Enumeration<String> aliasesEnum;
         try {
             aliasesEnum = keyStore.aliases();
         } catch (KeyStoreException e) {
-            throw new ConfigurationException(null, "Failed to get the available aliases from the keystore", e);
+            return "unknown";
         }
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         while (aliasesEnum.hasMoreElements()) {
             String alias = aliasesEnum.nextElement();
             sb.append(alias);
@@ -122,92 +918,871 @@ public class SignerComponent implements Signer {
                 sb.append(",");
             }
         }
-        aliases = sb.toString();
+        return sb.toString();
     }
 
-    private void initPrivateKey(final String privateKeyAlias, final String privateKeyPassword)
-            throws ConfigurationException {
-        privateKey = null;
-        if (privateKeyAlias == null) {
+    /**
+     * Builds a new state with the currently bound services if the component is active and the key material is
+     * already loaded. If the new state cannot be built, the previous state stays in use.
+     */
+    private void reload() {
+        // The bound services changed, so a failed lazy load is retried on the next use
+        lazyLoadFailure = null;
+        if ((componentProperties == null) || (state == null) || (keyStore == null) || (provider == null)) {
+            // Not active or the key material is loaded lazily on the first use
             return;
         }
-        PasswordProtection passwordProtection = new PasswordProtection(privateKeyPassword.toCharArray());
         try {
-            PrivateKeyEntry privateKeyEntry = (PrivateKeyEntry) keyStore.getEntry(privateKeyAlias, passwordProtection);
-            privateKey = privateKeyEntry.getPrivateKey();
-        } catch (NoSuchAlgorithmException | UnrecoverableEntryException | KeyStoreException e) {
-            throw new ConfigurationException(null, "failed to load private key ["
-                    + privateKeyAlias + "] from the given keystore, available aliases are [" + aliases + "]", e);
+            publishState(loadState(componentProperties));
+        } catch (ConfigurationException e) {
+            throw new SignerException("failed to reload the key material, the previous one is still used", e);
         }
     }
 
-    private void initPublicKey(final String publicKeyAlias) throws ConfigurationException {
-        publicKey = null;
-        if (publicKeyAlias == null) {
-            return;
+    /**
+     * Loads the key material on the first use if the component is configured to load it lazily. If the load
+     * fails, the failure is reported without a new load until the retry delay elapses, so a broken keystore is not
+     * opened on every call.
+     */
+    private SignerState resolveState() {
+        synchronized (this) {
+            if (state != null) {
+                return state;
+            }
+            if (componentProperties == null) {
+                throw new SignerException("signer not available, the component is not active");
+            }
+            if ((lazyLoadFailure != null) && ((System.nanoTime() - lazyLoadRetryTime) < 0)) {
+                throw new SignerException("failed to load the key material, the load is retried later",
+                        lazyLoadFailure);
+            }
+            try {
+                state = loadState(componentProperties);
+            } catch (ConfigurationException e) {
+                if (lazyLoadFailure == null) {
+                    lazyLoadRetryDelay = LAZY_LOAD_MIN_RETRY_DELAY;
+                } else {
+                    lazyLoadRetryDelay = Math.min(lazyLoadRetryDelay * 2, LAZY_LOAD_MAX_RETRY_DELAY);
+                }
+                lazyLoadFailure = e;
+                lazyLoadRetryTime = System.nanoTime() + (lazyLoadRetryDelay * 1000000L);
+                throw new SignerException("failed to load the key material", e);
+            }
+            lazyLoadFailure = null;
+            return state;
         }
+    }
+
+    @Override
+    public byte[] sign(final byte[] data) {
+        SignerState currentState = getState();
         try {
-            Certificate certificate = keyStore.getCertificate(publicKeyAlias);
-            if (certificate == null) {
-                throw new ConfigurationException(null, "failed to load public key ["
-                        + publicKeyAlias + "] from the given keystore, available aliases are [" + aliases + "]");
-            }
-            publicKey = certificate.getPublicKey();
-        } catch (KeyStoreException e) {
-            throw new ConfigurationException(null, "failed to load public key ["
-                    + publicKeyAlias + "] from the given keystore, available aliases are [" + aliases + "]");
+            return sign(currentState, SignatureInput.of(data), currentState.getDefaultSignKey(), null);
+        } catch (IOException e) {
+            throw new SignerException("failed to create signature", e);
         }
     }
 
     @Override
     public byte[] sign(final byte[] data, final String signatureAlgorithm,
             final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
-        if (privateKey == null) {
-            throw new SignerException("sign not available, private key not configured");
+        try {
+            return sign(SignatureInput.of(data), signatureAlgorithm, algorithmParameterSpec, secureRandom);
+        } catch (IOException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    @Override
+    public byte[] sign(final byte[] data, final int offset, final int length, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return signInMemory(SignatureInput.of(data, offset, length), signatureAlgorithm, algorithmParameterSpec,
+                secureRandom);
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return signInMemory(SignatureInput.of(data), signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    @Override
+    public byte[] sign(final ByteBuffer[] segments, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        return signInMemory(SignatureInput.of(segments), signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    @Override
+    public byte[] sign(final InputStream inputStream, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return sign(SignatureInput.of(inputStream), signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    @Override
+    public byte[] sign(final Path file, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return sign(SignatureInput.of(file), signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    @Override
+    public byte[] sign(final ReadableByteChannel channel, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return sign(SignatureInput.of(channel), signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    /**
+     * Signs data that is in memory, so reading it cannot fail with an {@link IOException}.
+     */
+    private byte[] signInMemory(final SignatureInput signatureInput, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        try {
+            return sign(signatureInput, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+        } catch (IOException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    @Override
+    public List<byte[]> signBatch(final List<byte[]> payloads, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        SignerState currentState = getState();
+        currentState.getPrivateKey();
+        SignatureKey signatureKey = SignatureKey.forSign(signatureAlgorithm, algorithmParameterSpec,
+                secureRandom != null);
+        byte[][] results = new byte[payloads.size()][];
+        SignBatchTask task = new SignBatchTask(currentState.getSignaturePool(), signatureKey, secureRandom,
+                payloads, results, 0, results.length, currentState.getBatchThreshold(results.length));
+        OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_SIGN_BATCH,
+                signatureAlgorithm, currentState.getPrivateKeyAlias());
+        long startTime = System.nanoTime();
+        boolean failed = true;
+        try {
+            invokeBatchTask(currentState, task, results.length);
+            failed = false;
+        } finally {
+            operationMetrics.record(System.nanoTime() - startTime, failed, false);
+        }
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public byte[] signDigest(final byte[] digest, final String digestAlgorithm, final SecureRandom secureRandom) {
+        SignerState currentState = getState();
+        String keyAlgorithm = currentState.getPrivateKey().getAlgorithm();
+        byte[] data = DigestInfoUtil.wrapDigest(keyAlgorithm, digestAlgorithm, digest);
+        try {
+            return sign(currentState, SignatureInput.of(data), DigestInfoUtil.getRawSignatureAlgorithm(keyAlgorithm),
+                    null, secureRandom);
+        } catch (IOException e) {
+            throw new SignerException("failed to create signature", e);
         }
+    }
+
+    @Override
+    public ChunkedSignature signMerkleTree(final MerkleTree merkleTree, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        byte[] root = merkleTree.getRoot();
+        byte[] signedContent = ChunkedSignature.encodeSignedContent(merkleTree.getDigestAlgorithm(),
+                merkleTree.getChunkSize(), merkleTree.getLength(), root);
+        byte[] signatureBytes = sign(signedContent, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+        return new ChunkedSignature(merkleTree.getDigestAlgorithm(), merkleTree.getChunkSize(),
+                merkleTree.getLength(), root, signatureBytes);
+    }
+
+    @Override
+    public byte[] signToEnvelope(final byte[] data, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+        SignerState currentState = getState();
+        byte[] signatureBytes;
         try {
-            Signature signature = Signature.getInstance(signatureAlgorithm, provider);
-            if (algorithmParameterSpec != null) {
-                signature.setParameter(algorithmParameterSpec);
+            signatureBytes = sign(currentState, SignatureInput.of(data), signatureAlgorithm, algorithmParameterSpec,
+                    secureRandom);
+        } catch (IOException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+        return SignatureEnvelope.encode(signatureAlgorithm, algorithmParameterSpec, currentState.getSigningKeyId(),
+                signatureBytes);
+    }
+
+    private byte[] sign(final SignatureInput signatureInput, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom)
+            throws IOException {
+        return sign(getState(), signatureInput, signatureAlgorithm, algorithmParameterSpec, secureRandom);
+    }
+
+    private byte[] sign(final SignerState currentState, final SignatureInput signatureInput,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final SecureRandom secureRandom) throws IOException {
+        return sign(currentState, signatureInput,
+                SignatureKey.forSign(signatureAlgorithm, algorithmParameterSpec, secureRandom != null), secureRandom);
+    }
+
+    private byte[] sign(final SignerState currentState, final SignatureInput signatureInput,
+            final SignatureKey signatureKey, final SecureRandom secureRandom) throws IOException {
+        currentState.getPrivateKey();
+        OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_SIGN,
+                signatureKey.getAlgorithm(), currentState.getPrivateKeyAlias());
+        long startTime = System.nanoTime();
+        boolean failed = true;
+        try {
+            SignaturePool pool = currentState.getSignaturePool();
+            Signature signature = borrowSignSignature(pool, signatureKey, secureRandom);
+            signatureInput.update(signature);
+            byte[] result = signature.sign();
+            pool.release(signatureKey, signature);
+            failed = false;
+            return result;
+        } catch (SignatureException e) {
+            throw new SignerException("failed to create signature", e);
+        } finally {
+            operationMetrics.record(System.nanoTime() - startTime, failed, false);
+        }
+    }
+
+    /**
+     * Removes a provider from the candidates of the provider selection. The algorithms that were routed to it are
+     * routed again. The algorithms of the overrides that name the removed provider fall back to the bound
+     * provider. If the new state cannot be built, the previous state stays in use.
+     */
+    public void unbindAvailableProvider(final Provider availableProvider) {
+        synchronized (this) {
+            int index = 0;
+            while ((index < availableProviders.size()) && (availableProviders.get(index) != availableProvider)) {
+                index++;
             }
-            if (secureRandom != null) {
-                signature.initSign(privateKey, secureRandom);
-            } else {
-                signature.initSign(privateKey);
+            if (index == availableProviders.size()) {
+                return;
+            }
+            availableProviders.remove(index);
+            if (!isRoutingDependentOnAvailableProviders() || (state == null) || (keyStore == null)
+                    || (provider == null)) {
+                return;
+            }
+            try {
+                publishState(loadState(componentProperties, false));
+            } catch (ConfigurationException e) {
+                // The unbinding of a service cannot be refused, the previous state stays in use
             }
-            signature.update(data);
-            return signature.sign();
-        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException
-                | SignatureException e) {
-            throw new SignerException("failed to create signature", e);
         }
     }
 
+    /**
+     * Forgets the keystore. The current state keeps working with the keys that were loaded from it until a new
+     * keystore is bound.
+     */
     public void unbindKeyStore(final KeyStore keyStore) {
-        this.keyStore = null;
+        synchronized (this) {
+            if (this.keyStore == keyStore) {
+                this.keyStore = null;
+            }
+        }
     }
 
+    /**
+     * Forgets the provider. The current state keeps working with the provider until a new one is bound.
+     */
     public void unbindProvider(final Provider provider) {
-        this.provider = null;
+        synchronized (this) {
+            if (this.provider == provider) {
+                this.provider = null;
+            }
+        }
+    }
+
+    private void unregisterMetricsMBean() {
+        if (metricsObjectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsObjectName);
+        } catch (InstanceNotFoundException e) {
+            // Unregistered by someone else
+        } catch (MBeanRegistrationException e) {
+            throw new SignerException("failed to unregister the metrics MXBean [" + metricsObjectName + "]", e);
+        } finally {
+            metricsObjectName = null;
+        }
+    }
+
+    /**
+     * Reloads the keys when the properties of the keystore service change, for example after the keystore file
+     * is modified.
+     */
+    public void updatedKeyStore(final KeyStore keyStore) {
+        synchronized (this) {
+            this.keyStore = keyStore;
+            reload();
+        }
+    }
+
+    /**
+     * Registers or unregisters the MXBean of the metrics depending on the {@link PropertyName#JMX_ENABLED}
+     * property. The MXBean is registered in the platform MBean server with the service PID of the component in its
+     * name.
+     */
+    private void updateMetricsMBean(final Map<String, Object> componentProperties) throws ConfigurationException {
+        boolean jmxEnabled = ComponentPropertyUtil.getBooleanProperty(componentProperties, PropertyName.JMX_ENABLED,
+                false);
+        if (!jmxEnabled || (metricsObjectName != null)) {
+            if (!jmxEnabled) {
+                unregisterMetricsMBean();
+            }
+            return;
+        }
+        Object pid = componentProperties.get(Constants.SERVICE_PID);
+        if (pid == null) {
+            pid = componentProperties.get("component.id");
+        }
+        try {
+            ObjectName objectName = new ObjectName(METRICS_OBJECT_NAME_PREFIX + ObjectName.quote(String.valueOf(pid)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(this, SignerMetrics.class, true), objectName);
+            metricsObjectName = objectName;
+        } catch (JMException e) {
+            throw new ConfigurationException(PropertyName.JMX_ENABLED, "failed to register the metrics MXBean", e);
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final byte[] signatureBytes) {
+        SignerState currentState = getState();
+        return verify(currentState, data, signatureBytes, currentState.getDefaultVerifyKey());
     }
 
     @Override
     public boolean verify(final byte[] data, final byte[] signatureBytes, final String signatureAlgorithm,
             final AlgorithmParameterSpec algorithmParameterSpec) {
-        if (publicKey == null) {
-            throw new SignerException("verificaition not available, public key not configured");
+        return verify(getState(), data, signatureBytes,
+                SignatureKey.forVerify(signatureAlgorithm, algorithmParameterSpec));
+    }
+
+    /**
+     * Verifies a signature of data that is in memory, using the verification cache if it is enabled.
+     */
+    private boolean verify(final SignerState currentState, final byte[] data, final byte[] signatureBytes,
+            final SignatureKey signatureKey) {
+        VerificationCache cache = currentState.getVerificationCache();
+        VerificationCache.CacheKey cacheKey = null;
+        if (cache != null) {
+            cacheKey = cache.createKey(data, signatureBytes, signatureKey.getAlgorithm(),
+                    signatureKey.getAlgorithmParameterSpec());
+            if (cacheKey != null) {
+                Boolean cachedResult = cache.get(cacheKey);
+                if (cachedResult != null) {
+                    return cachedResult.booleanValue();
+                }
+            }
+        }
+        try {
+            boolean result = verify(currentState, SignatureInput.of(data), signatureBytes, signatureKey);
+            if (cacheKey != null) {
+                cache.put(cacheKey, result);
+            }
+            return result;
+        } catch (IOException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] keyId, final byte[] data, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        SignerState currentState = getState();
+        PublicKeyIndex.Entry entry = currentState.getPublicKeyIndex().get(keyId);
+        if (entry == null) {
+            return false;
+        }
+        OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_VERIFY, signatureAlgorithm,
+                currentState.getPublicKeyAlias());
+        long startTime = System.nanoTime();
+        boolean failed = true;
+        boolean result = false;
+        try {
+            result = verifyWithPool(entry.getSignaturePool(), SignatureInput.of(data), signatureBytes,
+                    SignatureKey.forVerify(signatureAlgorithm, algorithmParameterSpec));
+            failed = false;
+            return result;
+        } catch (IOException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        } finally {
+            operationMetrics.record(System.nanoTime() - startTime, failed, !failed && !result);
+        }
+    }
+
+    @Override
+    public boolean verify(final byte[] data, final int offset, final int length, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verifyInMemory(SignatureInput.of(data, offset, length), signatureBytes, signatureAlgorithm,
+                algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verifyInMemory(SignatureInput.of(data), signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final ByteBuffer[] segments, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verifyInMemory(SignatureInput.of(segments), signatureBytes, signatureAlgorithm,
+                algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final InputStream inputStream, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return verify(SignatureInput.of(inputStream), signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final Path file, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) throws IOException {
+        return verify(SignatureInput.of(file), signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verify(final ReadableByteChannel channel, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return verify(SignatureInput.of(channel), signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public BitSet verifyBatch(final List<byte[]> data, final List<byte[]> signatures,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec,
+            final boolean allOrNothing) {
+        SignerState currentState = getState();
+        currentState.getPublicKey();
+        if (data.size() != signatures.size()) {
+            throw new IllegalArgumentException("the number of data [" + data.size()
+                    + "] and signatures [" + signatures.size() + "] differ");
+        }
+        SignatureKey signatureKey = SignatureKey.forVerify(signatureAlgorithm, algorithmParameterSpec);
+        List<SignaturePool> signaturePools = new ArrayList<>();
+        for (PublicKeyIndex.Entry entry : currentState.getPublicKeyIndex().getEntriesInTrialOrder()) {
+            signaturePools.add(entry.getSignaturePool());
         }
+        boolean[] results = new boolean[data.size()];
+        AtomicBoolean failed = allOrNothing ? new AtomicBoolean() : null;
+        VerifyBatchTask task = new VerifyBatchTask(signaturePools, signatureKey, data, signatures, results, 0,
+                results.length, currentState.getBatchThreshold(results.length), failed);
+        OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_VERIFY_BATCH,
+                signatureAlgorithm, currentState.getPublicKeyAlias());
+        long startTime = System.nanoTime();
+        boolean taskFailed = true;
+        BitSet bitSet = new BitSet(results.length);
         try {
-            Signature signature = Signature.getInstance(signatureAlgorithm, provider);
-            if (algorithmParameterSpec != null) {
-                signature.setParameter(algorithmParameterSpec);
+            invokeBatchTask(currentState, task, results.length);
+            taskFailed = false;
+            for (int i = 0; i < results.length; i++) {
+                if (results[i]) {
+                    bitSet.set(i);
+                }
             }
-            signature.initVerify(publicKey);
+        } finally {
+            operationMetrics.record(System.nanoTime() - startTime, taskFailed,
+                    !taskFailed && (bitSet.cardinality() < results.length));
+        }
+        return bitSet;
+    }
+
+    @Override
+    public boolean verifyChunked(final Path file, final ChunkedSignature chunkedSignature,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        MerkleTree merkleTree = createMerkleTree(file, chunkedSignature.getChunkSize(),
+                chunkedSignature.getDigestAlgorithm());
+        return (merkleTree.getLength() == chunkedSignature.getLength())
+                && MessageDigest.isEqual(merkleTree.getRoot(), chunkedSignature.getRoot())
+                && verifyRoot(chunkedSignature, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    @Override
+    public boolean verifyDigest(final byte[] digest, final byte[] signatureBytes, final String digestAlgorithm) {
+        SignerState currentState = getState();
+        String keyAlgorithm = currentState.getPublicKey().getAlgorithm();
+        byte[] data = DigestInfoUtil.wrapDigest(keyAlgorithm, digestAlgorithm, digest);
+        try {
+            return verify(currentState, SignatureInput.of(data), signatureBytes,
+                    DigestInfoUtil.getRawSignatureAlgorithm(keyAlgorithm), null);
+        } catch (IOException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+    }
+
+    @Override
+    public boolean verifyEnvelope(final byte[] data, final ByteBuffer envelope) {
+        SignatureEnvelope signatureEnvelope = ENVELOPE.get();
+        try {
+            signatureEnvelope.wrap(envelope);
+            return verifyEnvelope(data, signatureEnvelope);
+        } catch (IllegalArgumentException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        } finally {
+            signatureEnvelope.clear();
+        }
+    }
+
+    @Override
+    public boolean verifyEnvelope(final byte[] data, final SignatureEnvelope envelope) {
+        SignerState currentState = getState();
+        PublicKeyIndex index = currentState.getPublicKeyIndex();
+        PublicKeyIndex.Entry entry = index.get(envelope);
+        if (entry == null) {
+            return false;
+        }
+        SignatureKey signatureKey = SignatureKey.forVerify(envelope.getSignatureAlgorithm(),
+                envelope.getAlgorithmParameterSpec());
+        OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_VERIFY,
+                signatureKey.getAlgorithm(), currentState.getPublicKeyAlias());
+        long startTime = System.nanoTime();
+        boolean failed = true;
+        boolean result = false;
+        try {
+            SignaturePool pool = entry.getSignaturePool();
+            Signature signature = pool.borrowVerify(signatureKey);
             signature.update(data);
-            return signature.verify(signatureBytes);
+            result = envelope.verify(signature);
+            pool.release(signatureKey, signature);
+            if (result) {
+                index.markSuccessful(entry);
+            }
+            failed = false;
+            return result;
         } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException
                 | SignatureException e) {
             throw new SignerException("failed to verifiy signature", e);
+        } finally {
+            operationMetrics.record(System.nanoTime() - startTime, failed, !failed && !result);
+        }
+    }
+
+    @Override
+    public VerificationResult verifyEnvelopeWithResult(final byte[] data, final ByteBuffer envelope) {
+        if ((data == null) || (envelope == null)) {
+            return VerificationResult.MALFORMED;
+        }
+        SignerState currentState = getState();
+        PublicKeyIndex index = currentState.getPublicKeyIndex();
+        SignatureEnvelope signatureEnvelope = ENVELOPE.get();
+        if (!signatureEnvelope.tryWrap(envelope)) {
+            return VerificationResult.MALFORMED;
+        }
+        try {
+            PublicKeyIndex.Entry entry = index.get(signatureEnvelope);
+            if (entry == null) {
+                return VerificationResult.UNSUPPORTED;
+            }
+            SignatureKey signatureKey = SignatureKey.forVerify(signatureEnvelope.getSignatureAlgorithm(),
+                    signatureEnvelope.getAlgorithmParameterSpec());
+            OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_VERIFY,
+                    signatureKey.getAlgorithm(), currentState.getPublicKeyAlias());
+            long startTime = System.nanoTime();
+            VerificationResult result = null;
+            try {
+                result = verifyWithResult(entry, data, signatureKey, signatureEnvelope.getBuffer(),
+                        signatureEnvelope.getSignatureOffset(), signatureEnvelope.getSignatureLength(),
+                        signatureEnvelope);
+                if (result == VerificationResult.VALID) {
+                    index.markSuccessful(entry);
+                }
+                return result;
+            } finally {
+                operationMetrics.record(System.nanoTime() - startTime, result == null,
+                        (result != null) && (result != VerificationResult.VALID));
+            }
+        } finally {
+            signatureEnvelope.clear();
+        }
+    }
+
+    @Override
+    public boolean verifyRoot(final ChunkedSignature chunkedSignature, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        return verify(chunkedSignature.getSignedContent(), chunkedSignature.getSignatureBytes(), signatureAlgorithm,
+                algorithmParameterSpec);
+    }
+
+    private boolean verify(final SignatureInput signatureInput, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec)
+            throws IOException {
+        return verify(getState(), signatureInput, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+    }
+
+    private boolean verify(final SignerState currentState, final SignatureInput signatureInput,
+            final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) throws IOException {
+        return verify(currentState, signatureInput, signatureBytes,
+                SignatureKey.forVerify(signatureAlgorithm, algorithmParameterSpec));
+    }
+
+    private boolean verify(final SignerState currentState, final SignatureInput signatureInput,
+            final byte[] signatureBytes, final SignatureKey signatureKey) throws IOException {
+        PublicKeyIndex index = currentState.getPublicKeyIndex();
+        OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_VERIFY,
+                signatureKey.getAlgorithm(), currentState.getPublicKeyAlias());
+        long startTime = System.nanoTime();
+        boolean failed = true;
+        boolean result = false;
+        try {
+            result = verifyWithKeys(index, signatureInput, signatureBytes, signatureKey);
+            failed = false;
+            return result;
+        } finally {
+            operationMetrics.record(System.nanoTime() - startTime, failed, !failed && !result);
+        }
+    }
+
+    /**
+     * Verifies the signature of data that is in memory, so reading it cannot fail with an {@link IOException}.
+     */
+    private boolean verifyInMemory(final SignatureInput signatureInput, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        try {
+            return verify(signatureInput, signatureBytes, signatureAlgorithm, algorithmParameterSpec);
+        } catch (IOException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+    }
+
+    /**
+     * Verifies the signature with the public keys of the signer. Inputs are verified with the key that verified a
+     * signature most recently, and if that fails, with the other keys in the configured order. Inputs that can be
+     * read only once are passed to all keys at the same time.
+     */
+    private boolean verifyWithKeys(final PublicKeyIndex index, final SignatureInput signatureInput,
+            final byte[] signatureBytes, final SignatureKey signatureKey) throws IOException {
+        if (index.size() == 1) {
+            return verifyWithPool(index.getPrimary().getSignaturePool(), signatureInput, signatureBytes,
+                    signatureKey);
+        }
+        if (!signatureInput.isRepeatable()) {
+            return verifyWithKeysAtOnce(index, signatureInput, signatureBytes, signatureKey);
+        }
+        PublicKeyIndex.Entry first = index.getMostRecentlySuccessful();
+        SignerException firstException = null;
+        boolean anyCompleted = false;
+        for (int i = -1; i < index.size(); i++) {
+            PublicKeyIndex.Entry entry = (i < 0) ? first : index.getEntries().get(i);
+            if ((i >= 0) && (entry == first)) {
+                continue;
+            }
+            try {
+                if (verifyWithPool(entry.getSignaturePool(), signatureInput, signatureBytes, signatureKey)) {
+                    index.markSuccessful(entry);
+                    return true;
+                }
+                anyCompleted = true;
+            } catch (SignerException e) {
+                // The signature may not fit a key with a different size or type
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        if (!anyCompleted && (firstException != null)) {
+            throw firstException;
+        }
+        return false;
+    }
+
+    /**
+     * Verifies the signature of an input that can be read only once. The input is read once and passed to a
+     * signature of every public key, then the signatures are checked starting with the key that verified a
+     * signature most recently.
+     */
+    private boolean verifyWithKeysAtOnce(final PublicKeyIndex index, final SignatureInput signatureInput,
+            final byte[] signatureBytes, final SignatureKey signatureKey) throws IOException {
+        List<PublicKeyIndex.Entry> entries = new ArrayList<>();
+        List<Signature> signatures = new ArrayList<>();
+        SignerException firstException = null;
+        for (PublicKeyIndex.Entry entry : index.getEntriesInTrialOrder()) {
+            try {
+                signatures.add(entry.getSignaturePool().borrowVerify(signatureKey));
+                entries.add(entry);
+            } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+                // The algorithm may not fit a key with a different type
+                if (firstException == null) {
+                    firstException = new SignerException("failed to verifiy signature", e);
+                }
+            }
+        }
+        if (signatures.isEmpty()) {
+            throw firstException;
+        }
+        SignatureSink[] sinks = new SignatureSink[signatures.size()];
+        for (int i = 0; i < sinks.length; i++) {
+            sinks[i] = SignatureSink.of(signatures.get(i));
+        }
+        try {
+            signatureInput.update(SignatureSink.of(sinks));
+        } catch (SignatureException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+        PublicKeyIndex.Entry successfulEntry = null;
+        boolean anyCompleted = false;
+        for (int i = 0; i < sinks.length; i++) {
+            // Every signature is checked, as that resets it before it is released to its pool
+            try {
+                if (signatures.get(i).verify(signatureBytes) && (successfulEntry == null)) {
+                    successfulEntry = entries.get(i);
+                }
+                entries.get(i).getSignaturePool().release(signatureKey, signatures.get(i));
+                anyCompleted = true;
+            } catch (SignatureException e) {
+                // The signature may not fit a key with a different size or type
+                if (firstException == null) {
+                    firstException = new SignerException("failed to verifiy signature", e);
+                }
+            }
+        }
+        if (successfulEntry != null) {
+            index.markSuccessful(successfulEntry);
+            return true;
+        }
+        if (!anyCompleted && (firstException != null)) {
+            throw firstException;
+        }
+        return false;
+    }
+
+    private boolean verifyWithPool(final SignaturePool pool, final SignatureInput signatureInput,
+            final byte[] signatureBytes, final SignatureKey signatureKey) throws IOException {
+        Signature signature;
+        try {
+            signature = pool.borrowVerify(signatureKey);
+        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+        try {
+            signatureInput.update(signature);
+            boolean result = signature.verify(signatureBytes);
+            pool.release(signatureKey, signature);
+            return result;
+        } catch (SignatureException e) {
+            throw new SignerException("failed to verifiy signature", e);
+        }
+    }
+
+    @Override
+    public VerificationResult verifyWithResult(final byte[] data, final byte[] signatureBytes,
+            final String signatureAlgorithm, final AlgorithmParameterSpec algorithmParameterSpec) {
+        if ((data == null) || (signatureBytes == null)) {
+            return VerificationResult.MALFORMED;
+        }
+        if (signatureAlgorithm == null) {
+            return VerificationResult.UNSUPPORTED;
+        }
+        SignerState currentState = getState();
+        PublicKeyIndex index = currentState.getPublicKeyIndex();
+        SignatureKey signatureKey = SignatureKey.forVerify(signatureAlgorithm, algorithmParameterSpec);
+        ByteBuffer signatureBuffer = ByteBuffer.wrap(signatureBytes);
+        OperationMetrics operationMetrics = metricsRegistry.get(SignerMetrics.OPERATION_VERIFY, signatureAlgorithm,
+                currentState.getPublicKeyAlias());
+        long startTime = System.nanoTime();
+        VerificationResult result = null;
+        try {
+            PublicKeyIndex.Entry first = index.getMostRecentlySuccessful();
+            VerificationResult mostConclusive = null;
+            for (int i = -1; i < index.size(); i++) {
+                PublicKeyIndex.Entry entry = (i < 0) ? first : index.getEntries().get(i);
+                if ((i >= 0) && (entry == first)) {
+                    continue;
+                }
+                VerificationResult entryResult = verifyWithResult(entry, data, signatureKey, signatureBuffer, 0,
+                        signatureBytes.length, null);
+                if (entryResult == VerificationResult.VALID) {
+                    index.markSuccessful(entry);
+                    result = entryResult;
+                    return result;
+                }
+                if ((mostConclusive == null) || (entryResult.ordinal() < mostConclusive.ordinal())) {
+                    mostConclusive = entryResult;
+                }
+            }
+            result = mostConclusive;
+            return result;
+        } finally {
+            operationMetrics.record(System.nanoTime() - startTime, result == null,
+                    (result != null) && (result != VerificationResult.VALID));
+        }
+    }
+
+    /**
+     * Verifies a signature with one public key without throwing an exception because of the signature or the
+     * algorithm. The signature is checked against the shape of the key before the provider is involved. The
+     * runtime exceptions of the provider are reported like the checked ones, some providers throw them for broken
+     * encodings or keys that do not fit the algorithm.
+     *
+     * @param signatureEnvelope
+     *            the envelope that holds the signature or <code>null</code> if the buffer wraps the signature
+     *            bytes.
+     */
+    private VerificationResult verifyWithResult(final PublicKeyIndex.Entry entry, final byte[] data,
+            final SignatureKey signatureKey, final ByteBuffer signatureBuffer, final int signatureOffset,
+            final int signatureLength, final SignatureEnvelope signatureEnvelope) {
+        VerificationResult shapeResult = entry.getSignatureShape().check(signatureKey.getAlgorithm(),
+                signatureBuffer, signatureOffset, signatureLength);
+        if (shapeResult != null) {
+            return shapeResult;
+        }
+        SignaturePool pool = entry.getSignaturePool();
+        Signature signature;
+        try {
+            signature = pool.borrowVerify(signatureKey);
+        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException
+                | RuntimeException e) {
+            return VerificationResult.UNSUPPORTED;
+        }
+        try {
+            signature.update(data);
+            boolean valid = (signatureEnvelope != null) ? signatureEnvelope.verify(signature)
+                    : signature.verify(signatureBuffer.array(), signatureOffset, signatureLength);
+            pool.release(signatureKey, signature);
+            return valid ? VerificationResult.VALID : VerificationResult.INVALID;
+        } catch (SignatureException | RuntimeException e) {
+            // A malformed signature leaves the object in an undefined state, so it is not released
+            return VerificationResult.MALFORMED;
+        }
+    }
+
+    /**
+     * Signs and verifies a throwaway message with each algorithm, so the classes of the provider are loaded, the
+     * key is prepared by the provider and the pool holds initialized signatures before the first real request.
+     */
+    private void warmUp(final SignaturePool signaturePool, final List<String> algorithms, final boolean sign,
+            final boolean verify) throws ConfigurationException {
+        byte[] data = new byte[WARM_UP_DATA_SIZE];
+        for (String algorithm : algorithms) {
+            try {
+                byte[] signatureBytes = null;
+                if (sign) {
+                    SignatureKey signatureKey = SignatureKey.forSign(algorithm, null, false);
+                    Signature signature = signaturePool.borrowSign(signatureKey, null);
+                    signature.update(data);
+                    signatureBytes = signature.sign();
+                    signaturePool.release(signatureKey, signature);
+                }
+                if (verify) {
+                    SignatureKey signatureKey = SignatureKey.forVerify(algorithm, null);
+                    Signature signature = signaturePool.borrowVerify(signatureKey);
+                    if (signatureBytes != null) {
+                        signature.update(data);
+                        // The result does not matter, the public key may not belong to the private key
+                        signature.verify(signatureBytes);
+                    }
+                    signaturePool.release(signatureKey, signature);
+                }
+            } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException | InvalidKeyException
+                    | SignatureException e) {
+                throw new ConfigurationException(PropertyName.WARM_UP_ALGORITHMS, "warm-up with algorithm ["
+                        + algorithm + "] failed", e);
+            }
         }
     }
 
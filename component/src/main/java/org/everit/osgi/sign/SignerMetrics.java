@@ -0,0 +1,66 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.List;
+
+/**
+ * Counters and latency distributions of the operations of a signer. The statistics are kept separately for every
+ * operation, signature algorithm and key alias. The instrumentation is lock-free, so it stays enabled under full
+ * load. The statistics can also be exposed as an MXBean with the {@link PropertyName#JMX_ENABLED} property.
+ */
+public interface SignerMetrics {
+
+    String OPERATION_SIGN = "sign";
+
+    String OPERATION_SIGN_BATCH = "signBatch";
+
+    String OPERATION_VERIFY = "verify";
+
+    String OPERATION_VERIFY_BATCH = "verifyBatch";
+
+    /**
+     * Returns how long the last activation or configuration change of the component took. It includes the load of
+     * the key material and the warm-up unless the key material is loaded lazily.
+     *
+     * @return the duration in nanoseconds or -1 if the component has not been activated yet.
+     */
+    long getActivationTime();
+
+    /**
+     * Returns how long the last load of the key material took, including the warm-up. The key material is loaded
+     * at activation, on configuration changes and when the keystore or the providers change. With lazy key loading
+     * it is loaded on the first use.
+     *
+     * @return the duration in nanoseconds or -1 if the key material has not been loaded yet.
+     */
+    long getLoadTime();
+
+    /**
+     * Returns a snapshot of the statistics of the operations that were executed since the component was
+     * activated.
+     *
+     * @return the statistics ordered by operation, signature algorithm and key alias.
+     */
+    List<OperationStatistics> getOperationStatistics();
+
+}
@@ -0,0 +1,42 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * The priority lanes of a {@link PrioritySigner}. The constants are ordered from the highest to the lowest
+ * priority.
+ */
+public enum SignerPriority {
+
+    /**
+     * Latency-critical operations, e.g. signatures that a user waits for. They are admitted before any waiting bulk
+     * operation and can use capacity that is reserved for them.
+     */
+    INTERACTIVE,
+
+    /**
+     * Throughput-oriented operations, e.g. re-signing jobs. They are admitted only if no interactive operation is
+     * waiting.
+     */
+    BULK
+
+}
@@ -0,0 +1,39 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * Thrown when an operation is not accepted because the signer is overloaded or shut down.
+ */
+public class SignerRejectedException extends SignerException {
+
+    private static final long serialVersionUID = -2519516361540346226L;
+
+    public SignerRejectedException(final String message) {
+        super(message);
+    }
+
+    public SignerRejectedException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+}
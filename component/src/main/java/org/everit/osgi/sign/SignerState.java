@@ -0,0 +1,226 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable snapshot of the key material, the provider and everything that is derived from them. The
+ * {@link SignerComponent} publishes a new snapshot when the keystore, the provider or the configuration changes,
+ * so an operation always works with one consistent set of keys from start to end.
+ */
+final class SignerState {
+
+    private final Provider provider;
+
+    private final String privateKeyAlias;
+
+    private final PrivateKey privateKey;
+
+    private final byte[] signingKeyId;
+
+    private final String publicKeyAlias;
+
+    private final PublicKey publicKey;
+
+    private final SignaturePool signaturePool;
+
+    private final PublicKeyIndex publicKeyIndex;
+
+    private final VerificationCache verificationCache;
+
+    private final SignatureKey defaultSignKey;
+
+    private final SignatureKey defaultVerifyKey;
+
+    private final int batchParallelism;
+
+    private final ForkJoinPool batchPool;
+
+    /**
+     * The number of batch operations that use the batch pool.
+     */
+    private final AtomicInteger activeBatchCount = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    SignerState(final Provider provider, final String privateKeyAlias, final PrivateKey privateKey,
+            final byte[] signingKeyId, final String publicKeyAlias, final PublicKey publicKey,
+            final SignaturePool signaturePool, final PublicKeyIndex publicKeyIndex,
+            final VerificationCache verificationCache, final SignatureKey defaultSignKey,
+            final SignatureKey defaultVerifyKey, final int batchParallelism) {
+        this.provider = provider;
+        this.privateKeyAlias = privateKeyAlias;
+        this.publicKeyAlias = publicKeyAlias;
+        this.privateKey = privateKey;
+        this.signingKeyId = signingKeyId;
+        this.publicKey = publicKey;
+        this.signaturePool = signaturePool;
+        this.publicKeyIndex = publicKeyIndex;
+        this.verificationCache = verificationCache;
+        this.defaultSignKey = defaultSignKey;
+        this.defaultVerifyKey = defaultVerifyKey;
+        this.batchParallelism = batchParallelism;
+        batchPool = (batchParallelism > 1) ? new ForkJoinPool(batchParallelism) : null;
+    }
+
+    /**
+     * Returns the batch pool for a batch operation. The pool must be released with {@link #releaseBatchPool()}
+     * after the operation.
+     *
+     * @return the pool or <code>null</code> if the batch must be processed on the calling thread because the
+     *         parallelism is one or the snapshot is closed.
+     */
+    ForkJoinPool acquireBatchPool() {
+        if (batchPool == null) {
+            return null;
+        }
+        activeBatchCount.incrementAndGet();
+        if (closed) {
+            releaseBatchPool();
+            return null;
+        }
+        return batchPool;
+    }
+
+    /**
+     * Releases the resources of the snapshot after a newer one is published. Operations that still use this
+     * snapshot can complete, the batch pool is shut down when the last batch operation releases it.
+     */
+    void close() {
+        closed = true;
+        if ((batchPool != null) && (activeBatchCount.get() == 0)) {
+            batchPool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the number of payloads that are processed by one worker of a batch operation.
+     */
+    int getBatchThreshold(final int batchSize) {
+        if (batchPool == null) {
+            return batchSize;
+        }
+        return Math.max(1, (batchSize + batchParallelism - 1) / batchParallelism);
+    }
+
+    /**
+     * Returns the key of the signatures that sign with the default algorithm and parameters.
+     *
+     * @throws SignerException
+     *             if the default algorithm or the private key is not configured.
+     */
+    SignatureKey getDefaultSignKey() {
+        if (defaultSignKey == null) {
+            throw new SignerException("sign not available, default signature algorithm or private key not configured");
+        }
+        return defaultSignKey;
+    }
+
+    /**
+     * Returns the key of the signatures that verify with the default algorithm and parameters.
+     *
+     * @throws SignerException
+     *             if the default algorithm or the public key is not configured.
+     */
+    SignatureKey getDefaultVerifyKey() {
+        if (defaultVerifyKey == null) {
+            throw new SignerException(
+                    "verificaition not available, default signature algorithm or public key not configured");
+        }
+        return defaultVerifyKey;
+    }
+
+    /**
+     * Returns the private key.
+     *
+     * @throws SignerException
+     *             if the private key is not configured.
+     */
+    PrivateKey getPrivateKey() {
+        if (privateKey == null) {
+            throw new SignerException("sign not available, private key not configured");
+        }
+        return privateKey;
+    }
+
+    String getPrivateKeyAlias() {
+        return privateKeyAlias;
+    }
+
+    Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Returns the primary public key.
+     *
+     * @throws SignerException
+     *             if the public key is not configured.
+     */
+    PublicKey getPublicKey() {
+        if (publicKey == null) {
+            throw new SignerException("verificaition not available, public key not configured");
+        }
+        return publicKey;
+    }
+
+    String getPublicKeyAlias() {
+        return publicKeyAlias;
+    }
+
+    /**
+     * Returns the index of the public keys.
+     *
+     * @throws SignerException
+     *             if the public key is not configured.
+     */
+    PublicKeyIndex getPublicKeyIndex() {
+        if (publicKeyIndex == null) {
+            throw new SignerException("verificaition not available, public key not configured");
+        }
+        return publicKeyIndex;
+    }
+
+    SignaturePool getSignaturePool() {
+        return signaturePool;
+    }
+
+    byte[] getSigningKeyId() {
+        return signingKeyId;
+    }
+
+    VerificationCache getVerificationCache() {
+        return verificationCache;
+    }
+
+    void releaseBatchPool() {
+        if ((activeBatchCount.decrementAndGet() == 0) && closed) {
+            batchPool.shutdown();
+        }
+    }
+
+}
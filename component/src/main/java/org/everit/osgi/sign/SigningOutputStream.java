@@ -0,0 +1,107 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * An {@link OutputStream} decorator that signs the data while it is written through to the underlying stream. The
+ * signature is available by calling {@link #sign()} after the last byte is written. The data is passed to the
+ * signature without copying it. A stream of a {@link HmacSignerComponent} computes a MAC instead of a signature.
+ */
+public class SigningOutputStream extends FilterOutputStream {
+
+    /**
+     * The receiver of the written data or <code>null</code> if the signature is already created.
+     */
+    private SignatureSink sink;
+
+    /**
+     * Constructor.
+     *
+     * @param out
+     *            the underlying stream that receives the written data.
+     * @param signature
+     *            a signature that is already initialized for signing.
+     */
+    public SigningOutputStream(final OutputStream out, final Signature signature) {
+        this(out, SignatureSink.of(signature));
+    }
+
+    SigningOutputStream(final OutputStream out, final SignatureSink sink) {
+        super(out);
+        this.sink = sink;
+    }
+
+    private void checkNotSigned() {
+        if (sink == null) {
+            throw new IllegalStateException("the signature is already created");
+        }
+    }
+
+    /**
+     * Flushes the underlying stream and returns the signature of all of the data written to this stream. After
+     * calling this method no more data can be written to the stream.
+     *
+     * @return the signature bytes.
+     * @throws IOException
+     *             if the underlying stream cannot be flushed.
+     */
+    public byte[] sign() throws IOException {
+        checkNotSigned();
+        flush();
+        SignatureSink currentSink = sink;
+        sink = null;
+        try {
+            return currentSink.finish();
+        } catch (SignatureException e) {
+            throw new SignerException("failed to create signature", e);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        checkNotSigned();
+        out.write(b, off, len);
+        try {
+            sink.update(b, off, len);
+        } catch (SignatureException e) {
+            throw new SignerException("failed to update signature", e);
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        checkNotSigned();
+        out.write(b);
+        try {
+            sink.update((byte) b);
+        } catch (SignatureException e) {
+            throw new SignerException("failed to update signature", e);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads the updates of concurrent threads over several cells, so the threads do not contend on
+ * one cache line. The cells are padded to a cache line each and the cell of a thread is selected by its id.
+ */
+final class StripedCounter {
+
+    /**
+     * The number of longs in a cache line of 64 bytes.
+     */
+    private static final int PADDING = 8;
+
+    private static final int MAX_STRIPES = 32;
+
+    private static int getStripeCount() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = Integer.highestOneBit(Math.min(MAX_STRIPES, processors));
+        return (stripes < processors) ? Math.min(MAX_STRIPES, stripes << 1) : stripes;
+    }
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    StripedCounter() {
+        int stripes = getStripeCount();
+        cells = new AtomicLongArray(stripes * PADDING);
+        mask = stripes - 1;
+    }
+
+    void add(final long delta) {
+        long threadId = Thread.currentThread().getId();
+        int stripe = (int) (threadId ^ (threadId >>> 32)) & mask;
+        cells.getAndAdd(stripe * PADDING, delta);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    /**
+     * Returns the sum of the cells. The result is not an atomic snapshot if the counter is updated concurrently.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+}
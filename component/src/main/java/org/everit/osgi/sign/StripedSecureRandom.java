@@ -0,0 +1,204 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link SecureRandom} that spreads the requests of concurrent threads over several independently seeded
+ * instances, so the threads do not serialize on the lock of one generator. The instance of a thread is selected by
+ * its id. Each instance is replaced by a newly seeded one when it gets older than the reseed interval.
+ * <p>
+ * The generators are behind the {@link SecureRandomSpi} of the instance, so the methods that are not overridden
+ * here use them as well. The overridden methods call the generators without the lock of the super class. The
+ * methods that take <code>SecureRandomParameters</code> throw {@link UnsupportedOperationException} as the
+ * generators are selected by the algorithm only.
+ */
+final class StripedSecureRandom extends SecureRandom {
+
+    /**
+     * A generator and the time it was seeded at.
+     */
+    private static final class Stripe {
+
+        private final SecureRandom secureRandom;
+
+        private final long creationTime;
+
+        Stripe(final SecureRandom secureRandom, final long creationTime) {
+            this.secureRandom = secureRandom;
+            this.creationTime = creationTime;
+        }
+
+    }
+
+    /**
+     * The service provider interface that holds the generators.
+     */
+    private static final class StripedSecureRandomSpi extends SecureRandomSpi {
+
+        private static final long serialVersionUID = 6049823522718958128L;
+
+        private final String algorithm;
+
+        private final long reseedIntervalNanos;
+
+        private final transient AtomicReferenceArray<Stripe> stripes;
+
+        private final int mask;
+
+        StripedSecureRandomSpi(final String algorithm, final long reseedInterval) throws NoSuchAlgorithmException {
+            this.algorithm = algorithm;
+            reseedIntervalNanos = reseedInterval * 1000000L;
+            int stripeCount = getStripeCount();
+            stripes = new AtomicReferenceArray<>(stripeCount);
+            mask = stripeCount - 1;
+            long now = System.nanoTime();
+            for (int i = 0; i < stripeCount; i++) {
+                stripes.set(i, new Stripe(SecureRandom.getInstance(algorithm), now));
+            }
+        }
+
+        @Override
+        protected byte[] engineGenerateSeed(final int numBytes) {
+            return getSecureRandom().generateSeed(numBytes);
+        }
+
+        @Override
+        protected void engineNextBytes(final byte[] bytes) {
+            getSecureRandom().nextBytes(bytes);
+        }
+
+        @Override
+        protected void engineSetSeed(final byte[] seed) {
+            for (int i = 0; i < stripes.length(); i++) {
+                stripes.get(i).secureRandom.setSeed(seed);
+            }
+        }
+
+        /**
+         * Returns the generator of the current thread and replaces it first if it is older than the reseed
+         * interval.
+         */
+        SecureRandom getSecureRandom() {
+            long threadId = Thread.currentThread().getId();
+            int index = (int) (threadId ^ (threadId >>> 32)) & mask;
+            Stripe stripe = stripes.get(index);
+            if (reseedIntervalNanos > 0) {
+                long now = System.nanoTime();
+                if ((now - stripe.creationTime) > reseedIntervalNanos) {
+                    Stripe newStripe;
+                    try {
+                        newStripe = new Stripe(SecureRandom.getInstance(algorithm), now);
+                    } catch (NoSuchAlgorithmException e) {
+                        throw new SignerException("failed to reseed the secure random generator", e);
+                    }
+                    // If another thread replaced the stripe meanwhile, its generator is used
+                    stripes.compareAndSet(index, stripe, newStripe);
+                    stripe = stripes.get(index);
+                }
+            }
+            return stripe.secureRandom;
+        }
+
+        void setSeed(final long seed) {
+            for (int i = 0; i < stripes.length(); i++) {
+                stripes.get(i).secureRandom.setSeed(seed);
+            }
+        }
+
+    }
+
+    private static final int MAX_STRIPES = 64;
+
+    private static final long serialVersionUID = -4437617003545264125L;
+
+    private static int getStripeCount() {
+        int stripes = Runtime.getRuntime().availableProcessors() * 4;
+        return Math.min(MAX_STRIPES, Integer.highestOneBit(stripes - 1) << 1);
+    }
+
+    private final String algorithm;
+
+    private final StripedSecureRandomSpi spi;
+
+    /**
+     * Constructor.
+     *
+     * @param algorithm
+     *            the algorithm of the generators.
+     * @param reseedInterval
+     *            the time in milliseconds after that a generator is replaced by a newly seeded one or zero if the
+     *            generators are never replaced.
+     * @throws NoSuchAlgorithmException
+     *             if the algorithm is not available.
+     */
+    StripedSecureRandom(final String algorithm, final long reseedInterval) throws NoSuchAlgorithmException {
+        this(algorithm, new StripedSecureRandomSpi(algorithm, reseedInterval));
+    }
+
+    private StripedSecureRandom(final String algorithm, final StripedSecureRandomSpi spi) {
+        super(spi, null);
+        this.algorithm = algorithm;
+        this.spi = spi;
+    }
+
+    @Override
+    public byte[] generateSeed(final int numBytes) {
+        return spi.engineGenerateSeed(numBytes);
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the generator that the current thread uses now.
+     */
+    SecureRandom getSecureRandom() {
+        return spi.getSecureRandom();
+    }
+
+    @Override
+    public void nextBytes(final byte[] bytes) {
+        spi.engineNextBytes(bytes);
+    }
+
+    @Override
+    public void setSeed(final byte[] seed) {
+        spi.engineSetSeed(seed);
+    }
+
+    @Override
+    public void setSeed(final long seed) {
+        // Called by the constructor of java.util.Random before the generators are assigned
+        if (spi == null) {
+            return;
+        }
+        spi.setSeed(seed);
+    }
+
+}
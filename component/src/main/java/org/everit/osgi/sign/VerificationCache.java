@@ -0,0 +1,244 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of verification results. The key of an entry is the SHA-256 digest of the algorithm, the
+ * parameters, the data and the signature. The public key is not part of the digest, because the cache belongs to
+ * one set of key material and is dropped when the key material changes.
+ *
+ * <p>
+ * Reads do not take any lock. Entries are evicted with the CLOCK (second chance) algorithm that approximates LRU:
+ * a read only marks the entry as referenced, and eviction skips and unmarks referenced entries once.
+ * </p>
+ */
+final class VerificationCache {
+
+    /**
+     * The digest of a verification request.
+     */
+    static final class CacheKey {
+
+        private final byte[] digest;
+
+        private final int hashCode;
+
+        CacheKey(final byte[] digest) {
+            this.digest = digest;
+            hashCode = ((digest[0] & 0xFF) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8)
+                    | (digest[3] & 0xFF);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            return Arrays.equals(digest, ((CacheKey) obj).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+    /**
+     * A cached verification result.
+     */
+    private static final class Entry {
+
+        private final boolean result;
+
+        private final long expiresAt;
+
+        private volatile boolean referenced;
+
+        Entry(final boolean result, final long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new SignerException("SHA-256 is not available for the verification cache", e);
+            }
+        }
+    };
+
+    private static void updateInt(final MessageDigest digest, final int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private static void updateString(final MessageDigest digest, final String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        updateInt(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private final int maxSize;
+
+    private final long timeToLiveNanos;
+
+    private final ConcurrentMap<CacheKey, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Queue<CacheKey> clock = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    VerificationCache(final int maxSize, final long timeToLiveMillis) {
+        this.maxSize = maxSize;
+        timeToLiveNanos = timeToLiveMillis * 1000000;
+    }
+
+    /**
+     * Creates the key of a verification request.
+     *
+     * @return the key or <code>null</code> if the parameters cannot be encoded reliably, so the request must not
+     *         be cached.
+     */
+    CacheKey createKey(final byte[] data, final byte[] signatureBytes, final String signatureAlgorithm,
+            final AlgorithmParameterSpec algorithmParameterSpec) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        updateString(digest, signatureAlgorithm);
+        if (algorithmParameterSpec instanceof PSSParameterSpec) {
+            PSSParameterSpec pssParameterSpec = (PSSParameterSpec) algorithmParameterSpec;
+            AlgorithmParameterSpec mgfParameters = pssParameterSpec.getMGFParameters();
+            if ((mgfParameters != null) && !(mgfParameters instanceof MGF1ParameterSpec)) {
+                return null;
+            }
+            digest.update((byte) 1);
+            updateString(digest, pssParameterSpec.getDigestAlgorithm());
+            updateString(digest, pssParameterSpec.getMGFAlgorithm());
+            updateString(digest, (mgfParameters == null) ? ""
+                    : ((MGF1ParameterSpec) mgfParameters).getDigestAlgorithm());
+            updateInt(digest, pssParameterSpec.getSaltLength());
+            updateInt(digest, pssParameterSpec.getTrailerField());
+        } else if (algorithmParameterSpec != null) {
+            return null;
+        } else {
+            digest.update((byte) 0);
+        }
+        updateInt(digest, signatureBytes.length);
+        digest.update(signatureBytes);
+        digest.update(data);
+        return new CacheKey(digest.digest());
+    }
+
+    private void evict() {
+        int maxSteps = 2 * maxSize;
+        while ((entries.size() >= maxSize) && (maxSteps-- > 0)) {
+            CacheKey candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+            Entry entry = entries.get(candidate);
+            if ((entry != null) && entry.referenced && (entry.expiresAt - System.nanoTime() > 0)) {
+                entry.referenced = false;
+                clock.offer(candidate);
+            } else {
+                entries.remove(candidate);
+            }
+        }
+    }
+
+    /**
+     * Returns the cached result of the verification.
+     *
+     * @return the result or <code>null</code> if the result is not cached.
+     */
+    Boolean get(final CacheKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() <= 0) {
+            // Expired entries stay until they are overwritten or evicted, so the clock holds every key once
+            missCount.incrementAndGet();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hitCount.incrementAndGet();
+        return Boolean.valueOf(entry.result);
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    int getSize() {
+        return entries.size();
+    }
+
+    void put(final CacheKey key, final boolean result) {
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        if (entries.put(key, new Entry(result, System.nanoTime() + timeToLiveNanos)) == null) {
+            clock.offer(key);
+        }
+    }
+
+}
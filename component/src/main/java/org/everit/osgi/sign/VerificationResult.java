@@ -0,0 +1,52 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+/**
+ * The outcome of a verification that reports bad input with a result instead of an exception. The constants are
+ * ordered from the most to the least conclusive outcome.
+ */
+public enum VerificationResult {
+
+    /**
+     * The signature is valid.
+     */
+    VALID,
+
+    /**
+     * The signature is well-formed, but it does not belong to the data or the key.
+     */
+    INVALID,
+
+    /**
+     * The signature cannot be a signature of the algorithm with the key, e.g. its length does not fit the key size
+     * or its encoding is broken.
+     */
+    MALFORMED,
+
+    /**
+     * The signer cannot verify the signature, e.g. the algorithm is not available, it does not fit the key or the
+     * signer does not know the key.
+     */
+    UNSUPPORTED
+
+}
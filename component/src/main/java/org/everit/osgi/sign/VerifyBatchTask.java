@@ -0,0 +1,152 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Verifies a range of a batch of signatures. Ranges that are larger than the threshold are split in two and
+ * verified in parallel, smaller ranges are verified with one {@link Signature} borrowed from each pool. The pools
+ * belong to the public keys of the signer: an item is verified with the first pool and, if the signature is
+ * invalid, with the next ones until one of them accepts it. In all-or-nothing mode the first signature that no key
+ * accepts stops the processing of all ranges of the batch.
+ */
+final class VerifyBatchTask extends RecursiveAction {
+
+    private static final long serialVersionUID = -2630905530125811347L;
+
+    private final List<SignaturePool> signaturePools;
+
+    private final SignatureKey signatureKey;
+
+    private final List<byte[]> data;
+
+    private final List<byte[]> signatures;
+
+    private final boolean[] results;
+
+    private final int from;
+
+    private final int to;
+
+    private final int threshold;
+
+    private final AtomicBoolean failed;
+
+    VerifyBatchTask(final List<SignaturePool> signaturePools, final SignatureKey signatureKey,
+            final List<byte[]> data, final List<byte[]> signatures, final boolean[] results, final int from,
+            final int to, final int threshold, final AtomicBoolean failed) {
+        this.signaturePools = signaturePools;
+        this.signatureKey = signatureKey;
+        this.data = data;
+        this.signatures = signatures;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+        this.failed = failed;
+    }
+
+    /**
+     * Borrows a signature from a pool. If the algorithm does not fit the key of a fallback pool, e.g. the key has
+     * a different type, <code>null</code> is returned and the pool is not used. The first pool must fit.
+     */
+    private Signature borrow(final int poolIndex) {
+        try {
+            return signaturePools.get(poolIndex).borrowVerify(signatureKey);
+        } catch (InvalidKeyException | NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            if (poolIndex == 0) {
+                throw new SignerException("failed to verifiy signature", e);
+            }
+            return null;
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (isBatchFailed()) {
+            return;
+        }
+        if ((to - from) > threshold) {
+            int middle = (from + to) >>> 1;
+            invokeAll(new VerifyBatchTask(signaturePools, signatureKey, data, signatures, results, from, middle,
+                    threshold, failed),
+                    new VerifyBatchTask(signaturePools, signatureKey, data, signatures, results, middle, to,
+                            threshold, failed));
+            return;
+        }
+        Signature[] borrowed = new Signature[signaturePools.size()];
+        boolean[] unusable = new boolean[borrowed.length];
+        for (int i = from; (i < to) && !isBatchFailed(); i++) {
+            results[i] = verify(i, borrowed, unusable);
+            if (!results[i] && (failed != null)) {
+                failed.set(true);
+            }
+        }
+        for (int poolIndex = 0; poolIndex < borrowed.length; poolIndex++) {
+            if (borrowed[poolIndex] != null) {
+                signaturePools.get(poolIndex).release(signatureKey, borrowed[poolIndex]);
+            }
+        }
+    }
+
+    private boolean isBatchFailed() {
+        return (failed != null) && failed.get();
+    }
+
+    /**
+     * Verifies one item with the pools in order until one of them accepts the signature. The signatures borrowed
+     * from the pools are kept for the next items of the range.
+     */
+    private boolean verify(final int item, final Signature[] borrowed, final boolean[] unusable) {
+        for (int poolIndex = 0; poolIndex < borrowed.length; poolIndex++) {
+            if (unusable[poolIndex]) {
+                continue;
+            }
+            if (borrowed[poolIndex] == null) {
+                borrowed[poolIndex] = borrow(poolIndex);
+                if (borrowed[poolIndex] == null) {
+                    unusable[poolIndex] = true;
+                    continue;
+                }
+            }
+            try {
+                borrowed[poolIndex].update(data.get(item));
+                if (borrowed[poolIndex].verify(signatures.get(item))) {
+                    return true;
+                }
+            } catch (SignatureException e) {
+                // A malformed signature leaves the object in an undefined state, it is replaced for the next item
+                borrowed[poolIndex] = null;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,149 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    /**
+     * Thread that acquires a permit of a lane, records the priority of the lane and releases the permit.
+     */
+    private static final class AdmittedOperation extends Thread {
+
+        private final AdmissionController admissionController;
+
+        private final BlockingQueue<SignerPriority> admissionOrder;
+
+        private final SignerPriority priority;
+
+        AdmittedOperation(final AdmissionController admissionController, final SignerPriority priority,
+                final BlockingQueue<SignerPriority> admissionOrder) {
+            this.admissionController = admissionController;
+            this.priority = priority;
+            this.admissionOrder = admissionOrder;
+        }
+
+        @Override
+        public void run() {
+            admissionController.acquire(priority);
+            admissionOrder.add(priority);
+            admissionController.release(priority);
+        }
+
+    }
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    private static void awaitQueueDepth(final AdmissionController admissionController,
+            final SignerPriority priority, final int queueDepth) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT;
+        while (getStatistics(admissionController, priority).getQueueDepth() != queueDepth) {
+            Assert.assertTrue("the queue depth is not reached", (deadline - System.nanoTime()) > 0);
+            Thread.sleep(1);
+        }
+    }
+
+    private static AdmissionController createAdmissionController(final int maxQueueSize,
+            final long queueTimeoutNanos) {
+        return new AdmissionController(1,
+                new AdmissionController.Lane(SignerPriority.INTERACTIVE, 1, maxQueueSize, queueTimeoutNanos),
+                new AdmissionController.Lane(SignerPriority.BULK, 1, maxQueueSize, queueTimeoutNanos));
+    }
+
+    private static LaneStatistics getStatistics(final AdmissionController admissionController,
+            final SignerPriority priority) {
+        List<LaneStatistics> laneStatistics = admissionController.getLaneStatistics();
+        return laneStatistics.get(priority.ordinal());
+    }
+
+    @Test
+    public void testExpiredOperationIsRejected() {
+        AdmissionController admissionController = createAdmissionController(1, TimeUnit.MILLISECONDS.toNanos(10));
+        admissionController.acquire(SignerPriority.BULK);
+        try {
+            admissionController.acquire(SignerPriority.BULK);
+            Assert.fail("operation admitted while the permit is held");
+        } catch (SignerRejectedException e) {
+            Assert.assertTrue(e.getMessage().contains("queue timeout"));
+        }
+        LaneStatistics statistics = getStatistics(admissionController, SignerPriority.BULK);
+        Assert.assertEquals(1, statistics.getExpiredCount());
+        Assert.assertEquals(0, statistics.getQueueDepth());
+        Assert.assertEquals(1, statistics.getInFlightCount());
+
+        admissionController.release(SignerPriority.BULK);
+        admissionController.acquire(SignerPriority.BULK);
+        Assert.assertEquals(2, getStatistics(admissionController, SignerPriority.BULK).getAdmittedCount());
+    }
+
+    @Test
+    public void testFullQueueRejectsOperation() {
+        AdmissionController admissionController = createAdmissionController(0, TIMEOUT);
+        admissionController.acquire(SignerPriority.INTERACTIVE);
+        try {
+            admissionController.acquire(SignerPriority.INTERACTIVE);
+            Assert.fail("operation queued beyond the queue size");
+        } catch (SignerRejectedException e) {
+            Assert.assertTrue(e.getMessage().contains("queue"));
+        }
+        try {
+            admissionController.acquire(SignerPriority.BULK);
+            Assert.fail("operation admitted beyond the concurrency of the controller");
+        } catch (SignerRejectedException e) {
+            Assert.assertTrue(e.getMessage().contains("queue"));
+        }
+        Assert.assertEquals(1, getStatistics(admissionController, SignerPriority.INTERACTIVE).getRejectedCount());
+        Assert.assertEquals(1, getStatistics(admissionController, SignerPriority.BULK).getRejectedCount());
+        Assert.assertEquals(0, getStatistics(admissionController, SignerPriority.BULK).getExpiredCount());
+    }
+
+    @Test
+    public void testInteractiveOperationIsAdmittedBeforeBulkOperation() throws InterruptedException {
+        AdmissionController admissionController = createAdmissionController(1, TIMEOUT);
+        BlockingQueue<SignerPriority> admissionOrder = new LinkedBlockingQueue<>();
+        admissionController.acquire(SignerPriority.BULK);
+
+        AdmittedOperation bulkOperation = new AdmittedOperation(admissionController, SignerPriority.BULK,
+                admissionOrder);
+        bulkOperation.start();
+        awaitQueueDepth(admissionController, SignerPriority.BULK, 1);
+        AdmittedOperation interactiveOperation = new AdmittedOperation(admissionController,
+                SignerPriority.INTERACTIVE, admissionOrder);
+        interactiveOperation.start();
+        awaitQueueDepth(admissionController, SignerPriority.INTERACTIVE, 1);
+
+        admissionController.release(SignerPriority.BULK);
+        bulkOperation.join(TimeUnit.NANOSECONDS.toMillis(TIMEOUT));
+        interactiveOperation.join(TimeUnit.NANOSECONDS.toMillis(TIMEOUT));
+        Assert.assertEquals(SignerPriority.INTERACTIVE, admissionOrder.poll());
+        Assert.assertEquals(SignerPriority.BULK, admissionOrder.poll());
+        Assert.assertEquals(0, getStatistics(admissionController, SignerPriority.BULK).getInFlightCount());
+    }
+
+}
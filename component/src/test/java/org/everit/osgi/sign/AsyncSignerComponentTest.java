@@ -0,0 +1,94 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.cm.ConfigurationException;
+
+public class AsyncSignerComponentTest {
+
+    /**
+     * Signer that returns the data as the signature.
+     */
+    private static final class EchoSigner implements Signer {
+
+        @Override
+        public byte[] sign(final byte[] data, final String signatureAlgorithm,
+                final AlgorithmParameterSpec algorithmParameterSpec, final SecureRandom secureRandom) {
+            return data.clone();
+        }
+
+        @Override
+        public boolean verify(final byte[] data, final byte[] signatureBytes, final String signatureAlgorithm,
+                final AlgorithmParameterSpec algorithmParameterSpec) {
+            return Arrays.equals(data, signatureBytes);
+        }
+
+    }
+
+    private static AsyncSignerComponent createAsyncSigner(final String rejectionPolicy)
+            throws ConfigurationException {
+        AsyncSignerComponent asyncSigner = new AsyncSignerComponent();
+        asyncSigner.bindSigner(new EchoSigner());
+        Map<String, Object> componentProperties = new HashMap<>();
+        componentProperties.put(PropertyName.THREAD_COUNT, 1);
+        componentProperties.put(PropertyName.QUEUE_SIZE, 1);
+        componentProperties.put(PropertyName.REJECTION_POLICY, rejectionPolicy);
+        asyncSigner.activate(componentProperties);
+        return asyncSigner;
+    }
+
+    @Test
+    public void testCallerRunsAfterShutdown() throws ConfigurationException {
+        AsyncSignerComponent asyncSigner = createAsyncSigner(AsyncSignerComponent.REJECTION_POLICY_CALLER_RUNS);
+        asyncSigner.deactivate();
+        try {
+            asyncSigner.sign(new byte[] { 1 }, "test", null, null, null);
+            Assert.fail("operation accepted after shutdown");
+        } catch (SignerRejectedException e) {
+            Assert.assertTrue(e.getMessage().contains("shut down"));
+        }
+    }
+
+    @Test
+    public void testCallerRunsWhenRunning() throws ConfigurationException, InterruptedException,
+            ExecutionException {
+        AsyncSignerComponent asyncSigner = createAsyncSigner(AsyncSignerComponent.REJECTION_POLICY_CALLER_RUNS);
+        try {
+            Future<byte[]> future = asyncSigner.sign(new byte[] { 1 }, "test", null, null, null);
+            Assert.assertArrayEquals(new byte[] { 1 }, future.get());
+            Assert.assertTrue(asyncSigner.verify(new byte[] { 2 }, new byte[] { 2 }, "test", null, null).get());
+        } finally {
+            asyncSigner.deactivate();
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarVerificationCacheTest {
+
+    /**
+     * A self-signed certificate with an EC key.
+     */
+    private static final String CERTIFICATE = "-----BEGIN CERTIFICATE-----\n"
+            + "MIIBNjCB3aADAgECAgglnvL+rORgWjAKBggqhkjOPQQDAjAPMQ0wCwYDVQQDEwR0ZXN0MCAXDTI2MTAxODA3MjUyNloYDzIx\n"
+            + "MjYwOTI0MDcyNTI2WjAPMQ0wCwYDVQQDEwR0ZXN0MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAENnRVqJ8TqkN3ZPekbeZE\n"
+            + "Jpnxxv/39CiSElhNDD2QsjEV449K9PorEBEYxiKTIU5Fl6Xmn3U5HYOJCvhqoHJN/KMhMB8wHQYDVR0OBBYEFNP60wgwnMmx\n"
+            + "9LI1S6P48jbaxwx1MAoGCCqGSM49BAMCA0gAMEUCIBJwoE+77TkjdjQshjOHDcpY1l6dM/KAGoAfxOyovD9+AiEA97jQZniR\n"
+            + "D0CRqrKrLA4SfxGv+o4zCq6PZyvLMLBTlVs=\n"
+            + "-----END CERTIFICATE-----\n";
+
+    private static final int HASH_LENGTH = 32;
+
+    private static byte[] createHash(final int value) {
+        byte[] hash = new byte[HASH_LENGTH];
+        Arrays.fill(hash, (byte) value);
+        return hash;
+    }
+
+    private static JarVerificationCache.CachedResult createResult(final int value) throws CertificateException {
+        X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(
+                new ByteArrayInputStream(CERTIFICATE.getBytes(StandardCharsets.US_ASCII)));
+        return new JarVerificationCache.CachedResult(createHash(value), createHash(value + 1),
+                Collections.singletonList(certificate));
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createCacheFile() throws IOException {
+        return new File(temporaryFolder.newFolder(), JarVerifierComponent.CACHE_FILE_PREFIX);
+    }
+
+    @Test
+    public void testAlteredRecordIsDiscarded() throws IOException, CertificateException {
+        File cacheFile = createCacheFile();
+        JarVerificationCache cache = new JarVerificationCache(10, cacheFile);
+        cache.put(createHash(1), createResult(1));
+        // Flip a bit of the manifest digest in the only record
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            long position = 4 + 4 + (2 * HASH_LENGTH);
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 1);
+        }
+        Assert.assertNull(new JarVerificationCache(10, cacheFile).get(createHash(1)));
+    }
+
+    @Test
+    public void testFileIsCompacted() throws IOException, CertificateException {
+        File cacheFile = createCacheFile();
+        JarVerificationCache cache = new JarVerificationCache(2, cacheFile);
+        cache.put(createHash(1), createResult(1));
+        long recordLength = cacheFile.length() - 4;
+        for (int i = 0; i < 10; i++) {
+            cache.put(createHash(2), createResult(2));
+        }
+        Assert.assertTrue(cacheFile.length() <= (4 + (4 * recordLength)));
+
+        JarVerificationCache reloadedCache = new JarVerificationCache(2, cacheFile);
+        Assert.assertNotNull(reloadedCache.get(createHash(1)));
+        Assert.assertNotNull(reloadedCache.get(createHash(2)));
+        Assert.assertEquals(4 + (2 * recordLength), cacheFile.length());
+    }
+
+    @Test
+    public void testNewKeyInvalidatesRecords() throws IOException, CertificateException {
+        File cacheFile = createCacheFile();
+        new JarVerificationCache(10, cacheFile).put(createHash(1), createResult(1));
+        Files.delete(new File(cacheFile.getPath() + ".key").toPath());
+        Assert.assertNull(new JarVerificationCache(10, cacheFile).get(createHash(1)));
+        Assert.assertEquals(4, cacheFile.length());
+    }
+
+    @Test
+    public void testResultsSurviveRestart() throws IOException, CertificateException {
+        File cacheFile = createCacheFile();
+        JarVerificationCache cache = new JarVerificationCache(10, cacheFile);
+        JarVerificationCache.CachedResult result = createResult(1);
+        cache.put(createHash(1), result);
+
+        JarVerificationCache.CachedResult reloadedResult = new JarVerificationCache(10, cacheFile).get(
+                createHash(1));
+        Assert.assertNotNull(reloadedResult);
+        Assert.assertArrayEquals(result.getTrustFingerprint(), reloadedResult.getTrustFingerprint());
+        Assert.assertArrayEquals(result.getManifestDigest(), reloadedResult.getManifestDigest());
+        Assert.assertEquals(result.getSignerCertificates(), reloadedResult.getSignerCertificates());
+    }
+
+    @Test
+    public void testTruncatedFileIsReloaded() throws IOException, CertificateException {
+        File cacheFile = createCacheFile();
+        JarVerificationCache cache = new JarVerificationCache(10, cacheFile);
+        cache.put(createHash(1), createResult(1));
+        long validLength = cacheFile.length();
+        cache.put(createHash(2), createResult(2));
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        JarVerificationCache reloadedCache = new JarVerificationCache(10, cacheFile);
+        Assert.assertNotNull(reloadedCache.get(createHash(1)));
+        Assert.assertNull(reloadedCache.get(createHash(2)));
+        Assert.assertEquals(validLength, cacheFile.length());
+
+        reloadedCache.put(createHash(3), createResult(3));
+        JarVerificationCache nextCache = new JarVerificationCache(10, cacheFile);
+        Assert.assertNotNull(nextCache.get(createHash(1)));
+        Assert.assertNotNull(nextCache.get(createHash(3)));
+    }
+
+}
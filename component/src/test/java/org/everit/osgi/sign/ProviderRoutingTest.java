@@ -0,0 +1,70 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.Provider;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProviderRoutingTest {
+
+    private static Provider createProvider(final String name) {
+        return new Provider(name, 1.0, name) {
+
+            private static final long serialVersionUID = 1L;
+
+        };
+    }
+
+    @Test
+    public void testFixed() {
+        Provider defaultProvider = createProvider("default");
+        ProviderRouting providerRouting = ProviderRouting.fixed(defaultProvider);
+        Assert.assertSame(defaultProvider, providerRouting.getDefaultProvider());
+        Assert.assertSame(defaultProvider, providerRouting.getProvider("SHA256withRSA"));
+        Assert.assertTrue(providerRouting.getProviders().isEmpty());
+    }
+
+    @Test
+    public void testRoutedAlgorithmIgnoresCase() {
+        Provider defaultProvider = createProvider("default");
+        Provider routedProvider = createProvider("routed");
+        Map<String, Provider> providers = new HashMap<>();
+        providers.put(ProviderRouting.normalizeAlgorithm("SHA256withECDSA"), routedProvider);
+        ProviderRouting providerRouting = new ProviderRouting(defaultProvider, providers);
+        Assert.assertSame(routedProvider, providerRouting.getProvider("SHA256withECDSA"));
+        Assert.assertSame(routedProvider, providerRouting.getProvider("sha256WITHecdsa"));
+        Assert.assertSame(defaultProvider, providerRouting.getProvider("SHA256withRSA"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRoutedProvidersCannotBeModified() {
+        Map<String, Provider> providers = new HashMap<>();
+        providers.put(ProviderRouting.normalizeAlgorithm("SHA256withECDSA"), createProvider("routed"));
+        ProviderRouting providerRouting = new ProviderRouting(createProvider("default"), providers);
+        providerRouting.getProviders().clear();
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Provider;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProviderSelectorTest {
+
+    private static final String ALGORITHM = "SHA256withRSA";
+
+    private static final byte[] KEY_ID = { 1, 2, 3 };
+
+    /**
+     * Provider without services that has the same name and version as the given provider.
+     */
+    private static Provider createEmptyProvider(final Provider provider) {
+        return new Provider(provider.getName(), provider.getVersion(), "empty") {
+
+            private static final long serialVersionUID = 1L;
+
+        };
+    }
+
+    private static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    @Test
+    public void testCachedSelectionIsTheSameInstance() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        Provider provider = Signature.getInstance(ALGORITHM).getProvider();
+        List<Provider> candidates = Collections.singletonList(provider);
+        ProviderSelector providerSelector = new ProviderSelector();
+        Assert.assertSame(provider,
+                providerSelector.select(ALGORITHM, candidates, keyPair.getPrivate(), keyPair.getPublic(), KEY_ID));
+        Assert.assertSame(provider,
+                providerSelector.select(ALGORITHM, candidates, keyPair.getPrivate(), keyPair.getPublic(), KEY_ID));
+    }
+
+    @Test
+    public void testCachedSelectionOfAnotherInstanceIsNotUsed() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        Provider provider = Signature.getInstance(ALGORITHM).getProvider();
+        ProviderSelector providerSelector = new ProviderSelector();
+        Assert.assertSame(provider, providerSelector.select(ALGORITHM, Collections.singletonList(provider),
+                keyPair.getPrivate(), keyPair.getPublic(), KEY_ID));
+        // Same name and version, so the same cache key, but the instance cannot sign
+        Provider emptyProvider = createEmptyProvider(provider);
+        Assert.assertNull(providerSelector.select(ALGORITHM, Collections.singletonList(emptyProvider),
+                keyPair.getPrivate(), keyPair.getPublic(), KEY_ID));
+    }
+
+    @Test
+    public void testUnsupportedCandidateIsSkipped() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        Provider provider = Signature.getInstance(ALGORITHM).getProvider();
+        Provider emptyProvider = new Provider("empty", 1.0, "empty") {
+
+            private static final long serialVersionUID = 1L;
+
+        };
+        ProviderSelector providerSelector = new ProviderSelector();
+        Assert.assertSame(provider, providerSelector.select(ALGORITHM, Arrays.asList(emptyProvider, provider),
+                keyPair.getPrivate(), keyPair.getPublic(), KEY_ID));
+        Assert.assertNull(providerSelector.select(ALGORITHM, Collections.singletonList(emptyProvider),
+                keyPair.getPrivate(), keyPair.getPublic(), KEY_ID));
+    }
+
+}
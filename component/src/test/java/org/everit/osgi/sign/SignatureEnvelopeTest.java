@@ -0,0 +1,72 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignatureEnvelopeTest {
+
+    private static byte[] createSignatureBytes(final int length) {
+        byte[] signatureBytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            signatureBytes[i] = (byte) i;
+        }
+        return signatureBytes;
+    }
+
+    @Test
+    public void testLittleEndianBuffer() {
+        byte[] keyId = new byte[SignatureEnvelope.KEY_ID_LENGTH];
+        byte[] signatureBytes = createSignatureBytes(0x0102);
+        PSSParameterSpec pssParameterSpec = new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256,
+                0x0304, 1);
+        byte[] envelope = SignatureEnvelope.encode("RSASSA-PSS", pssParameterSpec, keyId, signatureBytes);
+
+        ByteBuffer buffer = ByteBuffer.wrap(envelope).order(ByteOrder.LITTLE_ENDIAN);
+        SignatureEnvelope signatureEnvelope = new SignatureEnvelope().wrap(buffer);
+        Assert.assertArrayEquals(signatureBytes, signatureEnvelope.getSignatureBytes());
+        Assert.assertEquals(envelope.length, signatureEnvelope.getLength());
+        PSSParameterSpec decodedParameterSpec = (PSSParameterSpec) signatureEnvelope.getAlgorithmParameterSpec();
+        Assert.assertEquals(0x0304, decodedParameterSpec.getSaltLength());
+    }
+
+    @Test
+    public void testReusedView() {
+        byte[] keyId = new byte[SignatureEnvelope.KEY_ID_LENGTH];
+        byte[] envelope = SignatureEnvelope.encode("SHA256withRSA", null, keyId, createSignatureBytes(3));
+        byte[] otherEnvelope = SignatureEnvelope.encode("SHA256withRSA", null, keyId, createSignatureBytes(5));
+        SignatureEnvelope signatureEnvelope = new SignatureEnvelope();
+        Assert.assertTrue(signatureEnvelope.tryWrap(ByteBuffer.wrap(envelope)));
+        Assert.assertEquals(3, signatureEnvelope.getSignatureLength());
+        Assert.assertFalse(signatureEnvelope.tryWrap(ByteBuffer.wrap(otherEnvelope, 0, otherEnvelope.length - 1)));
+        Assert.assertTrue(signatureEnvelope.tryWrap(ByteBuffer.wrap(otherEnvelope)));
+        Assert.assertEquals(5, signatureEnvelope.getSignatureLength());
+        Assert.assertTrue(signatureEnvelope.hasKeyId(keyId));
+    }
+
+}
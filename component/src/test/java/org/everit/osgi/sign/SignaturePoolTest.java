@@ -0,0 +1,93 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignaturePoolTest {
+
+    private static final String ALGORITHM = "RSASSA-PSS";
+
+    private static SignaturePool createSignaturePool() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        return new SignaturePool(ProviderRouting.fixed(Signature.getInstance(ALGORITHM).getProvider()),
+                keyPair.getPrivate(), keyPair.getPublic(), null, 1);
+    }
+
+    @Test
+    public void testEqualParameterSpecsShareSignatures() throws Exception {
+        SignaturePool signaturePool = createSignaturePool();
+        SignatureKey signatureKey = SignatureKey.forVerify(ALGORITHM,
+                new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1));
+        SignatureKey equalSignatureKey = SignatureKey.forVerify(ALGORITHM,
+                new PSSParameterSpec("SHA-256", "MGF1", new MGF1ParameterSpec("SHA-256"), 32, 1));
+        SignatureKey otherSignatureKey = SignatureKey.forVerify(ALGORITHM,
+                new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 20, 1));
+        Assert.assertEquals(signatureKey, equalSignatureKey);
+        Assert.assertEquals(signatureKey.hashCode(), equalSignatureKey.hashCode());
+        Assert.assertFalse(signatureKey.equals(otherSignatureKey));
+
+        Signature signature = signaturePool.borrowVerify(signatureKey);
+        signaturePool.release(signatureKey, signature);
+        Assert.assertSame(signature, signaturePool.borrowVerify(equalSignatureKey));
+        Assert.assertEquals(1, signaturePool.getKeyCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedKeyIsEvicted() throws Exception {
+        SignaturePool signaturePool = createSignaturePool();
+        SignatureKey[] signatureKeys = new SignatureKey[SignaturePool.MAX_KEYS + 1];
+        Signature[] signatures = new Signature[signatureKeys.length];
+        for (int i = 0; i < signatureKeys.length; i++) {
+            signatureKeys[i] = SignatureKey.forVerify(ALGORITHM,
+                    new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, i, 1));
+            signatures[i] = signaturePool.borrowVerify(signatureKeys[i]);
+        }
+        for (int i = 0; i < SignaturePool.MAX_KEYS; i++) {
+            signaturePool.release(signatureKeys[i], signatures[i]);
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(SignaturePool.MAX_KEYS, signaturePool.getKeyCount());
+        // The first key becomes the most recently used one, the second key the least recently used one
+        Assert.assertSame(signatures[0], signaturePool.borrowVerify(signatureKeys[0]));
+        signaturePool.release(signatureKeys[0], signatures[0]);
+
+        signaturePool.release(signatureKeys[SignaturePool.MAX_KEYS], signatures[SignaturePool.MAX_KEYS]);
+
+        Assert.assertEquals(SignaturePool.MAX_KEYS, signaturePool.getKeyCount());
+        Assert.assertSame(signatures[SignaturePool.MAX_KEYS],
+                signaturePool.borrowVerify(signatureKeys[SignaturePool.MAX_KEYS]));
+        Assert.assertSame(signatures[0], signaturePool.borrowVerify(signatureKeys[0]));
+        Assert.assertNotSame(signatures[1], signaturePool.borrowVerify(signatureKeys[1]));
+        Assert.assertSame(signatures[2], signaturePool.borrowVerify(signatureKeys[2]));
+    }
+
+}
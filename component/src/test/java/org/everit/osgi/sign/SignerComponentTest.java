@@ -0,0 +1,86 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.KeyStore;
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.cm.ConfigurationException;
+
+public class SignerComponentTest {
+
+    private static SignerComponent createLazySigner() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        SignerComponent signer = new SignerComponent();
+        signer.bindKeyStore(keyStore);
+        signer.bindProvider(Security.getProvider("SunRsaSign"));
+        Map<String, Object> componentProperties = new HashMap<>();
+        componentProperties.put(PropertyName.PRIVATE_KEY_ALIAS, "missing");
+        componentProperties.put(PropertyName.PRIVATE_KEY_PASSWORD, "password");
+        componentProperties.put(PropertyName.LAZY_KEY_LOADING, Boolean.TRUE);
+        signer.activate(null, componentProperties);
+        return signer;
+    }
+
+    private static SignerException sign(final SignerComponent signer) {
+        try {
+            signer.sign(new byte[1], "SHA256withRSA", null, null);
+        } catch (SignerException e) {
+            return e;
+        }
+        Assert.fail("the key material must not be loaded");
+        return null;
+    }
+
+    @Test
+    public void testFailedLazyLoadIsNotRetriedImmediately() throws Exception {
+        SignerComponent signer = createLazySigner();
+        SignerException failure = sign(signer);
+        Assert.assertTrue(failure.getCause() instanceof ConfigurationException);
+        Assert.assertSame(failure.getCause(), sign(signer).getCause());
+        Assert.assertEquals(-1, signer.getLoadTime());
+    }
+
+    @Test
+    public void testFailedLazyLoadIsRetriedWhenTheKeyStoreChanges() throws Exception {
+        SignerComponent signer = createLazySigner();
+        SignerException failure = sign(signer);
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        signer.updatedKeyStore(keyStore);
+        SignerException nextFailure = sign(signer);
+        Assert.assertNotSame(failure.getCause(), nextFailure.getCause());
+    }
+
+    @Test
+    public void testLazyActivationDoesNotLoadTheKeys() throws Exception {
+        SignerComponent signer = createLazySigner();
+        Assert.assertTrue(signer.getActivationTime() > 0);
+        Assert.assertEquals(-1, signer.getLoadTime());
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedSecureRandomTest {
+
+    private static final String ALGORITHM = "SHA1PRNG";
+
+    @Test
+    public void testGeneratorIsReplacedAfterReseedInterval() throws Exception {
+        StripedSecureRandom secureRandom = new StripedSecureRandom(ALGORITHM, 1);
+        SecureRandom generator = secureRandom.getSecureRandom();
+        Thread.sleep(5);
+        secureRandom.nextBytes(new byte[1]);
+        Assert.assertNotSame(generator, secureRandom.getSecureRandom());
+    }
+
+    @Test
+    public void testGeneratorIsKeptWithoutReseedInterval() throws Exception {
+        StripedSecureRandom secureRandom = new StripedSecureRandom(ALGORITHM, 0);
+        SecureRandom generator = secureRandom.getSecureRandom();
+        Thread.sleep(5);
+        secureRandom.nextBytes(new byte[1]);
+        Assert.assertSame(generator, secureRandom.getSecureRandom());
+        Assert.assertEquals(ALGORITHM, secureRandom.getAlgorithm());
+    }
+
+    @Test
+    public void testInheritedMethodsUseTheGenerators() throws NoSuchAlgorithmException {
+        StripedSecureRandom secureRandom = new StripedSecureRandom(ALGORITHM, 0);
+        // Fixes the output of every generator, so the output of the facade is known
+        secureRandom.setSeed(new byte[] { 1, 2, 3 });
+        SecureRandom expected = SecureRandom.getInstance(ALGORITHM);
+        expected.setSeed(new byte[] { 1, 2, 3 });
+        Assert.assertEquals(expected.nextInt(), secureRandom.nextInt());
+        Assert.assertEquals(expected.nextLong(), secureRandom.nextLong());
+    }
+
+    @Test
+    public void testNextBytes() throws NoSuchAlgorithmException {
+        StripedSecureRandom secureRandom = new StripedSecureRandom(ALGORITHM, 0);
+        byte[] bytes = new byte[32];
+        secureRandom.nextBytes(bytes);
+        byte[] otherBytes = new byte[bytes.length];
+        secureRandom.nextBytes(otherBytes);
+        Assert.assertFalse(Arrays.equals(new byte[bytes.length], bytes));
+        Assert.assertFalse(Arrays.equals(bytes, otherBytes));
+    }
+
+}
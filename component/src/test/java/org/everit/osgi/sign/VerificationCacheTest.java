@@ -0,0 +1,116 @@
+package org.everit.osgi.sign;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VerificationCacheTest {
+
+    private static final byte[] DATA = { 1, 2, 3 };
+
+    private static final byte[] SIGNATURE = { 4, 5, 6 };
+
+    private static final String ALGORITHM = "SHA256withRSA";
+
+    private static final long TIME_TO_LIVE = 60000;
+
+    @Test
+    public void testEviction() {
+        VerificationCache verificationCache = new VerificationCache(2, TIME_TO_LIVE);
+        VerificationCache.CacheKey firstKey = verificationCache.createKey(new byte[] { 1 }, SIGNATURE, ALGORITHM,
+                null);
+        VerificationCache.CacheKey secondKey = verificationCache.createKey(new byte[] { 2 }, SIGNATURE, ALGORITHM,
+                null);
+        VerificationCache.CacheKey thirdKey = verificationCache.createKey(new byte[] { 3 }, SIGNATURE, ALGORITHM,
+                null);
+        verificationCache.put(firstKey, true);
+        verificationCache.put(secondKey, true);
+        // The referenced entry gets a second chance, the other one is evicted
+        Assert.assertEquals(Boolean.TRUE, verificationCache.get(firstKey));
+        verificationCache.put(thirdKey, false);
+
+        Assert.assertEquals(2, verificationCache.getSize());
+        Assert.assertEquals(Boolean.TRUE, verificationCache.get(firstKey));
+        Assert.assertNull(verificationCache.get(secondKey));
+        Assert.assertEquals(Boolean.FALSE, verificationCache.get(thirdKey));
+    }
+
+    @Test
+    public void testExpiredEntryIsMiss() {
+        VerificationCache verificationCache = new VerificationCache(10, 0);
+        VerificationCache.CacheKey key = verificationCache.createKey(DATA, SIGNATURE, ALGORITHM, null);
+        verificationCache.put(key, true);
+        Assert.assertNull(verificationCache.get(key));
+        Assert.assertEquals(1, verificationCache.getMissCount());
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        VerificationCache verificationCache = new VerificationCache(10, TIME_TO_LIVE);
+        VerificationCache.CacheKey key = verificationCache.createKey(DATA, SIGNATURE, ALGORITHM, null);
+        Assert.assertNull(verificationCache.get(key));
+        verificationCache.put(key, false);
+        Assert.assertEquals(Boolean.FALSE,
+                verificationCache.get(verificationCache.createKey(DATA.clone(), SIGNATURE.clone(), ALGORITHM, null)));
+        Assert.assertEquals(1, verificationCache.getHitCount());
+        Assert.assertEquals(1, verificationCache.getMissCount());
+        Assert.assertEquals(1, verificationCache.getSize());
+    }
+
+    @Test
+    public void testKeyChangesWithRequest() {
+        VerificationCache verificationCache = new VerificationCache(10, TIME_TO_LIVE);
+        PSSParameterSpec pssParameterSpec = new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1);
+        VerificationCache.CacheKey key = verificationCache.createKey(DATA, SIGNATURE, ALGORITHM, null);
+        VerificationCache.CacheKey pssKey = verificationCache.createKey(DATA, SIGNATURE, "RSASSA-PSS",
+                pssParameterSpec);
+        verificationCache.put(key, true);
+        verificationCache.put(pssKey, false);
+
+        Assert.assertEquals(Boolean.FALSE, verificationCache.get(verificationCache.createKey(DATA, SIGNATURE,
+                "RSASSA-PSS", new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1))));
+        Assert.assertNull(verificationCache.get(verificationCache.createKey(DATA, SIGNATURE, "RSASSA-PSS",
+                new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 20, 1))));
+        Assert.assertNull(verificationCache.get(verificationCache.createKey(new byte[] { 1, 2, 4 }, SIGNATURE,
+                ALGORITHM, null)));
+        Assert.assertNull(verificationCache.get(verificationCache.createKey(DATA, new byte[] { 4, 5, 7 },
+                ALGORITHM, null)));
+        Assert.assertNull(verificationCache.get(verificationCache.createKey(DATA, SIGNATURE, "SHA512withRSA",
+                null)));
+        // The boundary between the signature and the data is part of the key
+        Assert.assertNull(verificationCache.get(verificationCache.createKey(new byte[] { 6, 1, 2, 3 },
+                new byte[] { 4, 5 }, ALGORITHM, null)));
+    }
+
+    @Test
+    public void testUnsupportedParametersAreNotCached() {
+        VerificationCache verificationCache = new VerificationCache(10, TIME_TO_LIVE);
+        Assert.assertNull(verificationCache.createKey(DATA, SIGNATURE, ALGORITHM,
+                new RSAKeyGenParameterSpec(2048, RSAKeyGenParameterSpec.F4)));
+    }
+
+}
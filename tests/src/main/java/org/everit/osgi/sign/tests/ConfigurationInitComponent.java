@@ -30,6 +30,8 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Set;
 
+import javax.crypto.KeyGenerator;
+
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
@@ -38,6 +40,12 @@ import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.everit.osgi.keystore.file.FileBasedKeyStoreComponent;
+import org.everit.osgi.sign.AdmissionControlSignerComponent;
+import org.everit.osgi.sign.AliasSignerComponent;
+import org.everit.osgi.sign.AsyncSignerComponent;
+import org.everit.osgi.sign.HmacSignerComponent;
+import org.everit.osgi.sign.JarVerifierComponent;
+import org.everit.osgi.sign.LoadBalancingSignerComponent;
 import org.everit.osgi.sign.PropertyName;
 import org.everit.osgi.sign.SignerComponent;
 import org.osgi.framework.BundleContext;
@@ -53,17 +61,46 @@ import org.osgi.service.cm.ConfigurationAdmin;
 @Service(value = ConfigurationInitComponent.class)
 public class ConfigurationInitComponent {
 
+    private static final int BATCH_PARALLELISM = 4;
+
+    private static final String EC_PRIVATE_KEY_ALIAS = "test-ec-private-key-alias";
+
+    private static final String EC_PUBLIC_KEY_ALIAS = "test-ec-public-key-alias";
+
     private static final String KEY_STORE_TYPE = "BKS";
 
     private static final String PROVIDER_TARGET_FILTER = "(providerName=BC)";
 
     private static final String KEY_STORE_PASSWORD = "testKeyStorePassword";
 
-    private static final String PRIVATE_KEY_ALIAS = "test-private-key-alias";
+    static final String PRIVATE_KEY_ALIAS = "test-private-key-alias";
+
+    static final String PRIVATE_KEY_PASSWORD = "testPrivateKeyPassword";
+
+    static final String PUBLIC_KEY_ALIAS = "test-public-key-alias";
+
+    /**
+     * The alias of the private key that replaces the test private key in the key rotation tests.
+     */
+    static final String ROTATED_PRIVATE_KEY_ALIAS = "test-rotated-private-key-alias";
+
+    static final String ROTATED_PUBLIC_KEY_ALIAS = "test-rotated-public-key-alias";
 
-    private static final String PRIVATE_KEY_PASSWORD = "testPrivateKeyPassword";
+    private static final String SECRET_KEY_ALIAS = "test-secret-key-alias";
 
-    private static final String PUBLIC_KEY_ALIAS = "test-public-key-alias";
+    private static final String SECRET_KEY_PASSWORD = "testSecretKeyPassword";
+
+    private static final String SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
+
+    /**
+     * Short enough to replace the random generators of the signer during the tests.
+     */
+    private static final int SECURE_RANDOM_RESEED_INTERVAL = 10;
+
+    /**
+     * More than one worker, so the entries of the signed JAR files are checked by forked tasks.
+     */
+    private static final int VERIFICATION_PARALLELISM = 4;
 
     @Reference(bind = "bindConfigAdmin")
     private ConfigurationAdmin configAdmin;
@@ -85,6 +122,16 @@ public class ConfigurationInitComponent {
         KeyStoreUtil.createKeyStore(provider, KEY_STORE_TYPE, keyStoreLocation, KEY_STORE_PASSWORD,
                 "SHA1WITHRSA", PRIVATE_KEY_ALIAS, KEY_PAIR.getPrivate(), PRIVATE_KEY_PASSWORD, PUBLIC_KEY_ALIAS,
                 KEY_PAIR.getPublic());
+        KeyPair rotatedKeyPair = KeyStoreUtil.generateKeyPair(provider, "RSA", "SHA1PRNG");
+        KeyStoreUtil.addKeyPair(provider, KEY_STORE_TYPE, keyStoreLocation, KEY_STORE_PASSWORD, "SHA1WITHRSA",
+                ROTATED_PRIVATE_KEY_ALIAS, rotatedKeyPair.getPrivate(), PRIVATE_KEY_PASSWORD, ROTATED_PUBLIC_KEY_ALIAS,
+                rotatedKeyPair.getPublic());
+        KeyPair ecKeyPair = KeyStoreUtil.generateKeyPair(provider, "EC", "SHA1PRNG", 256);
+        KeyStoreUtil.addKeyPair(provider, KEY_STORE_TYPE, keyStoreLocation, KEY_STORE_PASSWORD, "SHA256WITHECDSA",
+                EC_PRIVATE_KEY_ALIAS, ecKeyPair.getPrivate(), PRIVATE_KEY_PASSWORD, EC_PUBLIC_KEY_ALIAS,
+                ecKeyPair.getPublic());
+        KeyStoreUtil.addSecretKey(provider, KEY_STORE_TYPE, keyStoreLocation, KEY_STORE_PASSWORD, SECRET_KEY_ALIAS,
+                KeyGenerator.getInstance("HmacSHA256", provider).generateKey(), SECRET_KEY_PASSWORD);
 
         String keyStoreUrl = keyStoreFile.toURI().toURL().toString();
 
@@ -103,14 +150,128 @@ public class ConfigurationInitComponent {
         signerProps.put(PropertyName.PRIVATE_KEY_ALIAS, PRIVATE_KEY_ALIAS);
         signerProps.put(PropertyName.PRIVATE_KEY_PASSWORD, PRIVATE_KEY_PASSWORD);
         signerProps.put(PropertyName.PUBLIC_KEY_ALIAS, PUBLIC_KEY_ALIAS);
+        signerProps.put(PropertyName.DEFAULT_SIGNATURE_ALGORITHM, SignerTestComponent.DEFAULT_SIGNATURE_ALGORITHM);
+        signerProps.put(PropertyName.SECURE_RANDOM_ALGORITHM, SECURE_RANDOM_ALGORITHM);
+        signerProps.put(PropertyName.SECURE_RANDOM_RESEED_INTERVAL, String.valueOf(SECURE_RANDOM_RESEED_INTERVAL));
         String signerPid = getOrCreateConfiguration(SignerComponent.class.getName(), signerProps);
 
+        Dictionary<String, String> parallelSignerProps = new Hashtable<>();
+        parallelSignerProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        parallelSignerProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        parallelSignerProps.put(PropertyName.PRIVATE_KEY_ALIAS, PRIVATE_KEY_ALIAS);
+        parallelSignerProps.put(PropertyName.PRIVATE_KEY_PASSWORD, PRIVATE_KEY_PASSWORD);
+        parallelSignerProps.put(PropertyName.PUBLIC_KEY_ALIAS, PUBLIC_KEY_ALIAS);
+        parallelSignerProps.put(PropertyName.BATCH_PARALLELISM, String.valueOf(BATCH_PARALLELISM));
+        String parallelSignerPid = createConfiguration(SignerComponent.class.getName(), parallelSignerProps);
+
+        Dictionary<String, String> rotationSignerProps = new Hashtable<>();
+        rotationSignerProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        rotationSignerProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        rotationSignerProps.put(PropertyName.PRIVATE_KEY_ALIAS, ROTATED_PRIVATE_KEY_ALIAS);
+        rotationSignerProps.put(PropertyName.PRIVATE_KEY_PASSWORD, PRIVATE_KEY_PASSWORD);
+        rotationSignerProps.put(PropertyName.PUBLIC_KEY_ALIAS, PUBLIC_KEY_ALIAS);
+        rotationSignerProps.put(PropertyName.PUBLIC_KEY_ALIASES, ROTATED_PUBLIC_KEY_ALIAS);
+        String rotationSignerPid = createConfiguration(SignerComponent.class.getName(), rotationSignerProps);
+
+        Dictionary<String, String> ecSignerProps = new Hashtable<>();
+        ecSignerProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        ecSignerProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        ecSignerProps.put(PropertyName.PRIVATE_KEY_ALIAS, EC_PRIVATE_KEY_ALIAS);
+        ecSignerProps.put(PropertyName.PRIVATE_KEY_PASSWORD, PRIVATE_KEY_PASSWORD);
+        ecSignerProps.put(PropertyName.PUBLIC_KEY_ALIAS, EC_PUBLIC_KEY_ALIAS);
+        String ecSignerPid = createConfiguration(SignerComponent.class.getName(), ecSignerProps);
+
+        Dictionary<String, String> lazySignerProps = new Hashtable<>();
+        lazySignerProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        lazySignerProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        lazySignerProps.put(PropertyName.PRIVATE_KEY_ALIAS, PRIVATE_KEY_ALIAS);
+        lazySignerProps.put(PropertyName.PRIVATE_KEY_PASSWORD, PRIVATE_KEY_PASSWORD);
+        lazySignerProps.put(PropertyName.PUBLIC_KEY_ALIAS, PUBLIC_KEY_ALIAS);
+        lazySignerProps.put(PropertyName.LAZY_KEY_LOADING, String.valueOf(true));
+        lazySignerProps.put(PropertyName.WARM_UP_ALGORITHMS, SignerTestComponent.DEFAULT_SIGNATURE_ALGORITHM);
+        String lazySignerPid = createConfiguration(SignerComponent.class.getName(), lazySignerProps);
+
+        Dictionary<String, String> failingSignerProps = new Hashtable<>();
+        failingSignerProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        failingSignerProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        failingSignerProps.put(PropertyName.PRIVATE_KEY_ALIAS, "missing-" + PRIVATE_KEY_ALIAS);
+        failingSignerProps.put(PropertyName.PRIVATE_KEY_PASSWORD, PRIVATE_KEY_PASSWORD);
+        failingSignerProps.put(PropertyName.LAZY_KEY_LOADING, String.valueOf(true));
+        String failingSignerPid = createConfiguration(SignerComponent.class.getName(), failingSignerProps);
+
+        Dictionary<String, String> asyncSignerProps = new Hashtable<>();
+        asyncSignerProps.put(PropertyName.SIGNER_TARGET, "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        String asyncSignerPid = getOrCreateConfiguration(AsyncSignerComponent.class.getName(), asyncSignerProps);
+
+        Dictionary<String, String> aliasSignerProps = new Hashtable<>();
+        aliasSignerProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        aliasSignerProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        aliasSignerProps.put(PropertyName.PRIVATE_KEY_PASSWORDS, PRIVATE_KEY_ALIAS + "=" + PRIVATE_KEY_PASSWORD);
+        String aliasSignerPid = getOrCreateConfiguration(AliasSignerComponent.class.getName(), aliasSignerProps);
+
+        Dictionary<String, String> hmacSignerProps = new Hashtable<>();
+        hmacSignerProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        hmacSignerProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        hmacSignerProps.put(PropertyName.SECRET_KEY_ALIAS, SECRET_KEY_ALIAS);
+        hmacSignerProps.put(PropertyName.SECRET_KEY_PASSWORD, SECRET_KEY_PASSWORD);
+        String hmacSignerPid = getOrCreateConfiguration(HmacSignerComponent.class.getName(), hmacSignerProps);
+
+        Dictionary<String, String> jarVerifierProps = new Hashtable<>();
+        jarVerifierProps.put(PropertyName.KEY_STORE_TARGET, "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        jarVerifierProps.put(PropertyName.PROVIDER_TARGET, PROVIDER_TARGET_FILTER);
+        jarVerifierProps.put(PropertyName.TRUSTED_CERTIFICATE_ALIASES, PUBLIC_KEY_ALIAS);
+        jarVerifierProps.put(PropertyName.VERIFICATION_PARALLELISM, String.valueOf(VERIFICATION_PARALLELISM));
+        String jarVerifierPid = getOrCreateConfiguration(JarVerifierComponent.class.getName(), jarVerifierProps);
+
+        Dictionary<String, String> loadBalancingSignerProps = new Hashtable<>();
+        loadBalancingSignerProps.put(PropertyName.BACKENDS_TARGET, "(|(" + Constants.SERVICE_PID + "=" + signerPid
+                + ")(" + Constants.SERVICE_PID + "=" + failingSignerPid + "))");
+        String loadBalancingSignerPid = getOrCreateConfiguration(LoadBalancingSignerComponent.class.getName(),
+                loadBalancingSignerProps);
+
+        Dictionary<String, String> prioritySignerProps = new Hashtable<>();
+        prioritySignerProps.put(PropertyName.SIGNER_TARGET, "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        String prioritySignerPid = getOrCreateConfiguration(AdmissionControlSignerComponent.class.getName(),
+                prioritySignerProps);
+
         Dictionary<String, String> signerTestProps = new Hashtable<>();
         signerTestProps.put("signer.target", "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        signerTestProps.put("plainSigner.target", "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        signerTestProps.put("digestSigner.target", "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        signerTestProps.put("chunkedSigner.target", "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        signerTestProps.put("envelopeSigner.target", "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        signerTestProps.put("resultVerifier.target", "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        signerTestProps.put("signerMetrics.target", "(" + Constants.SERVICE_PID + "=" + signerPid + ")");
+        signerTestProps.put("asyncSigner.target", "(" + Constants.SERVICE_PID + "=" + asyncSignerPid + ")");
+        signerTestProps.put("aliasSigner.target", "(" + Constants.SERVICE_PID + "=" + aliasSignerPid + ")");
+        signerTestProps.put("hmacSigner.target", "(" + Constants.SERVICE_PID + "=" + hmacSignerPid + ")");
+        signerTestProps.put("jarVerifier.target", "(" + Constants.SERVICE_PID + "=" + jarVerifierPid + ")");
+        signerTestProps.put("keyStore.target", "(" + Constants.SERVICE_PID + "=" + keyStorePid + ")");
+        signerTestProps.put("loadBalancingSigner.target",
+                "(" + Constants.SERVICE_PID + "=" + loadBalancingSignerPid + ")");
+        signerTestProps.put("parallelSigner.target", "(" + Constants.SERVICE_PID + "=" + parallelSignerPid + ")");
+        signerTestProps.put("ecSigner.target", "(" + Constants.SERVICE_PID + "=" + ecSignerPid + ")");
+        signerTestProps.put("ecResultVerifier.target", "(" + Constants.SERVICE_PID + "=" + ecSignerPid + ")");
+        signerTestProps.put("lazySigner.target", "(" + Constants.SERVICE_PID + "=" + lazySignerPid + ")");
+        signerTestProps.put("lazySignerMetrics.target", "(" + Constants.SERVICE_PID + "=" + lazySignerPid + ")");
+        signerTestProps.put("rotationSigner.target", "(" + Constants.SERVICE_PID + "=" + rotationSignerPid + ")");
+        signerTestProps.put("keyIdVerifier.target", "(" + Constants.SERVICE_PID + "=" + rotationSignerPid + ")");
+        signerTestProps.put("prioritySigner.target", "(" + Constants.SERVICE_PID + "=" + prioritySignerPid + ")");
         String signerTestPid = getOrCreateConfiguration(SignerTestComponent.class.getName(), signerTestProps);
 
         pids.add(keyStorePid);
         pids.add(signerPid);
+        pids.add(parallelSignerPid);
+        pids.add(rotationSignerPid);
+        pids.add(lazySignerPid);
+        pids.add(ecSignerPid);
+        pids.add(failingSignerPid);
+        pids.add(asyncSignerPid);
+        pids.add(aliasSignerPid);
+        pids.add(hmacSignerPid);
+        pids.add(jarVerifierPid);
+        pids.add(loadBalancingSignerPid);
+        pids.add(prioritySignerPid);
         pids.add(signerTestPid);
 
     }
@@ -131,6 +292,17 @@ public class ConfigurationInitComponent {
         deleteConfigurations();
     }
 
+    /**
+     * Creates a new configuration even if the factory already has one, for the components that are configured
+     * more than once.
+     */
+    private String createConfiguration(final String factoryPid, final Dictionary<String, String> props)
+            throws IOException {
+        Configuration configuration = configAdmin.createFactoryConfiguration(factoryPid, null);
+        configuration.update(props);
+        return configuration.getPid();
+    }
+
     private void deleteConfigurations() throws IOException, InvalidSyntaxException {
         for (String pid : pids) {
             Configuration[] configurations =
@@ -150,9 +322,7 @@ public class ConfigurationInitComponent {
         if ((configurations != null) && (configurations.length > 0)) {
             return configurations[0].getPid();
         }
-        Configuration configuration = configAdmin.createFactoryConfiguration(factoryPid, null);
-        configuration.update(props);
-        return configuration.getPid();
+        return createConfiguration(factoryPid, props);
     }
 
 }
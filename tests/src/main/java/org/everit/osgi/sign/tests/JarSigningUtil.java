@@ -0,0 +1,208 @@
+package org.everit.osgi.sign.tests;
+
+/*
+ * Copyright (c) 2011, Everit Kft.
+ *
+ * All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.everit.osgi.sign.Signer;
+
+/**
+ * Creates JAR files that are signed with an RSA key of a {@link Signer} the way the <code>jarsigner</code> tool
+ * signs them: the manifest lists the SHA-256 digest of every entry, the signature file holds the digest of the
+ * manifest and the PKCS#7 signature block signs the signature file.
+ */
+public final class JarSigningUtil {
+
+    private static final String BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private static final String OID_DATA = "1.2.840.113549.1.7.1";
+
+    private static final String OID_RSA_ENCRYPTION = "1.2.840.113549.1.1.1";
+
+    private static final String OID_SHA256 = "2.16.840.1.101.3.4.2.1";
+
+    private static final String OID_SIGNED_DATA = "1.2.840.113549.1.7.2";
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256WITHRSA";
+
+    private static final String SIGNATURE_NAME = "META-INF/SIGNER";
+
+    private static final int TAG_CONTEXT_0 = 0xa0;
+
+    private static final int TAG_INTEGER = 0x02;
+
+    private static final int TAG_NULL = 0x05;
+
+    private static final int TAG_OCTET_STRING = 0x04;
+
+    private static final int TAG_OID = 0x06;
+
+    private static final int TAG_SEQUENCE = 0x30;
+
+    private static final int TAG_SET = 0x31;
+
+    private static byte[] createSignatureBlock(final byte[] signature, final List<X509Certificate> certificates)
+            throws GeneralSecurityException {
+        X509Certificate certificate = certificates.get(0);
+        ByteArrayOutputStream encodedCertificates = new ByteArrayOutputStream();
+        for (X509Certificate blockCertificate : certificates) {
+            byte[] encoded = blockCertificate.getEncoded();
+            encodedCertificates.write(encoded, 0, encoded.length);
+        }
+        byte[] digestAlgorithm = der(TAG_SEQUENCE, oid(OID_SHA256), der(TAG_NULL));
+        byte[] signerInfo = der(TAG_SEQUENCE,
+                der(TAG_INTEGER, new byte[] { 1 }),
+                der(TAG_SEQUENCE, certificate.getIssuerX500Principal().getEncoded(),
+                        der(TAG_INTEGER, certificate.getSerialNumber().toByteArray())),
+                digestAlgorithm,
+                der(TAG_SEQUENCE, oid(OID_RSA_ENCRYPTION), der(TAG_NULL)),
+                der(TAG_OCTET_STRING, signature));
+        byte[] signedData = der(TAG_SEQUENCE,
+                der(TAG_INTEGER, new byte[] { 1 }),
+                der(TAG_SET, digestAlgorithm),
+                der(TAG_SEQUENCE, oid(OID_DATA)),
+                der(TAG_CONTEXT_0, encodedCertificates.toByteArray()),
+                der(TAG_SET, signerInfo));
+        return der(TAG_SEQUENCE, oid(OID_SIGNED_DATA), der(TAG_CONTEXT_0, signedData));
+    }
+
+    /**
+     * Encodes a DER element with the contents that are already encoded.
+     */
+    private static byte[] der(final int tag, final byte[]... contents) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] part : contents) {
+            content.write(part, 0, part.length);
+        }
+        int length = content.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 5);
+        out.write(tag);
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int lengthBytes = (BigInteger.valueOf(length).bitLength() + 7) / 8;
+            out.write(0x80 | lengthBytes);
+            for (int i = lengthBytes - 1; i >= 0; i--) {
+                out.write(length >> (8 * i));
+            }
+        }
+        out.write(content.toByteArray(), 0, length);
+        return out.toByteArray();
+    }
+
+    private static String digest(final byte[] data) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < digest.length; i += 3) {
+            int remaining = Math.min(3, digest.length - i);
+            int bits = 0;
+            for (int j = 0; j < 3; j++) {
+                bits = (bits << 8) | ((j < remaining) ? (digest[i + j] & 0xff) : 0);
+            }
+            for (int j = 0; j < 4; j++) {
+                sb.append((j <= remaining) ? BASE64_ALPHABET.charAt((bits >> (18 - (6 * j))) & 0x3f) : '=');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static byte[] oid(final String oid) {
+        String[] arcs = oid.split("\\.");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 1; i < arcs.length; i++) {
+            long value = Long.parseLong(arcs[i]);
+            if (i == 1) {
+                value += Long.parseLong(arcs[0]) * 40;
+            }
+            for (int shift = ((63 - Long.numberOfLeadingZeros(value | 1)) / 7) * 7; shift > 0; shift -= 7) {
+                out.write((int) (0x80 | ((value >> shift) & 0x7f)));
+            }
+            out.write((int) (value & 0x7f));
+        }
+        return der(TAG_OID, out.toByteArray());
+    }
+
+    private static void writeEntry(final ZipOutputStream out, final String name, final byte[] content)
+            throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+    /**
+     * Writes a signed JAR file.
+     *
+     * @param signedEntries
+     *            the entries that are listed in the manifest by their names.
+     * @param unsignedEntries
+     *            the entries that are written instead of the signed entries of the same name or in addition to
+     *            them, without changing the manifest.
+     * @param signer
+     *            the signer of the signature file.
+     * @param certificates
+     *            the certificates of the signature block, starting with the certificate of the key of the signer.
+     */
+    public static void writeSignedJar(final Path file, final Map<String, byte[]> signedEntries,
+            final Map<String, byte[]> unsignedEntries, final Signer signer, final List<X509Certificate> certificates)
+            throws IOException, GeneralSecurityException {
+        StringBuilder manifest = new StringBuilder("Manifest-Version: 1.0\r\n\r\n");
+        for (Map.Entry<String, byte[]> entry : signedEntries.entrySet()) {
+            manifest.append("Name: ").append(entry.getKey()).append("\r\nSHA-256-Digest: ")
+                    .append(digest(entry.getValue())).append("\r\n\r\n");
+        }
+        byte[] manifestBytes = manifest.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] signatureFileBytes = ("Signature-Version: 1.0\r\nSHA-256-Digest-Manifest: " + digest(manifestBytes)
+                + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] signature = signer.sign(signatureFileBytes, SIGNATURE_ALGORITHM, null, null);
+
+        Map<String, byte[]> entries = new LinkedHashMap<>(signedEntries);
+        entries.putAll(unsignedEntries);
+        try (OutputStream fileOut = Files.newOutputStream(file);
+                ZipOutputStream out = new ZipOutputStream(fileOut)) {
+            writeEntry(out, "META-INF/MANIFEST.MF", manifestBytes);
+            writeEntry(out, SIGNATURE_NAME + ".SF", signatureFileBytes);
+            writeEntry(out, SIGNATURE_NAME + ".RSA", createSignatureBlock(signature, certificates));
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private JarSigningUtil() {
+    }
+
+}
@@ -21,7 +21,9 @@ package org.everit.osgi.sign.tests;
  * MA 02110-1301  USA
  */
 
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
@@ -32,18 +34,88 @@ import java.security.Provider;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+import javax.security.auth.x500.X500Principal;
 
 import org.bouncycastle.jce.X509Principal;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
 
 public final class KeyStoreUtil {
 
+    /**
+     * The DER encoded value of the basic constraints extension of a certificate authority.
+     */
+    private static final byte[] CA_BASIC_CONSTRAINTS = { 0x30, 0x03, 0x01, 0x01, (byte) 0xff };
+
+    /**
+     * The DER encoded value of the key usage extension of a certificate authority (keyCertSign, cRLSign).
+     */
+    private static final byte[] CA_KEY_USAGE = { 0x03, 0x02, 0x01, 0x06 };
+
+    /**
+     * The DER encoded value of the basic constraints extension of an end entity.
+     */
+    private static final byte[] END_ENTITY_BASIC_CONSTRAINTS = { 0x30, 0x00 };
+
+    /**
+     * The DER encoded value of the key usage extension of an end entity (digitalSignature).
+     */
+    private static final byte[] END_ENTITY_KEY_USAGE = { 0x03, 0x02, 0x07, (byte) 0x80 };
+
     private static final Object lockObject = new Object();
 
+    private static final String OID_BASIC_CONSTRAINTS = "2.5.29.19";
+
+    private static final String OID_KEY_USAGE = "2.5.29.15";
+
+    private static final AtomicLong SERIAL_NUMBER = new AtomicLong(System.currentTimeMillis());
+
     static KeyPair LAST_GENERATED_KEY_PAIR = null;
 
+    public static void addKeyPair(final Provider provider, final String keyStoreType,
+            final String keyStoreLocation, final String keyStorePassword, final String signatureAlgorithm,
+            final String privateKeyAlias, final PrivateKey privateKey, final String privateKeyPassword,
+            final String publicKeyAlias, final PublicKey publicKey) {
+        try {
+            KeyStore ks = KeyStore.getInstance(keyStoreType, provider);
+            try (InputStream fis = new FileInputStream(keyStoreLocation)) {
+                ks.load(fis, keyStorePassword.toCharArray());
+            }
+            Certificate[] certificateChain = {
+                    KeyStoreUtil.generateCertificate(privateKey, publicKey, signatureAlgorithm)
+            };
+            ks.setKeyEntry(privateKeyAlias, privateKey, privateKeyPassword.toCharArray(), certificateChain);
+            ks.setCertificateEntry(publicKeyAlias, certificateChain[0]);
+            try (OutputStream fos = new FileOutputStream(keyStoreLocation)) {
+                ks.store(fos, keyStorePassword.toCharArray());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void addSecretKey(final Provider provider, final String keyStoreType,
+            final String keyStoreLocation, final String keyStorePassword, final String secretKeyAlias,
+            final SecretKey secretKey, final String secretKeyPassword) {
+        try {
+            KeyStore ks = KeyStore.getInstance(keyStoreType, provider);
+            try (InputStream fis = new FileInputStream(keyStoreLocation)) {
+                ks.load(fis, keyStorePassword.toCharArray());
+            }
+            ks.setKeyEntry(secretKeyAlias, secretKey, secretKeyPassword.toCharArray(), null);
+            try (OutputStream fos = new FileOutputStream(keyStoreLocation)) {
+                ks.store(fos, keyStorePassword.toCharArray());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static void createKeyStore(final Provider provider, final String keyStoreType,
             final String keyStoreLocation, final String keyStorePassword, final String signatureAlgorithm,
             final String privateKeyAlias, final PrivateKey privateKey, final String privateKeyPassword,
@@ -62,30 +134,43 @@ public final class KeyStoreUtil {
         }
     }
 
-    private static Certificate generateCertificate(final PrivateKey privateKey, final PublicKey publicKey,
-            final String signatureAlgorithm) throws Exception {
+    private static X509V3CertificateGenerator createCertificateGenerator(final PublicKey publicKey,
+            final String signatureAlgorithm) {
         Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.MINUTE, -1);
         Date notBefore = calendar.getTime();
-        calendar.add(Calendar.MINUTE, 1);
+        calendar.add(Calendar.DATE, 1);
         Date notAfter = calendar.getTime();
 
         X509V3CertificateGenerator v3CertGen = new X509V3CertificateGenerator();
-        v3CertGen.setSerialNumber(BigInteger.valueOf(System.currentTimeMillis()));
-        v3CertGen.setIssuerDN(new X509Principal("CN=cn, O=o, L=L, ST=il, C=c"));
+        v3CertGen.setSerialNumber(BigInteger.valueOf(SERIAL_NUMBER.incrementAndGet()));
         v3CertGen.setNotBefore(notBefore);
         v3CertGen.setNotAfter(notAfter);
-        v3CertGen.setSubjectDN(new X509Principal("CN=cn, O=o, L=L, ST=il, C=c"));
         v3CertGen.setPublicKey(publicKey);
         v3CertGen.setSignatureAlgorithm(signatureAlgorithm);
+        return v3CertGen;
+    }
+
+    private static Certificate generateCertificate(final PrivateKey privateKey, final PublicKey publicKey,
+            final String signatureAlgorithm) throws Exception {
+        X509V3CertificateGenerator v3CertGen = KeyStoreUtil.createCertificateGenerator(publicKey,
+                signatureAlgorithm);
+        v3CertGen.setIssuerDN(new X509Principal("CN=cn, O=o, L=L, ST=il, C=c"));
+        v3CertGen.setSubjectDN(new X509Principal("CN=cn, O=o, L=L, ST=il, C=c"));
         return v3CertGen.generateX509Certificate(privateKey);
     }
 
     public static KeyPair generateKeyPair(final Provider provider, final String keyPairAlgorithm,
             final String secureAlgorithm) {
+        return KeyStoreUtil.generateKeyPair(provider, keyPairAlgorithm, secureAlgorithm, 1024);
+    }
+
+    public static KeyPair generateKeyPair(final Provider provider, final String keyPairAlgorithm,
+            final String secureAlgorithm, final int keySize) {
         try {
             KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(keyPairAlgorithm, provider);
             SecureRandom secureRandom = SecureRandom.getInstance(secureAlgorithm);
-            keyPairGenerator.initialize(1024, secureRandom);
+            keyPairGenerator.initialize(keySize, secureRandom);
             synchronized (lockObject) {
                 LAST_GENERATED_KEY_PAIR = keyPairGenerator.generateKeyPair();
                 return LAST_GENERATED_KEY_PAIR;
@@ -95,6 +180,44 @@ public final class KeyStoreUtil {
         }
     }
 
+    /**
+     * Issues a certificate that is valid for a day.
+     *
+     * @param issuerPrivateKey
+     *            the private key that signs the certificate.
+     * @param issuer
+     *            the subject of the certificate of the issuer.
+     * @param subjectPublicKey
+     *            the public key of the subject.
+     * @param subject
+     *            the subject of the certificate.
+     * @param signatureAlgorithm
+     *            the algorithm that signs the certificate.
+     * @param certificateAuthority
+     *            whether the subject is a certificate authority that may issue certificates.
+     * @return the certificate.
+     */
+    public static X509Certificate issueCertificate(final PrivateKey issuerPrivateKey, final X500Principal issuer,
+            final PublicKey subjectPublicKey, final X500Principal subject, final String signatureAlgorithm,
+            final boolean certificateAuthority) {
+        try {
+            X509V3CertificateGenerator v3CertGen = KeyStoreUtil.createCertificateGenerator(subjectPublicKey,
+                    signatureAlgorithm);
+            v3CertGen.setIssuerDN(issuer);
+            v3CertGen.setSubjectDN(subject);
+            if (certificateAuthority) {
+                v3CertGen.addExtension(OID_BASIC_CONSTRAINTS, true, CA_BASIC_CONSTRAINTS);
+                v3CertGen.addExtension(OID_KEY_USAGE, true, CA_KEY_USAGE);
+            } else {
+                v3CertGen.addExtension(OID_BASIC_CONSTRAINTS, true, END_ENTITY_BASIC_CONSTRAINTS);
+                v3CertGen.addExtension(OID_KEY_USAGE, true, END_ENTITY_KEY_USAGE);
+            }
+            return v3CertGen.generateX509Certificate(issuerPrivateKey);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private KeyStoreUtil() {
     }
 
@@ -21,7 +21,38 @@ package org.everit.osgi.sign.tests;
  * MA 02110-1301  USA
  */
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import javax.security.auth.x500.X500Principal;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -31,7 +62,28 @@ import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.everit.osgi.dev.testrunner.TestRunnerConstants;
+import org.everit.osgi.sign.AliasSigner;
+import org.everit.osgi.sign.AsyncSigner;
+import org.everit.osgi.sign.ChunkedSignature;
+import org.everit.osgi.sign.ChunkedSigner;
+import org.everit.osgi.sign.DigestSigner;
+import org.everit.osgi.sign.EnvelopeSigner;
+import org.everit.osgi.sign.ExtendedSigner;
+import org.everit.osgi.sign.JarVerificationResult;
+import org.everit.osgi.sign.JarVerifier;
+import org.everit.osgi.sign.KeyIdVerifier;
+import org.everit.osgi.sign.LaneStatistics;
+import org.everit.osgi.sign.MerkleProof;
+import org.everit.osgi.sign.MerkleTree;
+import org.everit.osgi.sign.OperationStatistics;
+import org.everit.osgi.sign.PrioritySigner;
+import org.everit.osgi.sign.ResultVerifier;
+import org.everit.osgi.sign.SignatureEnvelope;
 import org.everit.osgi.sign.Signer;
+import org.everit.osgi.sign.SignerMetrics;
+import org.everit.osgi.sign.SignerPriority;
+import org.everit.osgi.sign.SigningOutputStream;
+import org.everit.osgi.sign.VerificationResult;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -39,21 +91,547 @@ import org.junit.Test;
 @Properties({
         @Property(name = TestRunnerConstants.SERVICE_PROPERTY_TESTRUNNER_ENGINE_TYPE, value = "junit4"),
         @Property(name = TestRunnerConstants.SERVICE_PROPERTY_TEST_ID, value = "SignerTestComponent"),
-        @Property(name = "signer.target") })
+        @Property(name = "signer.target"),
+        @Property(name = "aliasSigner.target"),
+        @Property(name = "asyncSigner.target"),
+        @Property(name = "digestSigner.target"),
+        @Property(name = "ecResultVerifier.target"),
+        @Property(name = "ecSigner.target"),
+        @Property(name = "chunkedSigner.target"),
+        @Property(name = "envelopeSigner.target"),
+        @Property(name = "hmacSigner.target"),
+        @Property(name = "jarVerifier.target"),
+        @Property(name = "keyIdVerifier.target"),
+        @Property(name = "keyStore.target"),
+        @Property(name = "lazySigner.target"),
+        @Property(name = "lazySignerMetrics.target"),
+        @Property(name = "loadBalancingSigner.target"),
+        @Property(name = "parallelSigner.target"),
+        @Property(name = "plainSigner.target"),
+        @Property(name = "prioritySigner.target"),
+        @Property(name = "resultVerifier.target"),
+        @Property(name = "rotationSigner.target"),
+        @Property(name = "signerMetrics.target") })
 @Service(value = SignerTestComponent.class)
 public class SignerTestComponent {
 
+    /**
+     * The default signature algorithm of the tested signer.
+     */
+    public static final String DEFAULT_SIGNATURE_ALGORITHM = "SHA256WITHRSA";
+
+    /**
+     * Enough entries in the signed JAR files to split the digest checks into several tasks.
+     */
+    private static final int JAR_ENTRY_COUNT = 64;
+
+    private static Map<String, byte[]> createJarEntries() throws UnsupportedEncodingException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < JAR_ENTRY_COUNT; i++) {
+            entries.put("entry" + i + ".txt", ("entry " + i).getBytes("UTF-8"));
+        }
+        return entries;
+    }
+
     @Reference(bind = "bindSigner")
-    private Signer signer;
+    private ExtendedSigner signer;
+
+    @Reference(bind = "bindAliasSigner")
+    private AliasSigner aliasSigner;
+
+    @Reference(bind = "bindAsyncSigner")
+    private AsyncSigner asyncSigner;
+
+    @Reference(bind = "bindDigestSigner")
+    private DigestSigner digestSigner;
+
+    @Reference(bind = "bindChunkedSigner")
+    private ChunkedSigner chunkedSigner;
+
+    /**
+     * The result verifier of {@link #ecSigner}.
+     */
+    @Reference(bind = "bindEcResultVerifier")
+    private ResultVerifier ecResultVerifier;
+
+    /**
+     * Signer with an EC key pair.
+     */
+    @Reference(bind = "bindEcSigner")
+    private ExtendedSigner ecSigner;
+
+    @Reference(bind = "bindEnvelopeSigner")
+    private EnvelopeSigner envelopeSigner;
+
+    @Reference(bind = "bindHmacSigner")
+    private ExtendedSigner hmacSigner;
+
+    @Reference(bind = "bindJarVerifier")
+    private JarVerifier jarVerifier;
+
+    /**
+     * The key id view of {@link #rotationSigner}.
+     */
+    @Reference(bind = "bindKeyIdVerifier")
+    private KeyIdVerifier keyIdVerifier;
+
+    /**
+     * The keystore of the signers, which holds the certificates of the signed JAR files.
+     */
+    @Reference(bind = "bindKeyStore")
+    private KeyStore keyStore;
+
+    /**
+     * Signer that loads its keys on the first use.
+     */
+    @Reference(bind = "bindLazySigner")
+    private ExtendedSigner lazySigner;
+
+    @Reference(bind = "bindLazySignerMetrics")
+    private SignerMetrics lazySignerMetrics;
+
+    @Reference(bind = "bindLoadBalancingSigner")
+    private ExtendedSigner loadBalancingSigner;
+
+    /**
+     * Signer with the same keys as {@link #signer} that splits the batches between several workers.
+     */
+    @Reference(bind = "bindParallelSigner")
+    private ExtendedSigner parallelSigner;
+
+    /**
+     * The tested signer referenced by the base {@link Signer} interface, as the existing consumers of the service
+     * reference it.
+     */
+    @Reference(bind = "bindPlainSigner")
+    private Signer plainSigner;
+
+    @Reference(bind = "bindPrioritySigner")
+    private PrioritySigner prioritySigner;
+
+    @Reference(bind = "bindResultVerifier")
+    private ResultVerifier resultVerifier;
+
+    /**
+     * Signer that signs with a rotated private key and verifies with both the public key of {@link #signer} and
+     * the rotated public key.
+     */
+    @Reference(bind = "bindRotationSigner")
+    private ExtendedSigner rotationSigner;
+
+    @Reference(bind = "bindSignerMetrics")
+    private SignerMetrics signerMetrics;
 
     @Activate
     public void activate() {
     }
 
-    public void bindSigner(final Signer signer) {
+    public void bindAliasSigner(final AliasSigner aliasSigner) {
+        this.aliasSigner = aliasSigner;
+    }
+
+    public void bindAsyncSigner(final AsyncSigner asyncSigner) {
+        this.asyncSigner = asyncSigner;
+    }
+
+    public void bindChunkedSigner(final ChunkedSigner chunkedSigner) {
+        this.chunkedSigner = chunkedSigner;
+    }
+
+    public void bindDigestSigner(final DigestSigner digestSigner) {
+        this.digestSigner = digestSigner;
+    }
+
+    public void bindEcResultVerifier(final ResultVerifier ecResultVerifier) {
+        this.ecResultVerifier = ecResultVerifier;
+    }
+
+    public void bindEcSigner(final ExtendedSigner ecSigner) {
+        this.ecSigner = ecSigner;
+    }
+
+    public void bindEnvelopeSigner(final EnvelopeSigner envelopeSigner) {
+        this.envelopeSigner = envelopeSigner;
+    }
+
+    public void bindHmacSigner(final ExtendedSigner hmacSigner) {
+        this.hmacSigner = hmacSigner;
+    }
+
+    public void bindJarVerifier(final JarVerifier jarVerifier) {
+        this.jarVerifier = jarVerifier;
+    }
+
+    public void bindKeyIdVerifier(final KeyIdVerifier keyIdVerifier) {
+        this.keyIdVerifier = keyIdVerifier;
+    }
+
+    public void bindKeyStore(final KeyStore keyStore) {
+        this.keyStore = keyStore;
+    }
+
+    public void bindLazySigner(final ExtendedSigner lazySigner) {
+        this.lazySigner = lazySigner;
+    }
+
+    public void bindLazySignerMetrics(final SignerMetrics lazySignerMetrics) {
+        this.lazySignerMetrics = lazySignerMetrics;
+    }
+
+    public void bindLoadBalancingSigner(final ExtendedSigner loadBalancingSigner) {
+        this.loadBalancingSigner = loadBalancingSigner;
+    }
+
+    public void bindParallelSigner(final ExtendedSigner parallelSigner) {
+        this.parallelSigner = parallelSigner;
+    }
+
+    public void bindPlainSigner(final Signer plainSigner) {
+        this.plainSigner = plainSigner;
+    }
+
+    public void bindPrioritySigner(final PrioritySigner prioritySigner) {
+        this.prioritySigner = prioritySigner;
+    }
+
+    public void bindResultVerifier(final ResultVerifier resultVerifier) {
+        this.resultVerifier = resultVerifier;
+    }
+
+    public void bindRotationSigner(final ExtendedSigner rotationSigner) {
+        this.rotationSigner = rotationSigner;
+    }
+
+    public void bindSigner(final ExtendedSigner signer) {
         this.signer = signer;
     }
 
+    public void bindSignerMetrics(final SignerMetrics signerMetrics) {
+        this.signerMetrics = signerMetrics;
+    }
+
+    private OperationStatistics getOperationStatistics(final String operation, final String signatureAlgorithm) {
+        for (OperationStatistics operationStatistics : signerMetrics.getOperationStatistics()) {
+            if (operation.equals(operationStatistics.getOperation())
+                    && signatureAlgorithm.equals(operationStatistics.getSignatureAlgorithm())) {
+                return operationStatistics;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testAliasSignAndVerify() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA1WITHRSA";
+        byte[] signatureBytes = aliasSigner.sign(ConfigurationInitComponent.PRIVATE_KEY_ALIAS, data,
+                signatureAlgorithm, null, null);
+        Assert.assertTrue(aliasSigner.verify(ConfigurationInitComponent.PUBLIC_KEY_ALIAS, data, signatureBytes,
+                signatureAlgorithm, null));
+        Assert.assertArrayEquals(signatureBytes, signer.sign(data, signatureAlgorithm, null, null));
+        Assert.assertFalse(aliasSigner.verify("unknown-alias", data, signatureBytes, signatureAlgorithm, null));
+    }
+
+    @Test
+    public void testAsyncSignAndVerify() throws UnsupportedEncodingException, InterruptedException,
+            ExecutionException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA1WITHRSA";
+        Future<byte[]> signatureFuture = asyncSigner.sign(data, signatureAlgorithm, null, null, null);
+        byte[] signatureBytes = signatureFuture.get();
+        Future<Boolean> verifyFuture = asyncSigner.verify(data, signatureBytes, signatureAlgorithm, null, null);
+        Assert.assertTrue(verifyFuture.get());
+    }
+
+    @Test
+    public void testHmacSignAndVerify() throws IOException {
+        byte[] data = "test".getBytes("UTF-8");
+        byte[] mac = hmacSigner.sign(data);
+        Assert.assertEquals(32, mac.length);
+        Assert.assertTrue(hmacSigner.verify(data, mac));
+        Assert.assertFalse(hmacSigner.verify("other".getBytes("UTF-8"), mac));
+
+        byte[] mac512 = hmacSigner.sign(data, "HmacSHA512", null, null);
+        Assert.assertEquals(64, mac512.length);
+        Assert.assertTrue(hmacSigner.verify(new ByteArrayInputStream(data), mac512, "HmacSHA512", null));
+        Assert.assertFalse(hmacSigner.verify(data, mac512, "HmacSHA256", null));
+    }
+
+    @Test
+    public void testLazyKeyLoading() throws UnsupportedEncodingException {
+        // Only this test uses the lazy signer, so its keys are not loaded yet
+        Assert.assertEquals(-1, lazySignerMetrics.getLoadTime());
+        Assert.assertTrue(lazySignerMetrics.getActivationTime() > 0);
+
+        byte[] data = "test".getBytes("UTF-8");
+        byte[] signatureBytes = lazySigner.sign(data, DEFAULT_SIGNATURE_ALGORITHM, null, null);
+        Assert.assertTrue(lazySignerMetrics.getLoadTime() > 0);
+        Assert.assertTrue(lazySigner.verify(data, signatureBytes, DEFAULT_SIGNATURE_ALGORITHM, null));
+        Assert.assertTrue(signer.verify(data, signatureBytes, DEFAULT_SIGNATURE_ALGORITHM, null));
+    }
+
+    @Test
+    public void testLoadBalancedSignAndVerify() throws IOException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA1WITHRSA";
+        byte[] signatureBytes = signer.sign(data, signatureAlgorithm, null, null);
+        // One of the two backends cannot load its key, so the operations fail over to the other one
+        for (int i = 0; i < 4; i++) {
+            Assert.assertArrayEquals(signatureBytes, loadBalancingSigner.sign(data, signatureAlgorithm, null, null));
+        }
+        Assert.assertTrue(loadBalancingSigner.verify(data, signatureBytes, signatureAlgorithm, null));
+        Assert.assertTrue(loadBalancingSigner.verify(new ByteArrayInputStream(data), signatureBytes,
+                signatureAlgorithm, null));
+        Assert.assertFalse(loadBalancingSigner.verify("other".getBytes("UTF-8"), signatureBytes, signatureAlgorithm,
+                null));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SigningOutputStream signingOut = loadBalancingSigner.createSigningOutputStream(out, signatureAlgorithm,
+                null, null)) {
+            signingOut.write(data);
+            Assert.assertArrayEquals(signatureBytes, signingOut.sign());
+        }
+        Assert.assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testMetrics() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA384WITHRSA";
+        byte[] signatureBytes = signer.sign(data, signatureAlgorithm, null, null);
+        Assert.assertTrue(signer.verify(data, signatureBytes, signatureAlgorithm, null));
+        Assert.assertFalse(signer.verify("other".getBytes("UTF-8"), signatureBytes, signatureAlgorithm, null));
+
+        OperationStatistics signStatistics = getOperationStatistics(SignerMetrics.OPERATION_SIGN,
+                signatureAlgorithm);
+        Assert.assertNotNull(signStatistics);
+        Assert.assertEquals(1, signStatistics.getCount());
+        Assert.assertEquals(0, signStatistics.getFailureCount());
+        Assert.assertTrue(signStatistics.getMaxLatency() > 0);
+
+        OperationStatistics verifyStatistics = getOperationStatistics(SignerMetrics.OPERATION_VERIFY,
+                signatureAlgorithm);
+        Assert.assertNotNull(verifyStatistics);
+        Assert.assertEquals(2, verifyStatistics.getCount());
+        Assert.assertEquals(1, verifyStatistics.getInvalidCount());
+        Assert.assertEquals(ConfigurationInitComponent.PUBLIC_KEY_ALIAS, verifyStatistics.getKeyAlias());
+
+        Assert.assertTrue(signerMetrics.getLoadTime() > 0);
+        // The keys of the signer are loaded during the activation
+        Assert.assertTrue(signerMetrics.getActivationTime() >= signerMetrics.getLoadTime());
+    }
+
+    @Test
+    public void testJarVerification() throws IOException {
+        Path file = Files.createTempFile("signer-test", ".jar");
+        try {
+            try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(file), new Manifest())) {
+                out.putNextEntry(new ZipEntry("test.txt"));
+                out.write("test".getBytes("UTF-8"));
+                out.closeEntry();
+            }
+            JarVerificationResult result = jarVerifier.verify(file);
+            Assert.assertFalse(result.isVerified());
+            Assert.assertNotNull(result.getFailureReason());
+            Assert.assertTrue(result.getSignerCertificates().isEmpty());
+            Assert.assertFalse(result.isCached());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testJarVerificationOfCertificateChain() throws IOException, GeneralSecurityException {
+        PrivateKey trustedPrivateKey = (PrivateKey) keyStore.getKey(ConfigurationInitComponent.PRIVATE_KEY_ALIAS,
+                ConfigurationInitComponent.PRIVATE_KEY_PASSWORD.toCharArray());
+        X500Principal trustedSubject = ((X509Certificate) keyStore.getCertificate(
+                ConfigurationInitComponent.PUBLIC_KEY_ALIAS)).getSubjectX500Principal();
+        PublicKey signerPublicKey = keyStore.getCertificate(ConfigurationInitComponent.ROTATED_PUBLIC_KEY_ALIAS)
+                .getPublicKey();
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024);
+        KeyPair issuerKeyPair = keyPairGenerator.generateKeyPair();
+        X500Principal issuerSubject = new X500Principal("CN=issuer, O=o");
+        X500Principal signerSubject = new X500Principal("CN=signer, O=o");
+        Path file = Files.createTempFile("signer-test", ".jar");
+        try {
+            // The signer certificate is issued by a certificate authority that is issued by the trusted certificate
+            X509Certificate caCertificate = KeyStoreUtil.issueCertificate(trustedPrivateKey, trustedSubject,
+                    issuerKeyPair.getPublic(), issuerSubject, "SHA1WITHRSA", true);
+            X509Certificate signerCertificate = KeyStoreUtil.issueCertificate(issuerKeyPair.getPrivate(),
+                    issuerSubject, signerPublicKey, signerSubject, "SHA1WITHRSA", false);
+            JarSigningUtil.writeSignedJar(file, createJarEntries(), Collections.<String, byte[]> emptyMap(),
+                    rotationSigner, Arrays.asList(signerCertificate, caCertificate));
+            JarVerificationResult result = jarVerifier.verify(file);
+            Assert.assertTrue(result.getFailureReason(), result.isVerified());
+            Assert.assertEquals(Collections.singletonList(signerCertificate), result.getSignerCertificates());
+
+            // The same chain with an end entity in the place of the certificate authority is not trusted
+            X509Certificate endEntityCertificate = KeyStoreUtil.issueCertificate(trustedPrivateKey, trustedSubject,
+                    issuerKeyPair.getPublic(), issuerSubject, "SHA1WITHRSA", false);
+            signerCertificate = KeyStoreUtil.issueCertificate(issuerKeyPair.getPrivate(), issuerSubject,
+                    signerPublicKey, signerSubject, "SHA1WITHRSA", false);
+            JarSigningUtil.writeSignedJar(file, createJarEntries(), Collections.<String, byte[]> emptyMap(),
+                    rotationSigner, Arrays.asList(signerCertificate, endEntityCertificate));
+            result = jarVerifier.verify(file);
+            Assert.assertFalse(result.isVerified());
+            Assert.assertTrue(result.getSignerCertificates().isEmpty());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testJarVerificationOfModifiedJar() throws IOException, GeneralSecurityException {
+        Map<String, byte[]> entries = createJarEntries();
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(
+                ConfigurationInitComponent.PUBLIC_KEY_ALIAS);
+        Path file = Files.createTempFile("signer-test", ".jar");
+        try {
+            JarSigningUtil.writeSignedJar(file, entries,
+                    Collections.singletonMap("entry1.txt", "tampered".getBytes("UTF-8")), signer,
+                    Collections.singletonList(certificate));
+            JarVerificationResult result = jarVerifier.verify(file);
+            Assert.assertFalse(result.isVerified());
+            Assert.assertTrue(result.getFailureReason().contains("entry1.txt"));
+
+            JarSigningUtil.writeSignedJar(file, entries,
+                    Collections.singletonMap("extra.txt", "extra".getBytes("UTF-8")), signer,
+                    Collections.singletonList(certificate));
+            result = jarVerifier.verify(file);
+            Assert.assertFalse(result.isVerified());
+            Assert.assertTrue(result.getFailureReason().contains("extra.txt"));
+
+            // The rotated key is in the keystore, but its certificate is not trusted by the verifier
+            X509Certificate untrustedCertificate = (X509Certificate) keyStore.getCertificate(
+                    ConfigurationInitComponent.ROTATED_PUBLIC_KEY_ALIAS);
+            JarSigningUtil.writeSignedJar(file, entries, Collections.<String, byte[]> emptyMap(), rotationSigner,
+                    Collections.singletonList(untrustedCertificate));
+            result = jarVerifier.verify(file);
+            Assert.assertFalse(result.isVerified());
+            Assert.assertTrue(result.getSignerCertificates().isEmpty());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testJarVerificationOfSignedJar() throws IOException, GeneralSecurityException {
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate(
+                ConfigurationInitComponent.PUBLIC_KEY_ALIAS);
+        Path file = Files.createTempFile("signer-test", ".jar");
+        try {
+            JarSigningUtil.writeSignedJar(file, createJarEntries(), Collections.<String, byte[]> emptyMap(), signer,
+                    Collections.singletonList(certificate));
+            JarVerificationResult result = jarVerifier.verify(file);
+            Assert.assertTrue(result.getFailureReason(), result.isVerified());
+            Assert.assertFalse(result.isCached());
+            Assert.assertEquals(Collections.singletonList(certificate), result.getSignerCertificates());
+
+            JarVerificationResult cachedResult = jarVerifier.verify(file);
+            Assert.assertTrue(cachedResult.isVerified());
+            Assert.assertTrue(cachedResult.isCached());
+            Assert.assertArrayEquals(result.getManifestDigest(), cachedResult.getManifestDigest());
+            Assert.assertEquals(result.getSignerCertificates(), cachedResult.getSignerCertificates());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testKeyIdVerification() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA1WITHRSA";
+
+        List<byte[]> publicKeyIds = keyIdVerifier.getPublicKeyIds();
+        Assert.assertEquals(2, publicKeyIds.size());
+        byte[] primaryKeyId = publicKeyIds.get(0);
+        byte[] signingKeyId = keyIdVerifier.getSigningKeyId();
+        Assert.assertNotNull(signingKeyId);
+        Assert.assertArrayEquals(signingKeyId, publicKeyIds.get(1));
+        Assert.assertFalse(Arrays.equals(primaryKeyId, signingKeyId));
+
+        byte[] rotatedSignature = rotationSigner.sign(data, signatureAlgorithm, null, null);
+        Assert.assertTrue(keyIdVerifier.verify(signingKeyId, data, rotatedSignature, signatureAlgorithm, null));
+        Assert.assertFalse(keyIdVerifier.verify(primaryKeyId, data, rotatedSignature, signatureAlgorithm, null));
+        byte[] unknownKeyId = signingKeyId.clone();
+        unknownKeyId[0] ^= 1;
+        Assert.assertFalse(keyIdVerifier.verify(unknownKeyId, data, rotatedSignature, signatureAlgorithm, null));
+
+        // Without a key id every configured public key is tried.
+        Assert.assertTrue(rotationSigner.verify(data, rotatedSignature, signatureAlgorithm, null));
+        byte[] primarySignature = signer.sign(data, signatureAlgorithm, null, null);
+        Assert.assertTrue(rotationSigner.verify(data, primarySignature, signatureAlgorithm, null));
+        Assert.assertTrue(keyIdVerifier.verify(primaryKeyId, data, primarySignature, signatureAlgorithm, null));
+        Assert.assertFalse(rotationSigner.verify("other".getBytes("UTF-8"), primarySignature, signatureAlgorithm,
+                null));
+        Assert.assertFalse(signer.verify(data, rotatedSignature, signatureAlgorithm, null));
+    }
+
+    @Test
+    public void testKeyIdVerificationOfBatchesAndStreams() throws IOException {
+        String signatureAlgorithm = "SHA1WITHRSA";
+        List<byte[]> payloads = new ArrayList<>();
+        List<byte[]> signatures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] payload = ("test" + i).getBytes("UTF-8");
+            payloads.add(payload);
+            // Every third item is signed with the rotated key that is not the primary key of the verifier
+            ExtendedSigner itemSigner = ((i % 3) == 0) ? rotationSigner : signer;
+            signatures.add(itemSigner.sign(payload, signatureAlgorithm, null, null));
+        }
+        BitSet result = rotationSigner.verifyBatch(payloads, signatures, signatureAlgorithm, null, false);
+        Assert.assertEquals(payloads.size(), result.cardinality());
+        result = rotationSigner.verifyBatch(payloads, signatures, signatureAlgorithm, null, true);
+        Assert.assertEquals(payloads.size(), result.cardinality());
+        result = signer.verifyBatch(payloads, signatures, signatureAlgorithm, null, false);
+        Assert.assertFalse(result.get(0));
+        Assert.assertTrue(result.get(1));
+
+        signatures.set(3, signatures.get(4));
+        result = rotationSigner.verifyBatch(payloads, signatures, signatureAlgorithm, null, false);
+        Assert.assertEquals(payloads.size() - 1, result.cardinality());
+        Assert.assertFalse(result.get(3));
+
+        // Streams and channels are read once, but they are verified with every key
+        byte[] data = "test".getBytes("UTF-8");
+        byte[] rotatedSignature = rotationSigner.sign(data, signatureAlgorithm, null, null);
+        byte[] primarySignature = signer.sign(data, signatureAlgorithm, null, null);
+        Assert.assertTrue(rotationSigner.verify(new ByteArrayInputStream(data), rotatedSignature,
+                signatureAlgorithm, null));
+        Assert.assertTrue(rotationSigner.verify(new ByteArrayInputStream(data), primarySignature,
+                signatureAlgorithm, null));
+        Assert.assertTrue(rotationSigner.verify(Channels.newChannel(new ByteArrayInputStream(data)),
+                rotatedSignature, signatureAlgorithm, null));
+        Assert.assertFalse(rotationSigner.verify(new ByteArrayInputStream("other".getBytes("UTF-8")),
+                rotatedSignature, signatureAlgorithm, null));
+        Assert.assertFalse(signer.verify(new ByteArrayInputStream(data), rotatedSignature, signatureAlgorithm,
+                null));
+    }
+
+    @Test
+    public void testPrioritySignAndVerify() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA1WITHRSA";
+        byte[] signatureBytes = prioritySigner.sign(SignerPriority.INTERACTIVE, data, signatureAlgorithm, null,
+                null);
+        Assert.assertTrue(prioritySigner.verify(SignerPriority.BULK, data, signatureBytes, signatureAlgorithm,
+                null));
+        List<byte[]> signatures = prioritySigner.signBatch(SignerPriority.BULK,
+                Arrays.asList(data, "other".getBytes("UTF-8")), signatureAlgorithm, null, null);
+        Assert.assertArrayEquals(signatureBytes, signatures.get(0));
+
+        List<LaneStatistics> laneStatistics = prioritySigner.getLaneStatistics();
+        Assert.assertEquals(SignerPriority.values().length, laneStatistics.size());
+        LaneStatistics interactiveStatistics = laneStatistics.get(SignerPriority.INTERACTIVE.ordinal());
+        Assert.assertEquals(SignerPriority.INTERACTIVE, interactiveStatistics.getPriority());
+        Assert.assertEquals(1, interactiveStatistics.getAdmittedCount());
+        LaneStatistics bulkStatistics = laneStatistics.get(SignerPriority.BULK.ordinal());
+        Assert.assertEquals(2, bulkStatistics.getAdmittedCount());
+        Assert.assertEquals(0, bulkStatistics.getInFlightCount());
+        Assert.assertEquals(0, bulkStatistics.getRejectedCount() + bulkStatistics.getExpiredCount());
+    }
+
     @Test
     public void testSignAndVerify() throws UnsupportedEncodingException {
         byte[] data = "test".getBytes("UTF-8");
@@ -63,4 +641,289 @@ public class SignerTestComponent {
         Assert.assertTrue(verify);
     }
 
+    @Test
+    public void testSignAndVerifyWithSignerInterface() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA1WITHRSA";
+        byte[] signatureBytes = plainSigner.sign(data, signatureAlgorithm, null, null);
+        Assert.assertArrayEquals(signer.sign(data, signatureAlgorithm, null, null), signatureBytes);
+        Assert.assertTrue(plainSigner.verify(data, signatureBytes, signatureAlgorithm, null));
+    }
+
+    @Test
+    public void testSignAndVerifyByteBuffer() throws UnsupportedEncodingException {
+        byte[] header = "header".getBytes("UTF-8");
+        byte[] body = "body".getBytes("UTF-8");
+        byte[] message = new byte[header.length + body.length];
+        System.arraycopy(header, 0, message, 0, header.length);
+        System.arraycopy(body, 0, message, header.length, body.length);
+        String signatureAlgorithm = "SHA1WITHRSA";
+        byte[] signatureBytes = signer.sign(message, signatureAlgorithm, null, null);
+
+        ByteBuffer directBody = ByteBuffer.allocateDirect(body.length);
+        directBody.put(body);
+        directBody.flip();
+        ByteBuffer[] segments = new ByteBuffer[] { ByteBuffer.wrap(header), directBody };
+        Assert.assertArrayEquals(signatureBytes, signer.sign(segments, signatureAlgorithm, null, null));
+        Assert.assertTrue(signer.verify(segments, signatureBytes, signatureAlgorithm, null));
+        Assert.assertEquals(0, directBody.position());
+
+        Assert.assertArrayEquals(signatureBytes,
+                signer.sign(ByteBuffer.wrap(message), signatureAlgorithm, null, null));
+        Assert.assertTrue(signer.verify(message, 0, message.length, signatureBytes, signatureAlgorithm, null));
+        Assert.assertFalse(signer.verify(message, 0, header.length, signatureBytes, signatureAlgorithm, null));
+    }
+
+    @Test
+    public void testSignAndVerifyDefaultAlgorithm() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        byte[] signatureBytes = signer.sign(data);
+        Assert.assertTrue(signer.verify(data, signatureBytes));
+        Assert.assertTrue(signer.verify(data, signatureBytes, DEFAULT_SIGNATURE_ALGORITHM, null));
+        Assert.assertFalse(signer.verify("other".getBytes("UTF-8"), signatureBytes));
+    }
+
+    @Test
+    public void testSignAndVerifyEnvelope() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        byte[] envelope = envelopeSigner.signToEnvelope(data, DEFAULT_SIGNATURE_ALGORITHM, null, null);
+
+        SignatureEnvelope signatureEnvelope = new SignatureEnvelope().wrap(ByteBuffer.wrap(envelope));
+        Assert.assertEquals(SignatureEnvelope.VERSION, signatureEnvelope.getVersion());
+        Assert.assertEquals("SHA256withRSA", signatureEnvelope.getSignatureAlgorithm());
+        Assert.assertTrue(envelopeSigner.verifyEnvelope(data, signatureEnvelope));
+        Assert.assertFalse(envelopeSigner.verifyEnvelope("other".getBytes("UTF-8"), signatureEnvelope));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(envelope.length);
+        buffer.put(envelope);
+        buffer.flip();
+        Assert.assertTrue(envelopeSigner.verifyEnvelope(data, buffer));
+        Assert.assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testSignAndVerifyRandomized() throws UnsupportedEncodingException, InterruptedException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA256WITHRSAANDMGF1";
+        byte[] signatureBytes = signer.sign(data, signatureAlgorithm, null, null);
+        // Let the signer replace its random generators
+        Thread.sleep(20);
+        byte[] otherSignatureBytes = signer.sign(data, signatureAlgorithm, null, null);
+        Assert.assertFalse(Arrays.equals(signatureBytes, otherSignatureBytes));
+        Assert.assertTrue(signer.verify(data, signatureBytes, signatureAlgorithm, null));
+        Assert.assertTrue(signer.verify(data, otherSignatureBytes, signatureAlgorithm, null));
+    }
+
+    @Test
+    public void testSignAndVerifyStream() throws IOException {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        String signatureAlgorithm = "SHA1WITHRSA";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SigningOutputStream signingOutputStream = signer.createSigningOutputStream(out, signatureAlgorithm,
+                null, null);
+        signingOutputStream.write(data);
+        byte[] signatureBytes = signingOutputStream.sign();
+        Assert.assertArrayEquals(data, out.toByteArray());
+
+        Assert.assertArrayEquals(signatureBytes, signer.sign(data, signatureAlgorithm, null, null));
+        Assert.assertArrayEquals(signatureBytes,
+                signer.sign(new ByteArrayInputStream(data), signatureAlgorithm, null, null));
+        Assert.assertTrue(signer.verify(new ByteArrayInputStream(data), signatureBytes, signatureAlgorithm, null));
+        Assert.assertTrue(signer.verify(Channels.newChannel(new ByteArrayInputStream(data)), signatureBytes,
+                signatureAlgorithm, null));
+    }
+
+    @Test
+    public void testSignBatch() throws UnsupportedEncodingException {
+        String signatureAlgorithm = "SHA1WITHRSA";
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            payloads.add(("test" + i).getBytes("UTF-8"));
+        }
+        List<byte[]> signatures = signer.signBatch(payloads, signatureAlgorithm, null, null);
+        Assert.assertEquals(payloads.size(), signatures.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            Assert.assertTrue(signer.verify(payloads.get(i), signatures.get(i), signatureAlgorithm, null));
+        }
+    }
+
+    @Test
+    public void testSignChunked() throws IOException {
+        String signatureAlgorithm = "SHA1WITHRSA";
+        int chunkSize = 4096;
+        byte[] data = new byte[(10 * chunkSize) + 100];
+        new Random(0).nextBytes(data);
+
+        MerkleTree merkleTree = chunkedSigner.createMerkleTree(data, chunkSize, "SHA-256");
+        Assert.assertEquals(11, merkleTree.getChunkCount());
+        ChunkedSignature chunkedSignature = ChunkedSignature.decode(chunkedSigner.signMerkleTree(merkleTree,
+                signatureAlgorithm, null, null).getEncoded());
+        Assert.assertTrue(chunkedSigner.verifyRoot(chunkedSignature, signatureAlgorithm, null));
+
+        for (int i = 0; i < chunkedSignature.getChunkCount(); i++) {
+            MerkleProof proof = MerkleProof.decode(merkleTree.getProof(i).getEncoded());
+            ByteBuffer chunk = ByteBuffer.wrap(data, (int) chunkedSignature.getChunkOffset(i),
+                    chunkedSignature.getChunkLength(i));
+            Assert.assertTrue(chunkedSignature.verifyChunk(i, chunk, proof));
+        }
+        data[chunkSize] ^= 1;
+        Assert.assertFalse(chunkedSignature.verifyChunk(1, ByteBuffer.wrap(data, chunkSize, chunkSize),
+                merkleTree.getProof(1)));
+
+        Path file = Files.createTempFile("signer-test", ".bin");
+        try {
+            Files.write(file, data);
+            Assert.assertFalse(chunkedSigner.verifyChunked(file, chunkedSignature, signatureAlgorithm, null));
+            data[chunkSize] ^= 1;
+            Files.write(file, data);
+            Assert.assertTrue(chunkedSigner.verifyChunked(file, chunkedSignature, signatureAlgorithm, null));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSignDigest() throws UnsupportedEncodingException, NoSuchAlgorithmException {
+        byte[] data = "test".getBytes("UTF-8");
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+        byte[] signatureBytes = digestSigner.signDigest(digest, "SHA-256", null);
+        Assert.assertArrayEquals(signer.sign(data, "SHA256WITHRSA", null, null), signatureBytes);
+        Assert.assertTrue(signer.verify(data, signatureBytes, "SHA256WITHRSA", null));
+        Assert.assertTrue(digestSigner.verifyDigest(digest, signatureBytes, "SHA-256"));
+    }
+
+    @Test
+    public void testSignFile() throws IOException {
+        String signatureAlgorithm = "SHA1WITHRSA";
+        byte[] data = new byte[100 * 1024];
+        new Random(0).nextBytes(data);
+        Path file = Files.createTempFile("signer-test", ".bin");
+        try {
+            Files.write(file, data);
+            byte[] byteArraySignature = signer.sign(data, signatureAlgorithm, null, null);
+            byte[] streamSignature = signer.sign(new ByteArrayInputStream(data), signatureAlgorithm, null, null);
+            byte[] fileSignature = signer.sign(file, signatureAlgorithm, null, null);
+            byte[] byteBufferSignature = signer.sign(ByteBuffer.wrap(data), signatureAlgorithm, null, null);
+
+            Assert.assertTrue(signer.verify(file, byteArraySignature, signatureAlgorithm, null));
+            Assert.assertTrue(signer.verify(ByteBuffer.wrap(data), streamSignature, signatureAlgorithm, null));
+            Assert.assertTrue(signer.verify(data, fileSignature, signatureAlgorithm, null));
+            Assert.assertTrue(signer.verify(new ByteArrayInputStream(data), byteBufferSignature, signatureAlgorithm,
+                    null));
+
+            data[0] ^= 1;
+            Files.write(file, data);
+            Assert.assertFalse(signer.verify(file, fileSignature, signatureAlgorithm, null));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testVerifyBatch() throws UnsupportedEncodingException {
+        String signatureAlgorithm = "SHA1WITHRSA";
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            payloads.add(("test" + i).getBytes("UTF-8"));
+        }
+        List<byte[]> signatures = new ArrayList<>(signer.signBatch(payloads, signatureAlgorithm, null, null));
+        BitSet result = signer.verifyBatch(payloads, signatures, signatureAlgorithm, null, false);
+        Assert.assertEquals(payloads.size(), result.cardinality());
+
+        signatures.set(10, signatures.get(11));
+        result = signer.verifyBatch(payloads, signatures, signatureAlgorithm, null, false);
+        Assert.assertEquals(payloads.size() - 1, result.cardinality());
+        Assert.assertFalse(result.get(10));
+
+        result = signer.verifyBatch(payloads, signatures, signatureAlgorithm, null, true);
+        Assert.assertFalse(result.get(10));
+    }
+
+    @Test
+    public void testVerifyBatchParallel() throws UnsupportedEncodingException {
+        String signatureAlgorithm = "SHA1WITHRSA";
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            payloads.add(("test" + i).getBytes("UTF-8"));
+        }
+        List<byte[]> signatures = new ArrayList<>(parallelSigner.signBatch(payloads, signatureAlgorithm, null,
+                null));
+        Assert.assertEquals(payloads.size(), signatures.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            Assert.assertArrayEquals(signer.sign(payloads.get(i), signatureAlgorithm, null, null),
+                    signatures.get(i));
+        }
+        BitSet result = parallelSigner.verifyBatch(payloads, signatures, signatureAlgorithm, null, false);
+        Assert.assertEquals(payloads.size(), result.cardinality());
+
+        signatures.set(90, signatures.get(91));
+        result = parallelSigner.verifyBatch(payloads, signatures, signatureAlgorithm, null, false);
+        Assert.assertEquals(payloads.size() - 1, result.cardinality());
+        Assert.assertFalse(result.get(90));
+
+        result = parallelSigner.verifyBatch(payloads, signatures, signatureAlgorithm, null, true);
+        Assert.assertFalse(result.get(90));
+        Assert.assertTrue(result.cardinality() < payloads.size());
+    }
+
+    @Test
+    public void testVerifyWithResult() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        byte[] signatureBytes = signer.sign(data, DEFAULT_SIGNATURE_ALGORITHM, null, null);
+        Assert.assertEquals(VerificationResult.VALID,
+                resultVerifier.verifyWithResult(data, signatureBytes, DEFAULT_SIGNATURE_ALGORITHM, null));
+        Assert.assertEquals(VerificationResult.INVALID, resultVerifier.verifyWithResult("other".getBytes("UTF-8"),
+                signatureBytes, DEFAULT_SIGNATURE_ALGORITHM, null));
+        Assert.assertEquals(VerificationResult.MALFORMED, resultVerifier.verifyWithResult(data,
+                Arrays.copyOf(signatureBytes, signatureBytes.length - 1), DEFAULT_SIGNATURE_ALGORITHM, null));
+        Assert.assertEquals(VerificationResult.UNSUPPORTED,
+                resultVerifier.verifyWithResult(data, signatureBytes, "SHA256WITHECDSA", null));
+        Assert.assertEquals(VerificationResult.MALFORMED,
+                resultVerifier.verifyWithResult(null, signatureBytes, DEFAULT_SIGNATURE_ALGORITHM, null));
+        Assert.assertEquals(VerificationResult.MALFORMED,
+                resultVerifier.verifyWithResult(data, null, DEFAULT_SIGNATURE_ALGORITHM, null));
+        Assert.assertEquals(VerificationResult.UNSUPPORTED,
+                resultVerifier.verifyWithResult(data, signatureBytes, null, null));
+    }
+
+    @Test
+    public void testVerifyWithResultEcdsa() throws UnsupportedEncodingException {
+        byte[] data = "test".getBytes("UTF-8");
+        String signatureAlgorithm = "SHA256WITHECDSA";
+        byte[] signatureBytes = ecSigner.sign(data, signatureAlgorithm, null, null);
+        Assert.assertEquals(VerificationResult.VALID,
+                ecResultVerifier.verifyWithResult(data, signatureBytes, signatureAlgorithm, null));
+        Assert.assertEquals(VerificationResult.INVALID, ecResultVerifier.verifyWithResult("other".getBytes("UTF-8"),
+                signatureBytes, signatureAlgorithm, null));
+
+        // Not a DER sequence
+        byte[] badTag = signatureBytes.clone();
+        badTag[0] = 0x31;
+        Assert.assertEquals(VerificationResult.MALFORMED,
+                ecResultVerifier.verifyWithResult(data, badTag, signatureAlgorithm, null));
+        // The length of the sequence does not match the length of the signature
+        byte[] badLength = Arrays.copyOf(signatureBytes, signatureBytes.length + 1);
+        Assert.assertEquals(VerificationResult.MALFORMED,
+                ecResultVerifier.verifyWithResult(data, badLength, signatureAlgorithm, null));
+        Assert.assertEquals(VerificationResult.MALFORMED, ecResultVerifier.verifyWithResult(data,
+                Arrays.copyOf(signatureBytes, signatureBytes.length - 1), signatureAlgorithm, null));
+        // An integer is encoded with another tag
+        byte[] badInteger = signatureBytes.clone();
+        badInteger[2] = 0x04;
+        Assert.assertEquals(VerificationResult.MALFORMED,
+                ecResultVerifier.verifyWithResult(data, badInteger, signatureAlgorithm, null));
+
+        // A signature of an RSA key has the wrong shape for the EC key
+        byte[] rsaSignatureBytes = signer.sign(data, DEFAULT_SIGNATURE_ALGORITHM, null, null);
+        Assert.assertEquals(VerificationResult.MALFORMED,
+                ecResultVerifier.verifyWithResult(data, rsaSignatureBytes, signatureAlgorithm, null));
+        Assert.assertEquals(VerificationResult.MALFORMED,
+                ecResultVerifier.verifyWithResult(data, new byte[0], signatureAlgorithm, null));
+        Assert.assertEquals(VerificationResult.UNSUPPORTED,
+                ecResultVerifier.verifyWithResult(data, signatureBytes, DEFAULT_SIGNATURE_ALGORITHM, null));
+    }
 }